@@ -0,0 +1,108 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.internal.model.Counter;
+
+/**
+ * Benchmark de contention de Counter.addRequest sur une même requête très fréquente,
+ * en mode synchronisé (par défaut), en mode strié (paramètre striped-counters)
+ * et en mode tampon par thread (paramètre buffered-counters).
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar CounterAddRequestBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterAddRequestBenchmark {
+	private static final String REQUEST_NAME = "GET /hot/endpoint";
+
+	@Param({ "synchronized", "striped", "buffered" })
+	private String mode;
+
+	private Counter counter;
+
+	/**
+	 * Initialisation.
+	 */
+	@Setup
+	public void setUp() {
+		counter = new Counter(Counter.HTTP_COUNTER_NAME, null);
+		counter.setStriped("striped".equals(mode));
+		counter.setBuffered("buffered".equals(mode));
+	}
+
+	private void addRequest() {
+		counter.addRequest(REQUEST_NAME, 12, 3, 40, false, 2048);
+	}
+
+	/**
+	 * addRequest sur 1 thread (sans contention).
+	 */
+	@Benchmark
+	@Threads(1)
+	public void addRequest1Thread() {
+		addRequest();
+	}
+
+	/**
+	 * addRequest sur 8 threads.
+	 */
+	@Benchmark
+	@Threads(8)
+	public void addRequest8Threads() {
+		addRequest();
+	}
+
+	/**
+	 * addRequest sur 32 threads.
+	 */
+	@Benchmark
+	@Threads(32)
+	public void addRequest32Threads() {
+		addRequest();
+	}
+
+	/**
+	 * addRequest sur 64 threads.
+	 */
+	@Benchmark
+	@Threads(64)
+	public void addRequest64Threads() {
+		addRequest();
+	}
+}
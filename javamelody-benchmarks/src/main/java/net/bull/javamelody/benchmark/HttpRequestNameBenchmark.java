@@ -0,0 +1,123 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.internal.common.UrlPathMatcher;
+import net.bull.javamelody.internal.model.HttpPathTemplater;
+
+/**
+ * Benchmark du gabarit des chemins http (paramètre http-aggregation=template)
+ * par rapport à une expression régulière http-transform-pattern équivalente,
+ * et des chemins exclus (paramètre url-exclude-paths) par rapport à url-exclude-pattern.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar HttpRequestNameBenchmark -prof gc
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequestNameBenchmark {
+	// expression régulière typique d'un http-transform-pattern pour les nombres, uuids et hexadécimaux
+	private static final Pattern TRANSFORM_PATTERN = Pattern.compile(
+			"(?<=/)(?:\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{8,})(?=/| |$)",
+			Pattern.MULTILINE | Pattern.DOTALL);
+
+	// expression régulière typique d'un url-exclude-pattern
+	private static final Pattern EXCLUDE_PATTERN = Pattern
+			.compile("(/webjars/.*|/css/.*|/images/.*|/fonts/.*|/js/.*|.*\\.ico)");
+
+	private static final String EXCLUDE_PATHS = "/webjars/*,/css/*,/images/*,/fonts/*,/js/*,*.ico";
+
+	private static final String[] REQUEST_NAMES = { "/api/orders GET",
+			"/api/orders/123456/items/42 GET",
+			"/api/users/550e8400-e29b-41d4-a716-446655440000/profile ajax POST",
+			"/webjars/jquery/3.6.0/jquery.min.js GET", };
+
+	@Param({ "0", "1", "2", "3" })
+	private int requestIndex;
+
+	private String requestName;
+	private String path;
+	private HttpPathTemplater templater;
+	private UrlPathMatcher urlPathMatcher;
+
+	/**
+	 * Initialisation.
+	 */
+	@Setup
+	public void setUp() {
+		requestName = REQUEST_NAMES[requestIndex];
+		path = requestName.substring(0, requestName.indexOf(' '));
+		templater = new HttpPathTemplater();
+		urlPathMatcher = new UrlPathMatcher(EXCLUDE_PATHS);
+	}
+
+	/**
+	 * Gabarit du chemin en une passe, avec l'arbre des segments appris.
+	 * @return String
+	 */
+	@Benchmark
+	public String template() {
+		return templater.template(requestName);
+	}
+
+	/**
+	 * Expression régulière http-transform-pattern, comme dans Counter sans le cache.
+	 * @return String
+	 */
+	@Benchmark
+	public String transformRegex() {
+		return TRANSFORM_PATTERN.matcher(requestName).replaceAll("\\$");
+	}
+
+	/**
+	 * Chemins exclus par les arbres des préfixes et des suffixes.
+	 * @return boolean
+	 */
+	@Benchmark
+	public boolean excludePaths() {
+		return urlPathMatcher.matches(path);
+	}
+
+	/**
+	 * Expression régulière url-exclude-pattern, comme dans MonitoringFilter.
+	 * @return boolean
+	 */
+	@Benchmark
+	public boolean excludeRegex() {
+		return EXCLUDE_PATTERN.matcher(path).matches();
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.JdbcWrapper;
+
+/**
+ * Benchmark du surcoût des proxys jdbc de JdbcWrapper, comparé à une base H2 en mémoire sans monitoring.
+ * <p>
+ * Le paramètre jdbcWrappers compare les classes de wrapper et les java.lang.reflect.Proxy
+ * (paramètre jdbc-wrappers de javamelody), chaque valeur étant exécutée dans son propre fork.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar JdbcWrapperBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcWrapperBenchmark {
+	private static final String QUERY = "select id, name from customer where id = ?";
+
+	@Param({ "classes", "proxies" })
+	private String jdbcWrappers;
+
+	private Connection rawConnection;
+	private Connection monitoredConnection;
+	private PreparedStatement rawPreparedStatement;
+	private PreparedStatement monitoredPreparedStatement;
+
+	/**
+	 * Initialisation.
+	 * @throws SQLException e
+	 */
+	@Setup
+	public void setUp() throws SQLException {
+		// avant la première utilisation de JdbcWrapper.SINGLETON dans ce fork
+		System.setProperty("javamelody.jdbc-wrappers", jdbcWrappers);
+		rawConnection = DriverManager.getConnection("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+				"sa", "");
+		try (Statement statement = rawConnection.createStatement()) {
+			statement.execute(
+					"create table if not exists customer (id int primary key, name varchar(100))");
+			statement.execute("merge into customer key (id) values (1, 'customer 1')");
+		}
+		JdbcWrapper.SINGLETON.getSqlCounter().setDisplayed(true);
+		monitoredConnection = JdbcWrapper.SINGLETON.createConnectionProxy(
+				DriverManager.getConnection("jdbc:h2:mem:benchmark", "sa", ""));
+		rawPreparedStatement = rawConnection.prepareStatement(QUERY);
+		monitoredPreparedStatement = monitoredConnection.prepareStatement(QUERY);
+	}
+
+	/**
+	 * Fermeture des connexions.
+	 * @throws SQLException e
+	 */
+	@TearDown
+	public void tearDown() throws SQLException {
+		rawPreparedStatement.close();
+		monitoredPreparedStatement.close();
+		monitoredConnection.close();
+		rawConnection.close();
+	}
+
+	private static int executeQuery(PreparedStatement preparedStatement) throws SQLException {
+		preparedStatement.setInt(1, 1);
+		try (ResultSet resultSet = preparedStatement.executeQuery()) {
+			int result = 0;
+			while (resultSet.next()) {
+				result += resultSet.getInt(1);
+			}
+			return result;
+		}
+	}
+
+	private static int createStatementAndExecuteQuery(Connection connection)
+			throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement
+						.executeQuery("select id, name from customer where id = 1")) {
+			int result = 0;
+			while (resultSet.next()) {
+				result += resultSet.getInt(1);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * PreparedStatement sans monitoring.
+	 * @return int
+	 * @throws SQLException e
+	 */
+	@Benchmark
+	public int rawPreparedStatement() throws SQLException {
+		return executeQuery(rawPreparedStatement);
+	}
+
+	/**
+	 * PreparedStatement avec le wrapper de JdbcWrapper.
+	 * @return int
+	 * @throws SQLException e
+	 */
+	@Benchmark
+	public int monitoredPreparedStatement() throws SQLException {
+		return executeQuery(monitoredPreparedStatement);
+	}
+
+	/**
+	 * Statement créé à chaque exécution, sans monitoring.
+	 * @return int
+	 * @throws SQLException e
+	 */
+	@Benchmark
+	public int rawStatement() throws SQLException {
+		return createStatementAndExecuteQuery(rawConnection);
+	}
+
+	/**
+	 * Statement créé à chaque exécution, avec les wrappers de JdbcWrapper.
+	 * @return int
+	 * @throws SQLException e
+	 */
+	@Benchmark
+	public int monitoredStatement() throws SQLException {
+		return createStatementAndExecuteQuery(monitoredConnection);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.bull.javamelody.MonitoringFilter;
+
+/**
+ * Benchmark du surcoût de MonitoringFilter.doFilter pour une requête http,
+ * avec des objets servlet simulés et une chaîne de filtres vide.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar MonitoringFilterBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitoringFilterBenchmark {
+	private static final String CONTEXT_PATH = "/benchmark";
+
+	private MonitoringFilter monitoringFilter;
+	private HttpServletRequest request;
+	private HttpServletResponse response;
+	private final FilterChain chain = (servletRequest, servletResponse) -> {
+		// rien, pour ne mesurer que le filtre
+	};
+
+	/**
+	 * Objet simulé : les méthodes retournent la valeur de la map pour leur nom,
+	 * sinon null, 0 ou false.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T createStub(Class<T> type, Map<String, Object> valuesByMethodName) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					final String methodName = method.getName();
+					if (valuesByMethodName.containsKey(methodName)) {
+						return valuesByMethodName.get(methodName);
+					}
+					final Class<?> returnType = method.getReturnType();
+					if (returnType == boolean.class) {
+						return "equals".equals(methodName) && proxy == args[0];
+					} else if (returnType == int.class) {
+						return "hashCode".equals(methodName) ? System.identityHashCode(proxy)
+								: 0;
+					} else if (returnType == long.class) {
+						return 0L;
+					} else if (returnType == String.class && "toString".equals(methodName)) {
+						return type.getSimpleName();
+					}
+					return null;
+				});
+	}
+
+	/**
+	 * Initialisation du filtre.
+	 * @throws ServletException e
+	 */
+	@Setup
+	public void setUp() throws ServletException {
+		System.setProperty("javamelody.storage-directory",
+				new File(System.getProperty("java.io.tmpdir"), "javamelody-benchmarks")
+						.getPath());
+		final ServletContext servletContext = createStub(ServletContext.class,
+				Map.of("getMajorVersion", 5, "getMinorVersion", 0, "getContextPath",
+						CONTEXT_PATH, "getServerInfo", "benchmark", "getServletContextName",
+						"benchmark", "getInitParameterNames", Collections.emptyEnumeration(),
+						"getAttributeNames", Collections.emptyEnumeration()));
+		final FilterConfig filterConfig = createStub(FilterConfig.class,
+				Map.of("getServletContext", servletContext, "getFilterName", "monitoring",
+						"getInitParameterNames", Collections.emptyEnumeration()));
+		monitoringFilter = new MonitoringFilter();
+		monitoringFilter.init(filterConfig);
+		request = createStub(HttpServletRequest.class,
+				Map.of("getRequestURI", CONTEXT_PATH + "/orders/list", "getContextPath",
+						CONTEXT_PATH, "getServletPath", "/orders/list", "getMethod", "GET",
+						"getRemoteAddr", "127.0.0.1", "getHeaderNames",
+						Collections.emptyEnumeration(), "getAttributeNames",
+						Collections.emptyEnumeration()));
+		response = createStub(HttpServletResponse.class, Map.of("getStatus", 200));
+	}
+
+	/**
+	 * Arrêt du filtre.
+	 */
+	@TearDown
+	public void tearDown() {
+		monitoringFilter.destroy();
+	}
+
+	/**
+	 * doFilter d'une requête http monitorée.
+	 * @throws IOException e
+	 * @throws ServletException e
+	 */
+	@Benchmark
+	public void doFilter() throws IOException, ServletException {
+		monitoringFilter.doFilter(request, response, chain);
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import net.bull.javamelody.PayloadNameRequestWrapper;
+
+/**
+ * Benchmark du nom d'une requête SOAP trouvé dans un préfixe borné du payload
+ * par rapport à un parseur StAX sur un flux marqué, puis relecture du payload par l'application.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar PayloadNameBenchmark -prof gc
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadNameBenchmark {
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	@Param({ "1024", "262144" })
+	private int payloadSize;
+
+	private byte[] payload;
+	private final byte[] applicationBuffer = new byte[8192];
+	private ByteArrayInputStream payloadStream;
+	private HttpServletRequest request;
+
+	/**
+	 * Wrapper pour appeler initialize() comme MonitoringFilter.
+	 */
+	static class BenchmarkRequestWrapper extends PayloadNameRequestWrapper {
+		BenchmarkRequestWrapper(HttpServletRequest request) throws IOException {
+			super(request);
+			initialize();
+		}
+	}
+
+	/**
+	 * Initialisation.
+	 */
+	@Setup
+	public void setUp() {
+		final StringBuilder body = new StringBuilder();
+		body.append("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">")
+				.append("<soap:Body><m:GetLastTradePrice xmlns:m=\"Some-URI\">");
+		while (body.length() < payloadSize) {
+			body.append("<symbol>DIS</symbol>");
+		}
+		body.append("</m:GetLastTradePrice></soap:Body></soap:Envelope>");
+		payload = body.toString().getBytes(StandardCharsets.UTF_8);
+		payloadStream = new ByteArrayInputStream(payload);
+		// CHECKSTYLE:OFF
+		final ServletInputStream servletInputStream = new ServletInputStream() {
+			// CHECKSTYLE:ON
+			@Override
+			public int read() {
+				return payloadStream.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return payloadStream.read(b, off, len);
+			}
+
+			@Override
+			public boolean isFinished() {
+				return payloadStream.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener) {
+				// rien
+			}
+		};
+		request = MonitoringFilterBenchmark.createStub(HttpServletRequest.class,
+				Map.of("getMethod", "POST", "getContentType", "text/xml", "getHeader",
+						"Some-URI", "getParameterMap", Map.of(), "getInputStream",
+						servletInputStream));
+	}
+
+	/**
+	 * Nom trouvé dans le préfixe borné, puis payload relu par l'application.
+	 * @return nom
+	 * @throws IOException e
+	 */
+	@Benchmark
+	public String boundedSniffing() throws IOException {
+		payloadStream.reset();
+		final BenchmarkRequestWrapper wrapper = new BenchmarkRequestWrapper(request);
+		readAll(wrapper.getInputStream());
+		return wrapper.getPayloadRequestName();
+	}
+
+	/**
+	 * Nom trouvé par un parseur StAX sur un flux marqué, puis payload relu par l'application.
+	 * @return nom
+	 * @throws IOException e
+	 * @throws XMLStreamException e
+	 */
+	@Benchmark
+	public String staxOnMarkedStream() throws IOException, XMLStreamException {
+		payloadStream.reset();
+		final BufferedInputStream stream = new BufferedInputStream(request.getInputStream());
+		stream.mark(Integer.MAX_VALUE);
+		final XMLStreamReader xmlReader = XML_INPUT_FACTORY.createXMLStreamReader(stream);
+		xmlReader.nextTag();
+		xmlReader.nextTag();
+		xmlReader.nextTag();
+		final String name = '.' + xmlReader.getLocalName();
+		stream.reset();
+		readAll(stream);
+		return name;
+	}
+
+	private void readAll(InputStream stream) throws IOException {
+		while (stream.read(applicationBuffer) != -1) {
+			// lecture du payload par l'application
+		}
+	}
+}
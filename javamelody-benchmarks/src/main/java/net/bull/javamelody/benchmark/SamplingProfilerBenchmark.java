@@ -0,0 +1,103 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.internal.model.SamplingProfiler;
+
+/**
+ * Benchmark d'un échantillonnage des stack-traces des threads par SamplingProfiler.update,
+ * selon le nombre de threads actifs en plus de ceux de la JVM.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar SamplingProfilerBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingProfilerBenchmark {
+	@Param({ "10", "100" })
+	private int threadsCount;
+
+	private SamplingProfiler samplingProfiler;
+	private final List<Thread> threads = new ArrayList<>();
+	private final CountDownLatch stopLatch = new CountDownLatch(1);
+
+	/**
+	 * Initialisation du profiler et des threads actifs.
+	 */
+	@Setup
+	public void setUp() {
+		samplingProfiler = new SamplingProfiler();
+		for (int i = 0; i < threadsCount; i++) {
+			final Thread thread = new Thread(this::work, "benchmark-worker-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+	}
+
+	private void work() {
+		// thread en état RUNNABLE avec une stack-trace de quelques éléments
+		long value = 0;
+		while (stopLatch.getCount() > 0) {
+			value += Long.toString(value).hashCode();
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Arrêt des threads.
+	 * @throws InterruptedException e
+	 */
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		stopLatch.countDown();
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Un échantillonnage.
+	 */
+	@Benchmark
+	public void update() {
+		samplingProfiler.update();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.internal.model.Counter;
+
+/**
+ * Benchmark du cycle de vie d'un contexte de requête sql dans une requête http
+ * (bindContext puis addRequest du counter sql), pour mesurer les allocations par requête sql.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar SqlChildContextBenchmark -prof gc
+ * (voir gc.alloc.rate.norm en octets par requête sql)
+ * @author Emeric Vernat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlChildContextBenchmark {
+	private static final String[] SQL_REQUESTS = { "select * from customer where id = ?",
+			"select * from orders where customer_id = ?", "update customer set name = ? where id = ?",
+			"select count(*) from product", };
+
+	private Counter sqlCounter;
+	private Counter httpCounter;
+	private int index;
+
+	/**
+	 * Initialisation : une requête http en cours sur le thread du benchmark.
+	 */
+	@Setup
+	public void setUp() {
+		sqlCounter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		httpCounter = new Counter(Counter.HTTP_COUNTER_NAME, null, sqlCounter);
+		httpCounter.bindContext("GET /orders", "GET /orders", null, -1, -1);
+		// requêtes sql déjà connues, comme dans une application après son démarrage
+		for (final String sqlRequest : SQL_REQUESTS) {
+			sqlCounter.addRequest(sqlRequest, 1, -1, -1, false, -1);
+		}
+	}
+
+	/**
+	 * Fin de la requête http.
+	 */
+	@TearDown
+	public void tearDown() {
+		httpCounter.unbindContext();
+	}
+
+	/**
+	 * Une requête sql exécutée dans la requête http.
+	 */
+	@Benchmark
+	public void sqlRequestInHttpRequest() {
+		final String sqlRequest = SQL_REQUESTS[index++ & 3];
+		sqlCounter.bindContext(sqlRequest, sqlRequest, null, -1, -1);
+		sqlCounter.addRequest(sqlRequest, 1, -1, -1, false, -1);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.internal.model.SqlFingerprinter;
+
+/**
+ * Benchmark de l'empreinte sql (paramètre sql-aggregation=fingerprint)
+ * par rapport à une expression régulière sql-transform-pattern équivalente.
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar SqlFingerprintBenchmark -prof gc
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlFingerprintBenchmark {
+	// expression régulière typique d'un sql-transform-pattern pour les littéraux et les listes in
+	private static final Pattern TRANSFORM_PATTERN = Pattern.compile(
+			"'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b|\\((?:\\s*\\$\\s*,)+\\s*\\$\\s*\\)",
+			Pattern.MULTILINE | Pattern.DOTALL);
+
+	private static final String[] SQLS = {
+			"select * from customer where id = 1234",
+			"select c.id, c.name from customer c where c.name = 'O''Brien' and c.status in (1, 2, 3, 4, 5)",
+			"insert into event (id, type, payload) values (1, 'a', 'x'), (2, 'b', 'y'), (3, 'c', 'z')",
+			"select * from orders o where o.customer_id = ? and o.created > ? order by o.created desc", };
+
+	@Param({ "0", "1", "2", "3" })
+	private int sqlIndex;
+
+	private String sql;
+
+	/**
+	 * Initialisation.
+	 */
+	@Setup
+	public void setUp() {
+		sql = SQLS[sqlIndex];
+	}
+
+	/**
+	 * Empreinte sql en une passe.
+	 * @return String
+	 */
+	@Benchmark
+	public String fingerprint() {
+		return SqlFingerprinter.fingerprint(sql);
+	}
+
+	/**
+	 * Expression régulière, comme dans Counter avant le cache de transform-pattern.
+	 * @return String
+	 */
+	@Benchmark
+	public String regex() {
+		return TRANSFORM_PATTERN.matcher(sql).replaceAll("\\$");
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark de l'enregistrement et de la lecture des fichiers des counters (CounterStorage),
+ * selon le nombre de requêtes du counter.
+ * (dans le package de CounterStorage dont les méthodes ne sont pas publiques)
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar CounterStorageBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CounterStorageBenchmark {
+	@Param({ "100", "10000", "50000" })
+	private int requestsCount;
+
+	private CounterStorage counterStorage;
+
+	/**
+	 * Initialisation d'un counter sql avec requestsCount requêtes différentes.
+	 * @throws IOException e
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		System.setProperty("javamelody.storage-directory",
+				new File(System.getProperty("java.io.tmpdir"), "javamelody-benchmarks")
+						.getPath());
+		final Counter counter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		counter.setApplication("benchmark");
+		counter.setMaxRequestsCount(requestsCount);
+		for (int i = 0; i < requestsCount; i++) {
+			final String requestName = "select * from table" + i % 100 + " where id = " + i;
+			counter.addRequest(requestName, i % 100, -1, -1, i % 1000 == 0, -1);
+			counter.addRequest(requestName, i % 50, -1, -1, false, -1);
+		}
+		counterStorage = new CounterStorage(counter);
+		// fichier pour la lecture
+		counterStorage.writeToFile();
+	}
+
+	/**
+	 * Enregistrement du counter.
+	 * @return Taille sérialisée
+	 * @throws IOException e
+	 */
+	@Benchmark
+	public int writeToFile() throws IOException {
+		return counterStorage.writeToFile();
+	}
+
+	/**
+	 * Lecture du counter.
+	 * @return Counter
+	 * @throws IOException e
+	 */
+	@Benchmark
+	public Counter readFromFile() throws IOException {
+		return counterStorage.readFromFile();
+	}
+}
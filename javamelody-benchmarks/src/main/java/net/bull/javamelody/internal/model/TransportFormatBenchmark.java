@@ -0,0 +1,128 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark des formats de transport (SERIALIZED, XML, JSON, GSON) des counters,
+ * comme entre une application monitorée et le serveur de collecte ou pour l'api externe.
+ * Les formats JSON et GSON ne sont qu'en écriture, donc seuls SERIALIZED et XML ont un aller-retour.
+ * (dans le package de TransportFormat dont la lecture n'est pas publique)
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar TransportFormatBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportFormatBenchmark {
+	@Param({ "SERIALIZED", "XML", "JSON", "GSON" })
+	private TransportFormat format;
+
+	private Serializable counters;
+	private byte[] bytes;
+
+	/**
+	 * Initialisation de counters http et sql de 500 requêtes chacun.
+	 * @throws IOException e
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		final Counter sqlCounter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		final Counter httpCounter = new Counter(Counter.HTTP_COUNTER_NAME, null, sqlCounter);
+		for (int i = 0; i < 500; i++) {
+			sqlCounter.addRequest("select * from table" + i + " where id = ?", i % 100, -1, -1,
+					false, -1);
+			httpCounter.addRequest("/page" + i + " GET", i % 1000, i % 100, i % 500, false,
+					10000);
+		}
+		final ArrayList<Counter> list = new ArrayList<>();
+		list.add(httpCounter.clone());
+		list.add(sqlCounter.clone());
+		counters = list;
+		bytes = write();
+	}
+
+	private byte[] write() throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		format.writeSerializableTo(counters, output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Écriture des counters.
+	 * @return Données écrites
+	 * @throws IOException e
+	 */
+	@Benchmark
+	public byte[] writeSerializable() throws IOException {
+		return write();
+	}
+
+	/**
+	 * Lecture puis écriture des counters (formats SERIALIZED et XML).
+	 * @return Données écrites
+	 * @throws IOException e
+	 * @throws ClassNotFoundException e
+	 */
+	@Benchmark
+	public Serializable roundTrip() throws IOException, ClassNotFoundException {
+		if (format == TransportFormat.JSON || format == TransportFormat.GSON) {
+			// pas de lecture pour ces formats
+			return null;
+		}
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		format.writeSerializableTo(counters, output);
+		return format.readSerializableFrom(new ByteArrayInputStream(output.toByteArray()));
+	}
+
+	/**
+	 * Lecture des counters (formats SERIALIZED et XML).
+	 * @return Counters lus
+	 * @throws IOException e
+	 * @throws ClassNotFoundException e
+	 */
+	@Benchmark
+	public Serializable readSerializable() throws IOException, ClassNotFoundException {
+		if (format == TransportFormat.JSON || format == TransportFormat.GSON) {
+			return null;
+		}
+		return format.readSerializableFrom(new ByteArrayInputStream(bytes));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bull.javamelody.internal.model.Collector;
+import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.JavaInformations;
+
+/**
+ * Benchmark du rapport Prometheus (sans les dernières valeurs des courbes JRobin).
+ * (dans le package de PrometheusController qui n'est pas public)
+ * <p>
+ * Exécution : java -jar target/benchmarks.jar PrometheusControllerBenchmark
+ * @author Emeric Vernat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrometheusControllerBenchmark {
+	private List<JavaInformations> javaInformationsList;
+	private Collector collector;
+	private final PrintWriter out = new PrintWriter(Writer.nullWriter());
+
+	/**
+	 * Initialisation des counters et des informations système.
+	 */
+	@Setup
+	public void setUp() {
+		final Counter sqlCounter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		final Counter httpCounter = new Counter(Counter.HTTP_COUNTER_NAME, null, sqlCounter);
+		final Counter errorCounter = new Counter(Counter.ERROR_COUNTER_NAME, null);
+		for (int i = 0; i < 100; i++) {
+			sqlCounter.addRequest("select * from table" + i, i % 10, -1, -1, false, -1);
+			httpCounter.addRequest("/page" + i + " GET", i % 100, i % 10, i, i % 50 == 0, 1000);
+		}
+		collector = new Collector("benchmark", List.of(httpCounter, sqlCounter, errorCounter));
+		javaInformationsList = Collections.singletonList(new JavaInformations(null, true));
+	}
+
+	/**
+	 * Rapport Prometheus.
+	 * @throws IOException e
+	 */
+	@Benchmark
+	public void report() throws IOException {
+		new PrometheusController(javaInformationsList, collector, out).report(false);
+		out.flush();
+	}
+}
@@ -23,6 +23,7 @@ import java.security.CodeSource;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -40,12 +41,16 @@ import net.bull.javamelody.internal.common.LOG;
 import net.bull.javamelody.internal.common.Parameters;
 import net.bull.javamelody.internal.model.Collector;
 import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.CounterRequestHistogram;
+import net.bull.javamelody.internal.model.HttpPathTemplater;
 import net.bull.javamelody.internal.model.JRobin;
 import net.bull.javamelody.internal.model.JobInformations;
 import net.bull.javamelody.internal.model.MBeans;
 import net.bull.javamelody.internal.model.MavenArtifact;
+import net.bull.javamelody.internal.model.MonitoringOverhead;
 import net.bull.javamelody.internal.model.Period;
 import net.bull.javamelody.internal.model.SamplingProfiler;
+import net.bull.javamelody.internal.model.ThreadInformations;
 import net.bull.javamelody.internal.model.UpdateChecker;
 import net.bull.javamelody.internal.web.HttpCookieManager;
 import net.bull.javamelody.internal.web.MailReport;
@@ -58,6 +63,7 @@ import net.bull.javamelody.internal.web.MonitoringController;
 class FilterContext {
 	private static final boolean MOJARRA_AVAILABLE = isMojarraAvailable();
 	private static final boolean JPA2_AVAILABLE = isJpa2Available();
+	private static final int DEFAULT_N_PLUS_ONE_THRESHOLD = 0;
 
 	private final String applicationType;
 	private final Collector collector;
@@ -128,6 +134,13 @@ class FilterContext {
 
 			this.samplingProfiler = initSamplingProfiler();
 
+			initConnectionLeakDetection();
+
+			// mode threads virtuels (java 21+), selon le paramètre lu maintenant que le contexte est connu
+			ThreadInformations.initVirtualThreadsEnabled();
+
+			CounterRequestHistogram.initParameterSignificantDigits();
+
 			final List<Counter> counters = initCounters();
 			final String application = Parameters.getCurrentApplication();
 			this.collector = new Collector(application, counters, this.samplingProfiler);
@@ -190,6 +203,15 @@ class FilterContext {
 		}
 
 		setRequestTransformPatterns(counters);
+		setStripedCounters(counters);
+		setBufferedCounters(counters);
+		setNPlusOneThreshold(counters);
+		sqlCounter.setSqlFingerprint(
+				"fingerprint".equalsIgnoreCase(Parameter.SQL_AGGREGATION.getValue()));
+		if ("template".equalsIgnoreCase(Parameter.HTTP_AGGREGATION.getValue())) {
+			httpCounter.setHttpPathTemplater(new HttpPathTemplater());
+		}
+		MonitoringOverhead.setEnabled(Parameter.SELF_MONITORING.getValueAsBoolean());
 		final String displayedCounters = Parameter.DISPLAYED_COUNTERS.getValue();
 		if (displayedCounters == null) {
 			// par défaut, les compteurs http, sql, error et log (et ceux qui sont utilisés) sont affichés
@@ -225,6 +247,59 @@ class FilterContext {
 		}
 	}
 
+	private static void setStripedCounters(List<Counter> counters) {
+		for (final Counter counter : getCountersInParameter(counters,
+				Parameter.STRIPED_COUNTERS)) {
+			counter.setStriped(true);
+		}
+	}
+
+	private static void setBufferedCounters(List<Counter> counters) {
+		for (final Counter counter : getCountersInParameter(counters,
+				Parameter.BUFFERED_COUNTERS)) {
+			counter.setBuffered(true);
+		}
+	}
+
+	private static void setNPlusOneThreshold(List<Counter> counters) {
+		final String value = Parameter.N_PLUS_ONE_THRESHOLD.getValue();
+		final int threshold;
+		if (value == null) {
+			threshold = DEFAULT_N_PLUS_ONE_THRESHOLD;
+		} else {
+			threshold = Integer.parseInt(value.trim());
+			if (threshold < 0) {
+				throw new IllegalStateException("The parameter "
+						+ Parameter.N_PLUS_ONE_THRESHOLD.getCode() + " must be positive or zero");
+			}
+		}
+		for (final Counter counter : counters) {
+			// les N+1 sont détectés dans les requêtes parentes des requêtes sql
+			if (Counter.SQL_COUNTER_NAME.equals(counter.getChildCounterName())) {
+				counter.setNPlusOneThreshold(threshold);
+			}
+		}
+	}
+
+	private static List<Counter> getCountersInParameter(List<Counter> counters,
+			Parameter parameter) {
+		final String counterNames = parameter.getValue();
+		if (counterNames == null) {
+			return Collections.emptyList();
+		}
+		final List<Counter> result = new ArrayList<>();
+		for (final String counterName : counterNames.split(",")) {
+			final String trimmedCounterName = counterName.trim();
+			for (final Counter counter : counters) {
+				if (trimmedCounterName.equalsIgnoreCase(counter.getName())) {
+					result.add(counter);
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
 	private static void setDisplayedCounters(List<Counter> counters, String displayedCounters) {
 		for (final Counter counter : counters) {
 			// le compteur "job" a toujours displayed=true s'il est présent,
@@ -289,6 +364,23 @@ class FilterContext {
 		}
 	}
 
+	private void initConnectionLeakDetection() {
+		final long thresholdMillis = JdbcWrapper.getConnectionLeakThresholdMillisParameter();
+		if (thresholdMillis > 0) {
+			final TimerTask leakDetectionTimerTask = new TimerTask() {
+				@Override
+				public void run() {
+					JdbcWrapper.SINGLETON.detectConnectionLeaks();
+				}
+			};
+			// une fuite est signalée au plus tard après 2 fois le seuil ou le seuil + la résolution
+			final long periodMillis = Math.min(thresholdMillis,
+					Parameters.getResolutionSeconds() * 1000L);
+			this.timer.schedule(leakDetectionTimerTask, periodMillis, periodMillis);
+			LOG.debug("jdbc connection leak detection initialized");
+		}
+	}
+
 	private SamplingProfiler initSamplingProfiler() {
 		if (Parameter.SAMPLING_SECONDS.getValue() != null) {
 			final SamplingProfiler sampler;
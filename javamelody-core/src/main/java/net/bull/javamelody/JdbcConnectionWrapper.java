@@ -0,0 +1,445 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.ShardingKey;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import net.bull.javamelody.internal.model.DataSourceStatistics;
+
+/**
+ * Wrapper d'une {@link Connection} jdbc pour le monitoring, sans java.lang.reflect.Proxy
+ * ni Method.invoke.
+ * Les méthodes sont déléguées à la connexion initiale, y compris unwrap et isWrapperFor
+ * comme pour le proxy. Seules la création des statements, qui sont aussi wrappés,
+ * la méthode close, pour le nombre de connexions utilisées, et les méthodes setAutoCommit,
+ * commit et rollback, pour les transactions, sont interceptées.
+ * @author Emeric Vernat
+ */
+final class JdbcConnectionWrapper implements Connection {
+	private final JdbcWrapper jdbcWrapper;
+	private final Connection connection;
+	// null si la connexion ne vient pas d'une DataSource
+	private final DataSourceStatistics dataSourceStatistics;
+	private final TransactionTracker transactionTracker;
+	private boolean alreadyClosed;
+
+	JdbcConnectionWrapper(JdbcWrapper jdbcWrapper, Connection connection,
+			DataSourceStatistics dataSourceStatistics) {
+		super();
+		assert jdbcWrapper != null;
+		assert connection != null;
+		this.jdbcWrapper = jdbcWrapper;
+		this.connection = connection;
+		this.dataSourceStatistics = dataSourceStatistics;
+		this.transactionTracker = new TransactionTracker(jdbcWrapper.getSqlCounter());
+	}
+
+	Connection getWrappedConnection() {
+		return connection;
+	}
+
+	private <T extends Statement> T statementCreated(T statement) {
+		transactionTracker.statementCreated();
+		return statement;
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(null,
+				connection.createStatement(), this, dataSourceStatistics));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareStatement(sql), this, dataSourceStatistics));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareCall(sql), this, dataSourceStatistics));
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		return connection.nativeSQL(sql);
+	}
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		connection.setAutoCommit(autoCommit);
+		transactionTracker.autoCommitChanged(autoCommit);
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		return connection.getAutoCommit();
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		connection.commit();
+		transactionTracker.committed();
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		connection.rollback();
+		transactionTracker.rolledBack();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			connection.close();
+		} finally {
+			if (!alreadyClosed) {
+				jdbcWrapper.connectionClosed(connection, dataSourceStatistics);
+				transactionTracker.connectionClosed();
+				alreadyClosed = true;
+			}
+		}
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return connection.isClosed();
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return connection.getMetaData();
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		connection.setReadOnly(readOnly);
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		return connection.isReadOnly();
+	}
+
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		connection.setCatalog(catalog);
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		return connection.getCatalog();
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		connection.setTransactionIsolation(level);
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		return connection.getTransactionIsolation();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return connection.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		connection.clearWarnings();
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(null,
+				connection.createStatement(resultSetType, resultSetConcurrency), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareStatement(sql, resultSetType, resultSetConcurrency), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareCall(sql, resultSetType, resultSetConcurrency), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return connection.getTypeMap();
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		connection.setTypeMap(map);
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		connection.setHoldability(holdability);
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		return connection.getHoldability();
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		return connection.setSavepoint();
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return connection.setSavepoint(name);
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		connection.rollback(savepoint);
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		connection.releaseSavepoint(savepoint);
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(null,
+				connection.createStatement(resultSetType, resultSetConcurrency,
+						resultSetHoldability), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareStatement(sql, resultSetType, resultSetConcurrency,
+						resultSetHoldability), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareCall(sql, resultSetType, resultSetConcurrency,
+						resultSetHoldability), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareStatement(sql, autoGeneratedKeys), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareStatement(sql, columnIndexes), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames)
+			throws SQLException {
+		return statementCreated(jdbcWrapper.createStatementProxy(sql,
+				connection.prepareStatement(sql, columnNames), this,
+				dataSourceStatistics));
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		return connection.createClob();
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		return connection.createBlob();
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		return connection.createNClob();
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		return connection.createSQLXML();
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		return connection.isValid(timeout);
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		connection.setClientInfo(name, value);
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		connection.setClientInfo(properties);
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		return connection.getClientInfo(name);
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		return connection.getClientInfo();
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return connection.createArrayOf(typeName, elements);
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return connection.createStruct(typeName, attributes);
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		connection.setSchema(schema);
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		return connection.getSchema();
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		connection.abort(executor);
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		connection.setNetworkTimeout(executor, milliseconds);
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		return connection.getNetworkTimeout();
+	}
+
+	@Override
+	public void beginRequest() throws SQLException {
+		connection.beginRequest();
+	}
+
+	@Override
+	public void endRequest() throws SQLException {
+		connection.endRequest();
+	}
+
+	@Override
+	public boolean setShardingKeyIfValid(ShardingKey shardingKey, ShardingKey superShardingKey,
+			int timeout) throws SQLException {
+		return connection.setShardingKeyIfValid(shardingKey, superShardingKey, timeout);
+	}
+
+	@Override
+	public boolean setShardingKeyIfValid(ShardingKey shardingKey, int timeout) throws SQLException {
+		return connection.setShardingKeyIfValid(shardingKey, timeout);
+	}
+
+	@Override
+	public void setShardingKey(ShardingKey shardingKey, ShardingKey superShardingKey)
+			throws SQLException {
+		connection.setShardingKey(shardingKey, superShardingKey);
+	}
+
+	@Override
+	public void setShardingKey(ShardingKey shardingKey) throws SQLException {
+		connection.setShardingKey(shardingKey);
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return connection.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return connection.isWrapperFor(iface);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		// equals transparent entre wrappers, proxy et connexions initiales (cf issue 78)
+		if (obj instanceof JdbcConnectionWrapper) {
+			return connection.equals(((JdbcConnectionWrapper) obj).connection);
+		}
+		return connection.equals(obj);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return connection.hashCode();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return connection.toString();
+	}
+}
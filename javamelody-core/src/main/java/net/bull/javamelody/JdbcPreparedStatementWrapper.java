@@ -0,0 +1,416 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+import net.bull.javamelody.internal.model.DataSourceStatistics;
+
+/**
+ * Wrapper d'un {@link PreparedStatement} jdbc pour le monitoring des requêtes sql,
+ * sans java.lang.reflect.Proxy ni Method.invoke (voir {@link JdbcStatementWrapper}).
+ * @author Emeric Vernat
+ */
+class JdbcPreparedStatementWrapper extends JdbcStatementWrapper
+		implements PreparedStatement {
+	private final PreparedStatement preparedStatement;
+
+	JdbcPreparedStatementWrapper(JdbcWrapper jdbcWrapper, String query,
+			PreparedStatement preparedStatement, Connection connection,
+			DataSourceStatistics dataSourceStatistics) {
+		super(jdbcWrapper, query, preparedStatement, connection, dataSourceStatistics);
+		this.preparedStatement = preparedStatement;
+	}
+
+	@Override
+	public ResultSet executeQuery() throws SQLException {
+		final String name = getRequestName();
+		return jdbcWrapper.createResultSetProxy(name,
+				jdbcWrapper.doExecute(name, dataSourceStatistics, bindValues,
+						preparedStatement::executeQuery), this);
+	}
+
+	@Override
+	public int executeUpdate() throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(), dataSourceStatistics, bindValues,
+				preparedStatement::executeUpdate);
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		bind(parameterIndex, null);
+		preparedStatement.setNull(parameterIndex, sqlType);
+	}
+
+	@Override
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBoolean(parameterIndex, x);
+	}
+
+	@Override
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setByte(parameterIndex, x);
+	}
+
+	@Override
+	public void setShort(int parameterIndex, short x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setShort(parameterIndex, x);
+	}
+
+	@Override
+	public void setInt(int parameterIndex, int x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setInt(parameterIndex, x);
+	}
+
+	@Override
+	public void setLong(int parameterIndex, long x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setLong(parameterIndex, x);
+	}
+
+	@Override
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setFloat(parameterIndex, x);
+	}
+
+	@Override
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setDouble(parameterIndex, x);
+	}
+
+	@Override
+	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBigDecimal(parameterIndex, x);
+	}
+
+	@Override
+	public void setString(int parameterIndex, String x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setString(parameterIndex, x);
+	}
+
+	@Override
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBytes(parameterIndex, x);
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setDate(parameterIndex, x);
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setTime(parameterIndex, x);
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setTimestamp(parameterIndex, x);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setAsciiStream(parameterIndex, x, length);
+	}
+
+	@Deprecated
+	@Override
+	public void setUnicodeStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setUnicodeStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBinaryStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void clearParameters() throws SQLException {
+		clearBindValues();
+		preparedStatement.clearParameters();
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setObject(parameterIndex, x, targetSqlType);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setObject(parameterIndex, x);
+	}
+
+	@Override
+	public boolean execute() throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(), dataSourceStatistics, bindValues,
+				preparedStatement::execute);
+	}
+
+	@Override
+	public void addBatch() throws SQLException {
+		preparedStatement.addBatch();
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, int length)
+			throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setRef(parameterIndex, x);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBlob(parameterIndex, x);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setClob(parameterIndex, x);
+	}
+
+	@Override
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setArray(parameterIndex, x);
+	}
+
+	@Override
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return preparedStatement.getMetaData();
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setDate(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setTime(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setTimestamp(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+		bind(parameterIndex, null);
+		preparedStatement.setNull(parameterIndex, sqlType, typeName);
+	}
+
+	@Override
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setURL(parameterIndex, x);
+	}
+
+	@Override
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		return preparedStatement.getParameterMetaData();
+	}
+
+	@Override
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setRowId(parameterIndex, x);
+	}
+
+	@Override
+	public void setNString(int parameterIndex, String value) throws SQLException {
+		bind(parameterIndex, value);
+		preparedStatement.setNString(parameterIndex, value);
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader value, long length)
+			throws SQLException {
+		bind(parameterIndex, value);
+		preparedStatement.setNCharacterStream(parameterIndex, value, length);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, NClob value) throws SQLException {
+		bind(parameterIndex, value);
+		preparedStatement.setNClob(parameterIndex, value);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setClob(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream inputStream, long length)
+			throws SQLException {
+		bind(parameterIndex, inputStream);
+		preparedStatement.setBlob(parameterIndex, inputStream, length);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setNClob(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+		bind(parameterIndex, xmlObject);
+		preparedStatement.setSQLXML(parameterIndex, xmlObject);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength)
+			throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setAsciiStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBinaryStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setAsciiStream(parameterIndex, x);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setBinaryStream(parameterIndex, x);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setCharacterStream(parameterIndex, reader);
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+		bind(parameterIndex, value);
+		preparedStatement.setNCharacterStream(parameterIndex, value);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setClob(parameterIndex, reader);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+		bind(parameterIndex, inputStream);
+		preparedStatement.setBlob(parameterIndex, inputStream);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+		bind(parameterIndex, reader);
+		preparedStatement.setNClob(parameterIndex, reader);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength)
+			throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
+		bind(parameterIndex, x);
+		preparedStatement.setObject(parameterIndex, x, targetSqlType);
+	}
+
+	@Override
+	public long executeLargeUpdate() throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(), dataSourceStatistics, bindValues,
+				preparedStatement::executeLargeUpdate);
+	}
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+import net.bull.javamelody.internal.model.DataSourceStatistics;
+
+/**
+ * Wrapper d'un {@link Statement} jdbc pour le monitoring des requêtes sql,
+ * sans java.lang.reflect.Proxy ni Method.invoke.
+ * Les méthodes executeXxx sont comptées dans le counter sql, addBatch(String) conserve
+ * la requête pour executeBatch() et getConnection() retourne la connexion wrappée :
+ * les autres méthodes sont déléguées au statement initial, y compris unwrap et isWrapperFor
+ * comme pour le proxy.
+ * @author Emeric Vernat
+ */
+class JdbcStatementWrapper implements Statement {
+	private static final String BATCH_PREFIX = "/* BATCH */ ";
+
+	final JdbcWrapper jdbcWrapper;
+	// null si la connexion ne vient pas d'une DataSource
+	final DataSourceStatistics dataSourceStatistics;
+	private final Statement statement;
+	private final Connection connection;
+	private String requestName;
+	// valeurs des paramètres des PreparedStatement,
+	// si les exécutions les plus lentes sont conservées
+	Object[] bindValues;
+
+	JdbcStatementWrapper(JdbcWrapper jdbcWrapper, String query, Statement statement,
+			Connection connection, DataSourceStatistics dataSourceStatistics) {
+		super();
+		assert jdbcWrapper != null;
+		assert statement != null;
+		assert connection != null;
+		this.jdbcWrapper = jdbcWrapper;
+		this.dataSourceStatistics = dataSourceStatistics;
+		this.requestName = query;
+		this.statement = statement;
+		this.connection = connection;
+	}
+
+	final void bind(int parameterIndex, Object value) {
+		if (jdbcWrapper.isSlowestExecutionsEnabled()) {
+			bindValues = JdbcWrapper.bind(bindValues, parameterIndex, value);
+		}
+	}
+
+	final void clearBindValues() {
+		bindValues = null;
+	}
+
+	/**
+	 * Nom de la requête pour executeQuery(String), executeUpdate(String),
+	 * executeUpdate(String, ...) ou execute(String sql) :
+	 * la requête sql est le premier argument (et pas query).
+	 * @param sql String
+	 * @return String
+	 */
+	final String getRequestName(String sql) {
+		if (sql != null) {
+			requestName = sql;
+		}
+		return getRequestName();
+	}
+
+	/**
+	 * Nom de la requête pour execute(), executeQuery() ou executeUpdate()
+	 * d'un PreparedStatement.
+	 * @return String
+	 */
+	final String getRequestName() {
+		// si on n'a pas trouvé la requête, on prend "null"
+		requestName = String.valueOf(requestName);
+		return requestName;
+	}
+
+	private String getBatchRequestName() {
+		// if executeBatch, add a prefix in the request name to explain that
+		// 1 batch "hit" is equivalent to several exec of the request in the db.
+
+		// requestName may be null if executeBatch()
+		// without prepareStatement(String) or addBatch(String)
+		if (requestName != null && !requestName.startsWith(BATCH_PREFIX)) {
+			requestName = BATCH_PREFIX + requestName;
+		}
+		return getRequestName();
+	}
+
+	@Override
+	public ResultSet executeQuery(String sql) throws SQLException {
+		final String name = getRequestName(sql);
+		return jdbcWrapper.createResultSetProxy(name,
+				jdbcWrapper.doExecute(name, dataSourceStatistics, bindValues,
+						() -> statement.executeQuery(sql)), this);
+	}
+
+	@Override
+	public int executeUpdate(String sql) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeUpdate(sql));
+	}
+
+	@Override
+	public void close() throws SQLException {
+		statement.close();
+	}
+
+	@Override
+	public int getMaxFieldSize() throws SQLException {
+		return statement.getMaxFieldSize();
+	}
+
+	@Override
+	public void setMaxFieldSize(int max) throws SQLException {
+		statement.setMaxFieldSize(max);
+	}
+
+	@Override
+	public int getMaxRows() throws SQLException {
+		return statement.getMaxRows();
+	}
+
+	@Override
+	public void setMaxRows(int max) throws SQLException {
+		statement.setMaxRows(max);
+	}
+
+	@Override
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		statement.setEscapeProcessing(enable);
+	}
+
+	@Override
+	public int getQueryTimeout() throws SQLException {
+		return statement.getQueryTimeout();
+	}
+
+	@Override
+	public void setQueryTimeout(int seconds) throws SQLException {
+		statement.setQueryTimeout(seconds);
+	}
+
+	@Override
+	public void cancel() throws SQLException {
+		statement.cancel();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return statement.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		statement.clearWarnings();
+	}
+
+	@Override
+	public void setCursorName(String name) throws SQLException {
+		statement.setCursorName(name);
+	}
+
+	@Override
+	public boolean execute(String sql) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.execute(sql));
+	}
+
+	@Override
+	public ResultSet getResultSet() throws SQLException {
+		// ResultSet après execute
+		return jdbcWrapper.createResultSetProxy(getRequestName(), statement.getResultSet(), this);
+	}
+
+	@Override
+	public int getUpdateCount() throws SQLException {
+		return statement.getUpdateCount();
+	}
+
+	@Override
+	public boolean getMoreResults() throws SQLException {
+		return statement.getMoreResults();
+	}
+
+	@Override
+	public void setFetchDirection(int direction) throws SQLException {
+		statement.setFetchDirection(direction);
+	}
+
+	@Override
+	public int getFetchDirection() throws SQLException {
+		return statement.getFetchDirection();
+	}
+
+	@Override
+	public void setFetchSize(int rows) throws SQLException {
+		statement.setFetchSize(rows);
+	}
+
+	@Override
+	public int getFetchSize() throws SQLException {
+		return statement.getFetchSize();
+	}
+
+	@Override
+	public int getResultSetConcurrency() throws SQLException {
+		return statement.getResultSetConcurrency();
+	}
+
+	@Override
+	public int getResultSetType() throws SQLException {
+		return statement.getResultSetType();
+	}
+
+	@Override
+	public void addBatch(String sql) throws SQLException {
+		// Bien que déconseillée la méthode est addBatch(String),
+		// la requête sql est alors le premier argument
+		// (elle sera utilisée lors de l'appel à executeBatch())
+		if (sql != null) {
+			requestName = sql;
+		}
+		statement.addBatch(sql);
+	}
+
+	@Override
+	public void clearBatch() throws SQLException {
+		statement.clearBatch();
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		return jdbcWrapper.doExecute(getBatchRequestName(), dataSourceStatistics, bindValues,
+				statement::executeBatch);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return connection;
+	}
+
+	@Override
+	public boolean getMoreResults(int current) throws SQLException {
+		return statement.getMoreResults(current);
+	}
+
+	@Override
+	public ResultSet getGeneratedKeys() throws SQLException {
+		return statement.getGeneratedKeys();
+	}
+
+	@Override
+	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeUpdate(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeUpdate(sql, columnIndexes));
+	}
+
+	@Override
+	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeUpdate(sql, columnNames));
+	}
+
+	@Override
+	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.execute(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.execute(sql, columnIndexes));
+	}
+
+	@Override
+	public boolean execute(String sql, String[] columnNames) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.execute(sql, columnNames));
+	}
+
+	@Override
+	public int getResultSetHoldability() throws SQLException {
+		return statement.getResultSetHoldability();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return statement.isClosed();
+	}
+
+	@Override
+	public void setPoolable(boolean poolable) throws SQLException {
+		statement.setPoolable(poolable);
+	}
+
+	@Override
+	public boolean isPoolable() throws SQLException {
+		return statement.isPoolable();
+	}
+
+	@Override
+	public void closeOnCompletion() throws SQLException {
+		statement.closeOnCompletion();
+	}
+
+	@Override
+	public boolean isCloseOnCompletion() throws SQLException {
+		return statement.isCloseOnCompletion();
+	}
+
+	@Override
+	public long getLargeUpdateCount() throws SQLException {
+		return statement.getLargeUpdateCount();
+	}
+
+	@Override
+	public void setLargeMaxRows(long max) throws SQLException {
+		statement.setLargeMaxRows(max);
+	}
+
+	@Override
+	public long getLargeMaxRows() throws SQLException {
+		return statement.getLargeMaxRows();
+	}
+
+	@Override
+	public long[] executeLargeBatch() throws SQLException {
+		return jdbcWrapper.doExecute(getBatchRequestName(), dataSourceStatistics, bindValues,
+				statement::executeLargeBatch);
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeLargeUpdate(sql));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeLargeUpdate(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeLargeUpdate(sql, columnIndexes));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+		return jdbcWrapper.doExecute(getRequestName(sql), dataSourceStatistics, bindValues,
+				() -> statement.executeLargeUpdate(sql, columnNames));
+	}
+
+	@Override
+	public String enquoteLiteral(String val) throws SQLException {
+		return statement.enquoteLiteral(val);
+	}
+
+	@Override
+	public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException {
+		return statement.enquoteIdentifier(identifier, alwaysQuote);
+	}
+
+	@Override
+	public boolean isSimpleIdentifier(String identifier) throws SQLException {
+		return statement.isSimpleIdentifier(identifier);
+	}
+
+	@Override
+	public String enquoteNCharLiteral(String val) throws SQLException {
+		return statement.enquoteNCharLiteral(val);
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return statement.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return statement.isWrapperFor(iface);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		return statement.equals(obj);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return statement.hashCode();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return statement.toString();
+	}
+}
@@ -18,20 +18,29 @@
 package net.bull.javamelody;
 
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -43,7 +52,10 @@ import jakarta.servlet.ServletContext;
 import net.bull.javamelody.internal.common.LOG;
 import net.bull.javamelody.internal.common.Parameters;
 import net.bull.javamelody.internal.model.ConnectionInformations;
+import net.bull.javamelody.internal.model.ConnectionWaits;
 import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.DataSourceStatistics;
+import net.bull.javamelody.internal.model.MonitoringOverhead;
 
 /**
  * Cette classe est utile pour construire des proxy de {@link DataSource}s ou de {@link Connection}s jdbc.<br>
@@ -73,14 +85,136 @@ public final class JdbcWrapper {
 
 	private static final int MAX_USED_CONNECTION_INFORMATIONS = 500;
 
+	private static final int MAX_SLOWEST_EXECUTIONS = 20;
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+	// profondeur max de la stack trace actuelle du thread détenant une connexion suspectée de fuite
+	private static final int LEAK_HOLDING_THREAD_STACK_DEPTH = 64;
+
+	// nombre maximum de paramètres conservés pour les exécutions les plus lentes
+	private static final int MAX_BIND_VALUES = 100;
+
 	// Cette variable sqlCounter conserve un état qui est global au filtre et à l'application (donc thread-safe).
 	private final Counter sqlCounter;
 	private ServletContext servletContext;
 	private boolean connectionInformationsEnabled;
+	private long connectionLeakThresholdMillis;
+	private JdbcWrappersMode jdbcWrappersMode;
+	private boolean resultSetMonitoringEnabled;
+	private int slowestExecutionsCount;
+	private boolean bindValuesMasked;
 	private boolean jboss;
 	private boolean glassfish;
 	private boolean weblogic;
 
+	/**
+	 * Handler de proxy d'un {@link ResultSet} jdbc, pour les lignes lues et le temps de lecture
+	 * (équivalent à JdbcResultSetWrapper si le proxy est nécessaire).
+	 */
+	private class ResultSetInvocationHandler implements InvocationHandler {
+		private final String aggregateRequestName;
+		private final ResultSet resultSet;
+		private final Statement statement;
+		private long rows;
+		private long fetchNanos;
+		private boolean fetchEnded;
+
+		ResultSetInvocationHandler(String aggregateRequestName, ResultSet resultSet,
+				Statement statement) {
+			super();
+			assert aggregateRequestName != null;
+			assert resultSet != null;
+			assert statement != null;
+			this.aggregateRequestName = aggregateRequestName;
+			this.resultSet = resultSet;
+			this.statement = statement;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final String methodName = method.getName();
+			if (isEqualsMethod(methodName, args)) {
+				return resultSet.equals(args[0]);
+			} else if (isHashCodeMethod(methodName, args)) {
+				return resultSet.hashCode();
+			} else if ("next".equals(methodName) && (args == null || args.length == 0)) {
+				final long start = System.nanoTime();
+				final Boolean result;
+				try {
+					result = (Boolean) method.invoke(resultSet, args);
+				} finally {
+					fetchNanos += System.nanoTime() - start;
+				}
+				if (result) {
+					rows++;
+				} else {
+					// fin du ResultSet, même si la méthode close n'est pas appelée
+					fetchEnded();
+				}
+				return result;
+			} else if ("close".equals(methodName) && (args == null || args.length == 0)) {
+				try {
+					return method.invoke(resultSet, args);
+				} finally {
+					fetchEnded();
+				}
+			} else if ("getStatement".equals(methodName) && (args == null || args.length == 0)) {
+				// le proxy du Statement et non le Statement du driver, comme pour getConnection
+				return statement;
+			}
+			return method.invoke(resultSet, args);
+		}
+
+		private void fetchEnded() {
+			if (!fetchEnded) {
+				fetchEnded = true;
+				resultSetFetched(aggregateRequestName, rows, fetchNanos);
+			}
+		}
+	}
+
+	/**
+	 * Exécution d'une requête sql par un proxy ou par un wrapper de {@link Statement}.
+	 * @param <T> Type du résultat
+	 * @param <E> Type d'exception
+	 */
+	@FunctionalInterface
+	interface SqlExecution<T, E extends Exception> {
+		/**
+		 * Exécute la requête.
+		 * @return Résultat
+		 * @throws E e
+		 */
+		T execute() throws E;
+	}
+
+	/**
+	 * Mode des wrappers de connexions et de statements jdbc (paramètre jdbc-wrappers).
+	 */
+	enum JdbcWrappersMode {
+		/**
+		 * Classes de wrapper si les objets jdbc n'implémentent que des interfaces java.sql,
+		 * proxy sinon pour conserver les interfaces spécifiques du driver ou du pool.
+		 */
+		AUTO,
+		/**
+		 * Classes de wrapper toujours.
+		 */
+		CLASSES,
+		/**
+		 * Proxy toujours.
+		 */
+		PROXIES;
+
+		static JdbcWrappersMode getValue(String parameterValue) {
+			if (parameterValue == null) {
+				return AUTO;
+			}
+			return valueOf(parameterValue.trim().toUpperCase(Locale.ENGLISH));
+		}
+	}
+
 	/**
 	 * Handler de proxy d'un {@link Statement} jdbc.
 	 */
@@ -94,8 +228,11 @@ public final class JdbcWrapper {
 		private String requestName;
 		private final Statement statement;
 		private final Connection connection;
+		private final DataSourceStatistics dataSourceStatistics;
+		private Object[] bindValues;
 
-		StatementInvocationHandler(String query, Statement statement, Connection connection) {
+		StatementInvocationHandler(String query, Statement statement, Connection connection,
+				DataSourceStatistics dataSourceStatistics) {
 			super();
 			assert statement != null;
 			assert connection != null;
@@ -103,6 +240,7 @@ public final class JdbcWrapper {
 			this.requestName = query;
 			this.statement = statement;
 			this.connection = connection;
+			this.dataSourceStatistics = dataSourceStatistics;
 		}
 
 		/** {@inheritDoc} */
@@ -134,7 +272,13 @@ public final class JdbcWrapper {
 				// si on n'a pas trouvé la requête, on prend "null"
 				requestName = String.valueOf(requestName);
 
-				return doExecute(requestName, statement, method, args);
+				final Object result = doExecute(requestName, dataSourceStatistics, bindValues,
+						() -> method.invoke(statement, args));
+				if (result instanceof ResultSet) {
+					// executeQuery
+					return createResultSetProxy(requestName, (ResultSet) result, (Statement) proxy);
+				}
+				return result;
 			} else if ("addBatch".equals(methodName) && isFirstArgAString(args)) {
 				// Bien que déconseillée la méthode est addBatch(String),
 				// la requête sql est alors le premier argument
@@ -147,8 +291,19 @@ public final class JdbcWrapper {
 				// sont appelées (et pas executeBatch()) alors la requête conservée est
 				// faussement celle du batch mais l'application cloche grave.
 				requestName = (String) args[0];
+			} else if (isSlowestExecutionsEnabled() && isBindMethod(methodName, args)) {
+				// setString(int, String), setNull(int, int), setObject(int, Object, ...)...
+				// d'un PreparedStatement, pour les exécutions les plus lentes
+				bindValues = bind(bindValues, (Integer) args[0],
+						"setNull".equals(methodName) ? null : args[1]);
+			} else if ("clearParameters".equals(methodName)) {
+				bindValues = null;
 			} else if ("getConnection".equals(methodName) && (args == null || args.length == 0)) {
 				return connection;
+			} else if ("getResultSet".equals(methodName) && (args == null || args.length == 0)) {
+				// ResultSet après execute
+				return createResultSetProxy(String.valueOf(requestName),
+						(ResultSet) method.invoke(statement, args), (Statement) proxy);
 			}
 
 			// ce n'est pas une méthode executeXxx du Statement
@@ -158,6 +313,11 @@ public final class JdbcWrapper {
 		private boolean isFirstArgAString(Object[] args) {
 			return args != null && args.length > 0 && args[0] instanceof String;
 		}
+
+		private boolean isBindMethod(String methodName, Object[] args) {
+			return methodName.startsWith("set") && args != null && args.length >= 2
+					&& args[0] instanceof Integer && statement instanceof PreparedStatement;
+		}
 	}
 
 	/**
@@ -165,24 +325,21 @@ public final class JdbcWrapper {
 	 */
 	private class ConnectionInvocationHandler implements InvocationHandler {
 		private final Connection connection;
+		// null si la connexion ne vient pas d'une DataSource
+		private final DataSourceStatistics dataSourceStatistics;
+		private final TransactionTracker transactionTracker = new TransactionTracker(sqlCounter);
 		private boolean alreadyClosed;
 
-		ConnectionInvocationHandler(Connection connection) {
+		ConnectionInvocationHandler(Connection connection,
+				DataSourceStatistics dataSourceStatistics) {
 			super();
 			assert connection != null;
 			this.connection = connection;
+			this.dataSourceStatistics = dataSourceStatistics;
 		}
 
 		void init() {
-			// on limite la taille pour éviter une éventuelle saturation mémoire
-			if (isConnectionInformationsEnabled()
-					&& USED_CONNECTION_INFORMATIONS.size() < MAX_USED_CONNECTION_INFORMATIONS) {
-				USED_CONNECTION_INFORMATIONS.put(
-						ConnectionInformations.getUniqueIdOfConnection(connection),
-						new ConnectionInformations());
-			}
-			USED_CONNECTION_COUNT.incrementAndGet();
-			TRANSACTION_COUNT.incrementAndGet();
+			connectionCreated(connection, dataSourceStatistics);
 		}
 
 		/** {@inheritDoc} */
@@ -207,19 +364,35 @@ public final class JdbcWrapper {
 						requestName = null;
 					}
 					result = createStatementProxy(requestName, (Statement) result,
-							(Connection) proxy);
+							(Connection) proxy, dataSourceStatistics);
+					transactionTracker.statementCreated();
+				} else {
+					trackTransaction(methodName, args);
 				}
 				return result;
 			} finally {
 				if ("close".equals(methodName) && !alreadyClosed) {
-					USED_CONNECTION_COUNT.decrementAndGet();
-					USED_CONNECTION_INFORMATIONS
-							.remove(ConnectionInformations.getUniqueIdOfConnection(connection));
+					connectionClosed(connection, dataSourceStatistics);
+					transactionTracker.connectionClosed();
 					alreadyClosed = true;
 				}
 			}
 		}
 
+		private void trackTransaction(String methodName, Object[] args) {
+			// après l'appel réussi de la méthode
+			if (args == null || args.length == 0) {
+				if ("commit".equals(methodName)) {
+					transactionTracker.committed();
+				} else if ("rollback".equals(methodName)) {
+					// rollback(Savepoint) ne termine pas la transaction
+					transactionTracker.rolledBack();
+				}
+			} else if ("setAutoCommit".equals(methodName) && args.length == 1) {
+				transactionTracker.autoCommitChanged((Boolean) args[0]);
+			}
+		}
+
 		private boolean areConnectionsEquals(Object object) {
 			// Special case if what we're being passed is one of our proxies (specifically a connection proxy)
 			// This way the equals call is truely transparent for our proxies (cf issue 78)
@@ -233,6 +406,8 @@ public final class JdbcWrapper {
 						return connection.equals(c.connection);
 					}
 				}
+			} else if (object instanceof JdbcConnectionWrapper) {
+				return connection.equals(((JdbcConnectionWrapper) object).getWrappedConnection());
 			}
 			return connection.equals(object);
 		}
@@ -242,22 +417,43 @@ public final class JdbcWrapper {
 			extends AbstractInvocationHandler<Object> {
 		// classe sérialisable pour glassfish v2.1.1, issue 229: Exception in NamingManagerImpl copyMutableObject()
 		private static final long serialVersionUID = 1L;
+		private final String dataSourceName;
 
-		ConnectionManagerInvocationHandler(Object javaxConnectionManager) {
+		ConnectionManagerInvocationHandler(String dataSourceName, Object javaxConnectionManager) {
 			super(javaxConnectionManager);
+			assert dataSourceName != null;
+			this.dataSourceName = dataSourceName;
 		}
 
 		@Override
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-			final Object result = method.invoke(getProxiedObject(), args);
+			final Object result;
+			if ("allocateConnection".equals(method.getName())) {
+				result = invokeAndRecordConnectionWait(dataSourceName, method, getProxiedObject(),
+						args);
+			} else {
+				result = method.invoke(getProxiedObject(), args);
+			}
 			if (result instanceof Connection) {
-				return SINGLETON
-						.createConnectionProxyOrRewrapIfJBossOrGlassfish((Connection) result);
+				return SINGLETON.createConnectionProxyOrRewrapIfJBossOrGlassfish(
+						(Connection) result, DataSourceStatistics.getInstance(dataSourceName));
 			}
 			return result;
 		}
 	}
 
+	static Object invokeAndRecordConnectionWait(String dataSourceName, Method method,
+			Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+		// temps d'attente pour obtenir une connexion du pool, y compris en cas d'exception
+		// (par exemple si le pool est épuisé et que le timeout est atteint)
+		final long start = System.nanoTime();
+		try {
+			return method.invoke(target, args);
+		} finally {
+			ConnectionWaits.addWait(dataSourceName, System.nanoTime() - start);
+		}
+	}
+
 	private abstract static class AbstractInvocationHandler<T>
 			implements InvocationHandler, Serializable {
 		private static final long serialVersionUID = 1L;
@@ -313,6 +509,11 @@ public final class JdbcWrapper {
 		this.servletContext = null;
 		connectionInformationsEnabled = Parameters.isSystemActionsEnabled()
 				&& !Parameters.isNoDatabase();
+		connectionLeakThresholdMillis = getConnectionLeakThresholdMillisParameter();
+		jdbcWrappersMode = JdbcWrappersMode.getValue(Parameter.JDBC_WRAPPERS.getValue());
+		resultSetMonitoringEnabled = Parameter.RESULTSET_MONITORING_ENABLED.getValueAsBoolean();
+		slowestExecutionsCount = getSlowestExecutionsParameter();
+		bindValuesMasked = Parameter.SQL_BIND_VALUES_MASKED.getValueAsBoolean();
 	}
 
 	void initServletContext(ServletContext context) {
@@ -326,6 +527,11 @@ public final class JdbcWrapper {
 		weblogic = serverInfo.contains("WebLogic");
 		connectionInformationsEnabled = Parameters.isSystemActionsEnabled()
 				&& !Parameters.isNoDatabase();
+		connectionLeakThresholdMillis = getConnectionLeakThresholdMillisParameter();
+		jdbcWrappersMode = JdbcWrappersMode.getValue(Parameter.JDBC_WRAPPERS.getValue());
+		resultSetMonitoringEnabled = Parameter.RESULTSET_MONITORING_ENABLED.getValueAsBoolean();
+		slowestExecutionsCount = getSlowestExecutionsParameter();
+		bindValuesMasked = Parameter.SQL_BIND_VALUES_MASKED.getValueAsBoolean();
 	}
 
 	public static int getUsedConnectionCount() {
@@ -371,6 +577,163 @@ public final class JdbcWrapper {
 		return connectionInformationsEnabled;
 	}
 
+	static long getConnectionLeakThresholdMillisParameter() {
+		final String value = Parameter.CONNECTIONS_LEAK_THRESHOLD_SECONDS.getValue();
+		if (value == null) {
+			return 0;
+		}
+		final long seconds = Long.parseLong(value.trim());
+		if (seconds < 0) {
+			throw new IllegalStateException(
+					"The parameter " + Parameter.CONNECTIONS_LEAK_THRESHOLD_SECONDS.getCode()
+							+ " must be positive or zero");
+		}
+		return TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	boolean isConnectionLeakDetectionEnabled() {
+		return connectionLeakThresholdMillis > 0;
+	}
+
+	void setConnectionLeakThresholdMillis(long connectionLeakThresholdMillis) {
+		this.connectionLeakThresholdMillis = connectionLeakThresholdMillis;
+	}
+
+	/**
+	 * Recherche les connexions ouvertes depuis plus longtemps que le seuil de détection des fuites,
+	 * et capture la stack trace actuelle (bornée) du thread qui détient chacune d'elles.
+	 * Cette stack trace n'est pas celle de l'ouverture de la connexion, qui est conservée
+	 * dans {@link ConnectionInformations#getOpeningStackTrace()} si elle n'est pas désactivée.
+	 * Appelée périodiquement par une tâche de fond.
+	 * @return Nombre de nouvelles fuites suspectées
+	 */
+	int detectConnectionLeaks() {
+		if (!isConnectionLeakDetectionEnabled()) {
+			return 0;
+		}
+		final long now = System.currentTimeMillis();
+		int suspectedLeaks = 0;
+		for (final ConnectionInformations connectionInformations : USED_CONNECTION_INFORMATIONS
+				.values()) {
+			if (!connectionInformations.isSuspectedLeak() && connectionInformations
+					.getOpenedMillis(now) >= connectionLeakThresholdMillis) {
+				// StackWalker ne parcourt que le thread courant, donc on demande la stack trace
+				// du seul thread qui détient la connexion (null si ce thread n'existe plus)
+				final ThreadInfo threadInfo = THREAD_MX_BEAN.getThreadInfo(
+						connectionInformations.getThreadId(), LEAK_HOLDING_THREAD_STACK_DEPTH);
+				final StackTraceElement[] stackTrace = threadInfo != null
+						? threadInfo.getStackTrace()
+						: null;
+				connectionInformations.suspectLeak(stackTrace);
+				LOG.info("suspected jdbc connection leak: connection opened for "
+						+ connectionInformations.getOpenedMillis(now) + " ms by thread "
+						+ (threadInfo != null ? threadInfo.getThreadName()
+								: String.valueOf(connectionInformations.getThreadId())));
+				suspectedLeaks++;
+			}
+		}
+		return suspectedLeaks;
+	}
+
+	JdbcWrappersMode getJdbcWrappersMode() {
+		return jdbcWrappersMode;
+	}
+
+	void setJdbcWrappersMode(JdbcWrappersMode jdbcWrappersMode) {
+		assert jdbcWrappersMode != null;
+		this.jdbcWrappersMode = jdbcWrappersMode;
+	}
+
+	boolean isResultSetMonitoringEnabled() {
+		return resultSetMonitoringEnabled;
+	}
+
+	void setResultSetMonitoringEnabled(boolean resultSetMonitoringEnabled) {
+		this.resultSetMonitoringEnabled = resultSetMonitoringEnabled;
+	}
+
+	private static int getSlowestExecutionsParameter() {
+		final String value = Parameter.SQL_SLOWEST_EXECUTIONS.getValue();
+		if (value == null) {
+			return 0;
+		}
+		final int count = Integer.parseInt(value.trim());
+		if (count < 0) {
+			throw new IllegalStateException(
+					"The parameter " + Parameter.SQL_SLOWEST_EXECUTIONS.getCode()
+							+ " must be positive or zero");
+		}
+		return Math.min(count, MAX_SLOWEST_EXECUTIONS);
+	}
+
+	boolean isSlowestExecutionsEnabled() {
+		return slowestExecutionsCount > 0;
+	}
+
+	void setSlowestExecutionsCount(int slowestExecutionsCount) {
+		this.slowestExecutionsCount = slowestExecutionsCount;
+	}
+
+	void setBindValuesMasked(boolean bindValuesMasked) {
+		this.bindValuesMasked = bindValuesMasked;
+	}
+
+	/**
+	 * Conserve la valeur d'un paramètre d'un PreparedStatement.
+	 * @param bindValues Valeurs déjà conservées (index 1 à n), ou null
+	 * @param parameterIndex Index du paramètre à partir de 1
+	 * @param value Valeur du paramètre
+	 * @return Valeurs conservées, éventuellement agrandies
+	 */
+	static Object[] bind(Object[] bindValues, int parameterIndex, Object value) {
+		if (parameterIndex < 1 || parameterIndex > MAX_BIND_VALUES) {
+			return bindValues;
+		}
+		// la taille du tableau est le nombre de paramètres + 1, pour afficher les derniers null
+		Object[] result = bindValues;
+		if (result == null) {
+			result = new Object[parameterIndex + 1];
+		} else if (parameterIndex >= result.length) {
+			result = Arrays.copyOf(result, parameterIndex + 1);
+		}
+		result[parameterIndex] = value;
+		return result;
+	}
+
+	private boolean isWrapperClassUsed(Object jdbcObject) {
+		return jdbcWrappersMode == JdbcWrappersMode.CLASSES
+				|| jdbcWrappersMode == JdbcWrappersMode.AUTO
+						&& JdbcWrapperHelper.hasOnlyJdbcInterfaces(jdbcObject.getClass());
+	}
+
+	void connectionCreated(Connection connection, DataSourceStatistics dataSourceStatistics) {
+		// on limite la taille pour éviter une éventuelle saturation mémoire
+		if (isConnectionInformationsEnabled()
+				&& USED_CONNECTION_INFORMATIONS.size() < MAX_USED_CONNECTION_INFORMATIONS) {
+			// si la détection des fuites est active, pas de stack trace coûteuse à l'ouverture
+			final ConnectionInformations connectionInformations = isConnectionLeakDetectionEnabled()
+					? new ConnectionInformations(false)
+					: new ConnectionInformations();
+			USED_CONNECTION_INFORMATIONS.put(
+					ConnectionInformations.getUniqueIdOfConnection(connection),
+					connectionInformations);
+		}
+		USED_CONNECTION_COUNT.incrementAndGet();
+		TRANSACTION_COUNT.incrementAndGet();
+		if (dataSourceStatistics != null) {
+			dataSourceStatistics.connectionCreated();
+		}
+	}
+
+	void connectionClosed(Connection connection, DataSourceStatistics dataSourceStatistics) {
+		USED_CONNECTION_COUNT.decrementAndGet();
+		if (dataSourceStatistics != null) {
+			dataSourceStatistics.connectionClosed();
+		}
+		USED_CONNECTION_INFORMATIONS
+				.remove(ConnectionInformations.getUniqueIdOfConnection(connection));
+	}
+
 	public static int getMaxConnectionCount() {
 		return JdbcWrapperHelper.getMaxConnectionCount();
 	}
@@ -392,37 +755,55 @@ public final class JdbcWrapper {
 		JdbcWrapperHelper.registerSpringDataSource(name, dataSource);
 	}
 
-	Object doExecute(String requestName, Statement statement, Method method, Object[] args)
-			throws IllegalAccessException, InvocationTargetException {
+	<T, E extends Exception> T doExecute(String requestName,
+			DataSourceStatistics dataSourceStatistics, Object[] bindValues,
+			SqlExecution<T, E> execution) throws E {
 		assert requestName != null;
-		assert statement != null;
-		assert method != null;
+		assert execution != null;
 
 		// on ignore les requêtes explain exécutées par DatabaseInformations
 		if (!sqlCounter.isDisplayed() || requestName.startsWith("explain ")) {
 			ACTIVE_CONNECTION_COUNT.incrementAndGet();
+			if (dataSourceStatistics != null) {
+				dataSourceStatistics.sqlExecutionStarted();
+			}
 			try {
-				return method.invoke(statement, args);
+				return execution.execute();
 			} finally {
 				ACTIVE_CONNECTION_COUNT.decrementAndGet();
+				if (dataSourceStatistics != null) {
+					dataSourceStatistics.sqlExecutionFinished(-1, false);
+				}
 			}
 		}
 
+		// si self-monitoring, surcoût en nanosecondes = durée totale - durée de l'exécution
+		final boolean selfMonitoring = MonitoringOverhead.isEnabled();
+		final long startNanos = selfMonitoring ? System.nanoTime() : 0;
+		long invokeStartNanos = 0;
 		final long start = System.currentTimeMillis();
 		boolean systemError = true;
 		try {
 			ACTIVE_CONNECTION_COUNT.incrementAndGet();
+			if (dataSourceStatistics != null) {
+				dataSourceStatistics.sqlExecutionStarted();
+			}
 
 			// note perf: selon un paramètre current-sql(/requests)-disabled,
 			// on pourrait ici ne pas binder un nouveau contexte à chaque requête sql
 			sqlCounter.bindContext(requestName, requestName, null, -1, -1);
 
-			final Object result = method.invoke(statement, args);
+			if (selfMonitoring) {
+				invokeStartNanos = System.nanoTime();
+			}
+			final T result = execution.execute();
 			systemError = false;
 			return result;
-		} catch (final InvocationTargetException e) {
-			if (e.getCause() instanceof SQLException) {
-				final int errorCode = ((SQLException) e.getCause()).getErrorCode();
+		} catch (final Exception e) {
+			// InvocationTargetException si proxy, SQLException si classe de wrapper
+			final Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+			if (cause instanceof SQLException) {
+				final int errorCode = ((SQLException) cause).getErrorCode();
 				if (errorCode >= 20000 && errorCode < 30000) {
 					// Dans Oracle par exemple, les erreurs 20000 à 30000 sont standardisées
 					// comme étant des erreurs lancées par l'application dans des procédures stockées
@@ -438,9 +819,23 @@ public final class JdbcWrapper {
 			// la méthode close du statement peut ne jamais être appelée
 			// (par exemple, seule la méthode close de la connection peut être appelée ce qui ferme aussi le statement)
 			// Rq : pas de temps cpu pour les requêtes sql car c'est 0 ou quasiment 0
+			final long invokeNanos = invokeStartNanos != 0 ? System.nanoTime() - invokeStartNanos
+					: 0;
 			ACTIVE_CONNECTION_COUNT.decrementAndGet();
 			final long duration = Math.max(System.currentTimeMillis() - start, 0);
-			sqlCounter.addRequest(requestName, duration, -1, -1, systemError, -1);
+			if (slowestExecutionsCount > 0) {
+				sqlCounter.addRequestWithSlowExecution(requestName, start, duration, systemError,
+						slowestExecutionsCount, bindValues, bindValuesMasked);
+			} else {
+				sqlCounter.addRequest(requestName, duration, -1, -1, systemError, -1);
+			}
+			if (dataSourceStatistics != null) {
+				dataSourceStatistics.sqlExecutionFinished(duration, systemError);
+			}
+			if (selfMonitoring) {
+				MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.SQL,
+						System.nanoTime() - startNanos - invokeNanos);
+			}
 		}
 	}
 
@@ -509,7 +904,8 @@ public final class JdbcWrapper {
 			// deux un attribut de nom "cm" et de type javax.resource.spi.ConnectionManager
 			// dont on veut faire un proxy.
 			Object javaxConnectionManager = JdbcWrapperHelper.getFieldValue(dataSource, "cm");
-			javaxConnectionManager = createJavaxConnectionManagerProxy(javaxConnectionManager);
+			javaxConnectionManager = createJavaxConnectionManagerProxy(jndiName,
+					javaxConnectionManager);
 			JdbcWrapperHelper.setFieldValue(dataSource, "cm", javaxConnectionManager);
 			LOG.debug(dataSourceRewrappedMessage);
 		} else if (isWildfly9DataSource(dataSourceClassName)) {
@@ -732,14 +1128,20 @@ public final class JdbcWrapper {
 	}
 
 	// pour jboss ou glassfish
-	private Object createJavaxConnectionManagerProxy(Object javaxConnectionManager) {
+	private Object createJavaxConnectionManagerProxy(String jndiName,
+			Object javaxConnectionManager) {
 		assert javaxConnectionManager != null;
 		final InvocationHandler invocationHandler = new ConnectionManagerInvocationHandler(
-				javaxConnectionManager);
+				jndiName, javaxConnectionManager);
 		return createProxy(javaxConnectionManager, invocationHandler);
 	}
 
 	void rewrapConnection(Connection connection) throws IllegalAccessException {
+		rewrapConnection(connection, null);
+	}
+
+	private void rewrapConnection(Connection connection, DataSourceStatistics dataSourceStatistics)
+			throws IllegalAccessException {
 		assert connection != null;
 		if (jboss && connection.getClass().getSimpleName().startsWith("WrappedConnection")) {
 			// pour jboss,
@@ -752,7 +1154,7 @@ public final class JdbcWrapper {
 					.getFieldValue(baseWrapperManagedConnection, conFieldName);
 			// on teste isProxyAlready ici pour raison de perf
 			if (!isProxyAlready(con)) {
-				con = createConnectionProxy(con);
+				con = createConnectionProxy(con, dataSourceStatistics);
 				JdbcWrapperHelper.setFieldValue(baseWrapperManagedConnection, conFieldName, con);
 			}
 		} else if (glassfish && ("com.sun.gjc.spi.jdbc40.ConnectionHolder40"
@@ -769,7 +1171,7 @@ public final class JdbcWrapper {
 			Connection con = (Connection) JdbcWrapperHelper.getFieldValue(connection, conFieldName);
 			// on teste isProxyAlready ici pour raison de perf
 			if (!isProxyAlready(con)) {
-				con = createConnectionProxy(con);
+				con = createConnectionProxy(con, dataSourceStatistics);
 				JdbcWrapperHelper.setFieldValue(connection, conFieldName, con);
 			}
 		}
@@ -793,15 +1195,25 @@ public final class JdbcWrapper {
 	public DataSource createDataSourceProxy(String name, final DataSource dataSource) {
 		assert dataSource != null;
 		JdbcWrapperHelper.pullDataSourceProperties(name, dataSource);
+		// nom pour les temps d'attente de connexions et les statistiques par DataSource,
+		// même si la DataSource n'a pas de nom connu
+		final String dataSourceName = name != null ? name : dataSource.getClass().getSimpleName();
 		final InvocationHandler invocationHandler = new AbstractInvocationHandler<>(dataSource) {
 			private static final long serialVersionUID = 1L;
 
 			/** {@inheritDoc} */
 			@Override
 			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-				Object result = method.invoke(dataSource, args);
+				Object result;
+				if ("getConnection".equals(method.getName())) {
+					result = invokeAndRecordConnectionWait(dataSourceName, method, dataSource,
+							args);
+				} else {
+					result = method.invoke(dataSource, args);
+				}
 				if (result instanceof Connection) {
-					result = createConnectionProxy((Connection) result);
+					result = createConnectionProxy((Connection) result,
+							DataSourceStatistics.getInstance(dataSourceName));
 				}
 				return result;
 			}
@@ -811,11 +1223,16 @@ public final class JdbcWrapper {
 
 	Connection createConnectionProxyOrRewrapIfJBossOrGlassfish(Connection connection)
 			throws IllegalAccessException {
+		return createConnectionProxyOrRewrapIfJBossOrGlassfish(connection, null);
+	}
+
+	private Connection createConnectionProxyOrRewrapIfJBossOrGlassfish(Connection connection,
+			DataSourceStatistics dataSourceStatistics) throws IllegalAccessException {
 		if (jboss || glassfish) {
-			rewrapConnection(connection);
+			rewrapConnection(connection, dataSourceStatistics);
 			return connection;
 		}
-		return createConnectionProxy(connection);
+		return createConnectionProxy(connection, dataSourceStatistics);
 	}
 
 	/**
@@ -824,14 +1241,28 @@ public final class JdbcWrapper {
 	 * @return Connection
 	 */
 	public Connection createConnectionProxy(Connection connection) {
+		return createConnectionProxy(connection, null);
+	}
+
+	private Connection createConnectionProxy(Connection connection,
+			DataSourceStatistics dataSourceStatistics) {
 		assert connection != null;
 		// même si le counter sql n'est pas affiché on crée un proxy de la connexion
 		// pour avoir les graphiques USED_CONNECTION_COUNT et ACTIVE_CONNECTION_COUNT (cf issue 160)
 		if (isMonitoringDisabled()) {
 			return connection;
 		}
+		if (isProxyAlready(connection)) {
+			return connection;
+		}
+		if (isWrapperClassUsed(connection)) {
+			// classe de wrapper générée plutôt qu'un proxy, pour éviter la réflexion
+			// à chaque appel de méthode
+			connectionCreated(connection, dataSourceStatistics);
+			return new JdbcConnectionWrapper(this, connection, dataSourceStatistics);
+		}
 		final ConnectionInvocationHandler invocationHandler = new ConnectionInvocationHandler(
-				connection);
+				connection, dataSourceStatistics);
 		final Connection result = createProxy(connection, invocationHandler);
 		if (result != connection) {
 			invocationHandler.init();
@@ -849,7 +1280,8 @@ public final class JdbcWrapper {
 		return Parameter.DISABLED.getValueAsBoolean();
 	}
 
-	Statement createStatementProxy(String query, Statement statement, Connection connection) {
+	<T extends Statement> T createStatementProxy(String query, T statement, Connection connection,
+			DataSourceStatistics dataSourceStatistics) {
 		assert statement != null;
 		// Si un proxy de connexion a été créé dans un driver jdbc et que par la suite le
 		// servletContext a un paramètre désactivant le monitoring, alors ce n'est pas grave
@@ -859,11 +1291,64 @@ public final class JdbcWrapper {
 		// Rq : on ne réévalue pas le paramètre ici pour raison de performances sur la recherche
 		// dans les paramètres du système, du contexte et du filtre alors que dans 99.999999999%
 		// des exécutions il n'y a pas le paramètre.
+		if (isProxyAlready(statement)) {
+			return statement;
+		}
+		if (isWrapperClassUsed(statement)) {
+			return createStatementWrapper(query, statement, connection, dataSourceStatistics);
+		}
 		final InvocationHandler invocationHandler = new StatementInvocationHandler(query, statement,
-				connection);
+				connection, dataSourceStatistics);
 		return createProxy(statement, invocationHandler);
 	}
 
+	@SuppressWarnings("unchecked")
+	private <T extends Statement> T createStatementWrapper(String query, T statement,
+			Connection connection, DataSourceStatistics dataSourceStatistics) {
+		final Statement result;
+		if (statement instanceof CallableStatement) {
+			result = new JdbcCallableStatementWrapper(this, query, (CallableStatement) statement,
+					connection, dataSourceStatistics);
+		} else if (statement instanceof PreparedStatement) {
+			result = new JdbcPreparedStatementWrapper(this, query, (PreparedStatement) statement,
+					connection, dataSourceStatistics);
+		} else {
+			result = new JdbcStatementWrapper(this, query, statement, connection,
+					dataSourceStatistics);
+		}
+		return (T) result;
+	}
+
+	/**
+	 * Crée le proxy ou le wrapper d'un ResultSet,
+	 * pour compter les lignes lues et le temps de lecture.
+	 * @param requestName Nom de la requête sql
+	 * @param resultSet ResultSet
+	 * @param statement Statement (proxy ou wrapper) qui a produit le ResultSet,
+	 * retourné par getStatement() du ResultSet
+	 * @return ResultSet
+	 */
+	ResultSet createResultSetProxy(String requestName, ResultSet resultSet, Statement statement) {
+		assert requestName != null;
+		// on ignore les requêtes explain exécutées par DatabaseInformations
+		if (!resultSetMonitoringEnabled || resultSet == null || !sqlCounter.isDisplayed()
+				|| requestName.startsWith("explain ")) {
+			return resultSet;
+		}
+		// le nom agrégé est résolu une seule fois par ResultSet,
+		// et non lors du report de la lecture
+		final String aggregateRequestName = sqlCounter.getAggregateRequestName(requestName);
+		if (isWrapperClassUsed(resultSet)) {
+			return new JdbcResultSetWrapper(this, aggregateRequestName, resultSet, statement);
+		}
+		return createProxy(resultSet,
+				new ResultSetInvocationHandler(aggregateRequestName, resultSet, statement));
+	}
+
+	void resultSetFetched(String aggregateRequestName, long rows, long fetchNanos) {
+		sqlCounter.addFetchHit(aggregateRequestName, rows, fetchNanos);
+	}
+
 	static boolean isEqualsMethod(Object methodName, Object[] args) {
 		// == for perf (strings interned: == is ok)
 		return "equals" == methodName && args != null && args.length == 1; // NOPMD
@@ -891,8 +1376,17 @@ public final class JdbcWrapper {
 	}
 
 	static boolean isProxyAlready(Object object) {
-		return Proxy.isProxyClass(object.getClass()) && Proxy.getInvocationHandler(object)
-				.getClass().getName().equals(DelegatingInvocationHandler.class.getName());
+		final Class<?> objectClass = object.getClass();
+		if (!Proxy.isProxyClass(objectClass)) {
+			// classes de wrapper générées, comparées par nom pour la même raison que ci-dessous
+			final String className = objectClass.getName();
+			return className.equals(JdbcConnectionWrapper.class.getName())
+					|| className.equals(JdbcStatementWrapper.class.getName())
+					|| className.equals(JdbcPreparedStatementWrapper.class.getName())
+					|| className.equals(JdbcCallableStatementWrapper.class.getName());
+		}
+		return Proxy.getInvocationHandler(object).getClass().getName()
+				.equals(DelegatingInvocationHandler.class.getName());
 		// utilisation de Proxy.getInvocationHandler(object).getClass().getName().equals(DelegatingInvocationHandler.class.getName())
 		// et non de Proxy.getInvocationHandler(object) instanceof DelegatingInvocationHandler
 		// pour issue 97 (classLoaders différents pour les classes DelegatingInvocationHandler)
@@ -21,6 +21,12 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Wrapper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
@@ -55,6 +61,13 @@ final class JdbcWrapperHelper {
 	private static final Map<Class<?>, Constructor<?>> PROXY_CACHE = Collections
 			.synchronizedMap(new WeakHashMap<>());
 
+	private static final Map<Class<?>, Boolean> ONLY_JDBC_INTERFACES_CACHE = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	private static final List<Class<?>> JDBC_INTERFACES = List.of(Connection.class,
+			Statement.class, PreparedStatement.class, CallableStatement.class, ResultSet.class,
+			Wrapper.class, AutoCloseable.class);
+
 	/**
 	 * Propriétés des BasicDataSources si elles viennent de Tomcat-DBCP ou de DBCP seul.
 	 * @author Emeric Vernat
@@ -462,6 +475,24 @@ final class JdbcWrapperHelper {
 
 	static void clearProxyCache() {
 		PROXY_CACHE.clear();
+		ONLY_JDBC_INTERFACES_CACHE.clear();
+	}
+
+	/**
+	 * Indique si la classe n'implémente que des interfaces standards de java.sql.
+	 * Si ce n'est pas le cas (interface spécifique d'un driver ou d'un pool comme OracleConnection),
+	 * une classe de wrapper perdrait ces interfaces et un proxy est préférable.
+	 * @param objectClass Class
+	 * @return boolean
+	 */
+	static boolean hasOnlyJdbcInterfaces(Class<?> objectClass) {
+		Boolean result = ONLY_JDBC_INTERFACES_CACHE.get(objectClass);
+		if (result == null) {
+			result = JDBC_INTERFACES
+					.containsAll(List.of(getObjectInterfaces(objectClass, null)));
+			ONLY_JDBC_INTERFACES_CACHE.put(objectClass, result);
+		}
+		return result;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.CounterRequestContext;
+
+/**
+ * Propagation du contexte de la requête courante (http, spring...) aux tâches exécutées
+ * sur d'autres threads : executor, CompletableFuture, threads virtuels.
+ * Le contexte est capturé à la soumission de la tâche, puis un contexte dérivé est lié
+ * au thread de la tâche : les requêtes sql et les appels de services de la tâche sont alors
+ * comptés comme requêtes filles de la requête parente, dans ses statistiques et son drill-down.
+ * Il s'utilise comme ceci :
+ * 		{@code executorService = MonitoringContextPropagation.wrapExecutorService(executorService);}
+ * ou
+ * 		{@code CompletableFuture.supplyAsync(MonitoringContextPropagation.wrapSupplier(supplier), executor);}
+ * <p>
+ * Les threads virtuels n'ont pas de traitement particulier : il suffit d'envelopper leur executor
+ * ({@code wrapExecutorService(Executors.newVirtualThreadPerTaskExecutor())})
+ * ou leur tâche ({@code Thread.ofVirtual().start(wrapRunnable(runnable))}).
+ * <p>
+ * Limite : les requêtes filles d'une tâche sont reportées dans la requête parente à la fin de la
+ * tâche. Si la tâche se termine après que la requête parente a été enregistrée (tâche non attendue
+ * par la requête http par exemple), ses requêtes sql restent comptées dans le counter sql
+ * mais ne sont pas rattachées à la requête parente (ni hits sql, ni drill-down).
+ * @author Emeric Vernat
+ */
+public final class MonitoringContextPropagation {
+	// tous les counters partagent le ThreadLocal des contextes du counter sql
+	private static final Counter SQL_COUNTER = JdbcWrapper.SINGLETON.getSqlCounter();
+
+	/**
+	 * ExecutorService propageant le contexte de la requête courante aux tâches soumises.
+	 */
+	private static final class ContextPropagatingExecutorService implements ExecutorService {
+		private final ExecutorService executorService;
+
+		ContextPropagatingExecutorService(ExecutorService executorService) {
+			super();
+			this.executorService = executorService;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			executorService.execute(wrapRunnable(command));
+		}
+
+		@Override
+		public <T> Future<T> submit(Callable<T> task) {
+			return executorService.submit(wrapCallable(task));
+		}
+
+		@Override
+		public <T> Future<T> submit(Runnable task, T result) {
+			return executorService.submit(wrapRunnable(task), result);
+		}
+
+		@Override
+		public Future<?> submit(Runnable task) {
+			return executorService.submit(wrapRunnable(task));
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
+				throws InterruptedException {
+			return executorService.invokeAll(wrapCallables(tasks));
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks,
+				long timeout, TimeUnit unit) throws InterruptedException {
+			return executorService.invokeAll(wrapCallables(tasks), timeout, unit);
+		}
+
+		@Override
+		public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+				throws InterruptedException, ExecutionException {
+			return executorService.invokeAny(wrapCallables(tasks));
+		}
+
+		@Override
+		public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout,
+				TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return executorService.invokeAny(wrapCallables(tasks), timeout, unit);
+		}
+
+		@Override
+		public void shutdown() {
+			executorService.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executorService.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executorService.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executorService.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit)
+				throws InterruptedException {
+			return executorService.awaitTermination(timeout, unit);
+		}
+
+		private static <T> List<Callable<T>> wrapCallables(
+				Collection<? extends Callable<T>> tasks) {
+			final List<Callable<T>> result = new ArrayList<>(tasks.size());
+			for (final Callable<T> task : tasks) {
+				result.add(wrapCallable(task));
+			}
+			return result;
+		}
+	}
+
+	private MonitoringContextPropagation() {
+		super();
+	}
+
+	/**
+	 * @param executor Executor
+	 * @return Executor propageant le contexte de la requête courante aux tâches exécutées
+	 */
+	public static Executor wrapExecutor(Executor executor) {
+		assert executor != null;
+		if (executor instanceof ExecutorService) {
+			return wrapExecutorService((ExecutorService) executor);
+		}
+		return command -> executor.execute(wrapRunnable(command));
+	}
+
+	/**
+	 * @param executorService ExecutorService
+	 * @return ExecutorService propageant le contexte de la requête courante aux tâches soumises
+	 */
+	public static ExecutorService wrapExecutorService(ExecutorService executorService) {
+		assert executorService != null;
+		if (executorService instanceof ContextPropagatingExecutorService) {
+			return executorService;
+		}
+		return new ContextPropagatingExecutorService(executorService);
+	}
+
+	/**
+	 * @param runnable Runnable
+	 * @return Runnable exécuté avec le contexte de la requête courante,
+	 * ou runnable s'il n'y a pas de requête courante
+	 */
+	public static Runnable wrapRunnable(Runnable runnable) {
+		assert runnable != null;
+		final CounterRequestContext context = captureContext();
+		if (context == null) {
+			return runnable;
+		}
+		return () -> {
+			final CounterRequestContext previousContext = SQL_COUNTER.getBoundContext();
+			final CounterRequestContext forkedContext = bindForkedContext(context);
+			try {
+				runnable.run();
+			} finally {
+				unbindForkedContext(forkedContext, previousContext);
+			}
+		};
+	}
+
+	/**
+	 * @param callable Callable
+	 * @param <V> Type du résultat
+	 * @return Callable exécuté avec le contexte de la requête courante,
+	 * ou callable s'il n'y a pas de requête courante
+	 */
+	public static <V> Callable<V> wrapCallable(Callable<V> callable) {
+		assert callable != null;
+		final CounterRequestContext context = captureContext();
+		if (context == null) {
+			return callable;
+		}
+		return () -> {
+			final CounterRequestContext previousContext = SQL_COUNTER.getBoundContext();
+			final CounterRequestContext forkedContext = bindForkedContext(context);
+			try {
+				return callable.call();
+			} finally {
+				unbindForkedContext(forkedContext, previousContext);
+			}
+		};
+	}
+
+	/**
+	 * @param supplier Supplier, par exemple pour CompletableFuture.supplyAsync
+	 * @param <T> Type du résultat
+	 * @return Supplier exécuté avec le contexte de la requête courante,
+	 * ou supplier s'il n'y a pas de requête courante
+	 */
+	public static <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+		assert supplier != null;
+		final CounterRequestContext context = captureContext();
+		if (context == null) {
+			return supplier;
+		}
+		return () -> {
+			final CounterRequestContext previousContext = SQL_COUNTER.getBoundContext();
+			final CounterRequestContext forkedContext = bindForkedContext(context);
+			try {
+				return supplier.get();
+			} finally {
+				unbindForkedContext(forkedContext, previousContext);
+			}
+		};
+	}
+
+	private static CounterRequestContext captureContext() {
+		final CounterRequestContext context = SQL_COUNTER.getBoundContext();
+		if (context == null) {
+			return null;
+		}
+		return context.prepareForkedContexts();
+	}
+
+	private static CounterRequestContext bindForkedContext(CounterRequestContext context) {
+		final CounterRequestContext forkedContext = context.createForkedContext();
+		SQL_COUNTER.rebindContext(forkedContext);
+		return forkedContext;
+	}
+
+	private static void unbindForkedContext(CounterRequestContext forkedContext,
+			CounterRequestContext previousContext) {
+		try {
+			forkedContext.closeForkedContext();
+		} finally {
+			// si la tâche est exécutée par le thread qui l'a soumise, son contexte est restauré
+			SQL_COUNTER.rebindContext(previousContext);
+		}
+	}
+}
@@ -26,14 +26,18 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
@@ -41,11 +45,13 @@ import net.bull.javamelody.internal.common.HttpParameter;
 import net.bull.javamelody.internal.common.HttpPart;
 import net.bull.javamelody.internal.common.LOG;
 import net.bull.javamelody.internal.common.Parameters;
+import net.bull.javamelody.internal.common.UrlPathMatcher;
 import net.bull.javamelody.internal.model.Collector;
 import net.bull.javamelody.internal.model.Counter;
 import net.bull.javamelody.internal.model.CounterError;
 import net.bull.javamelody.internal.model.CounterRequestContext;
 import net.bull.javamelody.internal.model.LabradorRetriever;
+import net.bull.javamelody.internal.model.MonitoringOverhead;
 import net.bull.javamelody.internal.model.ThreadInformations;
 import net.bull.javamelody.internal.web.CounterServletResponseWrapper;
 import net.bull.javamelody.internal.web.HttpAuth;
@@ -65,6 +71,10 @@ public class MonitoringFilter implements Filter {
 
 	private static URL unregisterApplicationNodeInCollectServerUrl;
 
+	private static final String ASYNC_LISTENER_KEY = "javamelody.asyncListener";
+
+	private static final String ASYNC_TIMEOUT = "AsyncTimeout";
+
 	private boolean instanceEnabled;
 
 	// "Classic" by default
@@ -80,11 +90,111 @@ public class MonitoringFilter implements Filter {
 	private boolean logEnabled;
 	private boolean rumEnabled;
 	private Pattern urlExcludePattern;
+	private UrlPathMatcher urlExcludePaths;
+	private int payloadSniffingBytes = PayloadNameRequestWrapper.DEFAULT_SNIFFING_BYTES;
 	private FilterContext filterContext;
 	private HttpAuth httpAuth;
 	private FilterConfig filterConfig;
 	private String monitoringUrl;
 
+	/**
+	 * Listener d'une requête http asynchrone (servlet asynchrone, DeferredResult ou Callable de Spring,
+	 * long-polling), pour compter la requête à sa fin réelle avec les éventuels timeout ou erreur,
+	 * et non quand le thread du conteneur est libéré.
+	 */
+	private final class AsyncRequestListener implements AsyncListener {
+		private final HttpServletRequest httpRequest;
+		private final CounterServletResponseWrapper wrappedResponse;
+		private final String requestName;
+		private final long start;
+		private final int cpuUsedMillis;
+		private final int allocatedKBytes;
+		private final CounterRequestContext context;
+		private final AtomicBoolean completed = new AtomicBoolean();
+		private volatile Throwable systemException;
+		private volatile boolean timeout;
+
+		// CHECKSTYLE:OFF
+		AsyncRequestListener(HttpServletRequest httpRequest,
+				CounterServletResponseWrapper wrappedResponse, String requestName, long start,
+				int cpuUsedMillis, int allocatedKBytes, CounterRequestContext context) {
+			// CHECKSTYLE:ON
+			super();
+			this.httpRequest = httpRequest;
+			this.wrappedResponse = wrappedResponse;
+			this.requestName = requestName;
+			this.start = start;
+			this.cpuUsedMillis = cpuUsedMillis;
+			this.allocatedKBytes = allocatedKBytes;
+			this.context = context;
+		}
+
+		void doAsyncDispatch(FilterChain chain, ServletRequest request, ServletResponse response)
+				throws IOException, ServletException {
+			// le contexte de la requête est lié à ce thread pour que les requêtes sql
+			// soient attribuées à la requête http
+			final CounterRequestContext previousContext = httpCounter.getBoundContext();
+			httpCounter.rebindContext(context);
+			CounterError.bindRequest(httpRequest);
+			try {
+				if (response == wrappedResponse || response instanceof ServletResponseWrapper
+						&& ((ServletResponseWrapper) response).isWrapperFor(wrappedResponse)) {
+					chain.doFilter(request, response);
+				} else {
+					// startAsync() sans paramètre : le conteneur dispatche la réponse d'origine,
+					// qui est à nouveau wrappée pour compter le status et la taille de la réponse
+					chain.doFilter(request, wrappedResponse);
+					if (!request.isAsyncStarted()) {
+						wrappedResponse.flushStream();
+					}
+				}
+			} catch (final Throwable t) { // NOPMD
+				systemException = t;
+				throwException(t);
+			} finally {
+				httpCounter.rebindContext(previousContext);
+				CounterError.unbindRequest();
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			if (!completed.compareAndSet(false, true) || httpCounter == null) {
+				return;
+			}
+			final long duration = Math.max(System.currentTimeMillis() - start, 0);
+			// le contexte est lié au thread qui termine la requête pour compter les requêtes sql
+			final CounterRequestContext previousContext = httpCounter.getBoundContext();
+			httpCounter.rebindContext(context);
+			try {
+				addRequest(httpRequest, wrappedResponse, requestName, duration, cpuUsedMillis,
+						allocatedKBytes, systemException, timeout);
+			} finally {
+				httpCounter.rebindContext(previousContext);
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			// onComplete sera appelé ensuite par le conteneur
+			timeout = true;
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			// onComplete sera appelé ensuite par le conteneur
+			if (systemException == null) {
+				systemException = event.getThrowable();
+			}
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// un nouveau startAsync enlève les listeners, donc on s'enregistre à nouveau
+			event.getAsyncContext().addListener(this);
+		}
+	}
+
 	/**
 	 * Constructeur.
 	 */
@@ -156,6 +266,11 @@ public class MonitoringFilter implements Filter {
 			// lance une PatternSyntaxException si la syntaxe du pattern est invalide
 			urlExcludePattern = Pattern.compile(Parameter.URL_EXCLUDE_PATTERN.getValue());
 		}
+		if (Parameter.URL_EXCLUDE_PATHS.getValue() != null) {
+			urlExcludePaths = new UrlPathMatcher(Parameter.URL_EXCLUDE_PATHS.getValue());
+		}
+		// lance une IllegalStateException si la valeur est invalide
+		payloadSniffingBytes = PayloadNameRequestWrapper.getSniffingBytesParameter();
 
 		final long duration = System.currentTimeMillis() - start;
 		LOG.debug("JavaMelody filter init done in " + duration + " ms");
@@ -180,6 +295,7 @@ public class MonitoringFilter implements Filter {
 			httpCounter = null;
 			errorCounter = null;
 			urlExcludePattern = null;
+			urlExcludePaths = null;
 			filterConfig = null;
 			filterContext = null;
 		}
@@ -215,6 +331,18 @@ public class MonitoringFilter implements Filter {
 
 	private void doFilter(FilterChain chain, HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse) throws IOException, ServletException {
+		final Object asyncListener = httpRequest.getAttribute(ASYNC_LISTENER_KEY);
+		if (asyncListener instanceof AsyncRequestListener) {
+			// dispatch asynchrone d'une requête déjà commencée :
+			// elle sera comptée à sa fin par le listener
+			((AsyncRequestListener) asyncListener).doAsyncDispatch(chain, httpRequest,
+					httpResponse);
+			return;
+		}
+		// si self-monitoring, surcoût en nanosecondes = durée totale - durée de la chaîne de filtres
+		final boolean selfMonitoring = MonitoringOverhead.isEnabled();
+		final long startNanos = selfMonitoring ? System.nanoTime() : 0;
+		long chainStartNanos = 0;
 		final long start = System.currentTimeMillis();
 		final long startCpuTime = ThreadInformations.getCurrentThreadCpuTime();
 		final long startAllocatedBytes = ThreadInformations.getCurrentThreadAllocatedBytes();
@@ -222,9 +350,8 @@ public class MonitoringFilter implements Filter {
 				httpResponse);
 		final HttpServletRequest wrappedRequest = createRequestWrapper(httpRequest,
 				wrappedResponse);
-		boolean systemError = false;
 		Throwable systemException = null;
-		String requestName = getRequestName(wrappedRequest);
+		final String requestName = getRequestName(wrappedRequest);
 		final String completeRequestName = getCompleteRequestName(wrappedRequest, true);
 		try {
 			JdbcWrapper.ACTIVE_THREAD_COUNT.incrementAndGet();
@@ -234,6 +361,9 @@ public class MonitoringFilter implements Filter {
 			// on binde la requête http (utilisateur courant et requête complète) pour les derniers logs d'erreurs
 			httpRequest.setAttribute(CounterError.REQUEST_KEY, completeRequestName);
 			CounterError.bindRequest(httpRequest);
+			if (selfMonitoring) {
+				chainStartNanos = System.nanoTime();
+			}
 			chain.doFilter(wrappedRequest, wrappedResponse);
 			if (!httpRequest.isAsyncStarted()) {
 				wrappedResponse.flushStream();
@@ -243,6 +373,8 @@ public class MonitoringFilter implements Filter {
 			systemException = t;
 			throwException(t);
 		} finally {
+			final long chainNanos = chainStartNanos != 0 ? System.nanoTime() - chainStartNanos
+					: 0;
 			if (httpCounter == null) {
 				// "the destroy method is only called once all threads within the filter's doFilter method have exited
 				// or after a timeout period has passed"
@@ -270,38 +402,15 @@ public class MonitoringFilter implements Filter {
 				}
 				JdbcWrapper.ACTIVE_THREAD_COUNT.decrementAndGet();
 				putUserInfoInSession(httpRequest);
-				if (systemException != null) {
-					systemError = true;
-					final StringWriter stackTrace = new StringWriter(200);
-					systemException.printStackTrace(new PrintWriter(stackTrace));
-					errorCounter.addRequestForSystemError(systemException.toString(), duration,
-							cpuUsedMillis, allocatedKBytes, stackTrace.toString());
-				} else if (wrappedResponse.getCurrentStatus() >= HttpServletResponse.SC_BAD_REQUEST
-						&& wrappedResponse
-								.getCurrentStatus() != HttpServletResponse.SC_UNAUTHORIZED) {
-					// SC_UNAUTHORIZED (401) is not an error, it is the first handshake of a Basic (or Digest) Auth (issue 455)
-					systemError = true;
-					errorCounter.addRequestForSystemError(
-							"Error" + wrappedResponse.getCurrentStatus(), duration, cpuUsedMillis,
-							allocatedKBytes, null);
-				}
-				// prise en compte de Spring bestMatchingPattern s'il y a
-				requestName = CounterRequestContext.getHttpRequestName(httpRequest, requestName);
-				// taille du flux sortant
-				final long responseSize = wrappedResponse.getDataLength();
-				// nom identifiant la requête
-				if (wrappedResponse.getCurrentStatus() == HttpServletResponse.SC_NOT_FOUND) {
-					// Sécurité : si status http est 404, alors requestName est Error404
-					// pour éviter de saturer la mémoire avec potentiellement beaucoup d'url différentes
-					requestName = "Error404";
+				if (systemException == null && httpRequest.isAsyncStarted()) {
+					// requête asynchrone : elle sera comptée par le listener à sa fin réelle,
+					// et non quand le thread du conteneur est libéré
+					startAsyncListener(httpRequest, wrappedResponse, requestName, start,
+							cpuUsedMillis, allocatedKBytes);
+				} else {
+					addRequest(httpRequest, wrappedResponse, requestName, duration,
+							cpuUsedMillis, allocatedKBytes, systemException, false);
 				}
-
-				// on enregistre la requête dans les statistiques
-				httpCounter.addRequest(requestName, duration, cpuUsedMillis, allocatedKBytes,
-						systemError, responseSize);
-				// on log sur Log4J ou java.util.logging dans la catégorie correspond au nom du filtre dans web.xml
-				log(httpRequest, requestName, duration, systemError,
-						wrappedResponse.getCurrentStatus(), responseSize);
 			} finally {
 				// normalement le unbind du contexte a été fait dans httpCounter.addRequest
 				// mais pour être sûr au cas où il y ait une exception comme OutOfMemoryError
@@ -310,10 +419,71 @@ public class MonitoringFilter implements Filter {
 				httpCounter.unbindContext();
 				// et unbind de la requête http
 				CounterError.unbindRequest();
+				if (selfMonitoring) {
+					MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.HTTP,
+							System.nanoTime() - startNanos - chainNanos);
+				}
 			}
 		}
 	}
 
+	// CHECKSTYLE:OFF
+	private void addRequest(HttpServletRequest httpRequest,
+			CounterServletResponseWrapper wrappedResponse, String requestName, long duration,
+			int cpuUsedMillis, int allocatedKBytes, Throwable systemException,
+			boolean asyncTimeout) {
+		// CHECKSTYLE:ON
+		boolean systemError = false;
+		if (systemException != null) {
+			systemError = true;
+			final StringWriter stackTrace = new StringWriter(200);
+			systemException.printStackTrace(new PrintWriter(stackTrace));
+			errorCounter.addRequestForSystemError(systemException.toString(), duration,
+					cpuUsedMillis, allocatedKBytes, stackTrace.toString());
+		} else if (asyncTimeout) {
+			systemError = true;
+			errorCounter.addRequestForSystemError(ASYNC_TIMEOUT, duration, cpuUsedMillis,
+					allocatedKBytes, null);
+		} else if (wrappedResponse.getCurrentStatus() >= HttpServletResponse.SC_BAD_REQUEST
+				&& wrappedResponse.getCurrentStatus() != HttpServletResponse.SC_UNAUTHORIZED) {
+			// SC_UNAUTHORIZED (401) is not an error, it is the first handshake of a Basic (or Digest) Auth (issue 455)
+			systemError = true;
+			errorCounter.addRequestForSystemError("Error" + wrappedResponse.getCurrentStatus(),
+					duration, cpuUsedMillis, allocatedKBytes, null);
+		}
+		// prise en compte de Spring bestMatchingPattern s'il y a
+		String name = CounterRequestContext.getHttpRequestName(httpRequest, requestName);
+		// taille du flux sortant
+		final long responseSize = wrappedResponse.getDataLength();
+		// nom identifiant la requête
+		if (wrappedResponse.getCurrentStatus() == HttpServletResponse.SC_NOT_FOUND) {
+			// Sécurité : si status http est 404, alors requestName est Error404
+			// pour éviter de saturer la mémoire avec potentiellement beaucoup d'url différentes
+			name = "Error404";
+		}
+
+		// on enregistre la requête dans les statistiques
+		httpCounter.addRequest(name, duration, cpuUsedMillis, allocatedKBytes, systemError,
+				responseSize);
+		// on log sur Log4J ou java.util.logging dans la catégorie correspond au nom du filtre dans web.xml
+		log(httpRequest, name, duration, systemError, wrappedResponse.getCurrentStatus(),
+				responseSize);
+	}
+
+	// CHECKSTYLE:OFF
+	private void startAsyncListener(HttpServletRequest httpRequest,
+			CounterServletResponseWrapper wrappedResponse, String requestName, long start,
+			int cpuUsedMillis, int allocatedKBytes) {
+		// CHECKSTYLE:ON
+		// le contexte de la requête http, avec ses requêtes sql, est conservé
+		// pour être lié à nouveau lors des dispatchs asynchrones et à la fin de la requête
+		final AsyncRequestListener asyncListener = new AsyncRequestListener(httpRequest,
+				wrappedResponse, requestName, start, cpuUsedMillis, allocatedKBytes,
+				httpCounter.getBoundContext());
+		httpRequest.setAttribute(ASYNC_LISTENER_KEY, asyncListener);
+		httpRequest.getAsyncContext().addListener(asyncListener);
+	}
+
 	protected CounterServletResponseWrapper createResponseWrapper(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse) {
 		HttpServletResponse httpResponse2 = httpResponse;
@@ -328,7 +498,7 @@ public class MonitoringFilter implements Filter {
 			HttpServletResponse response) throws IOException {
 		HttpServletRequest wrappedRequest = JspWrapper.createHttpRequestWrapper(request, response);
 		final PayloadNameRequestWrapper payloadNameRequestWrapper = new PayloadNameRequestWrapper(
-				wrappedRequest);
+				wrappedRequest, payloadSniffingBytes);
 		payloadNameRequestWrapper.initialize();
 		if (payloadNameRequestWrapper.getPayloadRequestType() != null) {
 			wrappedRequest = payloadNameRequestWrapper;
@@ -474,8 +644,11 @@ public class MonitoringFilter implements Filter {
 			//Check payload request to support GWT, SOAP, and XML-RPC statistic gathering
 			if (httpRequest instanceof PayloadNameRequestWrapper) {
 				final PayloadNameRequestWrapper wrapper = (PayloadNameRequestWrapper) httpRequest;
-				return tmp + wrapper.getPayloadRequestName() + ' '
-						+ wrapper.getPayloadRequestType();
+				if (wrapper.getPayloadRequestName() != null) {
+					return tmp + wrapper.getPayloadRequestName() + ' '
+							+ wrapper.getPayloadRequestType();
+				}
+				// nom non trouvé dans le début du payload : nom habituel de la requête
 			}
 
 			return tmp + ' ' + method;
@@ -488,6 +661,11 @@ public class MonitoringFilter implements Filter {
 	}
 
 	private boolean isRequestExcluded(HttpServletRequest httpRequest) {
+		// préfixes et suffixes en une passe sans expression régulière, puis url-exclude-pattern
+		if (urlExcludePaths != null && urlExcludePaths.matches(httpRequest.getRequestURI(),
+				httpRequest.getContextPath().length())) {
+			return true;
+		}
 		return urlExcludePattern != null && urlExcludePattern.matcher(
 				httpRequest.getRequestURI().substring(httpRequest.getContextPath().length()))
 				.matches();
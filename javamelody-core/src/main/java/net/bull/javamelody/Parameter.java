@@ -87,6 +87,14 @@ public enum Parameter {
 	 */
 	URL_EXCLUDE_PATTERN("url-exclude-pattern"),
 
+	/**
+	 * Comma-separated list of url paths to exclude from the monitoring, without regular expression
+	 * (null by default): "/static/*" excludes a prefix, "*.css" excludes a suffix and other values
+	 * exclude an exact path. These paths are precompiled in prefix and suffix trees, and they are
+	 * evaluated before url-exclude-pattern.
+	 */
+	URL_EXCLUDE_PATHS("url-exclude-paths"),
+
 	/**
 	 * Expression régulière (null par défaut) pour transformer la description de la requête http
 	 * et pour supprimer des parties variables (identifiant d'objet par exemple)
@@ -157,6 +165,71 @@ public enum Parameter {
 	 */
 	JSP_TRANSFORM_PATTERN("jsp-transform-pattern"),
 
+	/**
+	 * Comma separated list of counters, such as "http,sql", for which hits are added in striped
+	 * cells per thread instead of synchronizing on each request (null by default).
+	 * It reduces contention for very frequent requests on servers with many cores.
+	 */
+	STRIPED_COUNTERS("striped-counters"),
+
+	/**
+	 * Comma separated list of counters, such as "http,sql", for which hits are added in buffers
+	 * per thread, flushed into the counter at collect time or for reports (null by default).
+	 * It removes writes to shared memory on the request path for very frequent requests.
+	 */
+	BUFFERED_COUNTERS("buffered-counters"),
+
+	/**
+	 * Aggregation mode of the sql counter: "raw" (by default) to aggregate on the sql
+	 * statements as executed, or "fingerprint" to aggregate on their fingerprints, with string and
+	 * numeric literals, in lists and values tuples replaced by "?" and with normalized whitespace and
+	 * comments. A sample raw statement is kept for each fingerprint.
+	 */
+	SQL_AGGREGATION("sql-aggregation"),
+
+	/**
+	 * Aggregation mode of the http counter: "raw" (by default) to aggregate on the request paths,
+	 * or "template" to aggregate on path templates, with the segments looking like identifiers
+	 * (numbers, uuids, hexadecimal or base64 values) replaced by "$" without regular expression.
+	 * The other segments are learned in a bounded tree and a path position with more than 100
+	 * different segments is also replaced by "$", except the first segment of the path which is
+	 * only bounded by the size of the tree. A sample raw request is kept for each template.
+	 */
+	HTTP_AGGREGATION("http-aggregation"),
+
+	/**
+	 * Maximum number of bytes read at the beginning of GWT-RPC and SOAP request bodies to find
+	 * the name of the called method (8192 by default, 0 to disable). The bytes read are replayed
+	 * to the application and the usual request name is used when the method name is not found.
+	 * Note that with the default, the SOAP method name may not be found when the request has
+	 * a large SOAP header, such as a WS-Security header with signatures and certificates.
+	 * The sniffing is skipped for a request body in a multi-byte encoding other than UTF-8.
+	 */
+	PAYLOAD_SNIFFING_BYTES("payload-sniffing-bytes"),
+
+	/**
+	 * Number of executions of the same sql request within one http, spring or other parent request
+	 * above which the parent request and the repeated sql request are reported as a suspected N+1
+	 * (0 by default, that is disabled). This detection is opt-in since it keeps per-request
+	 * counts of sql requests and adds to the memory and to the serialized size of the counters.
+	 */
+	N_PLUS_ONE_THRESHOLD("n-plus-one-threshold"),
+
+	/**
+	 * Number of significant digits, between 1 and 3, of the execution time histograms of requests
+	 * used for the percentiles in the statistics (1 by default). Each additional digit multiplies
+	 * the memory size of the histograms by about 8.
+	 */
+	HISTOGRAM_SIGNIFICANT_DIGITS("histogram-significant-digits"),
+
+	/**
+	 * True to measure the overhead of javamelody itself (false by default): time spent in the
+	 * monitoring filter outside of the filter chain, in the jdbc wrapper outside of sql executions
+	 * and in each phase of the collect. The overhead is displayed in the system details of the report,
+	 * in graphs and in the Prometheus metrics.
+	 */
+	SELF_MONITORING("self-monitoring"),
+
 	/**
 	 * Compteurs affichés: mettre "http,sql,error,log,ejb" pour afficher les ejb3
 	 * ou "http,sql,error,log,spring" pour afficher les beans spring ("http,sql,error,log" par défaut).
@@ -263,6 +336,34 @@ public enum Parameter {
 	 */
 	REWRAP_DATASOURCES("rewrap-datasources"),
 
+	/**
+	 * auto | classes | proxies, how jdbc connections and statements are wrapped:
+	 * delegating wrapper classes without reflection, or java.lang.reflect.Proxy.
+	 * "auto" uses wrapper classes unless the driver or pool objects implement
+	 * specific interfaces (like OracleConnection) which must be kept (default: auto).
+	 */
+	JDBC_WRAPPERS("jdbc-wrappers"),
+
+	/**
+	 * true | false, true will count the rows read from jdbc ResultSets and measure the fetch time
+	 * in ResultSet.next(), added to the sql requests and to the sql time of the parent requests
+	 * (default: false).
+	 */
+	RESULTSET_MONITORING_ENABLED("resultset-monitoring-enabled"),
+
+	/**
+	 * Number of the slowest executions kept for each sql request, with the start date,
+	 * the duration, the parent request and the bind values of the execution
+	 * (0 by default, disabled, max 20).
+	 */
+	SQL_SLOWEST_EXECUTIONS("sql-slowest-executions"),
+
+	/**
+	 * true | false, true will keep only the types of the bind values in the slowest executions
+	 * of sql requests, and not the values themselves (default: false).
+	 */
+	SQL_BIND_VALUES_MASKED("sql-bind-values-masked"),
+
 	/**
 	 * Nom JNDI de la session mail pour l'envoi par mail de rapport de hebdomadaire (null par défaut).
 	 */
@@ -325,6 +426,23 @@ public enum Parameter {
 	 */
 	CONNECTIONS_STACK_TRACES_DISABLED("connections-stack-traces-disabled"),
 
+	/**
+	 * Number of seconds after which a jdbc connection still opened is reported as a suspected leak
+	 * (0 by default, disabled). When enabled, only the opening date and the thread are recorded
+	 * when a connection is opened, without opening stack-trace, and the stack-trace of the thread
+	 * holding the connection is captured by a background task for the connections opened past
+	 * this threshold.
+	 */
+	CONNECTIONS_LEAK_THRESHOLD_SECONDS("connections-leak-threshold-seconds"),
+
+	/**
+	 * true | false, true will enable the virtual threads mode, for Java 21 or later (default: false).
+	 * In this mode, cpu times and allocated bytes are not measured for requests executed
+	 * in virtual threads, current requests are reported from their own contexts
+	 * and a dump of all threads including virtual threads is available as json.
+	 */
+	VIRTUAL_THREADS_ENABLED("virtual-threads-enabled"),
+
 	/**
 	 * URL http du fichier jar javamelody-swing (null par défaut : le fichier sera téléchargé depuis https://github.com/javamelody/javamelody selon la version). <br/>
 	 * Ce paramètre est surtout utile quand les utilisateurs n'ont pas accès à Internet pour télécharger sur github.
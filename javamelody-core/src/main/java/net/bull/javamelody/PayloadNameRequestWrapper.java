@@ -17,18 +17,12 @@
  */
 package net.bull.javamelody;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
-import java.util.regex.Pattern;
-
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletInputStream;
@@ -46,11 +40,23 @@ import net.bull.javamelody.internal.common.LOG;
 
 /**
  * Simple Wrapper class to inspect payload for name.
+ * Only a bounded prefix of the payload is read and scanned at the byte level,
+ * then this prefix is replayed to the application before the rest of the stream.
  * @author dhartford, roy.paterson, evernat
  */
 public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
-	private static final Pattern GWT_RPC_SEPARATOR_CHAR_PATTERN = Pattern
-			.compile(Pattern.quote("|"));
+	static final int DEFAULT_SNIFFING_BYTES = 8192;
+
+	// tampon réutilisable par thread : il est pris par une requête
+	// et rendu quand l'application a relu tout le préfixe
+	private static final ThreadLocal<byte[]> SNIFFING_BUFFERS = new ThreadLocal<>();
+
+	private static final String ASCII_DELIMITERS = "<>|:/";
+
+	private static final byte[] ASCII_DELIMITERS_BYTES = ASCII_DELIMITERS
+			.getBytes(StandardCharsets.US_ASCII);
+
+	private final int sniffingBytes;
 
 	/**
 	 * Name of request, or null if we don't know based on payload @null
@@ -62,7 +68,11 @@ public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
 	 */
 	private String requestType;
 
-	private BufferedInputStream bufferedInputStream;
+	// début du payload lu pour trouver le nom, null quand il a été entièrement relu
+	private byte[] prefix;
+	private int prefixLength;
+	private int prefixPosition;
+	private ServletInputStream requestInputStream;
 	private ServletInputStream inputStream;
 	private BufferedReader reader;
 
@@ -71,7 +81,18 @@ public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
 	 * @param request the original HttpServletRequest
 	 */
 	public PayloadNameRequestWrapper(HttpServletRequest request) {
+		this(request, DEFAULT_SNIFFING_BYTES);
+	}
+
+	/**
+	 * Constructor.
+	 * @param request the original HttpServletRequest
+	 * @param sniffingBytes maximum number of bytes read to find the name, 0 to disable
+	 */
+	public PayloadNameRequestWrapper(HttpServletRequest request, int sniffingBytes) {
 		super(request);
+		assert sniffingBytes >= 0;
+		this.sniffingBytes = sniffingBytes;
 	}
 
 	protected void initialize() throws IOException {
@@ -81,7 +102,7 @@ public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
 
 		final HttpServletRequest request = (HttpServletRequest) getRequest();
 		final String contentType = request.getContentType();
-		if (contentType == null) {
+		if (contentType == null || sniffingBytes == 0) {
 			//don't know how to handle this content type
 			return;
 		}
@@ -94,15 +115,15 @@ public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
 		//Try look for name in payload on a best-effort basis...
 		try {
 			if (contentType.startsWith("text/x-gwt-rpc")) {
-				//parse GWT-RPC method name
-				name = parseGwtRpcMethodName(getBufferedInputStream(), getCharacterEncoding());
+				//sniff GWT-RPC method name
 				requestType = "GWT-RPC";
+				name = sniffMethodName(true);
 			} else if (contentType.startsWith("application/soap+xml") //SOAP 1.2
 					|| contentType.startsWith("text/xml") //SOAP 1.1
 							&& request.getHeader("SOAPAction") != null) {
-				//parse SOAP method name
-				name = parseSoapMethodName(getBufferedInputStream(), getCharacterEncoding());
+				//sniff SOAP method name
 				requestType = "SOAP";
+				name = sniffMethodName(false);
 			} else {
 				//don't know how to name this request based on payload
 				//(don't parse if text/xml for XML-RPC, because it is obsolete)
@@ -114,169 +135,306 @@ public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
 
 			//best-effort - couldn't figure it out
 			name = null;
-			requestType = null;
 		} finally {
-			//reset stream so application is unaffected
-			resetBufferedInputStream();
+			if (prefixLength == 0) {
+				//nothing read, so the application can use the request stream directly
+				releasePrefix();
+				requestType = null;
+			}
+		}
+	}
+
+	private String sniffMethodName(boolean gwtRpc) throws IOException {
+		//workaround Tomcat issue with form POSTs
+		//see http://stackoverflow.com/questions/18489399/read-httpservletrequests-post-body-and-then-call-getparameter-in-tomcat
+		final ServletRequest request = getRequest();
+		request.getParameterMap();
+
+		final Charset charset = getSniffingCharset();
+		if (charset == null) {
+			//encoding not compatible with a byte-level scan (UTF-16 for example)
+			return null;
+		}
+		requestInputStream = request.getInputStream();
+		prefix = SNIFFING_BUFFERS.get();
+		if (prefix == null || prefix.length != sniffingBytes) {
+			// pas de tampon pour ce thread, ou tampon d'une autre webapp avec un autre paramètre
+			prefix = new byte[sniffingBytes];
+		} else {
+			SNIFFING_BUFFERS.remove();
+		}
+		//read only what is needed to find the name, in the limit of the prefix
+		String methodName = null;
+		boolean complete = false;
+		while (methodName == null && !complete && prefixLength < prefix.length) {
+			final int count = requestInputStream.read(prefix, prefixLength,
+					prefix.length - prefixLength);
+			if (count < 0) {
+				complete = true;
+			} else {
+				prefixLength += count;
+			}
+			if (gwtRpc) {
+				methodName = sniffGwtRpcMethodName(prefix, prefixLength, complete, charset);
+			} else {
+				methodName = sniffSoapMethodName(prefix, prefixLength, charset);
+			}
 		}
+		if (methodName == null) {
+			LOG.debug("Unable to find " + requestType + " method name in the first "
+					+ prefixLength + " bytes of the request");
+		}
+		return methodName;
 	}
 
-	protected BufferedInputStream getBufferedInputStream() throws IOException {
-		if (bufferedInputStream == null) {
-			//workaround Tomcat issue with form POSTs
-			//see http://stackoverflow.com/questions/18489399/read-httpservletrequests-post-body-and-then-call-getparameter-in-tomcat
-			final ServletRequest request = getRequest();
-			request.getParameterMap();
-
-			//buffer the payload so we can inspect it
-			bufferedInputStream = new BufferedInputStream(request.getInputStream());
-			// and mark to allow the stream to be reset
-			bufferedInputStream.mark(Integer.MAX_VALUE);
+	private Charset getSniffingCharset() {
+		final String characterEncoding = getCharacterEncoding();
+		final Charset charset;
+		if (characterEncoding == null) {
+			charset = Charset.defaultCharset();
+		} else {
+			charset = Charset.forName(characterEncoding);
+		}
+		if (!isAsciiCompatible(charset)) {
+			return null;
 		}
-		return bufferedInputStream;
+		return charset;
 	}
 
-	protected void resetBufferedInputStream() throws IOException {
-		if (bufferedInputStream != null) {
-			bufferedInputStream.reset();
+	static boolean isAsciiCompatible(Charset charset) {
+		if (StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset)
+				|| StandardCharsets.US_ASCII.equals(charset)) {
+			// en UTF-8, les octets des caractères multi-octets sont tous >= 0x80
+			return true;
 		}
+		// autres encodages, plus rares : seulement ceux à un octet par caractère (windows-1252,
+		// ISO-8859-15...), car dans les encodages multi-octets (Shift_JIS, GBK, Big5...)
+		// le 2e octet d'un caractère peut valoir 0x7C ('|') ou un autre délimiteur recherché
+		if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+			return false;
+		}
+		// et dont les délimiteurs recherchés sont ceux de l'ascii (ce qui exclut l'EBCDIC)
+		return Arrays.equals(ASCII_DELIMITERS_BYTES, ASCII_DELIMITERS.getBytes(charset));
 	}
 
 	/**
-	 * Try to parse GWT-RPC method name from request body stream.  Does not close the stream.
+	 * Lit et vérifie le paramètre payload-sniffing-bytes, une seule fois à l'initialisation du filtre.
+	 * @return Nombre maximum d'octets lus pour trouver le nom
+	 */
+	static int getSniffingBytesParameter() {
+		final String value = Parameter.PAYLOAD_SNIFFING_BYTES.getValue();
+		if (value == null) {
+			return DEFAULT_SNIFFING_BYTES;
+		}
+		final String message = "The parameter " + Parameter.PAYLOAD_SNIFFING_BYTES.getCode()
+				+ " must be a positive integer or zero";
+		final int bytes;
+		try {
+			bytes = Integer.parseInt(value.trim());
+		} catch (final NumberFormatException e) {
+			throw new IllegalStateException(message, e);
+		}
+		if (bytes < 0) {
+			throw new IllegalStateException(message);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Try to find GWT-RPC method name in the beginning of a request body.
 	 *
-	 * @param stream GWT-RPC request body stream @nonnull
-	 * @param charEncoding character encoding of stream, or null for platform default @null
-	 * @return GWT-RPC method name, or null if unable to parse @null
+	 * @param buffer beginning of GWT-RPC request body @nonnull
+	 * @param length number of bytes in buffer
+	 * @param complete true if the buffer contains the whole request body
+	 * @param charset character encoding of the body, compatible with ascii @nonnull
+	 * @return GWT-RPC method name, or null if not found @null
 	 */
-	@SuppressWarnings("resource")
-	private static String parseGwtRpcMethodName(InputStream stream, String charEncoding) {
+	static String sniffGwtRpcMethodName(byte[] buffer, int length, boolean complete,
+			Charset charset) {
 		//commented out code uses GWT-user library for a more 'proper' approach.
 		//GWT-user library approach is more future-proof, but requires more dependency management.
 		//				RPCRequest decodeRequest = RPC.decodeRequest(readLine);
 		//				gwtmethodname = decodeRequest.getMethod().getName();
 
-		try {
-			final Scanner scanner;
-			if (charEncoding == null) {
-				scanner = new Scanner(stream);
-			} else {
-				scanner = new Scanner(stream, charEncoding);
+		//fields separated by AbstractSerializationStream.RPC_SEPARATOR_CHAR:
+		//stream version number, flags, type name count, module base URL, strong name,
+		//service interface name, then service method name
+		final int methodNameField = 6;
+		int field = 0;
+		int fieldStart = 0;
+		for (int i = 0; i < length; i++) {
+			if (buffer[i] == '|') {
+				if (field == methodNameField) {
+					return '.' + new String(buffer, fieldStart, i - fieldStart, charset);
+				}
+				field++;
+				fieldStart = i + 1;
 			}
-			scanner.useDelimiter(GWT_RPC_SEPARATOR_CHAR_PATTERN); //AbstractSerializationStream.RPC_SEPARATOR_CHAR
-
-			//AbstractSerializationStreamReader.prepareToRead(...)
-			scanner.next(); //stream version number
-			scanner.next(); //flags
-
-			//ServerSerializationStreamReader.deserializeStringTable()
-			scanner.next(); //type name count
-
-			//ServerSerializationStreamReader.preapreToRead(...)
-			scanner.next(); //module base URL
-			scanner.next(); //strong name
-
-			//RPC.decodeRequest(...)
-			scanner.next(); //service interface name
-			return "." + scanner.next(); //service method name
-
-			//note we don't close the scanner because we don't want to close the underlying stream
-		} catch (final NoSuchElementException e) {
-			LOG.debug("Unable to parse GWT-RPC request", e);
-
-			//code above is best-effort - we were unable to parse GWT payload so
-			//treat as a normal HTTP request
-			return null;
 		}
+		if (complete && field == methodNameField && fieldStart < length) {
+			return '.' + new String(buffer, fieldStart, length - fieldStart, charset);
+		}
+		//not enough fields in the buffer, treat as a normal HTTP request
+		return null;
 	}
 
 	/**
-	 * Scan xml for tag child of the current element
+	 * Try to find SOAP method name in the beginning of a request body,
+	 * that is the first child element of the "Body" child of the "Envelope" root element.
 	 *
-	 * @param reader reader, must be at "start element" @nonnull
-	 * @param tagName name of child tag to find @nonnull
-	 * @return if found tag
-	 * @throws XMLStreamException on error
+	 * @param buffer beginning of SOAP request body @nonnull
+	 * @param length number of bytes in buffer
+	 * @param charset character encoding of the body, compatible with ascii @nonnull
+	 * @return SOAP method name, or null if not found @null
 	 */
-	static boolean scanForChildTag(XMLStreamReader reader, String tagName)
-			throws XMLStreamException {
-		assert reader.isStartElement();
-
-		int level = -1;
-		while (reader.hasNext()) {
-			//keep track of level so we only search children, not descendants
-			if (reader.isStartElement()) {
-				level++;
-			} else if (reader.isEndElement()) {
+	static String sniffSoapMethodName(byte[] buffer, int length, Charset charset) {
+		int i = 0;
+		if (length >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB
+				&& buffer[2] == (byte) 0xBF) {
+			//BOM UTF-8
+			i = 3;
+		}
+		//level of the current element: 1 for Envelope, 2 for Body and 3 for the method
+		int level = 0;
+		boolean inBody = false;
+		while (true) {
+			i = indexOf(buffer, '<', i, length);
+			if (i < 0 || i + 1 >= length) {
+				return null;
+			}
+			final byte next = buffer[i + 1];
+			if (next == '?') {
+				//xml declaration or processing instruction
+				i = indexOf(buffer, "?>", i + 2, length);
+			} else if (next == '!') {
+				if (startsWith(buffer, "<!--", i, length)) {
+					i = indexOf(buffer, "-->", i + 4, length);
+				} else if (startsWith(buffer, "<![CDATA[", i, length)) {
+					i = indexOf(buffer, "]]>", i + 9, length);
+				} else {
+					//no DTD, as with the xml parser previously used
+					return null;
+				}
+			} else if (next == '/') {
+				//end tag
 				level--;
+				if (level < 2 && inBody) {
+					//end of Body without child
+					return null;
+				}
+				i = indexOf(buffer, '>', i + 2, length);
+			} else {
+				//start tag
+				final int nameStart = i + 1;
+				int nameEnd = nameStart;
+				int localNameStart = nameStart;
+				while (nameEnd < length && !isTagNameEnd(buffer[nameEnd])) {
+					if (buffer[nameEnd] == ':') {
+						localNameStart = nameEnd + 1;
+					}
+					nameEnd++;
+				}
+				i = indexOfTagEnd(buffer, nameEnd, length);
+				if (i < 0) {
+					//incomplete tag
+					return null;
+				}
+				level++;
+				if (level == 1) {
+					//expect first tag to be "Envelope"
+					if (!equals(buffer, localNameStart, nameEnd, "Envelope")) {
+						return null;
+					}
+				} else if (level == 2 && !inBody) {
+					inBody = equals(buffer, localNameStart, nameEnd, "Body");
+				} else if (level == 3 && inBody) {
+					//tag is method name
+					return '.' + new String(buffer, localNameStart, nameEnd - localNameStart,
+							charset);
+				}
+				if (buffer[i - 1] == '/') {
+					//empty element
+					level--;
+					if (inBody && level < 2) {
+						return null;
+					}
+				}
 			}
-			if (level < 0) {
-				//end parent tag - no more children
-				break;
+			if (i < 0) {
+				return null;
 			}
+			i++;
+		}
+	}
 
-			reader.next();
+	private static boolean isTagNameEnd(byte b) {
+		return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
 
-			if (level == 0 && reader.isStartElement() && reader.getLocalName().equals(tagName)) {
-				return true; //found
+	private static int indexOfTagEnd(byte[] buffer, int fromIndex, int length) {
+		//the values of attributes may contain '>'
+		byte quote = 0;
+		for (int i = fromIndex; i < length; i++) {
+			final byte b = buffer[i];
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '>') {
+				return i;
 			}
 		}
-		return false; //got to end of parent element and not found
+		return -1;
 	}
 
-	/**
-	 * Try to parse SOAP method name from request body stream.  Does not close the stream.
-	 *
-	 * @param stream SOAP request body stream @nonnull
-	 * @param charEncoding character encoding of stream, or null for platform default @null
-	 * @return SOAP method name, or null if unable to parse @null
-	 */
-	private static String parseSoapMethodName(InputStream stream, String charEncoding) {
-		try {
-			// newInstance() et pas newFactory() pour java 1.5 (issue 367)
-			final XMLInputFactory factory = XMLInputFactory.newInstance();
-			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false); // disable DTDs entirely for that factory
-			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false); // disable external entities
-			final XMLStreamReader xmlReader;
-			if (charEncoding != null) {
-				xmlReader = factory.createXMLStreamReader(stream, charEncoding);
-			} else {
-				xmlReader = factory.createXMLStreamReader(stream);
+	private static int indexOf(byte[] buffer, char c, int fromIndex, int length) {
+		for (int i = fromIndex; i < length; i++) {
+			if (buffer[i] == c) {
+				return i;
 			}
+		}
+		return -1;
+	}
 
-			//best-effort parsing
-
-			//start document, go to first tag
-			xmlReader.nextTag();
-
-			//expect first tag to be "Envelope"
-			if (!"Envelope".equals(xmlReader.getLocalName())) {
-				LOG.debug("Unexpected first tag of SOAP request: '" + xmlReader.getLocalName()
-						+ "' (expected 'Envelope')");
-				return null; //failed
+	private static int indexOf(byte[] buffer, String end, int fromIndex, int length) {
+		for (int i = fromIndex; i <= length - end.length(); i++) {
+			if (startsWith(buffer, end, i, length)) {
+				// index du dernier caractère de la fin recherchée
+				return i + end.length() - 1;
 			}
+		}
+		return -1;
+	}
 
-			//scan for body tag
-			if (!scanForChildTag(xmlReader, "Body")) {
-				LOG.debug("Unable to find SOAP 'Body' tag");
-				return null; //failed
+	private static boolean startsWith(byte[] buffer, String start, int index, int length) {
+		if (index + start.length() > length) {
+			return false;
+		}
+		for (int j = 0; j < start.length(); j++) {
+			if (buffer[index + j] != start.charAt(j)) {
+				return false;
 			}
+		}
+		return true;
+	}
 
-			xmlReader.nextTag();
+	private static boolean equals(byte[] buffer, int start, int end, String value) {
+		return end - start == value.length() && startsWith(buffer, value, start, end);
+	}
 
-			//tag is method name
-			return "." + xmlReader.getLocalName();
-		} catch (final XMLStreamException e) {
-			LOG.debug("Unable to parse SOAP request", e);
-			//failed
-			return null;
+	private void releasePrefix() {
+		if (prefix != null && SNIFFING_BUFFERS.get() == null) {
+			SNIFFING_BUFFERS.set(prefix);
 		}
+		prefix = null;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public BufferedReader getReader() throws IOException {
-		if (bufferedInputStream == null) {
+		if (requestInputStream == null) {
 			return super.getReader();
 		}
 		if (reader == null) {
@@ -295,33 +453,66 @@ public class PayloadNameRequestWrapper extends HttpServletRequestWrapper {
 	/** {@inheritDoc} */
 	@Override
 	public ServletInputStream getInputStream() throws IOException {
-		final ServletInputStream requestInputStream = super.getInputStream();
-		if (bufferedInputStream == null) {
-			return requestInputStream;
+		if (requestInputStream == null) {
+			return super.getInputStream();
 		}
 		if (inputStream == null) {
-			final BufferedInputStream myBufferedInputStream = bufferedInputStream;
+			final ServletInputStream servletInputStream = requestInputStream;
 			//CHECKSTYLE:OFF
 			inputStream = new ServletInputStream() {
 				//CHECKSTYLE:ON
 				@Override
 				public int read() throws IOException {
-					return myBufferedInputStream.read();
+					if (prefix == null) {
+						return servletInputStream.read();
+					}
+					final int b = prefix[prefixPosition] & 0xFF;
+					prefixPosition++;
+					if (prefixPosition == prefixLength) {
+						releasePrefix();
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					if (prefix == null) {
+						//after the prefix, the request stream is read without any buffer
+						return servletInputStream.read(b, off, len);
+					}
+					if (len == 0) {
+						return 0;
+					}
+					final int count = Math.min(len, prefixLength - prefixPosition);
+					System.arraycopy(prefix, prefixPosition, b, off, count);
+					prefixPosition += count;
+					if (prefixPosition == prefixLength) {
+						releasePrefix();
+					}
+					return count;
+				}
+
+				@Override
+				public int available() throws IOException {
+					if (prefix == null) {
+						return servletInputStream.available();
+					}
+					return prefixLength - prefixPosition;
 				}
 
 				@Override
 				public boolean isFinished() {
-					return requestInputStream.isFinished();
+					return prefix == null && servletInputStream.isFinished();
 				}
 
 				@Override
 				public boolean isReady() {
-					return requestInputStream.isReady();
+					return prefix != null || servletInputStream.isReady();
 				}
 
 				@Override
 				public void setReadListener(ReadListener readListener) {
-					requestInputStream.setReadListener(readListener);
+					servletInputStream.setReadListener(readListener);
 				}
 			};
 		}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.Transactions;
+import net.bull.javamelody.internal.model.Transactions.OpenTransaction;
+
+/**
+ * Suivi des transactions d'une connexion jdbc wrappée (proxy ou classe de wrapper).
+ * <p>
+ * Une transaction commence à l'appel de setAutoCommit(false) et se termine à commit() ou
+ * rollback(), ou à setAutoCommit(true) qui valide la transaction selon la spécification jdbc.
+ * Après un commit ou un rollback, si l'auto-commit est toujours désactivé, la transaction suivante
+ * commence à la création du statement suivant et non tout de suite, pour ne pas compter
+ * la période entre le commit et setAutoCommit(true) ou la fermeture de la connexion.
+ * Une transaction en cours à la fermeture de la connexion n'est pas comptée.
+ * <p>
+ * Comme une connexion, une instance n'est pas utilisée par plusieurs threads en même temps.
+ * @author Emeric Vernat
+ */
+final class TransactionTracker {
+	private final Counter sqlCounter;
+	private boolean autoCommitDisabled;
+	private OpenTransaction transaction;
+
+	TransactionTracker(Counter sqlCounter) {
+		super();
+		assert sqlCounter != null;
+		this.sqlCounter = sqlCounter;
+	}
+
+	void autoCommitChanged(boolean autoCommit) {
+		if (autoCommit) {
+			autoCommitDisabled = false;
+			// setAutoCommit(true) pendant une transaction valide la transaction
+			end(false);
+		} else if (!autoCommitDisabled) {
+			autoCommitDisabled = true;
+			begin();
+		}
+	}
+
+	void statementCreated() {
+		if (autoCommitDisabled && transaction == null) {
+			begin();
+		}
+	}
+
+	void committed() {
+		end(false);
+	}
+
+	void rolledBack() {
+		end(true);
+	}
+
+	void connectionClosed() {
+		autoCommitDisabled = false;
+		if (transaction != null) {
+			Transactions.transactionAbandoned(transaction);
+			transaction = null;
+		}
+	}
+
+	private void begin() {
+		if (transaction == null) {
+			transaction = Transactions.transactionStarted(sqlCounter.getRootContextRequestName());
+		}
+	}
+
+	private void end(boolean rollback) {
+		if (transaction != null) {
+			Transactions.transactionEnded(transaction, rollback);
+			transaction = null;
+		}
+	}
+}
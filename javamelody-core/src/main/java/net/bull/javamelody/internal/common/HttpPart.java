@@ -44,6 +44,7 @@ public enum HttpPart {
 	CRASHES("crashes"),
 	THREADS("threads"),
 	THREADS_DUMP("threadsDump"),
+	VIRTUAL_THREADS_DUMP("virtualThreadsDump"),
 	COUNTER_SUMMARY_PER_CLASS("counterSummaryPerClass"),
 	RUNTIME_DEPENDENCIES("runtimeDependencies"),
 	JROBINS("jrobins"),
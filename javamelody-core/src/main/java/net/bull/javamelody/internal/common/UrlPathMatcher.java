@@ -0,0 +1,160 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.common;
+
+import java.util.Arrays;
+
+/**
+ * Correspondance d'un chemin d'url avec une liste de chemins exacts (/health),
+ * de préfixes (/static/*) ou de suffixes (*.css), sans expression régulière.
+ * <p>
+ * Les préfixes et chemins exacts sont précompilés dans un arbre (trie) de caractères
+ * parcouru depuis le début du chemin, et les suffixes dans un arbre parcouru depuis la fin :
+ * chaque caractère du chemin est lu au plus une fois par arbre et le parcours s'arrête
+ * au premier caractère sans correspondance. Les instances sont immuables et thread-safe.
+ * @author Emeric Vernat
+ */
+public final class UrlPathMatcher {
+	private final Node prefixesRoot = new Node();
+	private final Node suffixesRoot = new Node();
+
+	private static final class Node {
+		private char[] chars = new char[0];
+		private Node[] children = new Node[0];
+		// un préfixe ou un suffixe se termine à ce noeud
+		private boolean end;
+		// un chemin exact se termine à ce noeud (arbre des préfixes)
+		private boolean exactEnd;
+
+		Node() {
+			super();
+		}
+
+		Node get(char c) {
+			final char[] myChars = chars;
+			for (int i = 0; i < myChars.length; i++) {
+				if (myChars[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node getOrCreate(char c) {
+			final Node child = get(c);
+			if (child != null) {
+				return child;
+			}
+			final Node newChild = new Node();
+			chars = Arrays.copyOf(chars, chars.length + 1);
+			chars[chars.length - 1] = c;
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = newChild;
+			return newChild;
+		}
+	}
+
+	/**
+	 * Constructeur.
+	 * @param paths Liste de chemins séparés par des virgules : /static/* pour un préfixe,
+	 * *.css pour un suffixe, * pour tous les chemins et sinon un chemin exact
+	 */
+	public UrlPathMatcher(String paths) {
+		super();
+		assert paths != null;
+		for (final String value : paths.split(",")) {
+			final String path = value.trim();
+			if (path.isEmpty()) {
+				continue;
+			}
+			if (path.endsWith("*")) {
+				addPrefix(path.substring(0, path.length() - 1));
+			} else if (path.charAt(0) == '*') {
+				addSuffix(path.substring(1));
+			} else {
+				addPrefixes(path).exactEnd = true;
+			}
+		}
+	}
+
+	private void addPrefix(String prefix) {
+		addPrefixes(prefix).end = true;
+	}
+
+	private Node addPrefixes(String prefix) {
+		Node node = prefixesRoot;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.getOrCreate(prefix.charAt(i));
+		}
+		return node;
+	}
+
+	private void addSuffix(String suffix) {
+		Node node = suffixesRoot;
+		for (int i = suffix.length() - 1; i >= 0; i--) {
+			node = node.getOrCreate(suffix.charAt(i));
+		}
+		node.end = true;
+	}
+
+	/**
+	 * @param path Chemin d'url
+	 * @return true si le chemin correspond à un chemin exact, un préfixe ou un suffixe
+	 */
+	public boolean matches(String path) {
+		return matches(path, 0);
+	}
+
+	/**
+	 * @param uri Uri, par exemple requestURI d'une requête http
+	 * @param start Début du chemin dans l'uri, par exemple la longueur du contextPath
+	 * @return true si le chemin correspond à un chemin exact, un préfixe ou un suffixe
+	 */
+	public boolean matches(String uri, int start) {
+		return matchesPrefix(uri, start) || matchesSuffix(uri, start);
+	}
+
+	private boolean matchesPrefix(String uri, int start) {
+		Node node = prefixesRoot;
+		final int length = uri.length();
+		for (int i = start; i < length; i++) {
+			if (node.end) {
+				return true;
+			}
+			node = node.get(uri.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return node.end || node.exactEnd;
+	}
+
+	private boolean matchesSuffix(String uri, int start) {
+		Node node = suffixesRoot;
+		for (int i = uri.length() - 1; i >= start; i--) {
+			if (node.end) {
+				return true;
+			}
+			node = node.get(uri.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return node.end;
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Nombres d'exécutions des requêtes filles par id de requête pour un contexte de requête (non synchronisé).
+ * <p>
+ * Table à adressage ouvert (sondage linéaire) vers des compteurs primitifs :
+ * l'ajout d'une exécution d'une requête déjà connue n'alloue rien (pas de Long ni d'entrée de map),
+ * contrairement à une LinkedHashMap&lt;String, Long&gt;. Les ids et les compteurs sont rangés
+ * dans l'ordre d'insertion, comme dans une LinkedHashMap.
+ * @author Emeric Vernat
+ */
+final class ChildRequestsExecutions {
+	private static final int INITIAL_CAPACITY = 8;
+
+	// ids, noms et nombres d'exécutions dans l'ordre d'insertion
+	private String[] requestIds = new String[INITIAL_CAPACITY];
+	private String[] requestNames = new String[INITIAL_CAPACITY];
+	private long[] executions = new long[INITIAL_CAPACITY];
+	private int size;
+	// table d'index (+1, 0 pour une case vide) dans requestIds, de taille puissance de 2
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+
+	void increment(String requestId, String requestName) {
+		add(requestId, requestName, 1);
+	}
+
+	private void add(String requestId, String requestName, long count) {
+		assert requestId != null;
+		final int mask = table.length - 1;
+		int slot = requestId.hashCode() & mask;
+		int index = table[slot];
+		while (index != 0) {
+			if (requestIds[index - 1].equals(requestId)) {
+				executions[index - 1] += count;
+				return;
+			}
+			slot = (slot + 1) & mask;
+			index = table[slot];
+		}
+		if (size == requestIds.length) {
+			grow();
+			// la table a changé, on recherche la case libre
+			add(requestId, requestName, count);
+			return;
+		}
+		requestIds[size] = requestId;
+		requestNames[size] = requestName;
+		executions[size] = count;
+		size++;
+		table[slot] = size;
+	}
+
+	void addAll(ChildRequestsExecutions other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.requestIds[i], other.requestNames[i], other.executions[i]);
+		}
+	}
+
+	private void grow() {
+		final int capacity = requestIds.length * 2;
+		requestIds = Arrays.copyOf(requestIds, capacity);
+		requestNames = Arrays.copyOf(requestNames, capacity);
+		executions = Arrays.copyOf(executions, capacity);
+		table = new int[capacity * 2];
+		final int mask = table.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = requestIds[i].hashCode() & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	String getRequestId(int index) {
+		return requestIds[index];
+	}
+
+	String getRequestName(int index) {
+		return requestNames[index];
+	}
+
+	long getExecutions(int index) {
+		return executions[index];
+	}
+
+	void clear() {
+		Arrays.fill(requestIds, 0, size, null);
+		Arrays.fill(requestNames, 0, size, null);
+		Arrays.fill(table, 0);
+		size = 0;
+	}
+
+	Map<String, Long> toMap() {
+		final Map<String, Long> result = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			result.put(requestIds[i], executions[i]);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+}
@@ -25,9 +25,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import net.bull.javamelody.JdbcWrapper;
@@ -66,6 +68,15 @@ public class Collector { // NOPMD
 	private long gcTimeMillis = NOT_A_NUMBER;
 	private long tomcatBytesReceived = NOT_A_NUMBER;
 	private long tomcatBytesSent = NOT_A_NUMBER;
+	// nombre et cumul des durées en ns des attentes de connexions jdbc lors de la collecte précédente
+	private long connectionWaitCount = NOT_A_NUMBER;
+	private long connectionWaitNanos;
+	private long transactionEndedCount = NOT_A_NUMBER;
+	private long transactionNanos;
+	// nombres de mesures et cumuls des durées en ns lors de la collecte précédente, par courbe de surcoût
+	private final Map<String, long[]> overheadCountAndNanosByGraphName = new HashMap<>();
+	// informations jdbc lors de la collecte précédente, par nom de DataSource
+	private final Map<String, DataSourceInformations> dataSourceInformationsByName = new HashMap<>();
 	private long lastCollectDuration;
 	private Throwable lastCollectorException;
 	private long estimatedMemorySize;
@@ -334,6 +345,9 @@ public class Collector { // NOPMD
 	private synchronized long collect(List<JavaInformations> javaInformationsList)
 			throws IOException {
 		long memorySize = 0;
+		// si self-monitoring, mesure de la durée de chaque phase de la collecte
+		final boolean selfMonitoring = MonitoringOverhead.isEnabled();
+		long phaseStartNanos = selfMonitoring ? System.nanoTime() : 0;
 		try {
 			// si pas d'informations, on ne met pas 0 : on ne met rien
 			if (!javaInformationsList.isEmpty()) {
@@ -343,6 +357,9 @@ public class Collector { // NOPMD
 				collectJavaInformations(javaInformationsList);
 				collectOtherJavaInformations(javaInformationsList);
 				collectTomcatInformations(javaInformationsList);
+				collectMonitoringOverhead(javaInformationsList);
+				phaseStartNanos = addCollectOverhead(selfMonitoring,
+						MonitoringOverhead.Phase.COLLECT_JAVA_INFORMATIONS, phaseStartNanos);
 			}
 			for (final Counter counter : counters) {
 				// counter.isDisplayed() peut changer pour spring, ejb, guice ou services selon l'utilisation
@@ -356,11 +373,15 @@ public class Collector { // NOPMD
 					memorySize += collectCounterData(counter);
 				}
 			}
+			phaseStartNanos = addCollectOverhead(selfMonitoring,
+					MonitoringOverhead.Phase.COLLECT_COUNTERS, phaseStartNanos);
 		} finally {
-			if (metricsPublishers != null) {
+			if (metricsPublishers != null && !metricsPublishers.isEmpty()) {
 				for (final MetricsPublisher metricsPublisher : metricsPublishers) {
 					metricsPublisher.send();
 				}
+				addCollectOverhead(selfMonitoring, MonitoringOverhead.Phase.COLLECT_PUBLISHERS,
+						phaseStartNanos);
 			}
 		}
 
@@ -385,6 +406,16 @@ public class Collector { // NOPMD
 		return memorySize;
 	}
 
+	private static long addCollectOverhead(boolean selfMonitoring, MonitoringOverhead.Phase phase,
+			long phaseStartNanos) {
+		if (!selfMonitoring) {
+			return 0;
+		}
+		final long nanos = System.nanoTime();
+		MonitoringOverhead.addOverhead(phase, nanos - phaseStartNanos);
+		return nanos;
+	}
+
 	private void collectJavaInformations(List<JavaInformations> javaInformationsList)
 			throws IOException {
 		long usedMemory = 0;
@@ -394,6 +425,10 @@ public class Collector { // NOPMD
 		int activeThreadCount = 0;
 		int activeConnectionCount = 0;
 		int usedConnectionCount = 0;
+		long waitCount = 0;
+		long waitNanos = 0;
+		long transactionCount = 0;
+		long transactionsNanos = 0;
 
 		for (final JavaInformations javaInformations : javaInformationsList) {
 			final MemoryInformations memoryInformations = javaInformations.getMemoryInformations();
@@ -404,6 +439,18 @@ public class Collector { // NOPMD
 					activeConnectionCount);
 			usedConnectionCount = add(javaInformations.getUsedConnectionCount(),
 					usedConnectionCount);
+			// somme des attentes de connexions de toutes les DataSources et de tous les serveurs
+			for (final DurationsInformations connectionWaitInformations : javaInformations
+					.getConnectionWaitInformationsList()) {
+				waitCount += connectionWaitInformations.getCount();
+				waitNanos += connectionWaitInformations.getTotalNanos();
+			}
+			final TransactionInformations transactionInformations = javaInformations
+					.getTransactionInformations();
+			if (transactionInformations != null) {
+				transactionCount += transactionInformations.getCount();
+				transactionsNanos += transactionInformations.getTotalNanos();
+			}
 
 			// il y a au moins 1 coeur
 			availableProcessors = add(Math.max(javaInformations.getAvailableProcessors(), 1),
@@ -414,6 +461,96 @@ public class Collector { // NOPMD
 		}
 		collectJRobinValues(usedMemory, processesCpuTimeMillis, availableProcessors, sessionCount,
 				activeThreadCount, activeConnectionCount, usedConnectionCount);
+		if (!noDatabase) {
+			collectConnectionWaits(waitCount, waitNanos);
+			collectTransactions(transactionCount, transactionsNanos);
+			collectDataSources(javaInformationsList);
+		}
+	}
+
+	private void collectConnectionWaits(long waitCount, long waitNanos) throws IOException {
+		// pas de courbe tant qu'aucune connexion n'a été demandée à une DataSource
+		if (waitCount == 0 && this.connectionWaitCount == NOT_A_NUMBER) {
+			return;
+		}
+		// temps moyen d'attente des connexions en millisecondes pendant la période
+		double meanMillis = 0;
+		if (this.connectionWaitCount != NOT_A_NUMBER && waitCount > this.connectionWaitCount) {
+			meanMillis = (waitNanos - this.connectionWaitNanos) / 1000000d
+					/ (waitCount - this.connectionWaitCount);
+		}
+		addJRobinValue(getCounterJRobin(ConnectionWaits.GRAPH_NAME), Math.max(meanMillis, 0));
+		this.connectionWaitCount = waitCount;
+		this.connectionWaitNanos = waitNanos;
+	}
+
+	private void collectTransactions(long transactionCount, long transactionsNanos)
+			throws IOException {
+		// pas de courbe tant qu'aucune transaction n'est terminée
+		if (transactionCount == 0 && this.transactionEndedCount == NOT_A_NUMBER) {
+			return;
+		}
+		// durée moyenne des transactions terminées en millisecondes pendant la période
+		double meanMillis = 0;
+		if (this.transactionEndedCount != NOT_A_NUMBER
+				&& transactionCount > this.transactionEndedCount) {
+			meanMillis = (transactionsNanos - this.transactionNanos) / 1000000d
+					/ (transactionCount - this.transactionEndedCount);
+		}
+		addJRobinValue(getCounterJRobin(Transactions.GRAPH_NAME), Math.max(meanMillis, 0));
+		this.transactionEndedCount = transactionCount;
+		this.transactionNanos = transactionsNanos;
+	}
+
+	private void collectDataSources(List<JavaInformations> javaInformationsList)
+			throws IOException {
+		// somme par DataSource des informations de tous les serveurs
+		final Map<String, DataSourceInformations> informationsByName = new LinkedHashMap<>();
+		for (final JavaInformations javaInformations : javaInformationsList) {
+			for (final DataSourceInformations dataSourceInformations : javaInformations
+					.getDataSourceInformationsList()) {
+				informationsByName.merge(dataSourceInformations.getName(), dataSourceInformations,
+						DataSourceInformations::add);
+			}
+		}
+		// les courbes par DataSource ne sont utiles que s'il y a plusieurs DataSources,
+		// sinon elles seraient identiques aux courbes globales
+		if (informationsByName.size() < 2) {
+			return;
+		}
+		final double periodMinutes = periodMillis / 60000d;
+		for (final DataSourceInformations informations : informationsByName.values()) {
+			final String name = informations.getName();
+			addJRobinValue(
+					getOtherJRobin(DataSourceInformations.getGraphName("usedConnections", name)),
+					informations.getUsedConnectionCount());
+			addJRobinValue(
+					getOtherJRobin(DataSourceInformations.getGraphName("activeConnections", name)),
+					informations.getActiveConnectionCount());
+			// nombre de transactions par minute et temps moyen des requêtes sql pendant la période
+			double transactionsRate = 0;
+			double sqlMeanTime = 0;
+			final DataSourceInformations previous = dataSourceInformationsByName.get(name);
+			if (previous != null) {
+				transactionsRate = Math.max(
+						informations.getTransactionCount() - previous.getTransactionCount(), 0)
+						/ periodMinutes;
+				final long sqlHits = informations.getSqlHits() - previous.getSqlHits();
+				if (sqlHits > 0) {
+					sqlMeanTime = Math.max(
+							informations.getSqlDurationsSum() - previous.getSqlDurationsSum(), 0)
+							/ (double) sqlHits;
+				}
+			}
+			addJRobinValue(
+					getOtherJRobin(DataSourceInformations.getGraphName("transactionsRate", name)),
+					transactionsRate);
+			addJRobinValue(
+					getOtherJRobin(DataSourceInformations.getGraphName("sqlMeanTimes", name)),
+					sqlMeanTime);
+		}
+		dataSourceInformationsByName.clear();
+		dataSourceInformationsByName.putAll(informationsByName);
 	}
 
 	// CHECKSTYLE:OFF
@@ -550,6 +687,36 @@ public class Collector { // NOPMD
 		}
 	}
 
+	private void collectMonitoringOverhead(List<JavaInformations> javaInformationsList)
+			throws IOException {
+		// somme des nombres de mesures et des cumuls des durées par phase entre les serveurs
+		final Map<String, long[]> countAndNanosByGraphName = new LinkedHashMap<>();
+		for (final JavaInformations javaInformations : javaInformationsList) {
+			for (final DurationsInformations overheadInformations : javaInformations
+					.getMonitoringOverheadInformationsList()) {
+				final String graphName = MonitoringOverhead
+						.getGraphName(overheadInformations.getName());
+				final long[] countAndNanos = countAndNanosByGraphName.computeIfAbsent(graphName,
+						key -> new long[2]);
+				countAndNanos[0] += overheadInformations.getCount();
+				countAndNanos[1] += overheadInformations.getTotalNanos();
+			}
+		}
+		for (final Map.Entry<String, long[]> entry : countAndNanosByGraphName.entrySet()) {
+			final String graphName = entry.getKey();
+			final long[] countAndNanos = entry.getValue();
+			final long[] previousCountAndNanos = overheadCountAndNanosByGraphName.get(graphName);
+			// surcoût moyen en microsecondes pendant la période
+			double meanMicros = 0;
+			if (previousCountAndNanos != null && countAndNanos[0] > previousCountAndNanos[0]) {
+				meanMicros = (countAndNanos[1] - previousCountAndNanos[1]) / 1000d
+						/ (countAndNanos[0] - previousCountAndNanos[0]);
+			}
+			addJRobinValue(getOtherJRobin(graphName), Math.max(meanMicros, 0));
+			overheadCountAndNanosByGraphName.put(graphName, countAndNanos);
+		}
+	}
+
 	private void collectJRobinValues(long usedMemory, long processesCpuTimeMillis,
 			int availableProcessors, int sessionCount, int activeThreadCount,
 			int activeConnectionCount, int usedConnectionCount) throws IOException {
@@ -751,13 +918,14 @@ public class Collector { // NOPMD
 		final Counter dayCounter = getCurrentDayCounter(counter);
 		final boolean firstCollectDoneForCounter = Boolean.TRUE
 				.equals(firstCollectDoneByCounter.get(counter));
-		final List<CounterRequest> filteredRequests = filterRequestsIfOverflow(counter, requests);
+		final List<CounterRequest> filteredRequests = filterRequestsIfOverflow(counter, requests,
+				dayCounter, firstCollectDoneForCounter);
 		for (final CounterRequest newRequest : filteredRequests) {
 			collectCounterRequestData(dayCounter, newRequest, firstCollectDoneForCounter);
 		}
 		if (dayCounter.getRequestsCount() > dayCounter.getMaxRequestsCount()) {
 			// issue 339: ne pas laisser dans dayCounter trop de requêtes si elles sont à chaque fois différentes
-			filterRequestsIfOverflow(dayCounter, dayCounter.getRequests());
+			filterRequestsIfOverflow(dayCounter, dayCounter.getRequests(), dayCounter, true);
 		}
 		if (dayCounter.isErrorCounter()) {
 			dayCounter.addErrors(getDeltaOfErrors(counter, dayCounter));
@@ -770,34 +938,61 @@ public class Collector { // NOPMD
 	}
 
 	private List<CounterRequest> filterRequestsIfOverflow(Counter counter,
-			List<CounterRequest> requests) {
+			List<CounterRequest> requests, Counter dayCounter, boolean firstCollectDoneForCounter) {
 		final int maxRequestsCount = counter.getMaxRequestsCount();
 		if (requests.size() <= maxRequestsCount) {
 			return requests;
 		}
-		final List<CounterRequest> result = new ArrayList<>(requests);
-		for (final CounterRequest request : requests) {
-			if (result.size() > maxRequestsCount && request.getHits() < 10) {
-				// Si le nombre de requêtes est supérieur à 10000
-				// on suppose que l'application a des requêtes sql non bindées
-				// (bien que cela ne soit en général pas conseillé).
-				// En tout cas, on essaye ici d'éviter de saturer
-				// la mémoire (et le disque dur) avec toutes ces requêtes
-				// différentes en éliminant celles ayant moins de 10 hits.
-				removeRequest(counter, request);
-				result.remove(request);
+		// Si le nombre de requêtes est supérieur à 10000
+		// on suppose que l'application a des requêtes sql non bindées
+		// (bien que cela ne soit en général pas conseillé).
+		// En tout cas, on essaye ici d'éviter de saturer
+		// la mémoire (et le disque dur) avec toutes ces requêtes
+		// différentes en ne gardant que les requêtes ayant le plus de hits,
+		// et en regroupant les autres dans "autres" (en temps linéaire).
+		final List<CounterRequest> lightRequests = HeavyHitters.getLightestRequests(requests,
+				requests.size() - maxRequestsCount, Long.MAX_VALUE);
+		final Set<CounterRequest> removedRequests = Collections
+				.newSetFromMap(new IdentityHashMap<>(lightRequests.size()));
+		for (final CounterRequest request : lightRequests) {
+			if (dayCounter != counter) {
+				// les hits de la dernière période ne seront pas collectés dans le jour,
+				// on les y compte aussi dans "autres" (seulement le delta depuis la collecte
+				// précédente, les hits antérieurs ayant déjà été ajoutés au jour)
+				final CounterRequest lastPeriodRequest = getLastPeriodRequest(request,
+						firstCollectDoneForCounter);
+				if (lastPeriodRequest != null && lastPeriodRequest.getHits() > 0) {
+					dayCounter.addOtherRequest(lastPeriodRequest);
+				}
 			}
-		}
-		while (result.size() > maxRequestsCount && !result.isEmpty()) {
-			// cas extrême: si le nombre de requêtes est encore trop grand,
-			// on enlève n'importe quelle requête
-			final CounterRequest request = result.get(0);
 			removeRequest(counter, request);
-			result.remove(request);
+			removedRequests.add(request);
+			counter.addOtherRequest(request);
+		}
+		final List<CounterRequest> result = new ArrayList<>(maxRequestsCount);
+		for (final CounterRequest request : requests) {
+			if (!removedRequests.contains(request)) {
+				result.add(request);
+			}
 		}
 		return result;
 	}
 
+	private CounterRequest getLastPeriodRequest(CounterRequest newRequest,
+			boolean firstCollectDoneForCounter) {
+		final CounterRequest request = requestsById.get(newRequest.getId());
+		if (request != null) {
+			final CounterRequest lastPeriodRequest = newRequest.clone();
+			lastPeriodRequest.removeHits(request);
+			return lastPeriodRequest;
+		} else if (firstCollectDoneForCounter) {
+			// nouvelle requête depuis la collecte précédente
+			return newRequest;
+		}
+		// première collecte : les hits de la période "tout" ne sont pas ajoutés au jour
+		return null;
+	}
+
 	private void collectCounterRequestData(Counter dayCounter, CounterRequest newRequest,
 			boolean firstCollectDoneForCounter) throws IOException {
 		final String requestStorageId = newRequest.getId();
@@ -987,6 +1182,10 @@ public class Collector { // NOPMD
 			final List<CounterRequest> requests = counter.getRequests();
 			// on réinitialise le counter
 			counter.clear();
+			if (counter.getHttpPathTemplater() != null) {
+				// et les segments appris des chemins http, pour que de nouveaux soient appris
+				counter.getHttpPathTemplater().clear();
+			}
 			// et on purge les données correspondantes du collector utilisées pour les deltas
 			globalRequestsByCounter.remove(counter);
 			for (final CounterRequest request : requests) {
@@ -29,6 +29,8 @@ import net.bull.javamelody.Parameter;
 /**
  * Informations sur l'ouverture d'une connexion jdbc (heure et stack trace).
  * Cet état est celui d'une connexion à un instant t.
+ * Si la détection des fuites est active, la stack trace n'est pas capturée à l'ouverture,
+ * mais seulement pour une connexion encore ouverte au-delà du seuil (fuite suspectée).
  * Les instances sont sérialisables pour pouvoir être transmises au serveur de collecte.
  * @author Emeric Vernat
  */
@@ -41,12 +43,24 @@ public class ConnectionInformations implements Serializable {
 	private final long openingTime;
 	private final StackTraceElement[] openingStackTrace;
 	private final long threadId;
+	// stack trace actuelle du thread détenant la connexion, capturée quand la fuite est suspectée
+	// (ce n'est pas la stack trace de l'ouverture, qui est dans openingStackTrace)
+	private volatile StackTraceElement[] holdingThreadStackTrace;
+	private volatile boolean suspectedLeak;
 
 	public ConnectionInformations() {
+		this(!CONNECTIONS_STACK_TRACES_DISABLED);
+	}
+
+	/**
+	 * Constructeur.
+	 * @param openingStackTraceEnabled false pour ne conserver que l'heure et le thread, sans stack trace
+	 */
+	public ConnectionInformations(boolean openingStackTraceEnabled) {
 		super();
 		this.openingTime = System.currentTimeMillis();
 		final Thread currentThread = Thread.currentThread();
-		if (CONNECTIONS_STACK_TRACES_DISABLED) {
+		if (!openingStackTraceEnabled) {
 			this.openingStackTrace = null;
 		} else {
 			this.openingStackTrace = currentThread.getStackTrace();
@@ -82,10 +96,43 @@ public class ConnectionInformations implements Serializable {
 		return threadId;
 	}
 
+	/**
+	 * @param now Heure actuelle en millisecondes
+	 * @return Durée en millisecondes depuis l'ouverture de la connexion
+	 */
+	public long getOpenedMillis(long now) {
+		return now - openingTime;
+	}
+
+	public boolean isSuspectedLeak() {
+		return suspectedLeak;
+	}
+
+	/**
+	 * @return Stack trace du thread détenant la connexion au moment où la fuite a été suspectée,
+	 * et non stack trace de l'ouverture de la connexion
+	 */
+	public List<StackTraceElement> getHoldingThreadStackTrace() {
+		if (holdingThreadStackTrace == null) {
+			return Collections.emptyList();
+		}
+		return List.of(holdingThreadStackTrace);
+	}
+
+	/**
+	 * Marque la connexion comme fuite suspectée.
+	 * @param holdingThreadStackTrace Stack trace actuelle du thread détenant la connexion
+	 * (et non stack trace de l'ouverture), ou null si ce thread n'existe plus
+	 */
+	public void suspectLeak(StackTraceElement[] holdingThreadStackTrace) {
+		this.holdingThreadStackTrace = holdingThreadStackTrace;
+		this.suspectedLeak = true;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "[openingDate=" + getOpeningDate() + ", threadId="
-				+ getThreadId() + ']';
+				+ getThreadId() + ", suspectedLeak=" + isSuspectedLeak() + ']';
 	}
 }
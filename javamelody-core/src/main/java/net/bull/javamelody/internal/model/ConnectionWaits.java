@@ -0,0 +1,91 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Temps d'attente pour obtenir une connexion jdbc, par DataSource :
+ * durée des appels à getConnection des proxys de DataSource (ou de ConnectionManager
+ * pour JBoss et Glassfish), y compris en cas d'exception, par exemple si le pool de connexions
+ * est épuisé et que le timeout est atteint.
+ * <p>
+ * Les durées en nanosecondes sont comptées sans verrou par {@link DurationsRecorder},
+ * puis sont transmises au rapport et au serveur de collecte
+ * dans {@link DurationsInformations}.
+ * @author Emeric Vernat
+ */
+public final class ConnectionWaits {
+	/**
+	 * Nom de la courbe des temps moyens d'attente de connexions, toutes DataSources confondues.
+	 */
+	public static final String GRAPH_NAME = "connectionWaitTime";
+
+	// nombre maximum de DataSources pour éviter une éventuelle saturation mémoire
+	private static final int MAX_DATASOURCES = 100;
+
+	private static final Map<String, DurationsRecorder> RECORDERS_BY_DATASOURCE_NAME = new ConcurrentHashMap<>();
+
+	private ConnectionWaits() {
+		super();
+	}
+
+	/**
+	 * Ajoute un temps d'attente de connexion.
+	 * @param dataSourceName Nom de la DataSource
+	 * @param nanos Durée en nanosecondes
+	 */
+	public static void addWait(String dataSourceName, long nanos) {
+		assert dataSourceName != null;
+		DurationsRecorder recorder = RECORDERS_BY_DATASOURCE_NAME.get(dataSourceName);
+		if (recorder == null) {
+			if (RECORDERS_BY_DATASOURCE_NAME.size() >= MAX_DATASOURCES) {
+				return;
+			}
+			recorder = RECORDERS_BY_DATASOURCE_NAME.computeIfAbsent(dataSourceName,
+					key -> new DurationsRecorder());
+		}
+		recorder.add(nanos);
+	}
+
+	/**
+	 * Réinitialise les mesures.
+	 */
+	public static void clear() {
+		RECORDERS_BY_DATASOURCE_NAME.clear();
+	}
+
+	static List<DurationsInformations> buildConnectionWaitInformationsList() {
+		final List<DurationsInformations> result = new ArrayList<>(
+				RECORDERS_BY_DATASOURCE_NAME.size());
+		for (final Map.Entry<String, DurationsRecorder> entry : RECORDERS_BY_DATASOURCE_NAME
+				.entrySet()) {
+			final DurationsInformations informations = entry.getValue()
+					.buildInformations(entry.getKey());
+			if (informations != null) {
+				result.add(informations);
+			}
+		}
+		result.sort((informations1, informations2) -> informations1.getName()
+				.compareTo(informations2.getName()));
+		return result;
+	}
+}
@@ -20,20 +20,22 @@ package net.bull.javamelody.internal.model;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import net.bull.javamelody.SessionListener;
-import net.bull.javamelody.internal.common.LOG;
 
 /**
  * Données statistiques des requêtes pour un compteur nommé comme http ou sql.
@@ -110,13 +112,6 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	private static final Comparator<CounterRequest> COUNTER_REQUEST_BY_HITS_COMPARATOR = Comparator
 			.comparingLong(CounterRequest::getHits).reversed();
 
-	/**
-	 * Comparateur pour ordonner les erreurs par heures d'exécution croissantes.
-	 */
-	private static final Comparator<CounterError> COUNTER_ERROR_COMPARATOR = Comparator
-			.comparingLong(CounterError::getTime);
-
-	private static final String TRANSFORM_REPLACEMENT = "\\" + TRANSFORM_REPLACEMENT_CHAR;
 	private static final long serialVersionUID = 6759729262180992976L;
 
 	private String application;
@@ -130,19 +125,41 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	private final String childCounterName;
 	@SuppressWarnings("all")
 	private final ConcurrentMap<String, CounterRequest> requests = new ConcurrentHashMap<>();
+	// index des mêmes instances de CounterRequest par id, pour getCounterRequestById en O(1)
+	// (non sérialisé, il est reconstruit par readResolve après désérialisation)
+	private transient ConcurrentMap<String, CounterRequest> requestsById = new ConcurrentHashMap<>();
 	// note : même si rootCurrentContextsByThreadId n'est pas transient la map est normalement vide avant sérialisation
 	// (on garde en non transient pour ne pas avoir null après désérialisation ce qui pourrait donner des NPE)
 	@SuppressWarnings("all")
 	private final ConcurrentMap<Long, CounterRequestContext> rootCurrentContextsByThreadId = new ConcurrentHashMap<>();
+	// forme sérialisée des erreurs (remplie par clone et writeReplace, lue par readResolve),
+	// pour rester compatible avec les fichiers, le xml et le json des versions précédentes
 	private final LinkedList<CounterError> errors; // NOPMD
+	// erreurs à l'exécution, dans un tampon circulaire sans verrou
+	private transient CounterErrorRing errorRing;
 	private Date startDate = new Date();
 	private int maxRequestsCount = MAX_REQUESTS_COUNT;
+	// requêtes évincées au-delà de maxRequestsCount et regroupées dans "autres"
+	private long otherRequestsCount;
+	private long otherRequestsHits;
+	private long otherRequestsMaxHits;
 	private long estimatedMemorySize;
 	// Pour les contextes, on utilise un ThreadLocal et pas un InheritableThreadLocal
 	// puisque si on crée des threads alors la requête parente peut se terminer avant les threads
 	// et le contexte serait incomplet.
 	private final transient ThreadLocal<CounterRequestContext> contextThreadLocal;
-	private transient Pattern requestTransformPattern;
+	private transient RequestTransformCache requestTransformCache;
+	private transient boolean striped;
+	// mode tampon (setBuffered) : tampons par thread des hits en attente et ensemble de tous les tampons
+	private transient boolean buffered;
+	private transient ThreadLocal<CounterRequestBuffer> requestBufferThreadLocal;
+	private transient Set<CounterRequestBuffer> requestBuffers;
+	private transient boolean sqlFingerprint;
+	private transient HttpPathTemplater httpPathTemplater;
+	// cache des ids des requêtes de ce counter (non sérialisé, recréé par readResolve)
+	private transient CounterRequestIds requestIds;
+	// nombre d'exécutions d'une même requête sql fille au-delà duquel un N+1 est suspecté (0 sinon)
+	private transient int nPlusOneThreshold;
 
 	/**
 	 * Comparateur pour ordonner les requêtes en cours par durées écoulées décroissantes.
@@ -208,8 +225,10 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		this.iconName = iconName;
 		this.childCounterName = childCounterName;
 		this.contextThreadLocal = contextThreadLocal;
+		this.requestIds = new CounterRequestIds(name);
 		if (errorCounter) {
 			this.errors = new LinkedList<>();
+			this.errorRing = new CounterErrorRing(MAX_ERRORS_COUNT);
 		} else {
 			this.errors = null;
 		}
@@ -330,7 +349,10 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	 * @return Pattern
 	 */
 	Pattern getRequestTransformPattern() {
-		return requestTransformPattern;
+		if (requestTransformCache == null) {
+			return null;
+		}
+		return requestTransformCache.getPattern();
 	}
 
 	/**
@@ -339,7 +361,117 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	 * @param requestTransformPattern Pattern
 	 */
 	public void setRequestTransformPattern(Pattern requestTransformPattern) {
-		this.requestTransformPattern = requestTransformPattern;
+		if (requestTransformPattern == null) {
+			this.requestTransformCache = null;
+		} else {
+			this.requestTransformCache = new RequestTransformCache(requestTransformPattern);
+		}
+	}
+
+	/**
+	 * Retourne le cache des noms de requêtes transformés par l'expression régulière
+	 * *-transform-pattern, avec ses statistiques (peut être null).
+	 * @return RequestTransformCache
+	 */
+	public RequestTransformCache getRequestTransformCache() {
+		return requestTransformCache;
+	}
+
+	/**
+	 * Retourne true si les hits de ce counter sont ajoutés dans des cellules striées par thread
+	 * plutôt qu'en synchronisant sur chaque requête.
+	 * @return boolean
+	 */
+	boolean isStriped() {
+		return striped;
+	}
+
+	/**
+	 * Définit si les hits de ce counter sont ajoutés dans des cellules striées par thread
+	 * (pour réduire la contention sur les requêtes très fréquentes avec beaucoup de coeurs).
+	 * @param striped boolean
+	 */
+	public void setStriped(boolean striped) {
+		this.striped = striped;
+	}
+
+	/**
+	 * Retourne true si les hits de ce counter sont ajoutés dans des tampons par thread,
+	 * reportés dans le counter lors de la collecte ou d'un rapport.
+	 * @return boolean
+	 */
+	boolean isBuffered() {
+		return buffered;
+	}
+
+	/**
+	 * Définit si les hits de ce counter sont ajoutés dans des tampons par thread
+	 * (sans aucune écriture partagée entre les threads pour les requêtes très fréquentes),
+	 * reportés dans le counter lors de la collecte, d'un rapport ou lorsqu'un tampon est plein.
+	 * @param buffered boolean
+	 */
+	public void setBuffered(boolean buffered) {
+		if (buffered && requestBuffers == null) {
+			requestBufferThreadLocal = new ThreadLocal<>();
+			requestBuffers = ConcurrentHashMap.newKeySet();
+		}
+		this.buffered = buffered;
+		if (!buffered) {
+			flushRequestBuffers();
+		}
+	}
+
+	/**
+	 * Retourne true si les requêtes de ce counter sont agrégées par leurs empreintes sql
+	 * (valeurs littérales remplacées par ?).
+	 * @return boolean
+	 */
+	boolean isSqlFingerprint() {
+		return sqlFingerprint;
+	}
+
+	/**
+	 * Définit si les requêtes de ce counter sont agrégées par leurs empreintes sql
+	 * (valeurs littérales remplacées par ?, cf {@link SqlFingerprinter}),
+	 * en conservant un exemple de requête brute par empreinte.
+	 * @param sqlFingerprint boolean
+	 */
+	public void setSqlFingerprint(boolean sqlFingerprint) {
+		this.sqlFingerprint = sqlFingerprint;
+	}
+
+	HttpPathTemplater getHttpPathTemplater() {
+		return httpPathTemplater;
+	}
+
+	/**
+	 * Définit l'agrégation des requêtes http de ce counter par les gabarits de leurs chemins
+	 * (identifiants remplacés par $, cf {@link HttpPathTemplater}),
+	 * en conservant un exemple de requête brute par gabarit.
+	 * @param httpPathTemplater HttpPathTemplater ou null
+	 */
+	public void setHttpPathTemplater(HttpPathTemplater httpPathTemplater) {
+		this.httpPathTemplater = httpPathTemplater;
+	}
+
+	/**
+	 * Retourne le nombre d'exécutions d'une même requête sql fille dans une exécution d'une requête
+	 * de ce counter au-delà duquel un N+1 est suspecté, ou 0 si la détection n'est pas active.
+	 * @return int
+	 */
+	int getNPlusOneThreshold() {
+		return nPlusOneThreshold;
+	}
+
+	/**
+	 * Définit le nombre d'exécutions d'une même requête sql fille dans une exécution d'une requête
+	 * de ce counter (http ou spring par exemple) au-delà duquel un N+1 est suspecté,
+	 * 0 pour ne pas détecter les N+1.
+	 * @param nPlusOneThreshold int
+	 */
+	public void setNPlusOneThreshold(int nPlusOneThreshold) {
+		assert nPlusOneThreshold >= 0;
+		this.nPlusOneThreshold = nPlusOneThreshold;
 	}
 
 	/**
@@ -359,6 +491,45 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		this.maxRequestsCount = maxRequestsCount;
 	}
 
+	/**
+	 * Retourne le nombre de requêtes évincées car le nombre maximum de requêtes était atteint,
+	 * et regroupées dans "autres".
+	 * @return long
+	 */
+	public long getOtherRequestsCount() {
+		return otherRequestsCount;
+	}
+
+	/**
+	 * Retourne le nombre de hits des requêtes regroupées dans "autres".
+	 * @return long
+	 */
+	public long getOtherRequestsHits() {
+		return otherRequestsHits;
+	}
+
+	/**
+	 * Retourne le nombre maximum de hits d'une requête regroupée dans "autres",
+	 * c'est-à-dire l'erreur maximum sur les hits d'une requête conservée qui aurait été évincée auparavant.
+	 * @return long
+	 */
+	public long getOtherRequestsMaxHits() {
+		return otherRequestsMaxHits;
+	}
+
+	void addOtherRequest(CounterRequest request) {
+		final long hits = request.getHits();
+		otherRequestsCount++;
+		otherRequestsHits += hits;
+		otherRequestsMaxHits = Math.max(otherRequestsMaxHits, hits);
+	}
+
+	private void addOtherRequests(Counter counter) {
+		otherRequestsCount += counter.otherRequestsCount;
+		otherRequestsHits += counter.otherRequestsHits;
+		otherRequestsMaxHits = Math.max(otherRequestsMaxHits, counter.otherRequestsMaxHits);
+	}
+
 	/**
 	 * Retourne l'estimation pessimiste de l'occupation mémoire de counter
 	 * (c'est-à-dire la dernière taille sérialisée non compressée de ce counter)
@@ -395,9 +566,17 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		// completeRequestName est la même chose éventuellement complétée
 		// pour cette requête à destination de l'affichage dans les requêtes courantes
 		// (sinon mettre 2 fois la même chose)
-		final CounterRequestContext context = new CounterRequestContext(this,
-				contextThreadLocal.get(), requestName, completeRequestName, httpRequest, remoteUser,
-				startCpuTime, startAllocatedBytes, sessionId);
+		final CounterRequestContext parentContext = contextThreadLocal.get();
+		final CounterRequestContext context;
+		if (parentContext != null && httpRequest == null) {
+			// contexte fils (requête sql par exemple) : réutilisé sans allocation si possible
+			context = parentContext.getOrCreateChildContext(this, requestName,
+					completeRequestName, startCpuTime, startAllocatedBytes);
+		} else {
+			context = new CounterRequestContext(this, parentContext, requestName,
+					completeRequestName, httpRequest, remoteUser, startCpuTime,
+					startAllocatedBytes, sessionId);
+		}
 		contextThreadLocal.set(context);
 		if (context.getParentContext() == null) {
 			rootCurrentContextsByThreadId.put(context.getThreadId(), context);
@@ -412,6 +591,33 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		}
 	}
 
+	/**
+	 * @return Contexte de requête lié au thread courant, ou null s'il n'y en a pas
+	 */
+	public CounterRequestContext getBoundContext() {
+		return contextThreadLocal.get();
+	}
+
+	/**
+	 * Lie au thread courant un contexte de requête existant, par exemple pour continuer
+	 * une requête http asynchrone sur un autre thread que celui qui l'a commencée.
+	 * Les requêtes filles (sql) exécutées ensuite sur ce thread sont ajoutées à ce contexte.
+	 * @param context Contexte de requête, ou null pour délier le contexte courant
+	 */
+	public void rebindContext(CounterRequestContext context) {
+		if (context == null) {
+			unbindContext();
+			return;
+		}
+		contextThreadLocal.set(context);
+		// la requête n'est dans les requêtes courantes que sur le thread qui l'a commencée
+		// (et pas pour un contexte dérivé pour une tâche sur un autre thread)
+		if (context.getParentContext() == null && !context.isForkedContext()
+				&& context.getThreadId() == Thread.currentThread().getId()) {
+			rootCurrentContextsByThreadId.put(context.getThreadId(), context);
+		}
+	}
+
 	public void addRequestForCurrentContext(boolean systemError) {
 		final CounterRequestContext context = contextThreadLocal.get();
 		if (context != null) {
@@ -442,8 +648,9 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 				responseSize);
 	}
 
-	private void addRequest(String requestName, long duration, int cpuTime, int allocatedKBytes,
-			boolean systemError, String systemErrorStackTrace, long responseSize) {
+	private CounterRequest addRequest(String requestName, long duration, int cpuTime,
+			int allocatedKBytes, boolean systemError, String systemErrorStackTrace,
+			long responseSize) {
 		// la méthode addRequest n'est pas synchronisée pour ne pas avoir
 		// de synchronisation globale à l'application sur cette instance d'objet
 		// ce qui pourrait faire une contention et des ralentissements,
@@ -458,22 +665,20 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		final String aggregateRequestName = getAggregateRequestName(requestName);
 
 		final CounterRequestContext context = contextThreadLocal.get();
-		final CounterRequest request = getCounterRequestInternal(aggregateRequestName);
-		synchronized (request) {
-			// on synchronise par l'objet request pour éviter de mélanger des ajouts de hits
-			// concurrents entre plusieurs threads pour le même type de requête.
-			// Rq : on pourrait remplacer ce bloc synchronized par un synchronized
-			// sur les méthodes addHit et addChildHits dans la classe CounterRequest.
-			request.addHit(duration, cpuTime, allocatedKBytes, systemError, systemErrorStackTrace,
-					responseSize);
-
-			if (context != null) {
-				// on ajoute dans la requête parente toutes les requêtes filles du contexte
-				if (context.getParentCounter() == this) {
-					request.addChildHits(context);
-				}
-				request.addChildRequests(context.getChildRequestsExecutionsByRequestId());
-			}
+		if (context != null && context.getParentCounter() == this) {
+			// requêtes filles des tâches déjà terminées sur d'autres threads (executor...)
+			context.joinForkedChildRequests();
+		}
+		final CounterRequest request;
+		if (buffered && systemErrorStackTrace == null) {
+			// mode tampon : le hit est ajouté dans une requête en attente du tampon de ce thread,
+			// sans écriture partagée, et sera reporté dans le counter à la prochaine lecture
+			request = addBufferedHit(requestName, aggregateRequestName, duration, cpuTime,
+					allocatedKBytes, systemError, responseSize, context);
+		} else {
+			request = getCounterRequestInternal(aggregateRequestName);
+			addHit(request, requestName, aggregateRequestName, duration, cpuTime,
+					allocatedKBytes, systemError, systemErrorStackTrace, responseSize, context);
 		}
 		// perf: on fait le reste hors du synchronized sur request
 		if (context != null) {
@@ -500,13 +705,133 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		}
 		if (systemErrorStackTrace != null) {
 			assert errorCounter;
-			synchronized (errors) {
-				errors.addLast(new CounterError(requestName, systemErrorStackTrace));
-				if (errors.size() > MAX_ERRORS_COUNT) {
-					errors.removeFirst();
+			errorRing.add(new CounterError(requestName, systemErrorStackTrace));
+		}
+		// requête du counter, ou requête en attente dans le tampon de ce thread en mode tampon
+		return request;
+	}
+
+	// CHECKSTYLE:OFF
+	private void addHit(CounterRequest request, String requestName, String aggregateRequestName,
+			long duration, int cpuTime, int allocatedKBytes, boolean systemError,
+			String systemErrorStackTrace, long responseSize, CounterRequestContext context) {
+		// CHECKSTYLE:ON
+		setSampleName(request, requestName, aggregateRequestName);
+		if (striped && systemErrorStackTrace == null) {
+			// mode strié : pas de synchronisation sur request pour le hit,
+			// chaque thread ajoute dans sa cellule et les cellules sont reportées dans request
+			// lors des copies par getRequests() (rapport ou collecte)
+			request.addStripedHit(duration, cpuTime, allocatedKBytes, systemError, responseSize);
+			if (context != null && hasChildHitsOrRequests(context)) {
+				synchronized (request) {
+					addChildHitsAndRequests(request, context);
 				}
 			}
+		} else {
+			synchronized (request) {
+				// on synchronise par l'objet request pour éviter de mélanger des ajouts de hits
+				// concurrents entre plusieurs threads pour le même type de requête.
+				// Rq : on pourrait remplacer ce bloc synchronized par un synchronized
+				// sur les méthodes addHit et addChildHits dans la classe CounterRequest.
+				request.addHit(duration, cpuTime, allocatedKBytes, systemError,
+						systemErrorStackTrace, responseSize);
+
+				if (context != null) {
+					addChildHitsAndRequests(request, context);
+				}
+			}
+		}
+	}
+
+	// CHECKSTYLE:OFF
+	private CounterRequest addBufferedHit(String requestName, String aggregateRequestName,
+			long duration, int cpuTime, int allocatedKBytes, boolean systemError,
+			long responseSize, CounterRequestContext context) {
+		// CHECKSTYLE:ON
+		final CounterRequestBuffer buffer = getRequestBuffer();
+		final CounterRequest pendingRequest;
+		final boolean full;
+		// pas de contention : seul ce thread synchronise sur son tampon, sauf lors d'un report
+		synchronized (buffer) {
+			pendingRequest = buffer.getPendingRequest(aggregateRequestName, requestIds);
+			setSampleName(pendingRequest, requestName, aggregateRequestName);
+			pendingRequest.addHit(duration, cpuTime, allocatedKBytes, systemError, null,
+					responseSize);
+			if (context != null) {
+				addChildHitsAndRequests(pendingRequest, context);
+			}
+			full = buffer.isFull();
 		}
+		if (full) {
+			// tampon borné : report synchrone par ce thread
+			flushRequestBuffer(buffer);
+		}
+		// la requête en attente a le même nom et donc le même id que celle du counter
+		return pendingRequest;
+	}
+
+	private CounterRequestBuffer getRequestBuffer() {
+		CounterRequestBuffer buffer = requestBufferThreadLocal.get();
+		if (buffer == null) {
+			buffer = new CounterRequestBuffer(Thread.currentThread());
+			requestBufferThreadLocal.set(buffer);
+			requestBuffers.add(buffer);
+		}
+		return buffer;
+	}
+
+	private void flushRequestBuffer(CounterRequestBuffer buffer) {
+		synchronized (buffer) {
+			for (final CounterRequest pendingRequest : buffer.getPendingRequests()) {
+				final CounterRequest request = getCounterRequestInternal(pendingRequest.getName());
+				synchronized (request) {
+					request.addHits(pendingRequest);
+				}
+			}
+			buffer.clear();
+		}
+	}
+
+	private void flushRequestBuffers() {
+		// reporte dans le counter les hits en attente dans les tampons de tous les threads
+		// (avant la collecte ou un rapport)
+		if (requestBuffers != null) {
+			for (final CounterRequestBuffer buffer : requestBuffers) {
+				flushRequestBuffer(buffer);
+				if (!buffer.isThreadAlive()) {
+					// le thread est terminé et son tampon est vide, on l'oublie
+					requestBuffers.remove(buffer);
+				}
+			}
+		}
+	}
+
+	private void setSampleName(CounterRequest request, String requestName,
+			String aggregateRequestName) {
+		if ((sqlFingerprint || httpPathTemplater != null) && request.getSampleName() == null
+				&& !aggregateRequestName.equals(requestName)) {
+			// un seul exemple de requête brute est conservé par empreinte ou par gabarit,
+			// sans synchronisation car n'importe quel exemple convient
+			request.setSampleName(requestName);
+		}
+	}
+
+	private boolean hasChildHitsOrRequests(CounterRequestContext context) {
+		return (context.getParentCounter() == this && context.getChildHits() > 0)
+				|| context.hasChildRequests();
+	}
+
+	private void addChildHitsAndRequests(CounterRequest request, CounterRequestContext context) {
+		// on ajoute dans la requête parente toutes les requêtes filles du contexte
+		if (context.getParentCounter() == this) {
+			request.addChildHits(context);
+			if (nPlusOneThreshold > 0) {
+				// les requêtes sql filles de cette exécution sont connues à la fin de la requête
+				request.addNPlusOnes(context.getChildRequestsExecutions(), nPlusOneThreshold,
+						context.getCompleteRequestName());
+			}
+		}
+		request.addChildRequests(context.getChildRequestsExecutions());
 	}
 
 	public void addRequestForSystemError(String requestName, long duration, int cpuTime,
@@ -514,7 +839,7 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		// comme la méthode addRequest, cette méthode n'est pas synchronisée pour ne pas avoir
 		// de synchronisation globale à l'application sur cette instance d'objet
 		// ce qui pourrait faire une contention et des ralentissements,
-		// par contre on synchronise request et errors
+		// par contre on synchronise request (et le tampon des erreurs est sans verrou)
 		assert requestName != null;
 		assert duration >= -1; // -1 pour le counter de log
 		assert cpuTime >= -1;
@@ -529,12 +854,133 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		synchronized (request) {
 			request.addHit(duration, cpuTime, allocatedKBytes, true, stackTrace, -1);
 		}
-		synchronized (errors) {
-			errors.addLast(new CounterError(requestName, stackTrace));
-			if (errors.size() > MAX_ERRORS_COUNT) {
-				errors.removeFirst();
+		errorRing.add(new CounterError(requestName, stackTrace));
+	}
+
+	/**
+	 * Ajoute les lignes lues et le temps de lecture d'un ResultSet à la requête sql
+	 * qui l'a produit, et le temps de lecture aux temps sql de la requête parente (http) en cours.
+	 * @param aggregateRequestName Nom agrégé de la requête sql selon
+	 * {@link #getAggregateRequestName(String)}, résolu une fois à la création du ResultSet
+	 * @param rows Nombre de lignes lues
+	 * @param fetchNanos Temps de lecture en ns
+	 */
+	public void addFetchHit(String aggregateRequestName, long rows, long fetchNanos) {
+		assert rows >= 0;
+		assert fetchNanos >= 0;
+		if (!buffered || !addBufferedFetchHit(aggregateRequestName, rows, fetchNanos)) {
+			// la requête a déjà été ajoutée lors de son exécution, sauf si elle a été ignorée
+			final CounterRequest request = requests.get(aggregateRequestName);
+			if (request != null) {
+				synchronized (request) {
+					request.addFetchHit(rows, fetchNanos);
+				}
+			}
+		}
+		final CounterRequestContext context = contextThreadLocal.get();
+		if (context != null) {
+			context.addChildFetch(this, fetchNanos);
+		}
+	}
+
+	private boolean addBufferedFetchHit(String aggregateRequestName, long rows, long fetchNanos) {
+		// mode tampon : la requête exécutée par ce thread est encore dans son tampon,
+		// sauf si le tampon a été reporté depuis dans les requêtes du counter
+		final CounterRequestBuffer buffer = getRequestBuffer();
+		synchronized (buffer) {
+			final CounterRequest pendingRequest = buffer
+					.getExistingPendingRequest(aggregateRequestName);
+			if (pendingRequest == null) {
+				return false;
 			}
+			pendingRequest.addFetchHit(rows, fetchNanos);
+			return true;
+		}
+	}
+
+	/**
+	 * Ajoute le hit d'une requête sql (comme addRequest), puis conserve son exécution
+	 * si elle fait partie des plus lentes de cette requête,
+	 * avec le nom de la requête parente (http par exemple).
+	 * Les valeurs des paramètres ne sont formatées que si l'exécution est conservée.
+	 * @param requestName Nom de la requête
+	 * @param startTime Date de début de l'exécution en millisecondes
+	 * @param duration Durée de l'exécution en millisecondes
+	 * @param systemError Si erreur système
+	 * @param maxSize Nombre maximum d'exécutions conservées par requête
+	 * @param parameters Valeurs des paramètres (index 1 à n comme en jdbc), ou null
+	 * @param parametersMasked true pour ne conserver que le type des valeurs des paramètres
+	 */
+	// CHECKSTYLE:OFF
+	public void addRequestWithSlowExecution(String requestName, long startTime, long duration,
+			boolean systemError, int maxSize, Object[] parameters, boolean parametersMasked) {
+		// CHECKSTYLE:ON
+		assert maxSize > 0;
+		// le nom agrégé n'est calculé qu'une fois, par addRequest qui retourne la requête
+		final CounterRequest request = addRequest(requestName, duration, -1, -1, systemError,
+				null, -1);
+		if (buffered) {
+			// mode tampon : l'exécution est ajoutée dans la requête en attente de ce thread,
+			// sauf si le tampon a été reporté depuis dans les requêtes du counter
+			final CounterRequestBuffer buffer = getRequestBuffer();
+			synchronized (buffer) {
+				if (buffer.getExistingPendingRequest(request.getName()) == request) {
+					final CounterRequestSlowExecution execution = createSlowExecution(request,
+							startTime, duration, parameters, parametersMasked);
+					if (execution != null) {
+						request.addSlowExecution(execution, maxSize);
+					}
+					return;
+				}
+			}
+			// requête du counter, sauf s'il a été vidé entre temps
+			final CounterRequest flushedRequest = requests.get(request.getName());
+			if (flushedRequest != null) {
+				addSlowExecution(flushedRequest, startTime, duration, maxSize, parameters,
+						parametersMasked);
+			}
+		} else {
+			addSlowExecution(request, startTime, duration, maxSize, parameters,
+					parametersMasked);
+		}
+	}
+
+	// CHECKSTYLE:OFF
+	private void addSlowExecution(CounterRequest request, long startTime, long duration,
+			int maxSize, Object[] parameters, boolean parametersMasked) {
+		// CHECKSTYLE:ON
+		final CounterRequestSlowExecution execution = createSlowExecution(request, startTime,
+				duration, parameters, parametersMasked);
+		if (execution != null) {
+			synchronized (request) {
+				request.addSlowExecution(execution, maxSize);
+			}
+		}
+	}
+
+	private CounterRequestSlowExecution createSlowExecution(CounterRequest request,
+			long startTime, long duration, Object[] parameters, boolean parametersMasked) {
+		if (!request.isSlowestExecution(duration)) {
+			return null;
+		}
+		return new CounterRequestSlowExecution(startTime, duration, getRootContextRequestName(),
+				CounterRequestSlowExecution.formatParameters(parameters, parametersMasked));
+	}
+
+	/**
+	 * @return Nom de la requête racine (http par exemple) du contexte courant de ce thread,
+	 * ou null s'il n'y en a pas
+	 */
+	public String getRootContextRequestName() {
+		// après addRequest, le contexte courant est celui de la requête parente s'il y en a une
+		CounterRequestContext context = contextThreadLocal.get();
+		if (context == null) {
+			return null;
+		}
+		while (context.getParentContext() != null) {
+			context = context.getParentContext();
 		}
+		return context.getRequestName();
 	}
 
 	public void addRumHit(String requestName, long networkTime, long domProcessing,
@@ -587,29 +1033,34 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	}
 
 	public boolean isRequestIdFromThisCounter(String requestId) {
-		// cela marche car requestId commence par counter.getName() selon CounterRequest.buildId
+		// cela marche car requestId commence par counter.getName() selon CounterRequestIds.buildId
 		return requestId.startsWith(getName());
 	}
 
-	private String getAggregateRequestName(String requestName) {
-		final String aggregateRequestName;
-		if (requestTransformPattern == null) {
-			aggregateRequestName = requestName;
+	/**
+	 * Retourne le nom agrégé d'une requête, selon l'empreinte sql, le gabarit du chemin http
+	 * et le paramètre *-transform-pattern de ce counter.
+	 * @param requestName Nom de la requête
+	 * @return String
+	 */
+	public String getAggregateRequestName(String requestName) {
+		final String name;
+		if (sqlFingerprint) {
+			// empreinte sql en une passe, sans expression régulière
+			name = SqlFingerprinter.fingerprint(requestName);
+		} else if (httpPathTemplater != null) {
+			// gabarit du chemin http en une passe, sans expression régulière
+			name = httpPathTemplater.template(requestName);
 		} else {
-			// ce pattern optionnel permet de transformer la description de la requête
-			// pour supprimer des parties variables (identifiant d'objet par exemple)
-			// et pour permettre l'agrégation sur cette requête
-			final Matcher matcher = requestTransformPattern.matcher(requestName);
-			try {
-				aggregateRequestName = matcher.replaceAll(TRANSFORM_REPLACEMENT);
-			} catch (final StackOverflowError e) {
-				// regexp can throw StackOverflowError for (A|B)*
-				// see https://github.com/javamelody/javamelody/issues/480
-				LOG.warn(e.toString(), e);
-				return requestName;
-			}
+			name = requestName;
+		}
+		// le cache optionnel des noms transformés par *-transform-pattern
+		// évite d'exécuter l'expression régulière à chaque hit
+		final RequestTransformCache cache = requestTransformCache;
+		if (cache == null) {
+			return name;
 		}
-		return aggregateRequestName;
+		return cache.transform(name);
 	}
 
 	void addRequestsAndErrors(Counter newCounter) {
@@ -630,24 +1081,22 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 			}
 		}
 
-		int size = requests.size();
+		addOtherRequests(newCounter);
+		final int size = requests.size();
 		final int maxRequests = getMaxRequestsCount();
 		if (size > maxRequests) {
 			// Si le nombre de requêtes est supérieur à 10000 (sql non bindé par ex.),
 			// on essaye ici d'éviter de saturer la mémoire (et le disque dur)
-			// avec toutes ces requêtes différentes en éliminant celles ayant moins de 10 hits.
+			// avec toutes ces requêtes différentes en éliminant celles ayant le moins de hits,
+			// parmi celles ayant moins de 10 hits, et en les regroupant dans "autres".
 			// (utile pour une agrégation par année dans PeriodCounterFactory par ex.)
 			// Mais inutile de le faire dans d'autres méthodes de Counter
 			// car ce serait mauvais pour les perfs, cela ne laisserait aucune chance
 			// à une nouvelle requête et car cela sera fait par la classe collector
-			for (final CounterRequest request : requests.values()) {
-				if (request.getHits() < 10) {
-					removeRequest(request.getName());
-					size--;
-					if (size <= maxRequests) {
-						break;
-					}
-				}
+			for (final CounterRequest request : HeavyHitters
+					.getLightestRequests(requests.values(), size - maxRequests, 10)) {
+				removeRequest(request.getName());
+				addOtherRequest(request);
 			}
 		}
 
@@ -672,28 +1121,22 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		if (counterErrorList.isEmpty()) {
 			return;
 		}
-		synchronized (errors) {
-			if (!errors.isEmpty() && errors.get(0).getTime() > counterErrorList.get(0).getTime()) {
-				// tant que faire se peut on les met à peu près dans l'ordre pour le sort ci après
-				errors.addAll(0, counterErrorList);
-			} else {
-				errors.addAll(counterErrorList);
-			}
-			if (errors.size() > 1) {
-				// "sort" a les mêmes performances sur LinkedList que sur ArrayList car il y a un tableau intermédiaire
-				// (selon Implementation Patterns, Kent Beck)
-				errors.sort(COUNTER_ERROR_COMPARATOR);
-
-				while (errors.size() > MAX_ERRORS_COUNT) {
-					errors.removeFirst();
-				}
-			}
-		}
+		// les listes d'erreurs sont triées par date croissante :
+		// insertion ordonnée sans tri, en gardant les plus récentes
+		errorRing.addAll(counterErrorList);
 	}
 
 	void removeRequest(String requestName) {
 		assert requestName != null;
-		requests.remove(requestName);
+		final CounterRequest removedRequest = requests.remove(requestName);
+		if (removedRequest != null) {
+			requestsById.remove(removedRequest.getId(), removedRequest);
+		}
+	}
+
+	private void putRequest(CounterRequest request) {
+		requests.put(request.getName(), request);
+		requestsById.put(request.getId(), request);
 	}
 
 	/**
@@ -717,9 +1160,16 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		// son état peut donc être lu sans synchronisation
 		// mais toute modification de cet état ne sera pas conservée
 		final String aggregateRequestName = getAggregateRequestName(requestName);
+		flushRequestBuffers();
 		final CounterRequest request = getCounterRequestInternal(aggregateRequestName,
 				saveRequestIfAbsent);
+		return cloneRequest(request);
+	}
+
+	private static CounterRequest cloneRequest(CounterRequest request) {
 		synchronized (request) {
+			// les éventuels hits des cellules striées sont reportés avant la copie
+			request.flushStripedHits();
 			return request.clone();
 		}
 	}
@@ -732,11 +1182,13 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 			boolean saveRequestIfAbsent) {
 		CounterRequest request = requests.get(requestName);
 		if (request == null) {
-			request = new CounterRequest(requestName, getName());
+			request = new CounterRequest(requestName, requestIds, saveRequestIfAbsent);
 			if (saveRequestIfAbsent) {
 				// putIfAbsent a l'avantage d'être garanti atomique, même si ce n'est pas indispensable
 				final CounterRequest precedentRequest = requests.putIfAbsent(requestName, request);
-				if (precedentRequest != null) {
+				if (precedentRequest == null) {
+					requestsById.put(request.getId(), request);
+				} else {
 					request = precedentRequest;
 				}
 			}
@@ -751,22 +1203,42 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	 */
 	public CounterRequest getCounterRequestById(String requestId) {
 		if (isRequestIdFromThisCounter(requestId)) {
-			for (final CounterRequest request : requests.values()) {
-				if (request.getId().equals(requestId)) {
-					synchronized (request) {
-						return request.clone();
-					}
-				}
+			flushRequestBuffers();
+			final CounterRequest request = requestsById.get(requestId);
+			if (request != null) {
+				return cloneRequest(request);
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Retourne les objets {@link CounterRequest} de ce counter correspondant aux ids en paramètre,
+	 * par exemple les ids des requêtes filles d'une requête pour le drill-down.
+	 * Les ids non trouvés dans ce counter sont ignorés.
+	 * @param requestIds Ids des requêtes
+	 * @return Map des requêtes par id, dans l'ordre des ids en paramètre
+	 */
+	public Map<String, CounterRequest> getCounterRequestsByIds(Collection<String> requestIds) {
+		final Map<String, CounterRequest> result = new LinkedHashMap<>();
+		flushRequestBuffers();
+		for (final String requestId : requestIds) {
+			if (isRequestIdFromThisCounter(requestId)) {
+				final CounterRequest request = requestsById.get(requestId);
+				if (request != null) {
+					result.put(requestId, cloneRequest(request));
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Retourne le nombre de requêtes dans ce counter.
 	 * @return int
 	 */
 	public int getRequestsCount() {
+		flushRequestBuffers();
 		return requests.size();
 	}
 
@@ -780,12 +1252,12 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		// de manière à ce que l'appelant n'ai pas à se préoccuper des synchronisations nécessaires
 		// Rq : l'Iterator sur ConcurrentHashMap.values() est garanti ne pas lancer ConcurrentModificationException
 		// même s'il y a des ajouts concurrents
+		// (en mode tampon, les hits en attente dans les tampons des threads sont d'abord reportés)
+		flushRequestBuffers();
 		final List<CounterRequest> result = new ArrayList<>(requests.size());
 		for (final CounterRequest request : requests.values()) {
 			// on synchronize sur request en cas d'ajout en parallèle d'un hit sur cette request
-			synchronized (request) {
-				result.add(request.clone());
-			}
+			result.add(cloneRequest(request));
 		}
 		return result;
 	}
@@ -836,12 +1308,10 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	 * 	la liste et ses objets peuvent être utilisés sans synchronized et sans crainte d'accès concurrents.
 	 */
 	public List<CounterError> getErrors() {
-		if (errors == null) {
+		if (errorRing == null) {
 			return Collections.emptyList();
 		}
-		synchronized (errors) {
-			return new ArrayList<>(errors);
-		}
+		return errorRing.getErrors();
 	}
 
 	/**
@@ -849,12 +1319,10 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	 * @return int
 	 */
 	public int getErrorsCount() {
-		if (errors == null) {
+		if (errorRing == null) {
 			return 0;
 		}
-		synchronized (errors) {
-			return errors.size();
-		}
+		return errorRing.size();
 	}
 
 	/**
@@ -863,12 +1331,21 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 	 * par exemple dans le serveur de collecte (#871).
 	 */
 	public void clear() {
-		requests.clear();
-		if (errors != null) {
-			synchronized (errors) {
-				errors.clear();
+		if (requestBuffers != null) {
+			for (final CounterRequestBuffer buffer : requestBuffers) {
+				synchronized (buffer) {
+					buffer.clear();
+				}
 			}
 		}
+		requests.clear();
+		requestsById.clear();
+		if (errorRing != null) {
+			errorRing.clear();
+		}
+		otherRequestsCount = 0;
+		otherRequestsHits = 0;
+		otherRequestsMaxHits = 0;
 		startDate = new Date();
 	}
 
@@ -882,8 +1359,17 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		clone.application = getApplication();
 		clone.startDate = getStartDate();
 		clone.maxRequestsCount = getMaxRequestsCount();
+		clone.addOtherRequests(this);
 		clone.displayed = isDisplayed();
-		clone.requestTransformPattern = getRequestTransformPattern();
+		// le cache des noms transformés est partagé avec le clone, comme l'était le pattern
+		clone.requestTransformCache = getRequestTransformCache();
+		clone.striped = isStriped();
+		clone.sqlFingerprint = isSqlFingerprint();
+		clone.httpPathTemplater = getHttpPathTemplater();
+		clone.nPlusOneThreshold = getNPlusOneThreshold();
+		// le clone a ses propres tampons, vides : les hits en attente de ce counter
+		// sont reportés dans ses requêtes par getRequests() avant d'être copiés dans le clone
+		clone.setBuffered(isBuffered());
 		// on ne copie pas rootCurrentContextsByThreadId car on ne fournit pas les requêtes en cours
 		// qui sont très rapidement obsolètes au serveur de collecte (et sinon cela poserait la question
 		// des clones de parentCounter, de l'agrégation, de la synchro d'horloge pour la durée
@@ -891,10 +1377,13 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		// et on ne copie pas contextThreadLocal,
 		// et la méthode getRequests() clone les instances de CounterRequest
 		for (final CounterRequest request : getRequests()) {
-			clone.requests.put(request.getName(), request);
+			clone.putRequest(request);
 		}
-		if (errors != null) {
-			clone.errors.addAll(getErrors());
+		if (errorRing != null) {
+			final List<CounterError> counterErrors = getErrors();
+			clone.errorRing.addAll(counterErrors);
+			// le clone peut être sérialisé par json sans writeReplace
+			clone.errors.addAll(counterErrors);
 		}
 		return clone;
 	}
@@ -921,13 +1410,17 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		if (counter != null) {
 			final Counter newCounter = clone();
 			startDate = counter.getStartDate();
+			otherRequestsCount = counter.getOtherRequestsCount();
+			otherRequestsHits = counter.getOtherRequestsHits();
+			otherRequestsMaxHits = counter.getOtherRequestsMaxHits();
 			requests.clear();
+			requestsById.clear();
 			for (final CounterRequest request : counter.getRequests()) {
-				requests.put(request.getName(), request);
+				putRequest(request);
 			}
-			if (errors != null) {
-				errors.clear();
-				errors.addAll(counter.getErrors());
+			if (errorRing != null) {
+				errorRing.clear();
+				errorRing.addAll(counter.getErrors());
 			}
 			// on ajoute les nouvelles requêtes enregistrées avant de lire le fichier
 			// (par ex. les premières requêtes collectées par le serveur de collecte lors de l'initialisation)
@@ -935,13 +1428,42 @@ public class Counter implements Cloneable, Serializable { // NOPMD
 		}
 	}
 
+	private Object writeReplace() {
+		// les erreurs sont sérialisées dans la liste errors comme dans les versions précédentes
+		if (errorRing != null) {
+			synchronized (errors) {
+				errors.clear();
+				errors.addAll(errorRing.getErrors());
+			}
+		}
+		return this;
+	}
+
+	private Object readResolve() {
+		// l'index par id n'est pas sérialisé, on le reconstruit après désérialisation
+		requestsById = new ConcurrentHashMap<>();
+		requestIds = new CounterRequestIds(name);
+		for (final CounterRequest request : requests.values()) {
+			requestsById.put(request.getId(), request);
+		}
+		// de même pour le tampon des erreurs, depuis la liste sérialisée
+		if (errors != null) {
+			errorRing = new CounterErrorRing(MAX_ERRORS_COUNT);
+			synchronized (errors) {
+				errorRing.addAll(new ArrayList<>(errors));
+				errors.clear();
+			}
+		}
+		return this;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "[application=" + getApplication() + ", name="
 				+ getName() + ", storageName=" + getStorageName() + ", startDate=" + getStartDate()
 				+ ", childCounterName=" + getChildCounterName() + ", " + requests.size()
-				+ " requests, " + (errors == null ? "" : errors.size() + " errors, ")
+				+ " requests, " + (errorRing == null ? "" : getErrorsCount() + " errors, ")
 				+ "maxRequestsCount=" + getMaxRequestsCount() + ", displayed=" + isDisplayed()
 				+ ']';
 	}
@@ -49,9 +49,13 @@ public class CounterError implements Serializable {
 	private final String stackTrace;
 
 	public CounterError(String message, String stackTrace) {
+		this(message, stackTrace, System.currentTimeMillis());
+	}
+
+	CounterError(String message, String stackTrace, long time) {
 		super();
 		assert message != null;
-		this.time = System.currentTimeMillis();
+		this.time = time;
 
 		if (message.length() > MESSAGE_MAX_LENGTH) {
 			// avoid possible memory errors as javamelody store 100 errors in memory
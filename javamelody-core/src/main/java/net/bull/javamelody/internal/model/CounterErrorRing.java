@@ -0,0 +1,161 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tampon circulaire borné et sans verrou des dernières erreurs d'un counter d'erreurs ou de logs.
+ * <p>
+ * Chaque ajout prend un numéro de séquence par un seul incrément atomique puis écrit sa case,
+ * sans synchronisation entre les threads qui ajoutent des erreurs (par exemple lors d'une
+ * avalanche de logs d'erreurs) : ces ajouts partagent le verrou en lecture, et seule la fusion
+ * {@link #addAll(List)} prend le verrou en écriture. La lecture fait une copie en O(capacité) sans bloquer les ajouts :
+ * une case en cours d'écriture ou déjà écrasée par un ajout plus récent est ignorée.
+ * @author Emeric Vernat
+ */
+final class CounterErrorRing {
+	private final int capacity;
+	private final AtomicReferenceArray<Entry> entries;
+	private final AtomicLong sequence = new AtomicLong();
+	// verrou partagé par les ajouts et exclusif pour les fusions qui vident puis remplissent le tampon
+	private final ReadWriteLock mergeLock = new ReentrantReadWriteLock();
+
+	// une case du tampon, avec son numéro de séquence pour reconnaître les cases écrasées
+	private static final class Entry {
+		final long sequence;
+		final CounterError error;
+
+		Entry(long sequence, CounterError error) {
+			super();
+			this.sequence = sequence;
+			this.error = error;
+		}
+	}
+
+	CounterErrorRing(int capacity) {
+		super();
+		assert capacity > 0;
+		this.capacity = capacity;
+		this.entries = new AtomicReferenceArray<>(capacity);
+	}
+
+	void add(CounterError error) {
+		assert error != null;
+		mergeLock.readLock().lock();
+		try {
+			addWithoutLock(error);
+		} finally {
+			mergeLock.readLock().unlock();
+		}
+	}
+
+	private void addWithoutLock(CounterError error) {
+		final long seq = sequence.getAndIncrement();
+		final int index = (int) (seq % capacity);
+		final Entry entry = new Entry(seq, error);
+		Entry current;
+		do {
+			current = entries.get(index);
+			if (current != null && current.sequence > seq) {
+				// un thread plus rapide a déjà écrit une erreur plus récente dans cette case
+				return;
+			}
+		} while (!entries.compareAndSet(index, current, entry));
+	}
+
+	/**
+	 * Fusionne des erreurs triées par date croissante avec celles du tampon,
+	 * par une insertion ordonnée sans tri, en ne gardant que les plus récentes.
+	 * Cette fusion est aussi utilisée sur les counters vivants (lecture du fichier de sauvegarde
+	 * au démarrage, ajout d'erreurs par {@link Counter#addErrors(List)}) : elle est donc exclusive
+	 * avec les ajouts et les autres fusions pour ne pas perdre d'erreurs ajoutées pendant la fusion.
+	 * @param counterErrors Erreurs triées par date croissante
+	 */
+	void addAll(List<CounterError> counterErrors) {
+		mergeLock.writeLock().lock();
+		try {
+			merge(counterErrors);
+		} finally {
+			mergeLock.writeLock().unlock();
+		}
+	}
+
+	private void merge(List<CounterError> counterErrors) {
+		final List<CounterError> current = getErrors();
+		final int total = current.size() + counterErrors.size();
+		// on ne garde que les plus récentes selon la capacité, en fusionnant depuis la fin
+		final int size = Math.min(total, capacity);
+		final CounterError[] merged = new CounterError[size];
+		int i = current.size() - 1;
+		int j = counterErrors.size() - 1;
+		for (int k = size - 1; k >= 0; k--) {
+			if (j < 0 || i >= 0 && current.get(i).getTime() > counterErrors.get(j).getTime()) {
+				merged[k] = current.get(i);
+				i--;
+			} else {
+				merged[k] = counterErrors.get(j);
+				j--;
+			}
+		}
+		clear();
+		for (final CounterError error : merged) {
+			addWithoutLock(error);
+		}
+	}
+
+	/**
+	 * @return Copie des erreurs, dans l'ordre des ajouts
+	 */
+	List<CounterError> getErrors() {
+		final long end = sequence.get();
+		final long start = Math.max(0, end - capacity);
+		final List<CounterError> result = new ArrayList<>((int) (end - start));
+		for (long seq = start; seq < end; seq++) {
+			final Entry entry = entries.get((int) (seq % capacity));
+			if (entry != null && entry.sequence == seq) {
+				result.add(entry.error);
+			}
+		}
+		return result;
+	}
+
+	int size() {
+		final long end = sequence.get();
+		final long start = Math.max(0, end - capacity);
+		int size = 0;
+		for (long seq = start; seq < end; seq++) {
+			final Entry entry = entries.get((int) (seq % capacity));
+			if (entry != null && entry.sequence == seq) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	void clear() {
+		for (int i = 0; i < capacity; i++) {
+			entries.set(i, null);
+		}
+	}
+}
@@ -18,10 +18,10 @@
 package net.bull.javamelody.internal.model;
 
 import java.io.Serializable;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -35,7 +35,8 @@ import java.util.Map;
  */
 public class CounterRequest implements Cloneable, Serializable {
 	private static final long serialVersionUID = -4301825473892026959L;
-	private static final char[] HEX_ARRAY = "0123456789abcdef".toCharArray();
+	// nombre maximum de N+1 suspectés conservés par requête
+	private static final int MAX_N_PLUS_ONES = 100;
 
 	private final String name;
 	private final String id;
@@ -53,11 +54,28 @@ public class CounterRequest implements Cloneable, Serializable {
 	private long responseSizesSum;
 	private long childHits;
 	private long childDurationsSum;
+	private long fetchHits;
+	private long rowsSum;
+	// en nanosecondes, car la plupart des lectures de ResultSet durent moins d'une milliseconde
+	private long fetchNanosSum;
 	private String stackTrace;
 	@SuppressWarnings("all")
 	private Map<String, Long> childRequestsExecutionsByRequestId;
 
 	private CounterRequestRumData rumData;
+	// histogramme des temps d'exécution pour les percentiles
+	// (null avant le premier hit et dans les fichiers des versions précédentes)
+	private CounterRequestHistogram histogram;
+	// exécutions les plus lentes avec les valeurs des paramètres, si le paramètre
+	// sql-slowest-executions est défini (null sinon et dans les fichiers des versions précédentes)
+	private CounterRequestSlowestExecutions slowestExecutions;
+	// N+1 suspectés par id de requête sql fille, si le paramètre n-plus-one-threshold
+	// n'est pas 0 (null si aucun et dans les fichiers des versions précédentes)
+	private Map<String, CounterRequestNPlusOne> nPlusOnesByChildRequestId;
+	// exemple de requête brute, si le nom de cette requête est une empreinte sql (null sinon)
+	private String sampleName;
+	// cellules striées optionnelles (Counter.setStriped), jamais sérialisées ni clonées
+	private transient volatile CounterRequestStripes stripes;
 
 	/**
 	 * Interface du contexte d'une requête en cours.
@@ -84,7 +102,21 @@ public class CounterRequest implements Cloneable, Serializable {
 		assert name != null;
 		assert counterName != null;
 		this.name = name;
-		this.id = buildId(name, counterName);
+		this.id = CounterRequestIds.buildId(name, counterName);
+	}
+
+	/**
+	 * Constructeur avec l'identifiant pris dans le cache des ids du counter,
+	 * sans recalculer de SHA-1 si déjà connu.
+	 * @param name Nom de la requête
+	 * @param requestIds Cache des ids du counter
+	 * @param cacheIdIfAbsent true pour ajouter l'id au cache s'il n'y est pas
+	 */
+	CounterRequest(String name, CounterRequestIds requestIds, boolean cacheIdIfAbsent) {
+		super();
+		assert name != null;
+		this.name = name;
+		this.id = requestIds.getId(name, cacheIdIfAbsent);
 	}
 
 	/**
@@ -94,6 +126,18 @@ public class CounterRequest implements Cloneable, Serializable {
 		return name;
 	}
 
+	/**
+	 * @return Exemple de requête brute avant agrégation, si le nom de cette requête est
+	 * une empreinte sql (peut être null)
+	 */
+	public String getSampleName() {
+		return sampleName;
+	}
+
+	void setSampleName(String sampleName) {
+		this.sampleName = sampleName;
+	}
+
 	/**
 	 * @return Identifiant de la requête, construit à partir de son nom et du nom du counter
 	 */
@@ -181,6 +225,30 @@ public class CounterRequest implements Cloneable, Serializable {
 		return maximum;
 	}
 
+	/**
+	 * Retourne un percentile des temps d'exécution selon l'histogramme de cette requête.
+	 * @param percentile Pourcentage entre 0 et 100 (par exemple 99 pour p99)
+	 * @return int, ou -1 si pas d'histogramme (fichiers des versions précédentes)
+	 */
+	public int getPercentile(double percentile) {
+		if (histogram == null) {
+			return -1;
+		}
+		final long value = histogram.getValueAtPercentile(percentile);
+		if (value < 0) {
+			return -1;
+		}
+		// la valeur est la plus grande de sa tranche : si le maximum est dans cette tranche,
+		// le percentile ne peut pas le dépasser
+		// (le maximum peut aussi être une estimation plus basse après removeHits)
+		final int subBucketBits = histogram.getSubBucketBits();
+		if (maximum >= 0 && maximum < value && CounterRequestHistogram.getIndex(maximum,
+				subBucketBits) == CounterRequestHistogram.getIndex(value, subBucketBits)) {
+			return (int) maximum;
+		}
+		return (int) Math.min(value, Integer.MAX_VALUE);
+	}
+
 	/**
 	 * @return Somme temps cpu pour l'exécution de cette requête
 	 */
@@ -258,6 +326,34 @@ public class CounterRequest implements Cloneable, Serializable {
 		return -1;
 	}
 
+	/**
+	 * @return Booléen selon qu'il existe des lectures de ResultSet mesurées (sql en particulier)
+	 */
+	public boolean hasFetchHits() {
+		return fetchHits > 0;
+	}
+
+	/**
+	 * @return Nombre moyen de lignes lues par hit (ResultSet sql en particulier)
+	 */
+	public long getRowsMean() {
+		if (fetchHits > 0) {
+			return rowsSum / fetchHits;
+		}
+		return -1L;
+	}
+
+	/**
+	 * @return Moyenne des temps de lecture des ResultSet en ms par hit,
+	 * en plus des temps d'exécution
+	 */
+	public int getFetchDurationsMean() {
+		if (fetchHits > 0) {
+			return (int) (fetchNanosSum / fetchHits / 1000000L);
+		}
+		return -1;
+	}
+
 	/**
 	 * @return Map des nombres d'exécutions par requêtes filles
 	 */
@@ -290,8 +386,37 @@ public class CounterRequest implements Cloneable, Serializable {
 		return rumData;
 	}
 
+	/**
+	 * @return Exécutions les plus lentes conservées, de la plus lente à la plus rapide
+	 */
+	public List<CounterRequestSlowExecution> getSlowestExecutions() {
+		if (slowestExecutions == null) {
+			return Collections.emptyList();
+		}
+		return slowestExecutions.getExecutions();
+	}
+
+	/**
+	 * Lecture sans synchronisation, pour ne formater les paramètres d'une exécution
+	 * que si elle est conservée.
+	 * @param duration Durée de l'exécution en millisecondes
+	 * @return true si l'exécution ferait partie des plus lentes conservées
+	 */
+	boolean isSlowestExecution(long duration) {
+		final CounterRequestSlowestExecutions executions = slowestExecutions;
+		return executions == null || executions.isSlowerThanMinimum(duration);
+	}
+
+	void addSlowExecution(CounterRequestSlowExecution execution, int maxSize) {
+		if (slowestExecutions == null) {
+			slowestExecutions = new CounterRequestSlowestExecutions(maxSize);
+		}
+		slowestExecutions.add(execution);
+	}
+
 	void addHit(long duration, int cpuTime, int allocatedKBytes, boolean systemError,
 			String systemErrorStackTrace, long responseSize) {
+		getOrCreateHistogram().addValue(duration);
 		hits++;
 		durationsSum += duration;
 		durationsSquareSum += duration * duration;
@@ -309,6 +434,62 @@ public class CounterRequest implements Cloneable, Serializable {
 		responseSizesSum += responseSize;
 	}
 
+	/**
+	 * Ajoute un hit dans les cellules striées, sans synchronisation sur cette instance.
+	 * Les valeurs seront reportées dans cette instance par {@link #flushStripedHits()}.
+	 */
+	void addStripedHit(long duration, int cpuTime, int allocatedKBytes, boolean systemError,
+			long responseSize) {
+		CounterRequestStripes currentStripes = stripes;
+		if (currentStripes == null) {
+			synchronized (this) {
+				currentStripes = stripes;
+				if (currentStripes == null) {
+					currentStripes = new CounterRequestStripes(
+							getOrCreateHistogram().getSubBucketBits());
+					stripes = currentStripes;
+				}
+			}
+		}
+		currentStripes.addHit(duration, cpuTime, allocatedKBytes, systemError, responseSize);
+	}
+
+	/**
+	 * Reporte dans cette instance les hits ajoutés dans les cellules striées.
+	 * L'appelant doit être synchronisé sur cette instance.
+	 */
+	void flushStripedHits() {
+		final CounterRequestStripes currentStripes = stripes;
+		if (currentStripes != null) {
+			hits += currentStripes.sumThenResetHits();
+			durationsSum += currentStripes.sumThenResetDurationsSum();
+			durationsSquareSum += currentStripes.sumThenResetDurationsSquareSum();
+			final long stripesMaximum = currentStripes.getThenResetMaximum();
+			if (stripesMaximum > maximum) {
+				maximum = stripesMaximum;
+			}
+			cpuTimeSum += currentStripes.sumThenResetCpuTimeSum();
+			allocatedKBytesSum += currentStripes.sumThenResetAllocatedKBytesSum();
+			systemErrors += currentStripes.sumThenResetSystemErrors();
+			responseSizesSum += currentStripes.sumThenResetResponseSizesSum();
+			currentStripes.sumThenResetHistogram(histogram);
+		}
+	}
+
+	private CounterRequestHistogram getOrCreateHistogram() {
+		if (histogram == null) {
+			histogram = new CounterRequestHistogram(
+					CounterRequestHistogram.getParameterSignificantDigits());
+		}
+		return histogram;
+	}
+
+	void addFetchHit(long rows, long fetchNanos) {
+		fetchHits++;
+		rowsSum += rows;
+		fetchNanosSum += fetchNanos;
+	}
+
 	void addChildHits(ICounterRequestContext context) {
 		childHits += context.getChildHits();
 		childDurationsSum += context.getChildDurationsSum();
@@ -320,27 +501,92 @@ public class CounterRequest implements Cloneable, Serializable {
 				childRequestsExecutionsByRequestId = new LinkedHashMap<>(childRequests);
 			} else {
 				for (final Map.Entry<String, Long> entry : childRequests.entrySet()) {
-					final String requestId = entry.getKey();
-					Long nbExecutions = childRequestsExecutionsByRequestId.get(requestId);
-					if (nbExecutions == null) {
-						if (childRequestsExecutionsByRequestId
-								.size() >= Counter.MAX_REQUESTS_COUNT) {
-							// Si le nombre de requêtes est supérieur à 10000 (sql non bindé par ex.),
-							// on essaye ici d'éviter de saturer la mémoire (et le disque dur)
-							// avec toutes ces requêtes différentes, donc on ignore cette nouvelle requête.
-							// (utile pour une agrégation par année dans PeriodCounterFactory par ex., issue #496)
-							continue;
-						}
-						nbExecutions = entry.getValue();
-					} else {
-						nbExecutions += entry.getValue();
-					}
-					childRequestsExecutionsByRequestId.put(requestId, nbExecutions);
+					addChildRequest(entry.getKey(), entry.getValue());
 				}
 			}
 		}
 	}
 
+	void addChildRequests(ChildRequestsExecutions childRequests) {
+		// depuis un contexte de requête, sans passer par une map intermédiaire
+		if (childRequests != null && !childRequests.isEmpty()) {
+			if (childRequestsExecutionsByRequestId == null) {
+				childRequestsExecutionsByRequestId = new LinkedHashMap<>();
+			}
+			for (int i = 0; i < childRequests.size(); i++) {
+				addChildRequest(childRequests.getRequestId(i), childRequests.getExecutions(i));
+			}
+		}
+	}
+
+	private void addChildRequest(String requestId, long executions) {
+		Long nbExecutions = childRequestsExecutionsByRequestId.get(requestId);
+		if (nbExecutions == null) {
+			if (childRequestsExecutionsByRequestId.size() >= Counter.MAX_REQUESTS_COUNT) {
+				// Si le nombre de requêtes est supérieur à 10000 (sql non bindé par ex.),
+				// on essaye ici d'éviter de saturer la mémoire (et le disque dur)
+				// avec toutes ces requêtes différentes, donc on ignore cette nouvelle requête.
+				// (utile pour une agrégation par année dans PeriodCounterFactory par ex., issue #496)
+				return;
+			}
+			nbExecutions = executions;
+		} else {
+			nbExecutions += executions;
+		}
+		childRequestsExecutionsByRequestId.put(requestId, nbExecutions);
+	}
+
+	/**
+	 * @return N+1 suspectés, c'est-à-dire les requêtes sql filles exécutées plus d'un nombre
+	 * de fois paramétrable dans une même exécution de cette requête
+	 */
+	public List<CounterRequestNPlusOne> getNPlusOnes() {
+		if (nPlusOnesByChildRequestId == null) {
+			return Collections.emptyList();
+		}
+		final List<CounterRequestNPlusOne> result = new ArrayList<>(
+				nPlusOnesByChildRequestId.size());
+		for (final CounterRequestNPlusOne nPlusOne : nPlusOnesByChildRequestId.values()) {
+			result.add(nPlusOne.clone());
+		}
+		return result;
+	}
+
+	void addNPlusOnes(ChildRequestsExecutions childRequests, int threshold,
+			String parentSample) {
+		// les requêtes filles d'une exécution de cette requête sont toutes connues à sa fin
+		if (childRequests == null) {
+			return;
+		}
+		for (int i = 0; i < childRequests.size(); i++) {
+			final long executions = childRequests.getExecutions(i);
+			final String childRequestId = childRequests.getRequestId(i);
+			if (executions > threshold && childRequestId.startsWith(Counter.SQL_COUNTER_NAME)) {
+				final CounterRequestNPlusOne nPlusOne = getOrCreateNPlusOne(childRequestId,
+						childRequests.getRequestName(i));
+				if (nPlusOne != null) {
+					nPlusOne.addOccurrence(executions, parentSample);
+				}
+			}
+		}
+	}
+
+	private CounterRequestNPlusOne getOrCreateNPlusOne(String childRequestId,
+			String childRequestName) {
+		if (nPlusOnesByChildRequestId == null) {
+			nPlusOnesByChildRequestId = new LinkedHashMap<>();
+		}
+		CounterRequestNPlusOne nPlusOne = nPlusOnesByChildRequestId.get(childRequestId);
+		if (nPlusOne == null) {
+			if (nPlusOnesByChildRequestId.size() >= MAX_N_PLUS_ONES) {
+				return null;
+			}
+			nPlusOne = new CounterRequestNPlusOne(childRequestId, childRequestName);
+			nPlusOnesByChildRequestId.put(childRequestId, nPlusOne);
+		}
+		return nPlusOne;
+	}
+
 	void addHits(CounterRequest request) {
 		assert request != null;
 		if (request.hits != 0) {
@@ -361,6 +607,36 @@ public class CounterRequest implements Cloneable, Serializable {
 			}
 			addChildRequests(request.childRequestsExecutionsByRequestId);
 		}
+		fetchHits += request.fetchHits;
+		rowsSum += request.rowsSum;
+		fetchNanosSum += request.fetchNanosSum;
+		if (request.histogram != null) {
+			if (histogram != null) {
+				histogram.addHits(request.histogram);
+			} else {
+				histogram = request.histogram.clone();
+			}
+		}
+		if (request.nPlusOnesByChildRequestId != null) {
+			for (final CounterRequestNPlusOne nPlusOne : request.nPlusOnesByChildRequestId
+					.values()) {
+				final CounterRequestNPlusOne myNPlusOne = getOrCreateNPlusOne(
+						nPlusOne.getChildRequestId(), nPlusOne.getChildRequestName());
+				if (myNPlusOne != null) {
+					myNPlusOne.addHits(nPlusOne);
+				}
+			}
+		}
+		if (request.slowestExecutions != null) {
+			if (slowestExecutions != null) {
+				slowestExecutions.addAll(request.slowestExecutions);
+			} else {
+				slowestExecutions = request.slowestExecutions.clone();
+			}
+		}
+		if (sampleName == null) {
+			sampleName = request.sampleName;
+		}
 		if (request.rumData != null) {
 			if (rumData != null) {
 				rumData.addHits(request.rumData);
@@ -394,9 +670,38 @@ public class CounterRequest implements Cloneable, Serializable {
 
 			removeChildHits(request);
 		}
+		fetchHits -= request.fetchHits;
+		rowsSum -= request.rowsSum;
+		fetchNanosSum -= request.fetchNanosSum;
+		if (histogram != null && request.histogram != null) {
+			histogram.removeHits(request.histogram);
+		}
 		if (rumData != null && request.rumData != null) {
 			rumData.removeHits(request.rumData);
 		}
+		if (nPlusOnesByChildRequestId != null && request.nPlusOnesByChildRequestId != null) {
+			removeNPlusOnes(request);
+		}
+		if (slowestExecutions != null && request.slowestExecutions != null) {
+			slowestExecutions.removeAll(request.slowestExecutions);
+		}
+	}
+
+	private void removeNPlusOnes(CounterRequest request) {
+		for (final CounterRequestNPlusOne nPlusOne : request.nPlusOnesByChildRequestId.values()) {
+			final String childRequestId = nPlusOne.getChildRequestId();
+			final CounterRequestNPlusOne myNPlusOne = nPlusOnesByChildRequestId
+					.get(childRequestId);
+			if (myNPlusOne != null) {
+				myNPlusOne.removeHits(nPlusOne);
+				if (myNPlusOne.getOccurrences() <= 0) {
+					nPlusOnesByChildRequestId.remove(childRequestId);
+				}
+			}
+		}
+		if (nPlusOnesByChildRequestId.isEmpty()) {
+			nPlusOnesByChildRequestId = null;
+		}
 	}
 
 	private void removeChildHits(CounterRequest request) {
@@ -434,6 +739,8 @@ public class CounterRequest implements Cloneable, Serializable {
 	public CounterRequest clone() { // NOPMD
 		try {
 			final CounterRequest clone = (CounterRequest) super.clone();
+			// les cellules striées restent dans l'instance d'origine
+			clone.stripes = null;
 			if (childRequestsExecutionsByRequestId != null) {
 				// getChildRequestsExecutionsByRequestId fait déjà un clone de la map
 				clone.childRequestsExecutionsByRequestId = getChildRequestsExecutionsByRequestId();
@@ -441,6 +748,19 @@ public class CounterRequest implements Cloneable, Serializable {
 			if (rumData != null) {
 				clone.rumData = rumData.clone();
 			}
+			if (histogram != null) {
+				clone.histogram = histogram.clone();
+			}
+			if (slowestExecutions != null) {
+				clone.slowestExecutions = slowestExecutions.clone();
+			}
+			if (nPlusOnesByChildRequestId != null) {
+				clone.nPlusOnesByChildRequestId = new LinkedHashMap<>();
+				for (final CounterRequestNPlusOne nPlusOne : nPlusOnesByChildRequestId.values()) {
+					clone.nPlusOnesByChildRequestId.put(nPlusOne.getChildRequestId(),
+							nPlusOne.clone());
+				}
+			}
 			return clone;
 		} catch (final CloneNotSupportedException e) {
 			// ne peut arriver puisque CounterRequest implémente Cloneable
@@ -448,37 +768,6 @@ public class CounterRequest implements Cloneable, Serializable {
 		}
 	}
 
-	// retourne l'id supposé unique de la requête pour le stockage
-	private static String buildId(String name, String counterName) {
-		final MessageDigest messageDigest = getMessageDigestInstance();
-		messageDigest.update(name.getBytes());
-		final byte[] digest = messageDigest.digest();
-
-		final int l = counterName.length();
-		final char[] chars = new char[l + digest.length * 2];
-		// copie du counterName au début de chars
-		counterName.getChars(0, l, chars, 0);
-		// encodage en chaîne hexadécimale du digest,
-		// puisque les caractères bizarres ne peuvent être utilisés sur un système de fichiers
-		for (int j = 0; j < digest.length; j++) {
-			final int v = digest[j] & 0xFF;
-			chars[j * 2 + l] = HEX_ARRAY[v >>> 4];
-			chars[j * 2 + 1 + l] = HEX_ARRAY[v & 0x0F];
-		}
-		return new String(chars);
-	}
-
-	private static MessageDigest getMessageDigestInstance() {
-		// SHA1 est un algorithme de hashage qui évite les conflits à 2^80 près entre
-		// les identifiants supposés uniques (SHA1 est mieux que MD5 qui est mieux que CRC32).
-		try {
-			return MessageDigest.getInstance("SHA-1");
-		} catch (final NoSuchAlgorithmException e) {
-			// ne peut arriver car SHA1 est un algorithme disponible par défaut dans le JDK Sun
-			throw new IllegalStateException(e);
-		}
-	}
-
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
@@ -37,9 +37,11 @@ public class CounterRequestAggregation {
 	private final int severeThreshold;
 	private final boolean responseSizeDisplayed;
 	private final boolean childHitsDisplayed;
+	private final boolean fetchDisplayed;
 	private final boolean timesDisplayed;
 	private final boolean cpuTimesDisplayed;
 	private final boolean allocatedKBytesDisplayed;
+	private final boolean percentilesDisplayed;
 	private final CounterRequest warningRequest;
 	private final CounterRequest severeRequest;
 
@@ -65,9 +67,13 @@ public class CounterRequestAggregation {
 		// (pour les requêtes sql par exemple)
 		this.responseSizeDisplayed = globalRequest.getResponseSizeMean() >= 0L;
 		this.childHitsDisplayed = globalRequest.hasChildHits();
+		// lignes lues et temps de lecture seulement si le paramètre resultset-monitoring-enabled
+		this.fetchDisplayed = globalRequest.hasFetchHits();
 		this.timesDisplayed = globalRequest.getMean() >= 0;
 		this.cpuTimesDisplayed = globalRequest.getCpuTimeMean() >= 0;
 		this.allocatedKBytesDisplayed = globalRequest.getAllocatedKBytesMean() >= 0;
+		// pas de percentiles pour les requêtes lues dans des fichiers sans histogrammes
+		this.percentilesDisplayed = timesDisplayed && globalRequest.getPercentile(50) >= 0;
 
 		// globalMean et globalStandardDeviation sont utilisées pour déterminer
 		// les seuils des couleurs des moyennes dans le tableau quand les paramètres
@@ -140,6 +146,10 @@ public class CounterRequestAggregation {
 		return childHitsDisplayed;
 	}
 
+	public boolean isFetchDisplayed() {
+		return fetchDisplayed;
+	}
+
 	public boolean isTimesDisplayed() {
 		return timesDisplayed;
 	}
@@ -152,6 +162,10 @@ public class CounterRequestAggregation {
 		return allocatedKBytesDisplayed;
 	}
 
+	public boolean isPercentilesDisplayed() {
+		return percentilesDisplayed;
+	}
+
 	public List<CounterRequest> getRequestsAggregatedOrFilteredByClassName(String requestId) {
 		final List<CounterRequest> requestsAggregatedByClassName = getRequestsAggregatedByClassName();
 		final List<CounterRequest> requestList;
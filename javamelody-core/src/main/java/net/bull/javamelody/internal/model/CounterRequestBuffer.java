@@ -0,0 +1,100 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tampon par thread des hits en attente d'un counter en mode tampon (Counter.setBuffered).
+ * <p>
+ * Le thread propriétaire ajoute ses hits dans des requêtes en attente qui ne sont pas partagées
+ * avec les autres threads : aucune écriture en mémoire partagée dans le chemin critique de l'application.
+ * Les requêtes en attente sont reportées dans les requêtes du counter lorsque le tampon est plein
+ * (par le thread propriétaire) ou lorsque le counter est lu (collecte ou rapport, par un autre thread).
+ * Les méthodes sont appelées en synchronisant sur le tampon, ce qui n'entraîne pas de contention
+ * puisque seul le thread propriétaire l'utilise en dehors des reports.
+ * @author Emeric Vernat
+ */
+final class CounterRequestBuffer {
+	/**
+	 * Nombre de hits en attente au-delà duquel le tampon est reporté par le thread propriétaire.
+	 */
+	static final int MAX_PENDING_HITS = 1024;
+
+	/**
+	 * Nombre de requêtes différentes en attente au-delà duquel le tampon est reporté par le thread propriétaire.
+	 */
+	static final int MAX_PENDING_REQUESTS = 256;
+
+	// référence faible pour ne pas retenir en mémoire un thread terminé
+	private final WeakReference<Thread> thread;
+	private final Map<String, CounterRequest> pendingRequestsByName = new HashMap<>();
+	private int pendingHits;
+
+	CounterRequestBuffer(Thread thread) {
+		super();
+		assert thread != null;
+		this.thread = new WeakReference<>(thread);
+	}
+
+	CounterRequest getPendingRequest(String requestName, CounterRequestIds requestIds) {
+		assert Thread.holdsLock(this);
+		CounterRequest pendingRequest = pendingRequestsByName.get(requestName);
+		if (pendingRequest == null) {
+			pendingRequest = new CounterRequest(requestName, requestIds, true);
+			pendingRequestsByName.put(requestName, pendingRequest);
+		}
+		pendingHits++;
+		return pendingRequest;
+	}
+
+	CounterRequest getExistingPendingRequest(String requestName) {
+		assert Thread.holdsLock(this);
+		return pendingRequestsByName.get(requestName);
+	}
+
+	Collection<CounterRequest> getPendingRequests() {
+		assert Thread.holdsLock(this);
+		return pendingRequestsByName.values();
+	}
+
+	boolean isFull() {
+		assert Thread.holdsLock(this);
+		return pendingHits >= MAX_PENDING_HITS
+				|| pendingRequestsByName.size() >= MAX_PENDING_REQUESTS;
+	}
+
+	boolean isEmpty() {
+		assert Thread.holdsLock(this);
+		return pendingRequestsByName.isEmpty();
+	}
+
+	boolean isThreadAlive() {
+		final Thread bufferThread = thread.get();
+		return bufferThread != null && bufferThread.isAlive();
+	}
+
+	void clear() {
+		assert Thread.holdsLock(this);
+		pendingRequestsByName.clear();
+		pendingHits = 0;
+	}
+}
@@ -36,29 +36,81 @@ import net.bull.javamelody.internal.model.CounterRequest.ICounterRequestContext;
  */
 public class CounterRequestContext implements ICounterRequestContext, Cloneable, Serializable {
 	private static final long serialVersionUID = 1L;
-	private static final Long ONE = 1L;
 	private static final String SPRING_BEST_MATCHING_PATTERN_ATTRIBUTE = "org.springframework.web.servlet.HandlerMapping.bestMatchingPattern";
 	// attention de ne pas sérialiser le counter d'origine vers le serveur de collecte, le vrai ayant été cloné
 	private Counter parentCounter;
 	private final CounterRequestContext parentContext;
 	private CounterRequestContext currentChildContext;
-	private final String requestName;
-	private final String completeRequestName;
+	// requestName, completeRequestName, le thread et les débuts ne sont pas final
+	// car un contexte fils terminé est réutilisé par le contexte fils suivant (cf recycle)
+	private String requestName;
+	private String completeRequestName;
 	private final transient HttpServletRequest httpRequest;
 	private final String remoteUser;
-	private final transient Thread thread;
+	private transient Thread thread;
 	private long threadId;
 	private String threadName;
 	// attention, si sérialisation vers serveur de collecte, la durée peut être impactée s'il y a désynchronisation d'horloge
-	private final long startTime;
-	private final long startCpuTime;
-	private final long startAllocatedBytes;
+	private long startTime;
+	private long startCpuTime;
+	private long startAllocatedBytes;
 	private final String sessionId;
 	// ces 2 champs sont initialisés à 0
 	private int childHits;
 	private int childDurationsSum;
+	// reste en nanosecondes des temps de lecture des ResultSet, pas encore compté dans childDurationsSum
+	private transient long childFetchNanosRemainder;
+	// forme sérialisée des requêtes filles, remplie seulement dans les clones
 	@SuppressWarnings("all")
 	private Map<String, Long> childRequestsExecutionsByRequestId;
+	// requêtes filles à l'exécution, sans allocation par requête fille
+	private transient ChildRequestsExecutions childRequestsExecutions;
+	// dernier contexte fils terminé, réutilisable par le prochain contexte fils sur ce thread
+	private transient CounterRequestContext recycledChildContext;
+	// contexte d'origine si ce contexte est dérivé pour une tâche exécutée sur un autre thread
+	private transient CounterRequestContext forkingContext;
+	// requêtes filles des contextes dérivés, reportées dans ce contexte par son propre thread
+	private transient ForkedChildRequests forkedChildRequests;
+
+	/**
+	 * Cumul des requêtes filles des contextes dérivés d'un contexte et terminés sur d'autres threads
+	 * (executor, CompletableFuture...). Seul ce cumul est synchronisé, une fois par tâche :
+	 * les requêtes filles de chaque thread sont comptées sans synchronisation dans son propre contexte.
+	 */
+	private static final class ForkedChildRequests {
+		private int childHits;
+		private int childDurationsSum;
+		private ChildRequestsExecutions childRequestsExecutions;
+
+		ForkedChildRequests() {
+			super();
+		}
+
+		synchronized void add(CounterRequestContext forkedContext) {
+			childHits += forkedContext.childHits;
+			childDurationsSum += forkedContext.childDurationsSum;
+			if (forkedContext.hasChildRequests()) {
+				if (childRequestsExecutions == null) {
+					childRequestsExecutions = new ChildRequestsExecutions();
+				}
+				childRequestsExecutions.addAll(forkedContext.childRequestsExecutions);
+			}
+		}
+
+		synchronized void joinInto(CounterRequestContext context) {
+			context.childHits += childHits;
+			context.childDurationsSum += childDurationsSum;
+			if (childRequestsExecutions != null) {
+				if (context.childRequestsExecutions == null) {
+					context.childRequestsExecutions = new ChildRequestsExecutions();
+				}
+				context.childRequestsExecutions.addAll(childRequestsExecutions);
+				childRequestsExecutions = null;
+			}
+			childHits = 0;
+			childDurationsSum = 0;
+		}
+	}
 
 	// CHECKSTYLE:OFF
 	public CounterRequestContext(Counter parentCounter, CounterRequestContext parentContext,
@@ -92,20 +144,134 @@ public class CounterRequestContext implements ICounterRequestContext, Cloneable,
 		this.completeRequestName = completeRequestName;
 		this.httpRequest = httpRequest;
 		this.remoteUser = remoteUser;
-		this.thread = thread;
-		if (thread != null) {
-			this.threadId = thread.getId();
-			this.threadName = thread.getName();
-		} else {
-			this.threadId = -1L;
-			this.threadName = null;
-		}
+		setThread(thread);
 		this.startTime = startTime;
 		this.startCpuTime = startCpuTime;
 		this.startAllocatedBytes = startAllocatedBytes;
 		this.sessionId = sessionId;
 	}
 
+	/**
+	 * Retourne un contexte fils pour le même thread que ce contexte, en réutilisant
+	 * si possible le dernier contexte fils terminé, sans allocation
+	 * (par exemple pour chaque requête sql d'une requête http).
+	 * @param childCounter Counter du contexte fils
+	 * @param childRequestName Nom de la requête fille
+	 * @param childCompleteRequestName Nom complet de la requête fille
+	 * @param childStartCpuTime Début du temps cpu ou -1
+	 * @param childStartAllocatedBytes Début des octets alloués ou -1
+	 * @return CounterRequestContext
+	 */
+	CounterRequestContext getOrCreateChildContext(Counter childCounter, String childRequestName,
+			String childCompleteRequestName, long childStartCpuTime,
+			long childStartAllocatedBytes) {
+		final CounterRequestContext childContext = recycledChildContext;
+		if (childContext == null || childContext.parentCounter != childCounter) {
+			return new CounterRequestContext(childCounter, this, childRequestName,
+					childCompleteRequestName, null, null, childStartCpuTime,
+					childStartAllocatedBytes, null);
+		}
+		recycledChildContext = null;
+		childContext.recycle(childRequestName, childCompleteRequestName,
+				System.currentTimeMillis(), childStartCpuTime, childStartAllocatedBytes);
+		setCurrentChildContext(childContext);
+		return childContext;
+	}
+
+	private void setThread(Thread newThread) {
+		this.thread = newThread;
+		if (newThread != null) {
+			this.threadId = newThread.getId();
+			this.threadName = newThread.getName();
+		} else {
+			this.threadId = -1L;
+			this.threadName = null;
+		}
+	}
+
+	private void recycle(String newRequestName, String newCompleteRequestName,
+			long newStartTime, long newStartCpuTime, long newStartAllocatedBytes) {
+		assert newRequestName != null;
+		assert newCompleteRequestName != null;
+		// un contexte ayant dérivé des contextes pour des tâches n'est jamais réutilisé,
+		// car ces tâches peuvent se terminer après lui (cf closeChildContext)
+		assert forkedChildRequests == null && forkingContext == null;
+		// même contexte parent, même counter et pas de requête http : tous les champs
+		// propres à une exécution sont réinitialisés ici, y compris le thread
+		// puisque le contexte parent a pu être relié à un autre thread (requête asynchrone)
+		// (les autres threads ne lisent les contextes en cours que pour les afficher ou les cloner)
+		this.requestName = newRequestName;
+		this.completeRequestName = newCompleteRequestName;
+		setThread(Thread.currentThread());
+		this.startTime = newStartTime;
+		this.startCpuTime = newStartCpuTime;
+		this.startAllocatedBytes = newStartAllocatedBytes;
+		this.childHits = 0;
+		this.childDurationsSum = 0;
+		this.childFetchNanosRemainder = 0;
+		this.currentChildContext = null;
+		if (childRequestsExecutions != null) {
+			childRequestsExecutions.clear();
+		}
+	}
+
+	/**
+	 * Prépare ce contexte pour des tâches exécutées sur d'autres threads
+	 * (executor, CompletableFuture...).
+	 * Doit être appelée par le thread de ce contexte, lors de la soumission d'une tâche.
+	 * @return Contexte à dériver sur les threads des tâches
+	 * (le contexte d'origine si ce contexte est lui-même dérivé)
+	 */
+	public CounterRequestContext prepareForkedContexts() {
+		if (forkingContext != null) {
+			// une tâche soumise par une tâche est rattachée au contexte d'origine,
+			// qui peut se terminer après la première tâche
+			return forkingContext;
+		}
+		if (forkedChildRequests == null) {
+			forkedChildRequests = new ForkedChildRequests();
+		}
+		return this;
+	}
+
+	/**
+	 * Crée pour le thread courant un contexte dérivé de ce contexte, pour une tâche soumise
+	 * par la requête de ce contexte. Les requêtes filles (sql...) de la tâche sont comptées
+	 * dans le contexte dérivé puis reportées dans ce contexte par {@link #closeForkedContext()}.
+	 * @return CounterRequestContext
+	 */
+	public CounterRequestContext createForkedContext() {
+		assert forkedChildRequests != null;
+		final CounterRequestContext forkedContext = new CounterRequestContext(parentCounter, null,
+				requestName, completeRequestName, null, remoteUser, Thread.currentThread(),
+				System.currentTimeMillis(), -1, -1, sessionId);
+		forkedContext.forkingContext = this;
+		return forkedContext;
+	}
+
+	/**
+	 * Termine ce contexte dérivé, à la fin de la tâche : ses requêtes filles sont reportées
+	 * dans le contexte d'origine, qui les ajoutera à l'enregistrement de sa requête.
+	 * Si la requête d'origine est déjà enregistrée, ces requêtes filles ne lui sont plus rattachées
+	 * (elles restent comptées dans leur propre counter).
+	 */
+	public void closeForkedContext() {
+		assert forkingContext != null;
+		if (childHits > 0 || hasChildRequests()) {
+			forkingContext.forkedChildRequests.add(this);
+		}
+	}
+
+	public boolean isForkedContext() {
+		return forkingContext != null;
+	}
+
+	void joinForkedChildRequests() {
+		if (forkedChildRequests != null) {
+			forkedChildRequests.joinInto(this);
+		}
+	}
+
 	public Counter getParentCounter() {
 		return parentCounter;
 	}
@@ -240,14 +406,27 @@ public class CounterRequestContext implements ICounterRequestContext, Cloneable,
 	}
 
 	public Map<String, Long> getChildRequestsExecutionsByRequestId() {
+		if (childRequestsExecutions != null) {
+			// contexte en cours : nouvelle instance de map, seulement pour l'affichage ou les tests
+			// (Counter utilise directement getChildRequestsExecutions sans allocation
+			// et les rapports utilisent des clones, dont la map est créée une fois dans clone)
+			return childRequestsExecutions.toMap();
+		}
 		if (childRequestsExecutionsByRequestId == null) {
 			return Collections.emptyMap();
 		}
-		// pas de nouvelle instance de map ici pour raison de perf
-		// (la méthode est utilisée sur un seul thread)
+		// clone ou contexte désérialisé
 		return childRequestsExecutionsByRequestId;
 	}
 
+	ChildRequestsExecutions getChildRequestsExecutions() {
+		return childRequestsExecutions;
+	}
+
+	boolean hasChildRequests() {
+		return childRequestsExecutions != null && !childRequestsExecutions.isEmpty();
+	}
+
 	public int getTotalChildHits() {
 		// childHits de ce contexte plus tous ceux des contextes fils,
 		// il vaut mieux appeler cette méthode sur un clone du contexte pour avoir un résultat stable
@@ -318,31 +497,45 @@ public class CounterRequestContext implements ICounterRequestContext, Cloneable,
 		// pour drill-down on conserve pour chaque requête mère, les requêtes filles appelées et le
 		// nombre d'exécutions pour chacune
 		if (parentContext == null) {
-			addChildRequestForDrillDown(requestId);
+			addChildRequestForDrillDown(requestId, request);
 		} else {
-			parentContext.addChildRequestForDrillDown(requestId);
+			parentContext.addChildRequestForDrillDown(requestId, request);
 		}
 	}
 
-	private void addChildRequestForDrillDown(String requestId) {
-		if (childRequestsExecutionsByRequestId == null) {
-			childRequestsExecutionsByRequestId = new LinkedHashMap<>();
+	void addChildFetch(Counter childCounter, long fetchNanos) {
+		// le temps de lecture d'un ResultSet s'ajoute aux temps des requêtes filles
+		// si je suis le contexte du counter parent du counter fils (http pour sql par exemple),
+		// après la fin de la requête fille ;
+		// les nanosecondes sont cumulées pour ne pas perdre les lectures de moins d'une ms
+		if (childCounter.getName().equals(parentCounter.getChildCounterName())) {
+			childFetchNanosRemainder += fetchNanos;
+			final long fetchMillis = childFetchNanosRemainder / 1000000L;
+			childDurationsSum += (int) fetchMillis;
+			childFetchNanosRemainder -= fetchMillis * 1000000L;
 		}
-		Long nbExecutions = childRequestsExecutionsByRequestId.get(requestId);
-		if (nbExecutions == null) {
-			nbExecutions = ONE;
-		} else {
-			nbExecutions += 1;
+	}
+
+	private void addChildRequestForDrillDown(String requestId, String request) {
+		if (childRequestsExecutions == null) {
+			childRequestsExecutions = new ChildRequestsExecutions();
 		}
-		childRequestsExecutionsByRequestId.put(requestId, nbExecutions);
+		childRequestsExecutions.increment(requestId, request);
 	}
 
 	void closeChildContext() {
 		final CounterRequestContext childContext = getCurrentChildContext();
 		childHits += childContext.getChildHits();
 		childDurationsSum += childContext.getChildDurationsSum();
-		// ce contexte fils est terminé
+		// ce contexte fils est terminé, il pourra être réutilisé par le prochain contexte fils,
+		// sauf s'il a dérivé des contextes pour des tâches (executor...) qui peuvent se terminer
+		// après lui : leurs requêtes filles ne doivent pas être reportées dans le contexte suivant
 		setCurrentChildContext(null);
+		if (childContext.forkedChildRequests == null) {
+			recycledChildContext = childContext;
+		} else {
+			recycledChildContext = null;
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -373,7 +566,9 @@ public class CounterRequestContext implements ICounterRequestContext, Cloneable,
 		if (childContext != null) {
 			clone.currentChildContext = childContext.clone(clone);
 		}
-		if (childRequestsExecutionsByRequestId != null) {
+		if (childRequestsExecutions != null) {
+			clone.childRequestsExecutionsByRequestId = childRequestsExecutions.toMap();
+		} else if (childRequestsExecutionsByRequestId != null) {
 			clone.childRequestsExecutionsByRequestId = new LinkedHashMap<>(
 					childRequestsExecutionsByRequestId);
 		}
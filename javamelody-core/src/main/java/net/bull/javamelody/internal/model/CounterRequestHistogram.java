@@ -0,0 +1,290 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import net.bull.javamelody.Parameter;
+
+/**
+ * Histogramme log-linéaire des temps d'exécution d'une requête, pour les percentiles
+ * (p50, p95, p99...).
+ * <p>
+ * Comme dans HdrHistogram, les valeurs sont comptées dans des tranches dont la largeur double
+ * à chaque puissance de 2, et chaque puissance de 2 est divisée en sous-tranches linéaires
+ * selon le nombre de chiffres significatifs (1 par défaut, soit une erreur relative
+ * d'au plus 1/16 environ). Le tableau des compteurs ne va que jusqu'à la tranche
+ * du plus grand temps rencontré, soit quelques centaines d'octets pour des temps de
+ * l'ordre de la seconde.
+ * <p>
+ * Deux histogrammes de même précision s'ajoutent et se soustraient exactement,
+ * pour les périodes jour, semaine, mois, année et pour le serveur de collecte.
+ * @author Emeric Vernat
+ */
+public class CounterRequestHistogram implements Serializable, Cloneable {
+	/**
+	 * Nombre de chiffres significatifs par défaut.
+	 */
+	static final int DEFAULT_SIGNIFICANT_DIGITS = 1;
+
+	private static final long serialVersionUID = -2392557263712006593L;
+
+	private static final int MAX_SIGNIFICANT_DIGITS = 3;
+
+	private static volatile int parameterSignificantDigits = DEFAULT_SIGNIFICANT_DIGITS;
+
+	private final int significantDigits;
+	private long[] counts;
+
+	/**
+	 * Constructeur.
+	 * @param significantDigits Nombre de chiffres significatifs (entre 1 et 3)
+	 */
+	CounterRequestHistogram(int significantDigits) {
+		super();
+		if (significantDigits < 1 || significantDigits > MAX_SIGNIFICANT_DIGITS) {
+			throw new IllegalArgumentException(String.valueOf(significantDigits));
+		}
+		this.significantDigits = significantDigits;
+	}
+
+	/**
+	 * Lit et vérifie le paramètre histogram-significant-digits, une seule fois à l'initialisation
+	 * du filtre et non lors de l'ajout des hits.
+	 */
+	public static void initParameterSignificantDigits() {
+		final String parameter = Parameter.HISTOGRAM_SIGNIFICANT_DIGITS.getValue();
+		if (parameter == null) {
+			parameterSignificantDigits = DEFAULT_SIGNIFICANT_DIGITS;
+			return;
+		}
+		final String message = "The parameter " + Parameter.HISTOGRAM_SIGNIFICANT_DIGITS.getCode()
+				+ " must be an integer between 1 and " + MAX_SIGNIFICANT_DIGITS;
+		final int digits;
+		try {
+			digits = Integer.parseInt(parameter.trim());
+		} catch (final NumberFormatException e) {
+			throw new IllegalStateException(message, e);
+		}
+		if (digits < 1 || digits > MAX_SIGNIFICANT_DIGITS) {
+			throw new IllegalStateException(message);
+		}
+		parameterSignificantDigits = digits;
+	}
+
+	/**
+	 * @return Nombre de chiffres significatifs selon le paramètre histogram-significant-digits,
+	 * lu par {@link #initParameterSignificantDigits()}
+	 */
+	static int getParameterSignificantDigits() {
+		return parameterSignificantDigits;
+	}
+
+	/**
+	 * Nombre de bits des sous-tranches selon le nombre de chiffres significatifs :
+	 * comme dans HdrHistogram, 2 * 10^digits valeurs sont comptées avec une résolution de 1.
+	 * @param significantDigits int
+	 * @return int
+	 */
+	static int getSubBucketBits(int significantDigits) {
+		long largestValueWithSingleUnitResolution = 2;
+		for (int i = 0; i < significantDigits; i++) {
+			largestValueWithSingleUnitResolution *= 10;
+		}
+		return 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+	}
+
+	/**
+	 * Retourne l'index de la tranche d'une valeur.
+	 * @param value Valeur positive
+	 * @param subBucketBits Nombre de bits des sous-tranches
+	 * @return int
+	 */
+	static int getIndex(long value, int subBucketBits) {
+		final int subBucketCount = 1 << subBucketBits;
+		if (value < subBucketCount) {
+			return (int) Math.max(value, 0);
+		}
+		final int halfCount = subBucketCount >> 1;
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - (subBucketBits - 1);
+		return subBucketCount + (shift - 1) * halfCount + (int) ((value >>> shift) - halfCount);
+	}
+
+	/**
+	 * Retourne la plus petite valeur d'une tranche.
+	 * @param index Index de la tranche
+	 * @param subBucketBits Nombre de bits des sous-tranches
+	 * @return long
+	 */
+	static long getLowestValue(int index, int subBucketBits) {
+		final int subBucketCount = 1 << subBucketBits;
+		if (index < subBucketCount) {
+			return index;
+		}
+		final int halfCount = subBucketCount >> 1;
+		final int shift = (index - subBucketCount) / halfCount + 1;
+		final long subBucket = (index - subBucketCount) % halfCount + halfCount;
+		return subBucket << shift;
+	}
+
+	/**
+	 * Retourne la plus grande valeur d'une tranche.
+	 * @param index Index de la tranche
+	 * @param subBucketBits Nombre de bits des sous-tranches
+	 * @return long
+	 */
+	static long getHighestValue(int index, int subBucketBits) {
+		final int subBucketCount = 1 << subBucketBits;
+		if (index < subBucketCount) {
+			return index;
+		}
+		final int shift = (index - subBucketCount) / (subBucketCount >> 1) + 1;
+		return getLowestValue(index, subBucketBits) + (1L << shift) - 1;
+	}
+
+	int getSignificantDigits() {
+		return significantDigits;
+	}
+
+	int getSubBucketBits() {
+		return getSubBucketBits(significantDigits);
+	}
+
+	/**
+	 * @return Nombre total de valeurs dans l'histogramme
+	 */
+	public long getTotalCount() {
+		long total = 0;
+		if (counts != null) {
+			for (final long count : counts) {
+				total += count;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Retourne la valeur en dessous de laquelle se trouve le pourcentage donné des valeurs,
+	 * à la précision de l'histogramme près.
+	 * @param percentile Pourcentage entre 0 et 100 (par exemple 99 pour p99)
+	 * @return long, ou -1 si l'histogramme est vide
+	 */
+	public long getValueAtPercentile(double percentile) {
+		final long total = getTotalCount();
+		if (total == 0) {
+			return -1;
+		}
+		final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		final int subBucketBits = getSubBucketBits();
+		long cumulated = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulated += counts[i];
+			if (cumulated >= target) {
+				return getHighestValue(i, subBucketBits);
+			}
+		}
+		return getHighestValue(counts.length - 1, subBucketBits);
+	}
+
+	void addValue(long value) {
+		addCountAtIndex(getIndex(value, getSubBucketBits()), 1);
+	}
+
+	void addCountAtIndex(int index, long count) {
+		ensureLength(index + 1);
+		counts[index] += count;
+	}
+
+	void addHits(CounterRequestHistogram histogram) {
+		if (histogram.counts == null) {
+			return;
+		}
+		if (histogram.significantDigits == significantDigits) {
+			ensureLength(histogram.counts.length);
+			for (int i = 0; i < histogram.counts.length; i++) {
+				counts[i] += histogram.counts[i];
+			}
+		} else {
+			// précisions différentes (paramètre modifié entre deux démarrages par exemple) :
+			// les valeurs sont reportées au milieu de leurs tranches, ce qui est approché
+			final int subBucketBits = getSubBucketBits();
+			final int otherSubBucketBits = histogram.getSubBucketBits();
+			for (int i = 0; i < histogram.counts.length; i++) {
+				if (histogram.counts[i] != 0) {
+					final long value = (getLowestValue(i, otherSubBucketBits)
+							+ getHighestValue(i, otherSubBucketBits)) / 2;
+					addCountAtIndex(getIndex(value, subBucketBits), histogram.counts[i]);
+				}
+			}
+		}
+	}
+
+	void removeHits(CounterRequestHistogram histogram) {
+		if (histogram.counts == null || counts == null) {
+			return;
+		}
+		final int subBucketBits = getSubBucketBits();
+		final int otherSubBucketBits = histogram.getSubBucketBits();
+		for (int i = 0; i < histogram.counts.length; i++) {
+			if (histogram.counts[i] != 0) {
+				final int index;
+				if (histogram.significantDigits == significantDigits) {
+					index = i;
+				} else {
+					index = getIndex((getLowestValue(i, otherSubBucketBits)
+							+ getHighestValue(i, otherSubBucketBits)) / 2, subBucketBits);
+				}
+				if (index < counts.length) {
+					// pas de compteur négatif si les précisions diffèrent
+					counts[index] = Math.max(0, counts[index] - histogram.counts[i]);
+				}
+			}
+		}
+	}
+
+	private void ensureLength(int length) {
+		if (counts == null) {
+			counts = new long[length];
+		} else if (counts.length < length) {
+			counts = Arrays.copyOf(counts, length);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CounterRequestHistogram clone() { // NOPMD
+		try {
+			final CounterRequestHistogram clone = (CounterRequestHistogram) super.clone();
+			if (counts != null) {
+				clone.counts = counts.clone();
+			}
+			return clone;
+		} catch (final CloneNotSupportedException e) {
+			// ne peut arriver puisque CounterRequestHistogram implémente Cloneable
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[significantDigits=" + significantDigits
+				+ ", totalCount=" + getTotalCount() + ']';
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Service des identifiants des requêtes ({@link CounterRequest#getId()}),
+ * utilisés pour le stockage (fichiers JRobin), pour la collecte et pour le drill-down des rapports.
+ * <p>
+ * Un identifiant est le nom du counter suivi du SHA-1 en hexadécimal du nom de la requête.
+ * Chaque {@link Counter} a sa propre instance, qui conserve en cache borné les identifiants
+ * déjà calculés de ses requêtes (y compris dans le serveur de collecte, où plusieurs applications
+ * ont des counters de même nom), et le MessageDigest est réutilisé par thread,
+ * pour ne pas calculer de SHA-1 à chaque nouvelle instance de {@link CounterRequest}.
+ * @author Emeric Vernat
+ */
+public final class CounterRequestIds {
+	/**
+	 * Longueur de la partie hexadécimale d'un identifiant (SHA-1 en hexadécimal).
+	 */
+	public static final int DIGEST_HEX_LENGTH = 40;
+
+	/**
+	 * Nombre max d'identifiants conservés en cache par counter.
+	 */
+	static final int MAX_CACHED_IDS = 2 * Counter.MAX_REQUESTS_COUNT;
+
+	private static final char[] HEX_ARRAY = "0123456789abcdef".toCharArray();
+
+	private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST_THREAD_LOCAL = ThreadLocal
+			.withInitial(CounterRequestIds::getMessageDigestInstance);
+
+	private final String counterName;
+	private final ConcurrentMap<String, String> idsByRequestName = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructeur.
+	 * @param counterName Nom du counter
+	 */
+	CounterRequestIds(String counterName) {
+		super();
+		assert counterName != null;
+		this.counterName = counterName;
+	}
+
+	/**
+	 * Retourne l'identifiant supposé unique d'une requête, depuis le cache si possible.
+	 * @param requestName Nom de la requête (agrégée)
+	 * @param cacheIfAbsent true pour ajouter l'identifiant au cache s'il n'y est pas, false pour
+	 * une requête qui ne sera pas conservée dans le counter (requête en cours non agrégée par ex.)
+	 * @return String
+	 */
+	String getId(String requestName, boolean cacheIfAbsent) {
+		assert requestName != null;
+		String id = idsByRequestName.get(requestName);
+		if (id == null) {
+			id = buildId(requestName, counterName);
+			if (cacheIfAbsent) {
+				if (idsByRequestName.size() >= MAX_CACHED_IDS) {
+					evict();
+				}
+				idsByRequestName.put(requestName, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * @return Nombre d'identifiants en cache
+	 */
+	int getCachedIdsCount() {
+		return idsByRequestName.size();
+	}
+
+	private void evict() {
+		// éviction d'un quart des entrées, dans l'ordre arbitraire de la map,
+		// pour ne pas évincer à chaque nouveau nom une fois le cache plein
+		// (sql non bindé par ex.) et sans perdre tout le cache d'un coup
+		int toRemove = MAX_CACHED_IDS / 4;
+		final Iterator<String> iterator = idsByRequestName.keySet().iterator();
+		while (toRemove > 0 && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			toRemove--;
+		}
+	}
+
+	/**
+	 * Calcule l'identifiant supposé unique d'une requête pour le stockage, sans cache.
+	 * @param name Nom de la requête (agrégée)
+	 * @param counterName Nom du counter
+	 * @return String
+	 */
+	public static String buildId(String name, String counterName) {
+		final MessageDigest messageDigest = MESSAGE_DIGEST_THREAD_LOCAL.get();
+		// digest() réinitialise le MessageDigest qui peut donc être réutilisé par ce thread
+		final byte[] digest = messageDigest.digest(name.getBytes());
+
+		final int l = counterName.length();
+		final char[] chars = new char[l + digest.length * 2];
+		// copie du counterName au début de chars
+		counterName.getChars(0, l, chars, 0);
+		// encodage en chaîne hexadécimale du digest,
+		// puisque les caractères bizarres ne peuvent être utilisés sur un système de fichiers
+		for (int j = 0; j < digest.length; j++) {
+			final int v = digest[j] & 0xFF;
+			chars[j * 2 + l] = HEX_ARRAY[v >>> 4];
+			chars[j * 2 + 1 + l] = HEX_ARRAY[v & 0x0F];
+		}
+		return new String(chars);
+	}
+
+	private static MessageDigest getMessageDigestInstance() {
+		// SHA1 est un algorithme de hashage qui évite les conflits à 2^80 près entre
+		// les identifiants supposés uniques (SHA1 est mieux que MD5 qui est mieux que CRC32).
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			// ne peut arriver car SHA1 est un algorithme disponible par défaut dans le JDK Sun
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+
+/**
+ * N+1 suspecté pour une requête parente (http ou spring par exemple) :
+ * une même requête sql fille exécutée plus d'un nombre de fois paramétrable
+ * dans une seule exécution de la requête parente.
+ * Les méthodes de modification sont appelées dans un bloc synchronisé sur la {@link CounterRequest}.
+ * @author Emeric Vernat
+ */
+public final class CounterRequestNPlusOne implements Serializable, Cloneable {
+	private static final long serialVersionUID = -1476843728912348712L;
+
+	private final String childRequestId;
+	private final String childRequestName;
+	// nombre d'exécutions de la requête parente avec ce N+1
+	private long occurrences;
+	private long repetitionsSum;
+	private long maxRepetitions;
+	// requête parente complète (url avec paramètres par exemple) de l'exécution la plus répétée
+	private String sample;
+
+	CounterRequestNPlusOne(String childRequestId, String childRequestName) {
+		super();
+		assert childRequestId != null;
+		this.childRequestId = childRequestId;
+		this.childRequestName = childRequestName;
+	}
+
+	/**
+	 * @return Id de la requête fille répétée
+	 */
+	public String getChildRequestId() {
+		return childRequestId;
+	}
+
+	/**
+	 * @return Nom de la requête fille répétée
+	 */
+	public String getChildRequestName() {
+		return childRequestName;
+	}
+
+	/**
+	 * @return Nombre d'exécutions de la requête parente dans lesquelles la requête fille est répétée
+	 */
+	public long getOccurrences() {
+		return occurrences;
+	}
+
+	/**
+	 * @return Somme des répétitions de la requête fille, pour classer les N+1 suspectés
+	 */
+	public long getRepetitionsSum() {
+		return repetitionsSum;
+	}
+
+	/**
+	 * @return Nombre moyen de répétitions de la requête fille par exécution de la requête parente
+	 */
+	public long getRepetitionsMean() {
+		if (occurrences > 0) {
+			return repetitionsSum / occurrences;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Nombre maximum de répétitions de la requête fille dans une exécution de la requête parente
+	 */
+	public long getMaxRepetitions() {
+		return maxRepetitions;
+	}
+
+	/**
+	 * @return Requête parente complète de l'exécution avec le plus de répétitions
+	 */
+	public String getSample() {
+		return sample;
+	}
+
+	void addOccurrence(long repetitions, String parentSample) {
+		occurrences++;
+		repetitionsSum += repetitions;
+		if (repetitions > maxRepetitions) {
+			maxRepetitions = repetitions;
+			sample = parentSample;
+		}
+	}
+
+	void addHits(CounterRequestNPlusOne other) {
+		occurrences += other.occurrences;
+		repetitionsSum += other.repetitionsSum;
+		if (other.maxRepetitions > maxRepetitions) {
+			maxRepetitions = other.maxRepetitions;
+			sample = other.sample;
+		}
+	}
+
+	void removeHits(CounterRequestNPlusOne other) {
+		// le maximum et l'exemple ne peuvent pas être enlevés, comme pour le maximum des requêtes
+		occurrences -= other.occurrences;
+		repetitionsSum -= other.repetitionsSum;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CounterRequestNPlusOne clone() { // NOPMD
+		try {
+			return (CounterRequestNPlusOne) super.clone();
+		} catch (final CloneNotSupportedException e) {
+			// ne peut arriver puisque CounterRequestNPlusOne implémente Cloneable
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[childRequestName=" + childRequestName
+				+ ", occurrences=" + occurrences + ", maxRepetitions=" + maxRepetitions + ']';
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Une exécution lente d'une requête, conservée parmi les plus lentes
+ * dans {@link CounterRequestSlowestExecutions}.
+ * L'état d'une instance est initialisé à son instanciation et non mutable;
+ * il est donc de fait thread-safe.
+ * @author Emeric Vernat
+ */
+public final class CounterRequestSlowExecution
+		implements Serializable, Comparable<CounterRequestSlowExecution> {
+	private static final long serialVersionUID = 3181485325383410379L;
+
+	// taille maximum de chaque valeur de paramètre et de l'ensemble des paramètres
+	private static final int MAX_VALUE_LENGTH = 100;
+	private static final int MAX_PARAMETERS_LENGTH = 1000;
+
+	private final long startTime;
+	private final long duration;
+	private final String parentRequestName;
+	private final String parameters;
+
+	CounterRequestSlowExecution(long startTime, long duration, String parentRequestName,
+			String parameters) {
+		super();
+		this.startTime = startTime;
+		this.duration = duration;
+		this.parentRequestName = parentRequestName;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Formate les valeurs des paramètres d'une requête, seulement si l'exécution est conservée.
+	 * @param values Valeurs des paramètres (index 1 à n comme en jdbc, l'index 0 n'est pas utilisé)
+	 * @param masked true pour n'afficher que le type des valeurs et pas les valeurs elles-mêmes
+	 * @return String, ou null s'il n'y a pas de paramètres
+	 */
+	static String formatParameters(Object[] values, boolean masked) {
+		if (values == null) {
+			return null;
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < values.length && sb.length() < MAX_PARAMETERS_LENGTH; i++) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(formatValue(values[i], masked));
+		}
+		if (sb.length() == 0) {
+			return null;
+		}
+		if (sb.length() > MAX_PARAMETERS_LENGTH) {
+			sb.setLength(MAX_PARAMETERS_LENGTH);
+			sb.append("...");
+		}
+		return sb.toString();
+	}
+
+	private static String formatValue(Object value, boolean masked) {
+		if (value == null) {
+			return "null";
+		} else if (value instanceof byte[]) {
+			return "<byte[" + ((byte[]) value).length + "]>";
+		} else if (masked || value instanceof InputStream || value instanceof Reader) {
+			// on ne lit pas les flux, et on n'affiche pas les valeurs si elles sont masquées
+			return '<' + value.getClass().getSimpleName() + '>';
+		}
+		String string = value.toString();
+		if (string.length() > MAX_VALUE_LENGTH) {
+			string = string.substring(0, MAX_VALUE_LENGTH) + "...";
+		}
+		if (value instanceof CharSequence) {
+			return '\'' + string + '\'';
+		}
+		return string;
+	}
+
+	/**
+	 * @return Date de début de l'exécution
+	 */
+	public Date getStartDate() {
+		return new Date(startTime);
+	}
+
+	/**
+	 * @return Durée de l'exécution en millisecondes
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return Nom de la requête parente (http par exemple), ou null si pas de requête parente
+	 */
+	public String getParentRequestName() {
+		return parentRequestName;
+	}
+
+	/**
+	 * @return Valeurs des paramètres formatées, ou null si pas de paramètres
+	 */
+	public String getParameters() {
+		return parameters;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int compareTo(CounterRequestSlowExecution other) {
+		// ordre croissant des durées pour le tas minimum
+		return Long.compare(duration, other.duration);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CounterRequestSlowExecution)) {
+			return false;
+		}
+		final CounterRequestSlowExecution other = (CounterRequestSlowExecution) obj;
+		return startTime == other.startTime && duration == other.duration
+				&& Objects.equals(parentRequestName, other.parentRequestName)
+				&& Objects.equals(parameters, other.parameters);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return Objects.hash(startTime, duration, parentRequestName, parameters);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[startTime=" + startTime + ", duration=" + duration
+				+ ", parentRequestName=" + parentRequestName + ", parameters=" + parameters + ']';
+	}
+}
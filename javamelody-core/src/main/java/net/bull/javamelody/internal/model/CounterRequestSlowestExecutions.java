@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Les exécutions les plus lentes d'une requête, dans un tas minimum borné :
+ * la plus rapide des exécutions conservées est en tête et elle est remplacée
+ * par une exécution plus lente lorsque le nombre maximum est atteint.
+ * <p>
+ * La durée minimum pour être conservée est lisible sans synchronisation,
+ * ce qui permet de ne formater les paramètres d'une exécution que si elle est conservée.
+ * Les autres méthodes sont appelées dans un bloc synchronisé sur la {@link CounterRequest}.
+ * @author Emeric Vernat
+ */
+class CounterRequestSlowestExecutions implements Serializable, Cloneable {
+	private static final long serialVersionUID = -5937512394870271853L;
+
+	private final int maxSize;
+	private PriorityQueue<CounterRequestSlowExecution> executions;
+	// durée de la plus rapide des exécutions conservées, ou -1 s'il reste de la place
+	private transient volatile long minimumDuration = -1;
+
+	CounterRequestSlowestExecutions(int maxSize) {
+		super();
+		assert maxSize > 0;
+		this.maxSize = maxSize;
+		this.executions = new PriorityQueue<>(maxSize);
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	boolean isSlowerThanMinimum(long duration) {
+		return duration > minimumDuration;
+	}
+
+	void add(CounterRequestSlowExecution execution) {
+		if (executions.size() < maxSize) {
+			executions.add(execution);
+		} else if (execution.getDuration() > executions.peek().getDuration()) {
+			executions.poll();
+			executions.add(execution);
+		}
+		updateMinimumDuration();
+	}
+
+	void addAll(CounterRequestSlowestExecutions slowestExecutions) {
+		for (final CounterRequestSlowExecution execution : slowestExecutions.executions) {
+			if (!executions.contains(execution)) {
+				add(execution);
+			}
+		}
+	}
+
+	void removeAll(CounterRequestSlowestExecutions slowestExecutions) {
+		// les exécutions déjà présentes dans la période précédente ne sont pas comptées à nouveau
+		executions.removeAll(slowestExecutions.executions);
+		updateMinimumDuration();
+	}
+
+	boolean isEmpty() {
+		return executions.isEmpty();
+	}
+
+	/**
+	 * @return Exécutions conservées, de la plus lente à la plus rapide
+	 */
+	List<CounterRequestSlowExecution> getExecutions() {
+		final List<CounterRequestSlowExecution> result = new ArrayList<>(executions);
+		result.sort(Collections.reverseOrder());
+		return result;
+	}
+
+	private void updateMinimumDuration() {
+		if (executions.size() < maxSize) {
+			minimumDuration = -1;
+		} else {
+			minimumDuration = executions.peek().getDuration();
+		}
+	}
+
+	private Object readResolve() {
+		// minimumDuration est transient
+		updateMinimumDuration();
+		return this;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CounterRequestSlowestExecutions clone() { // NOPMD
+		try {
+			final CounterRequestSlowestExecutions clone = (CounterRequestSlowestExecutions) super
+					.clone();
+			clone.executions = new PriorityQueue<>(executions);
+			return clone;
+		} catch (final CloneNotSupportedException e) {
+			// ne peut arriver puisque CounterRequestSlowestExecutions implémente Cloneable
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[maxSize=" + maxSize + ", executions=" + executions
+				+ ']';
+	}
+}
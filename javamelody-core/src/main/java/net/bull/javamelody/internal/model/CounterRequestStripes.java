@@ -0,0 +1,155 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cellules striées (une par thread en cas de contention, comme {@link LongAdder})
+ * pour ajouter les hits d'une {@link CounterRequest} sans synchronisation.
+ * Les valeurs sont reportées dans la {@link CounterRequest} par {@link CounterRequest#flushStripedHits()}
+ * quand le {@link Counter} en fait une copie (rapport ou collecte).
+ * @author Emeric Vernat
+ */
+final class CounterRequestStripes {
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder durationsSum = new LongAdder();
+	private final LongAdder durationsSquareSum = new LongAdder();
+	private final LongAccumulator maximum = new LongAccumulator(Math::max, 0);
+	private final LongAdder cpuTimeSum = new LongAdder();
+	private final LongAdder allocatedKBytesSum = new LongAdder();
+	private final LongAdder systemErrors = new LongAdder();
+	private final LongAdder responseSizesSum = new LongAdder();
+	// tranches de l'histogramme des durées, créées à la première valeur de chaque tranche,
+	// dans un tableau agrandi jusqu'à la plus grande tranche rencontrée comme dans
+	// CounterRequestHistogram (les durées au-delà de Integer.MAX_VALUE ms sont dans la dernière)
+	private final int histogramSubBucketBits;
+	private volatile AtomicReferenceArray<LongAdder> histogramCounts;
+	private final AtomicInteger histogramMaxIndex = new AtomicInteger(-1);
+
+	CounterRequestStripes(int histogramSubBucketBits) {
+		super();
+		this.histogramSubBucketBits = histogramSubBucketBits;
+		this.histogramCounts = new AtomicReferenceArray<>(0);
+	}
+
+	void addHit(long duration, int cpuTime, int allocatedKBytes, boolean systemError,
+			long responseSize) {
+		addHistogramValue(duration);
+		durationsSum.add(duration);
+		durationsSquareSum.add(duration * duration);
+		maximum.accumulate(duration);
+		cpuTimeSum.add(cpuTime);
+		allocatedKBytesSum.add(allocatedKBytes);
+		if (systemError) {
+			systemErrors.increment();
+		}
+		responseSizesSum.add(responseSize);
+		// hits en dernier : un hit en cours d'ajout pendant un report est au pire
+		// compté dans les sommes avant d'être compté dans les hits, et il le sera au report suivant
+		hits.increment();
+	}
+
+	private void addHistogramValue(long duration) {
+		final int index = CounterRequestHistogram
+				.getIndex(Math.min(duration, Integer.MAX_VALUE), histogramSubBucketBits);
+		LongAdder count;
+		AtomicReferenceArray<LongAdder> counts;
+		do {
+			counts = histogramCounts;
+			if (index >= counts.length()) {
+				counts = growHistogramCounts(index + 1);
+			}
+			count = counts.get(index);
+			if (count == null) {
+				counts.compareAndSet(index, null, new LongAdder());
+				count = counts.get(index);
+			}
+			// si le tableau a été agrandi entre temps, la cellule a peut-être été créée
+			// dans l'ancien tableau après sa copie : on recommence avec le nouveau tableau
+		} while (counts != histogramCounts);
+		if (index > histogramMaxIndex.get()) {
+			histogramMaxIndex.accumulateAndGet(index, Math::max);
+		}
+		count.increment();
+	}
+
+	private synchronized AtomicReferenceArray<LongAdder> growHistogramCounts(int length) {
+		final AtomicReferenceArray<LongAdder> counts = histogramCounts;
+		if (counts.length() >= length) {
+			return counts;
+		}
+		final AtomicReferenceArray<LongAdder> newCounts = new AtomicReferenceArray<>(length);
+		for (int i = 0; i < counts.length(); i++) {
+			newCounts.set(i, counts.get(i));
+		}
+		histogramCounts = newCounts;
+		return newCounts;
+	}
+
+	void sumThenResetHistogram(CounterRequestHistogram histogram) {
+		// l'histogramme de la requête est celui dont la précision a servi à créer ces cellules
+		assert histogram.getSubBucketBits() == histogramSubBucketBits;
+		final AtomicReferenceArray<LongAdder> counts = histogramCounts;
+		final int maxIndex = Math.min(histogramMaxIndex.get(), counts.length() - 1);
+		for (int i = 0; i <= maxIndex; i++) {
+			final LongAdder count = counts.get(i);
+			if (count != null) {
+				final long sum = count.sumThenReset();
+				if (sum != 0) {
+					histogram.addCountAtIndex(i, sum);
+				}
+			}
+		}
+	}
+
+	long sumThenResetHits() {
+		return hits.sumThenReset();
+	}
+
+	long sumThenResetDurationsSum() {
+		return durationsSum.sumThenReset();
+	}
+
+	long sumThenResetDurationsSquareSum() {
+		return durationsSquareSum.sumThenReset();
+	}
+
+	long getThenResetMaximum() {
+		return maximum.getThenReset();
+	}
+
+	long sumThenResetCpuTimeSum() {
+		return cpuTimeSum.sumThenReset();
+	}
+
+	long sumThenResetAllocatedKBytesSum() {
+		return allocatedKBytesSum.sumThenReset();
+	}
+
+	long sumThenResetSystemErrors() {
+		return systemErrors.sumThenReset();
+	}
+
+	long sumThenResetResponseSizesSum() {
+		return responseSizesSum.sumThenReset();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+import java.util.regex.Pattern;
+
+/**
+ * Informations jdbc pour une DataSource (connexions utilisées et actives, transactions,
+ * cumuls des requêtes sql), sans code html de présentation.
+ * L'état d'une instance est initialisé à son instanciation et non mutable;
+ * il est donc de fait thread-safe.
+ * Les instances sont sérialisables pour pouvoir être transmises au serveur de collecte.
+ * @author Emeric Vernat
+ */
+public final class DataSourceInformations implements Serializable {
+	/**
+	 * Séparateur entre le nom d'une courbe globale et le nom de la DataSource,
+	 * dans le nom d'une courbe par DataSource (par exemple "usedConnections-jdbc_test").
+	 */
+	public static final char GRAPH_NAME_SEPARATOR = '-';
+
+	private static final long serialVersionUID = 4405536452434117213L;
+
+	// le nom d'une courbe sert aussi de nom de fichier et de paramètre http
+	private static final Pattern GRAPH_NAME_SANITIZE_PATTERN = Pattern.compile("[^a-zA-Z0-9_]");
+
+	private final String name;
+	private final int usedConnectionCount;
+	private final int activeConnectionCount;
+	private final long transactionCount;
+	private final long sqlHits;
+	private final long sqlDurationsSum;
+	private final long sqlSystemErrors;
+
+	DataSourceInformations(String name, int usedConnectionCount, int activeConnectionCount,
+			long transactionCount, long sqlHits, long sqlDurationsSum, long sqlSystemErrors) {
+		super();
+		assert name != null;
+		this.name = name;
+		this.usedConnectionCount = usedConnectionCount;
+		this.activeConnectionCount = activeConnectionCount;
+		this.transactionCount = transactionCount;
+		this.sqlHits = sqlHits;
+		this.sqlDurationsSum = sqlDurationsSum;
+		this.sqlSystemErrors = sqlSystemErrors;
+	}
+
+	/**
+	 * Retourne le nom d'une courbe pour une DataSource.
+	 * @param graphName Nom de la courbe globale (par exemple "usedConnections")
+	 * @param dataSourceName Nom de la DataSource
+	 * @return String
+	 */
+	public static String getGraphName(String graphName, String dataSourceName) {
+		return graphName + GRAPH_NAME_SEPARATOR
+				+ GRAPH_NAME_SANITIZE_PATTERN.matcher(dataSourceName).replaceAll("_");
+	}
+
+	DataSourceInformations add(DataSourceInformations other) {
+		// somme pour une même DataSource sur plusieurs serveurs
+		assert name.equals(other.name);
+		return new DataSourceInformations(name, usedConnectionCount + other.usedConnectionCount,
+				activeConnectionCount + other.activeConnectionCount,
+				transactionCount + other.transactionCount, sqlHits + other.sqlHits,
+				sqlDurationsSum + other.sqlDurationsSum, sqlSystemErrors + other.sqlSystemErrors);
+	}
+
+	/**
+	 * @return Nom de la DataSource
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Nombre de connexions jdbc ouvertes
+	 */
+	public int getUsedConnectionCount() {
+		return usedConnectionCount;
+	}
+
+	/**
+	 * @return Nombre de connexions jdbc actives (requêtes sql en cours)
+	 */
+	public int getActiveConnectionCount() {
+		return activeConnectionCount;
+	}
+
+	/**
+	 * @return Nombre de transactions (connexions ouvertes) depuis le démarrage
+	 */
+	public long getTransactionCount() {
+		return transactionCount;
+	}
+
+	/**
+	 * @return Nombre d'exécutions de requêtes sql depuis le démarrage
+	 */
+	public long getSqlHits() {
+		return sqlHits;
+	}
+
+	/**
+	 * @return Cumul des durées des requêtes sql en millisecondes
+	 */
+	public long getSqlDurationsSum() {
+		return sqlDurationsSum;
+	}
+
+	/**
+	 * @return Nombre d'erreurs systèmes des requêtes sql
+	 */
+	public long getSqlSystemErrors() {
+		return sqlSystemErrors;
+	}
+
+	/**
+	 * @return Temps moyen des requêtes sql en millisecondes, ou -1 si pas de requête
+	 */
+	public int getSqlMean() {
+		if (sqlHits > 0) {
+			return (int) (sqlDurationsSum / sqlHits);
+		}
+		return -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[name=" + getName() + ", usedConnectionCount="
+				+ getUsedConnectionCount() + ", activeConnectionCount="
+				+ getActiveConnectionCount() + ", transactionCount=" + getTransactionCount()
+				+ ", sqlHits=" + getSqlHits() + ", sqlMean=" + getSqlMean() + ']';
+	}
+}
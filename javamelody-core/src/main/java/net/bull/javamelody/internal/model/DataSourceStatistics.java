@@ -0,0 +1,154 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistiques jdbc d'une DataSource : connexions utilisées et actives, transactions
+ * et cumuls des requêtes sql, en plus des statistiques globales de toutes les DataSources.
+ * <p>
+ * L'instance est obtenue une seule fois à la création de chaque connexion et de chaque statement,
+ * puis elle est conservée dans un champ du proxy ou de la classe de wrapper :
+ * le coût supplémentaire à chaque requête sql est donc seulement la lecture de ce champ
+ * et quelques incréments sans verrou.
+ * @author Emeric Vernat
+ */
+public final class DataSourceStatistics {
+	// nombre maximum de DataSources pour éviter une éventuelle saturation mémoire
+	private static final int MAX_DATASOURCES = 100;
+
+	private static final Map<String, DataSourceStatistics> STATISTICS_BY_DATASOURCE_NAME = new ConcurrentHashMap<>();
+
+	private final String name;
+	private final AtomicInteger usedConnectionCount = new AtomicInteger();
+	private final AtomicInteger activeConnectionCount = new AtomicInteger();
+	private final AtomicLong transactionCount = new AtomicLong();
+	private final LongAdder sqlHits = new LongAdder();
+	private final LongAdder sqlDurationsSum = new LongAdder();
+	private final LongAdder sqlSystemErrors = new LongAdder();
+
+	private DataSourceStatistics(String name) {
+		super();
+		this.name = name;
+	}
+
+	/**
+	 * Retourne les statistiques d'une DataSource, en les créant si besoin.
+	 * @param dataSourceName Nom de la DataSource
+	 * @return DataSourceStatistics, ou null si le nombre maximum de DataSources est atteint
+	 */
+	public static DataSourceStatistics getInstance(String dataSourceName) {
+		assert dataSourceName != null;
+		final DataSourceStatistics statistics = STATISTICS_BY_DATASOURCE_NAME.get(dataSourceName);
+		if (statistics != null
+				|| STATISTICS_BY_DATASOURCE_NAME.size() >= MAX_DATASOURCES) {
+			return statistics;
+		}
+		return STATISTICS_BY_DATASOURCE_NAME.computeIfAbsent(dataSourceName,
+				DataSourceStatistics::new);
+	}
+
+	/**
+	 * Réinitialise les statistiques de toutes les DataSources.
+	 * Les instances ayant encore des connexions ouvertes sont conservées (seuls leurs cumuls
+	 * sont réinitialisés), car elles sont référencées par ces connexions et leurs statements
+	 * qui continuent d'y compter.
+	 */
+	public static void clear() {
+		for (final DataSourceStatistics statistics : STATISTICS_BY_DATASOURCE_NAME.values()) {
+			statistics.transactionCount.set(0);
+			statistics.sqlHits.reset();
+			statistics.sqlDurationsSum.reset();
+			statistics.sqlSystemErrors.reset();
+		}
+		STATISTICS_BY_DATASOURCE_NAME.values()
+				.removeIf(statistics -> statistics.usedConnectionCount.get() <= 0
+						&& statistics.activeConnectionCount.get() <= 0);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Une connexion de cette DataSource a été ouverte.
+	 */
+	public void connectionCreated() {
+		usedConnectionCount.incrementAndGet();
+		transactionCount.incrementAndGet();
+	}
+
+	/**
+	 * Une connexion de cette DataSource a été fermée.
+	 */
+	public void connectionClosed() {
+		usedConnectionCount.decrementAndGet();
+	}
+
+	/**
+	 * Début de l'exécution d'une requête sql sur une connexion de cette DataSource.
+	 */
+	public void sqlExecutionStarted() {
+		activeConnectionCount.incrementAndGet();
+	}
+
+	/**
+	 * Fin de l'exécution d'une requête sql sur une connexion de cette DataSource.
+	 * @param duration Durée en millisecondes, ou -1 si la requête n'est pas comptée
+	 * @param systemError Erreur système
+	 */
+	public void sqlExecutionFinished(long duration, boolean systemError) {
+		activeConnectionCount.decrementAndGet();
+		if (duration >= 0) {
+			sqlHits.increment();
+			sqlDurationsSum.add(duration);
+			if (systemError) {
+				sqlSystemErrors.increment();
+			}
+		}
+	}
+
+	static List<DataSourceInformations> buildDataSourceInformationsList() {
+		final List<DataSourceInformations> result = new ArrayList<>(
+				STATISTICS_BY_DATASOURCE_NAME.size());
+		for (final DataSourceStatistics statistics : STATISTICS_BY_DATASOURCE_NAME.values()) {
+			result.add(new DataSourceInformations(statistics.name,
+					statistics.usedConnectionCount.get(), statistics.activeConnectionCount.get(),
+					statistics.transactionCount.get(), statistics.sqlHits.sum(),
+					statistics.sqlDurationsSum.sum(), statistics.sqlSystemErrors.sum()));
+		}
+		result.sort((informations1, informations2) -> informations1.getName()
+				.compareTo(informations2.getName()));
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[name=" + getName() + ", usedConnectionCount="
+				+ usedConnectionCount + ", activeConnectionCount=" + activeConnectionCount
+				+ ", transactionCount=" + transactionCount + ']';
+	}
+}
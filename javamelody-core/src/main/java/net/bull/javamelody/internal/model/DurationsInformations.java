@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+
+/**
+ * Informations sur des durées enregistrées par un {@link DurationsRecorder},
+ * soit le surcoût de javamelody pour une phase (http, sql, collecte...),
+ * soit l'attente pour obtenir une connexion jdbc d'une DataSource,
+ * sans code html de présentation.
+ * L'état d'une instance est initialisé à son instanciation et non mutable;
+ * il est donc de fait thread-safe.
+ * Les instances sont sérialisables pour pouvoir être transmises au serveur de collecte.
+ * @author Emeric Vernat
+ */
+public final class DurationsInformations implements Serializable {
+	private static final long serialVersionUID = -1805313498117417493L;
+
+	private final String name;
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final CounterRequestHistogram histogram;
+
+	DurationsInformations(String name, long count, long totalNanos, long maxNanos,
+			CounterRequestHistogram histogram) {
+		super();
+		assert name != null;
+		assert histogram != null;
+		this.name = name;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * @return Nom de la phase (http, sql, collectCounters...) ou de la DataSource
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Nombre de mesures
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Cumul des durées en nanosecondes
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return Durée maximum en nanosecondes
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return Durée moyenne en nanosecondes, ou -1 si pas de mesure
+	 */
+	public long getMeanNanos() {
+		if (count > 0) {
+			return totalNanos / count;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param percentile Pourcentage entre 0 et 100 (par exemple 99 pour p99)
+	 * @return Durée en nanosecondes en dessous de laquelle se trouve ce pourcentage des mesures,
+	 * ou -1 si pas de mesure
+	 */
+	public long getNanosAtPercentile(double percentile) {
+		return histogram.getValueAtPercentile(percentile);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[name=" + getName() + ", count=" + getCount()
+				+ ", meanNanos=" + getMeanNanos() + ", maxNanos=" + getMaxNanos() + ']';
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enregistrement sans verrou de durées en nanosecondes : cumul, maximum et histogramme
+ * à tranches fixes de même découpage que {@link CounterRequestHistogram}.
+ * Utilisé pour le surcoût de javamelody et pour les attentes de connexions jdbc.
+ * @author Emeric Vernat
+ */
+final class DurationsRecorder {
+	private static final int SUB_BUCKET_BITS = CounterRequestHistogram
+			.getSubBucketBits(CounterRequestHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+
+	private static final int BUCKET_COUNT = CounterRequestHistogram.getIndex(Long.MAX_VALUE,
+			SUB_BUCKET_BITS) + 1;
+
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	DurationsRecorder() {
+		super();
+	}
+
+	void add(long nanos) {
+		final long value = Math.max(nanos, 0);
+		totalNanos.add(value);
+		maxNanos.accumulate(value);
+		buckets.incrementAndGet(CounterRequestHistogram.getIndex(value, SUB_BUCKET_BITS));
+	}
+
+	long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * @param name Nom de la phase ou de la DataSource
+	 * @return DurationsInformations, ou null si aucune durée n'a été enregistrée
+	 */
+	DurationsInformations buildInformations(String name) {
+		final CounterRequestHistogram histogram = buildHistogram();
+		if (histogram.getTotalCount() == 0) {
+			return null;
+		}
+		return new DurationsInformations(name, histogram.getTotalCount(), getTotalNanos(),
+				getMaxNanos(), histogram);
+	}
+
+	CounterRequestHistogram buildHistogram() {
+		final CounterRequestHistogram histogram = new CounterRequestHistogram(
+				CounterRequestHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			final long bucketCount = buckets.get(i);
+			if (bucketCount != 0) {
+				histogram.addCountAtIndex(i, bucketCount);
+			}
+		}
+		return histogram;
+	}
+
+	void clear() {
+		totalNanos.reset();
+		maxNanos.reset();
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sélection des requêtes les moins fréquentes à évincer d'un counter ayant trop de requêtes
+ * (sql non bindé par exemple), pour ne garder que les requêtes les plus fréquentes ("heavy hitters").
+ * <p>
+ * La sélection se fait en temps linéaire (en moyenne) par un quickselect sur les hits,
+ * sans tri et sans suppression dans une liste. Comme dans l'algorithme Space-Saving,
+ * le nombre maximum de hits d'une requête évincée borne l'erreur sur les hits des requêtes conservées
+ * (une requête évincée puis revenue n'a pas ses hits précédents).
+ * @author Emeric Vernat
+ */
+final class HeavyHitters {
+	private HeavyHitters() {
+		super();
+	}
+
+	/**
+	 * Retourne les requêtes ayant le moins de hits parmi celles en paramètre.
+	 * @param requests Requêtes
+	 * @param count Nombre maximum de requêtes à retourner
+	 * @param hitsLimit Seules les requêtes ayant strictement moins de hits que cette limite peuvent être retournées
+	 * @return Liste des requêtes à évincer, dans un ordre quelconque
+	 */
+	static List<CounterRequest> getLightestRequests(Collection<CounterRequest> requests,
+			int count, long hitsLimit) {
+		if (count <= 0) {
+			return new ArrayList<>();
+		}
+		// copie des hits, qui peuvent changer pendant la sélection si le counter est utilisé
+		final CounterRequest[] candidates = new CounterRequest[requests.size()];
+		final long[] hits = new long[candidates.length];
+		int size = 0;
+		for (final CounterRequest request : requests) {
+			final long requestHits = request.getHits();
+			if (requestHits < hitsLimit && size < candidates.length) {
+				candidates[size] = request;
+				hits[size] = requestHits;
+				size++;
+			}
+		}
+		if (size > count) {
+			select(candidates, hits, size, count);
+			size = count;
+		}
+		return new ArrayList<>(Arrays.asList(candidates).subList(0, size));
+	}
+
+	// réordonne les size premiers éléments pour que les count premiers aient le moins de hits
+	private static void select(CounterRequest[] candidates, long[] hits, int size, int count) {
+		final int target = count - 1;
+		int left = 0;
+		int right = size - 1;
+		while (left < right) {
+			// partition en 3 parties (inférieurs, égaux, supérieurs au pivot du milieu),
+			// car beaucoup de requêtes ont le même nombre de hits (souvent 1)
+			final long pivot = hits[(left + right) >>> 1];
+			int lower = left;
+			int i = left;
+			int greater = right;
+			while (i <= greater) {
+				if (hits[i] < pivot) {
+					swap(candidates, hits, i, lower);
+					lower++;
+					i++;
+				} else if (hits[i] > pivot) {
+					swap(candidates, hits, i, greater);
+					greater--;
+				} else {
+					i++;
+				}
+			}
+			if (target < lower) {
+				right = lower - 1;
+			} else if (target > greater) {
+				left = greater + 1;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swap(CounterRequest[] candidates, long[] hits, int i, int j) {
+		final CounterRequest request = candidates[i];
+		candidates[i] = candidates[j];
+		candidates[j] = request;
+		final long tmp = hits[i];
+		hits[i] = hits[j];
+		hits[j] = tmp;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gabarit (template) du chemin d'une requête http, pour agréger dans le counter http
+ * les requêtes d'une api rest qui ne diffèrent que par des identifiants dans l'url
+ * (/orders/123 GET et /orders/124 GET deviennent /orders/$ GET).
+ * <p>
+ * En une seule passe sur le chemin et sans expression régulière, un segment de chemin
+ * est remplacé par $ s'il ressemble à un identifiant :
+ * <ul>
+ * <li>nombre,</li>
+ * <li>uuid,</li>
+ * <li>hexadécimal d'au moins 8 caractères avec au moins un chiffre,</li>
+ * <li>base64 ou base64url d'au moins 22 caractères (128 bits) avec chiffres, majuscules et minuscules.</li>
+ * </ul>
+ * Les autres segments sont appris dans un arbre (trie) des segments, borné en taille :
+ * à une position du chemin ayant plus de {@link #MAX_SEGMENTS_PER_NODE} segments différents
+ * (noms d'utilisateurs par ex.), ou si l'arbre est plein, les segments inconnus sont aussi
+ * remplacés par $. Le premier segment du chemin n'a pas cette limite, seulement celle
+ * de la taille de l'arbre, car une application peut avoir plus de 100 ressources racines.
+ * Le reste du nom de la requête (méthode http) est conservé tel quel.
+ * <p>
+ * L'arbre n'est pas vieilli : une fois plein, les nouveaux segments restent remplacés par $
+ * jusqu'à ce que les données du counter http soient purgées, ce qui réinitialise l'arbre
+ * par {@link #clear()}, ou jusqu'au redémarrage de l'application.
+ * @author Emeric Vernat
+ */
+public final class HttpPathTemplater {
+	/**
+	 * Nombre max de segments différents à une même position du chemin (sauf la racine),
+	 * au-delà duquel cette position est considérée comme variable.
+	 */
+	static final int MAX_SEGMENTS_PER_NODE = 100;
+
+	/**
+	 * Nombre max de noeuds dans l'arbre des segments appris.
+	 */
+	static final int MAX_NODES = Counter.MAX_REQUESTS_COUNT;
+
+	private static final String VARIABLE_SEGMENT = String
+			.valueOf(Counter.TRANSFORM_REPLACEMENT_CHAR);
+	private static final int MIN_HEX_LENGTH = 8;
+	private static final int MIN_BASE64_LENGTH = 22;
+	private static final int UUID_LENGTH = 36;
+
+	private final Node root = new Node();
+	private final AtomicInteger nodeCount = new AtomicInteger(1);
+
+	private static final class Node {
+		final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+		// true si cette position du chemin a eu trop de segments différents
+		volatile boolean variable;
+
+		Node() {
+			super();
+		}
+	}
+
+	/**
+	 * Retourne le nom de la requête http avec son chemin réduit à un gabarit.
+	 * @param requestName Nom de la requête (chemin puis méthode http après un espace)
+	 * @return String, requestName lui-même si aucun segment n'est variable
+	 */
+	public String template(String requestName) {
+		if (requestName.isEmpty() || requestName.charAt(0) != '/') {
+			// Error404 par exemple
+			return requestName;
+		}
+		int pathEnd = requestName.indexOf(' ');
+		if (pathEnd == -1) {
+			pathEnd = requestName.length();
+		}
+		// le résultat n'est alloué qu'au premier segment remplacé
+		StringBuilder result = null;
+		Node node = root;
+		int segmentStart = 1;
+		while (segmentStart <= pathEnd) {
+			int segmentEnd = requestName.indexOf('/', segmentStart);
+			if (segmentEnd == -1 || segmentEnd > pathEnd) {
+				segmentEnd = pathEnd;
+			}
+			boolean variableSegment = false;
+			if (segmentEnd > segmentStart) {
+				if (isIdentifier(requestName, segmentStart, segmentEnd)) {
+					variableSegment = true;
+					node = getVariableChild(node);
+				} else {
+					final Node child = getLearnedChild(node,
+							requestName.substring(segmentStart, segmentEnd));
+					if (child == null) {
+						variableSegment = true;
+						node = getVariableChild(node);
+					} else {
+						node = child;
+					}
+				}
+			}
+			if (variableSegment) {
+				if (result == null) {
+					result = new StringBuilder(requestName.length());
+					result.append(requestName, 0, segmentStart);
+				}
+				result.append(Counter.TRANSFORM_REPLACEMENT_CHAR);
+			} else if (result != null) {
+				result.append(requestName, segmentStart, segmentEnd);
+			}
+			if (segmentEnd < pathEnd && result != null) {
+				result.append('/');
+			}
+			segmentStart = segmentEnd + 1;
+		}
+		if (result == null) {
+			return requestName;
+		}
+		result.append(requestName, pathEnd, requestName.length());
+		return result.toString();
+	}
+
+	/**
+	 * Oublie les segments appris, par exemple lors de la purge des données du counter,
+	 * pour que l'arbre puisse de nouveau apprendre les segments s'il était plein.
+	 */
+	void clear() {
+		// un segment appris en même temps sous l'ancienne racine peut fausser légèrement
+		// le nombre de noeuds, ce qui n'a pas d'importance pour borner la taille de l'arbre
+		root.children.clear();
+		nodeCount.set(1);
+	}
+
+	/**
+	 * @return Nombre de noeuds dans l'arbre des segments appris
+	 */
+	int getNodeCount() {
+		return nodeCount.get();
+	}
+
+	private Node getLearnedChild(Node node, String segment) {
+		if (node == null || node.variable) {
+			// position variable, ou segment précédent non appris car l'arbre est plein
+			return null;
+		}
+		final Node child = node.children.get(segment);
+		if (child != null) {
+			return child;
+		}
+		if (node.children.size() >= MAX_SEGMENTS_PER_NODE && node != root) {
+			// trop de segments différents à cette position : elle devient variable,
+			// y compris pour les segments déjà appris afin que tous soient agrégés ensemble
+			node.variable = true;
+			return null;
+		}
+		return putChild(node, segment);
+	}
+
+	private Node getVariableChild(Node node) {
+		// le sous-arbre après un segment variable est aussi appris (/orders/$/items par ex.)
+		if (node == null) {
+			return null;
+		}
+		final Node child = node.children.get(VARIABLE_SEGMENT);
+		if (child != null) {
+			return child;
+		}
+		return putChild(node, VARIABLE_SEGMENT);
+	}
+
+	private Node putChild(Node node, String segment) {
+		if (nodeCount.incrementAndGet() > MAX_NODES) {
+			// arbre plein : le segment n'est pas appris
+			nodeCount.decrementAndGet();
+			return null;
+		}
+		final Node newChild = new Node();
+		final Node previous = node.children.putIfAbsent(segment, newChild);
+		if (previous != null) {
+			// appris en même temps par un autre thread
+			nodeCount.decrementAndGet();
+			return previous;
+		}
+		return newChild;
+	}
+
+	static boolean isIdentifier(String s, int start, int end) {
+		final int length = end - start;
+		boolean digits = true;
+		boolean hex = true;
+		boolean hasDigit = false;
+		boolean hasUpperCase = false;
+		boolean hasLowerCase = false;
+		for (int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				hasDigit = true;
+			} else {
+				digits = false;
+				hasUpperCase |= c >= 'A' && c <= 'Z';
+				hasLowerCase |= c >= 'a' && c <= 'z';
+				if (!(c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+					hex = false;
+				}
+				if (!isBase64Char(c)) {
+					return false;
+				}
+			}
+		}
+		return digits || hex && hasDigit && length >= MIN_HEX_LENGTH
+				|| hasDigit && hasUpperCase && hasLowerCase && length >= MIN_BASE64_LENGTH
+				|| isUuid(s, start, end);
+	}
+
+	private static boolean isBase64Char(char c) {
+		// alphabets base64 et base64url, avec le padding =
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '+' || c == '_'
+				|| c == '-' || c == '=';
+	}
+
+	private static boolean isUuid(String s, int start, int end) {
+		if (end - start != UUID_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < UUID_LENGTH; i++) {
+			final char c = s.charAt(start + i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-') {
+					return false;
+				}
+			} else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
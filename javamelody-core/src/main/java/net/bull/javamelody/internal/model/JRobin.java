@@ -552,6 +552,12 @@ public final class JRobin {
 	public String getLabel() {
 		if (requestName == null) {
 			// c'est un jrobin global issu soit de JavaInformations soit d'un Counter dans le Collector
+			final int index = getName().indexOf(DataSourceInformations.GRAPH_NAME_SEPARATOR);
+			if (index > 0) {
+				// c'est un jrobin par DataSource issu de JavaInformations, par exemple "usedConnections-jdbc_test"
+				return I18N.getString(getName().substring(0, index)) + " ("
+						+ getName().substring(index + 1) + ')';
+			}
 			return I18N.getString(getName());
 		}
 		// c'est un jrobin issu d'un CounterRequest dans le Collector
@@ -573,7 +579,7 @@ public final class JRobin {
 		nowMinusThreeMonthsAndADay.add(Calendar.DAY_OF_YEAR, -getObsoleteGraphsDays());
 		nowMinusThreeMonthsAndADay.add(Calendar.DAY_OF_YEAR, -1);
 		final long timestamp = Util.getTimestamp(nowMinusThreeMonthsAndADay);
-		final int counterRequestIdLength = new CounterRequest("", "").getId().length();
+		final int counterRequestIdLength = CounterRequestIds.DIGEST_HEX_LENGTH;
 		long diskUsage = 0;
 		final Map<String, Long> lastUpdateTimesByPath = new HashMap<>();
 		final List<File> rrdFiles = new ArrayList<>(listRrdFiles(application));
@@ -112,6 +112,14 @@ public class JavaInformations implements Serializable { // NOPMD
 	private final List<JobInformations> jobInformationsList;
 	@SuppressWarnings("all")
 	private final List<HsErrPid> hsErrPidList;
+	@SuppressWarnings("all")
+	private final List<DurationsInformations> monitoringOverheadInformationsList;
+	@SuppressWarnings("all")
+	private final List<DurationsInformations> connectionWaitInformationsList;
+	// null si pas de transaction jdbc ou si sérialisé par une version précédente
+	private final TransactionInformations transactionInformations;
+	@SuppressWarnings("all")
+	private final List<DataSourceInformations> dataSourceInformationsList;
 	private final boolean webXmlExists = localWebXmlExists;
 	private final boolean pomXmlExists = localPomXmlExists;
 	private final boolean springBeanExists;
@@ -129,6 +137,9 @@ public class JavaInformations implements Serializable { // NOPMD
 		activeConnectionCount = JdbcWrapper.getActiveConnectionCount();
 		maxConnectionCount = JdbcWrapper.getMaxConnectionCount();
 		transactionCount = JdbcWrapper.getTransactionCount();
+		connectionWaitInformationsList = ConnectionWaits.buildConnectionWaitInformationsList();
+		transactionInformations = Transactions.buildTransactionInformations();
+		dataSourceInformationsList = DataSourceStatistics.buildDataSourceInformationsList();
 		systemLoadAverage = buildSystemLoadAverage();
 		systemCpuLoad = buildSystemCpuLoad();
 		processCpuTimeMillis = buildProcessCpuTimeMillis();
@@ -161,6 +172,8 @@ public class JavaInformations implements Serializable { // NOPMD
 		freeDiskSpaceInTemp = Parameters.TEMPORARY_DIRECTORY.getFreeSpace();
 		usableDiskSpaceInTemp = Parameters.TEMPORARY_DIRECTORY.getUsableSpace();
 		springBeanExists = SPRING_AVAILABLE && SpringContext.getSingleton() != null;
+		monitoringOverheadInformationsList = MonitoringOverhead
+				.buildMonitoringOverheadInformationsList();
 
 		if (includeDetails) {
 			dataBaseVersion = buildDataBaseVersion();
@@ -650,6 +663,37 @@ public class JavaInformations implements Serializable { // NOPMD
 		return null;
 	}
 
+	public List<DurationsInformations> getMonitoringOverheadInformationsList() {
+		if (monitoringOverheadInformationsList == null) {
+			// informations sérialisées par une version précédente
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(monitoringOverheadInformationsList);
+	}
+
+	public List<DurationsInformations> getConnectionWaitInformationsList() {
+		if (connectionWaitInformationsList == null) {
+			// informations sérialisées par une version précédente
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(connectionWaitInformationsList);
+	}
+
+	/**
+	 * @return Informations sur les transactions jdbc, ou null si pas de transaction
+	 */
+	public TransactionInformations getTransactionInformations() {
+		return transactionInformations;
+	}
+
+	public List<DataSourceInformations> getDataSourceInformationsList() {
+		if (dataSourceInformationsList == null) {
+			// informations sérialisées par une version précédente
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(dataSourceInformationsList);
+	}
+
 	public boolean isStackTraceEnabled() {
 		for (final ThreadInformations threadInformations : threadInformationsList) {
 			final List<StackTraceElement> stackTrace = threadInformations.getStackTrace();
@@ -31,9 +31,9 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
-import jakarta.net.ssl.HostnameVerifier;
-import jakarta.net.ssl.HttpsURLConnection;
-import jakarta.net.ssl.SSLSession;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
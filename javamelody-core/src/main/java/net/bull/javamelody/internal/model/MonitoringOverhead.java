@@ -0,0 +1,128 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mesure du surcoût de javamelody lui-même (paramètre self-monitoring, désactivé par défaut) :
+ * temps passé dans MonitoringFilter en dehors de la suite de la chaîne de filtres,
+ * dans JdbcWrapper en dehors de l'exécution de la requête sql, et dans chaque phase de la collecte.
+ * <p>
+ * Les durées en nanosecondes sont comptées sans verrou par {@link DurationsRecorder},
+ * puis sont transmises au rapport et au serveur de collecte
+ * dans {@link DurationsInformations}.
+ * @author Emeric Vernat
+ */
+public final class MonitoringOverhead {
+	/**
+	 * Phases mesurées.
+	 */
+	public enum Phase {
+		/** MonitoringFilter hors chaîne de filtres. */
+		HTTP("http"),
+		/** JdbcWrapper hors exécution sql. */
+		SQL("sql"),
+		/** Collecte des informations systèmes. */
+		COLLECT_JAVA_INFORMATIONS("collectJavaInformations"),
+		/** Collecte des compteurs. */
+		COLLECT_COUNTERS("collectCounters"),
+		/** Envoi aux MetricsPublisher (graphite, statsd, cloudwatch, influxdb, datadog...). */
+		COLLECT_PUBLISHERS("collectPublishers");
+
+		private final String name;
+		private final DurationsRecorder recorder = new DurationsRecorder();
+
+		Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return Nom de la phase, aussi utilisé pour la courbe (name + "Overhead")
+		 */
+		public String getName() {
+			return name;
+		}
+	}
+
+	private static final String GRAPH_NAME_SUFFIX = "Overhead";
+
+	private static volatile boolean enabled;
+
+	private MonitoringOverhead() {
+		super();
+	}
+
+	/**
+	 * @return true si le surcoût de javamelody est mesuré (paramètre self-monitoring)
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Active ou désactive la mesure du surcoût de javamelody.
+	 * @param selfMonitoring boolean
+	 */
+	public static void setEnabled(boolean selfMonitoring) {
+		enabled = selfMonitoring;
+	}
+
+	/**
+	 * Ajoute une mesure de surcoût.
+	 * @param phase Phase
+	 * @param nanos Durée en nanosecondes
+	 */
+	public static void addOverhead(Phase phase, long nanos) {
+		phase.recorder.add(nanos);
+	}
+
+	/**
+	 * Réinitialise les mesures.
+	 */
+	public static void clear() {
+		for (final Phase phase : Phase.values()) {
+			phase.recorder.clear();
+		}
+	}
+
+	/**
+	 * @param phaseName Nom d'une phase (http, sql, collectCounters...)
+	 * @return Nom de la courbe de cette phase dans les autres courbes du Collector
+	 */
+	public static String getGraphName(String phaseName) {
+		return phaseName + GRAPH_NAME_SUFFIX;
+	}
+
+	static List<DurationsInformations> buildMonitoringOverheadInformationsList() {
+		if (!enabled) {
+			return Collections.emptyList();
+		}
+		final List<DurationsInformations> result = new ArrayList<>();
+		for (final Phase phase : Phase.values()) {
+			final DurationsInformations informations = phase.recorder
+					.buildInformations(phase.getName());
+			if (informations != null) {
+				result.add(informations);
+			}
+		}
+		return result;
+	}
+}
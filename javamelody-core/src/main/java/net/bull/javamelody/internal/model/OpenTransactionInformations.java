@@ -0,0 +1,91 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Informations sur une transaction jdbc en cours, sans code html de présentation.
+ * L'état d'une instance est initialisé à son instanciation et non mutable;
+ * il est donc de fait thread-safe.
+ * Les instances sont sérialisables pour pouvoir être transmises au serveur de collecte.
+ * @author Emeric Vernat
+ */
+public final class OpenTransactionInformations implements Serializable {
+	private static final long serialVersionUID = 6270489021486377213L;
+
+	private final long startTime;
+	private final long durationMillis;
+	private final long threadId;
+	private final String threadName;
+	private final String requestName;
+
+	OpenTransactionInformations(long startTime, long durationMillis, long threadId,
+			String threadName, String requestName) {
+		super();
+		this.startTime = startTime;
+		this.durationMillis = durationMillis;
+		this.threadId = threadId;
+		this.threadName = threadName;
+		this.requestName = requestName;
+	}
+
+	/**
+	 * @return Date de début de la transaction
+	 */
+	public Date getStartDate() {
+		return new Date(startTime);
+	}
+
+	/**
+	 * @return Durée de la transaction en millisecondes lors de la collecte des informations
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * @return Id du thread ayant commencé la transaction
+	 */
+	public long getThreadId() {
+		return threadId;
+	}
+
+	/**
+	 * @return Nom du thread ayant commencé la transaction
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * @return Nom de la requête (http par exemple) à l'origine de la transaction, ou null
+	 */
+	public String getRequestName() {
+		return requestName;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[startDate=" + getStartDate() + ", durationMillis="
+				+ getDurationMillis() + ", threadName=" + getThreadName() + ", requestName="
+				+ getRequestName() + ']';
+	}
+}
@@ -192,6 +192,8 @@ class PeriodCounterFactory {
 		result.setApplication(currentDayCounter.getApplication());
 		result.setDisplayed(currentDayCounter.isDisplayed());
 		result.setRequestTransformPattern(currentDayCounter.getRequestTransformPattern());
+		result.setSqlFingerprint(currentDayCounter.isSqlFingerprint());
+		result.setHttpPathTemplater(currentDayCounter.getHttpPathTemplater());
 		result.setMaxRequestsCount(currentDayCounter.getMaxRequestsCount());
 		return result;
 	}
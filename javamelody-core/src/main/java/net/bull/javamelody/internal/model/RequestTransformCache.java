@@ -0,0 +1,201 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import net.bull.javamelody.internal.common.LOG;
+
+/**
+ * Cache borné des noms de requêtes agrégés par un paramètre *-transform-pattern,
+ * pour ne pas exécuter l'expression régulière à chaque hit d'une requête déjà vue.
+ * <p>
+ * Quand le cache est plein, une partie des entrées est évincée.
+ * Si le cache est plein et que les noms ne se répètent presque jamais (sql non bindé par ex.),
+ * le cache est vidé et contourné pendant un certain nombre d'appels,
+ * avant d'être réessayé.
+ * @author Emeric Vernat
+ */
+public final class RequestTransformCache {
+	/**
+	 * Nombre max de noms de requêtes conservés dans le cache.
+	 */
+	static final int MAX_SIZE = Counter.MAX_REQUESTS_COUNT;
+
+	/**
+	 * Nombre d'appels par fenêtre d'évaluation du taux de succès du cache.
+	 */
+	static final int WINDOW_SIZE = 4096;
+
+	/**
+	 * Nombre d'appels sans cache après une fenêtre avec un taux de succès trop faible.
+	 */
+	static final int BYPASS_SIZE = 16 * WINDOW_SIZE;
+
+	// taux de succès minimum en pourcentage sur une fenêtre, pour un cache plein
+	private static final int MIN_HIT_PERCENTAGE = 10;
+
+	private static final String TRANSFORM_REPLACEMENT = "\\" + Counter.TRANSFORM_REPLACEMENT_CHAR;
+
+	private final Pattern pattern;
+	private final ConcurrentMap<String, String> aggregateNamesByName = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder bypasses = new LongAdder();
+	// compteurs de la fenêtre courante, approximatifs en cas de concurrence
+	// ce qui suffit pour décider du contournement
+	private final AtomicInteger windowCalls = new AtomicInteger();
+	private final AtomicInteger windowHits = new AtomicInteger();
+	private final AtomicInteger remainingBypasses = new AtomicInteger();
+	// true si le cache a déjà été plein depuis sa création ou depuis le dernier contournement
+	private volatile boolean filled;
+
+	/**
+	 * Constructeur.
+	 * @param pattern Expression régulière *-transform-pattern
+	 */
+	public RequestTransformCache(Pattern pattern) {
+		super();
+		assert pattern != null;
+		this.pattern = pattern;
+	}
+
+	/**
+	 * @return Expression régulière *-transform-pattern
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return Nombre d'appels ayant trouvé le nom agrégé dans le cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return Nombre d'appels n'ayant pas trouvé le nom agrégé dans le cache
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return Nombre d'appels pendant lesquels le cache était contourné
+	 */
+	public long getBypasses() {
+		return bypasses.sum();
+	}
+
+	/**
+	 * @return Nombre de noms de requêtes actuellement dans le cache
+	 */
+	public int getSize() {
+		return aggregateNamesByName.size();
+	}
+
+	/**
+	 * @return true si le cache est actuellement contourné (noms de requêtes sans répétition)
+	 */
+	public boolean isBypassed() {
+		return remainingBypasses.get() > 0;
+	}
+
+	/**
+	 * Retourne le nom agrégé d'une requête selon l'expression régulière, depuis le cache si possible.
+	 * @param requestName Nom de la requête
+	 * @return String
+	 */
+	String transform(String requestName) {
+		if (remainingBypasses.get() > 0) {
+			remainingBypasses.decrementAndGet();
+			bypasses.increment();
+			return replaceAll(requestName);
+		}
+		String aggregateRequestName = aggregateNamesByName.get(requestName);
+		if (aggregateRequestName != null) {
+			hits.increment();
+			windowHits.incrementAndGet();
+		} else {
+			misses.increment();
+			aggregateRequestName = replaceAll(requestName);
+			if (aggregateNamesByName.size() >= MAX_SIZE) {
+				filled = true;
+				evict();
+			}
+			aggregateNamesByName.put(requestName, aggregateRequestName);
+		}
+		if (windowCalls.incrementAndGet() >= WINDOW_SIZE) {
+			endWindow();
+		}
+		return aggregateRequestName;
+	}
+
+	private void endWindow() {
+		windowCalls.set(0);
+		final int windowHitsCount = windowHits.getAndSet(0);
+		// on ne contourne le cache que s'il a déjà été plein,
+		// et que les noms de requêtes ne s'y retrouvent presque jamais :
+		// c'est alors que le cache coûte plus qu'il ne rapporte
+		if (filled && windowHitsCount * 100L < (long) WINDOW_SIZE * MIN_HIT_PERCENTAGE) {
+			aggregateNamesByName.clear();
+			filled = false;
+			remainingBypasses.set(BYPASS_SIZE);
+		}
+	}
+
+	private void evict() {
+		// éviction d'un quart des entrées, dans l'ordre arbitraire de la map,
+		// pour ne pas évincer à chaque nouveau nom une fois le cache plein
+		int toRemove = MAX_SIZE / 4;
+		final Iterator<String> iterator = aggregateNamesByName.keySet().iterator();
+		while (toRemove > 0 && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			toRemove--;
+		}
+	}
+
+	private String replaceAll(String requestName) {
+		// ce pattern optionnel permet de transformer la description de la requête
+		// pour supprimer des parties variables (identifiant d'objet par exemple)
+		// et pour permettre l'agrégation sur cette requête
+		try {
+			return pattern.matcher(requestName).replaceAll(TRANSFORM_REPLACEMENT);
+		} catch (final StackOverflowError e) {
+			// regexp can throw StackOverflowError for (A|B)*
+			// see https://github.com/javamelody/javamelody/issues/480
+			LOG.warn(e.toString(), e);
+			return requestName;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[pattern=" + getPattern() + ", size=" + getSize()
+				+ ", hits=" + getHits() + ", misses=" + getMisses() + ", bypasses="
+				+ getBypasses() + ']';
+	}
+}
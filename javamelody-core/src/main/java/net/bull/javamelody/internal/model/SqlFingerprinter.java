@@ -0,0 +1,283 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+/**
+ * Empreinte (fingerprint) d'une requête sql, pour agréger dans le counter sql
+ * les requêtes qui ne diffèrent que par leurs valeurs littérales.
+ * <p>
+ * En une seule passe et sans expression régulière :
+ * <ul>
+ * <li>les chaînes et les nombres littéraux sont remplacés par ?,</li>
+ * <li>les listes de valeurs de in (...), de longueur quelconque, deviennent (?),</li>
+ * <li>les tuples de values (...), (...) deviennent un seul (?),</li>
+ * <li>les commentaires et les suites d'espaces deviennent un seul espace,
+ * et les espaces autour de , ( ) sont supprimés.</li>
+ * </ul>
+ * Les identifiants, y compris entre guillemets, et les mots clés sont conservés tels quels.
+ * Le résultat n'est jamais plus long que la requête : la seule allocation est le tableau
+ * du résultat et la chaîne du résultat, et aucune si la requête est déjà une empreinte.
+ * @author Emeric Vernat
+ */
+public final class SqlFingerprinter {
+	private static final int NO_KEYWORD = 0;
+	private static final int IN_KEYWORD = 1;
+	private static final int VALUES_KEYWORD = 2;
+
+	private SqlFingerprinter() {
+		super();
+	}
+
+	/**
+	 * Retourne l'empreinte d'une requête sql.
+	 * @param sql Requête sql
+	 * @return String
+	 */
+	public static String fingerprint(String sql) {
+		final int length = sql.length();
+		final char[] out = new char[length];
+		int o = 0;
+		boolean pendingSpace = false;
+		// mot clé in ou values s'il est le dernier élément écrit
+		int keyword = NO_KEYWORD;
+		// position dans out de la parenthèse ouvrante d'une liste de valeurs en cours, ou -1
+		int listStart = -1;
+		boolean listOfValues = false;
+		boolean valuesList = false;
+		// position dans out après un tuple de values réduit à (?),
+		// tant qu'il n'est suivi que d'une virgule, ou -1
+		int valuesEnd = -1;
+		// valuesEnd au début du tuple de values en cours s'il suit un autre tuple, ou -1
+		int previousValuesEnd = -1;
+		int i = 0;
+		while (i < length) {
+			final char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = true;
+				i++;
+				continue;
+			}
+			if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+				i = skipLineComment(sql, i + 2);
+				pendingSpace = true;
+				continue;
+			}
+			if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+				i = skipBlockComment(sql, i + 2);
+				pendingSpace = true;
+				continue;
+			}
+			if (pendingSpace) {
+				pendingSpace = false;
+				if (o > 0 && c != ',' && c != ')' && out[o - 1] != '(' && out[o - 1] != ',') {
+					out[o] = ' ';
+					o++;
+				}
+			}
+			final int previousKeyword = keyword;
+			keyword = NO_KEYWORD;
+			if (c == '\'') {
+				i = skipString(sql, i + 1);
+				out[o] = '?';
+				o++;
+				valuesEnd = -1;
+			} else if (isDigit(c) || c == '.' && i + 1 < length && isDigit(sql.charAt(i + 1))) {
+				i = skipNumber(sql, i);
+				out[o] = '?';
+				o++;
+				valuesEnd = -1;
+			} else if (c == '"' || c == '`' || c == '[') {
+				// identifiant entre guillemets conservé tel quel
+				final int end = skipQuotedIdentifier(sql, i + 1, c == '[' ? ']' : c);
+				sql.getChars(i, end, out, o);
+				o += end - i;
+				i = end;
+				listOfValues = false;
+				valuesEnd = -1;
+			} else if (isIdentifierPart(c)) {
+				final int end = skipIdentifier(sql, i);
+				sql.getChars(i, end, out, o);
+				o += end - i;
+				keyword = getKeyword(sql, i, end);
+				i = end;
+				listOfValues = false;
+				valuesEnd = -1;
+			} else if (c == '(') {
+				if (previousKeyword != NO_KEYWORD || valuesEnd >= 0 && out[o - 1] == ',') {
+					// début d'une liste de valeurs possible, après in, après values
+					// ou après un tuple de values
+					listStart = o;
+					listOfValues = true;
+					valuesList = previousKeyword != IN_KEYWORD;
+					previousValuesEnd = previousKeyword == NO_KEYWORD ? valuesEnd : -1;
+				} else {
+					// sous-requête ou fonction dans une liste : ce n'est plus une liste de valeurs
+					listStart = -1;
+				}
+				out[o] = c;
+				o++;
+				i++;
+			} else if (c == ')') {
+				if (listStart >= 0 && listOfValues && o > listStart + 1) {
+					if (valuesList && previousValuesEnd >= 0) {
+						// tuple de values supplémentaire : on supprime ", (...)"
+						o = previousValuesEnd;
+						valuesEnd = o;
+					} else {
+						o = listStart;
+						out[o] = '(';
+						out[o + 1] = '?';
+						out[o + 2] = ')';
+						o += 3;
+						if (valuesList) {
+							valuesEnd = o;
+						}
+					}
+				} else {
+					out[o] = c;
+					o++;
+					valuesEnd = -1;
+				}
+				listStart = -1;
+				i++;
+			} else {
+				if (c != ',' && c != '?' && c != '-' && c != '+') {
+					listOfValues = false;
+				}
+				if (c != ',') {
+					valuesEnd = -1;
+				}
+				out[o] = c;
+				o++;
+				i++;
+			}
+		}
+		if (o == length && isSame(sql, out)) {
+			// requête déjà sous forme d'empreinte (requête bindée par exemple)
+			return sql;
+		}
+		return new String(out, 0, o);
+	}
+
+	private static boolean isSame(String sql, char[] chars) {
+		for (int i = 0; i < chars.length; i++) {
+			if (sql.charAt(i) != chars[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getKeyword(String sql, int start, int end) {
+		final int length = end - start;
+		if (length == 2 && sql.regionMatches(true, start, "in", 0, 2)) {
+			return IN_KEYWORD;
+		} else if (length == 6 && sql.regionMatches(true, start, "values", 0, 6)) {
+			return VALUES_KEYWORD;
+		}
+		return NO_KEYWORD;
+	}
+
+	private static int skipString(String sql, int start) {
+		final int length = sql.length();
+		int i = start;
+		while (i < length) {
+			final char c = sql.charAt(i);
+			// seul '' est un échappement en sql standard, \ ne l'est qu'en MySQL :
+			// sinon tout le reste de la requête serait dans la chaîne 'C:\' par exemple
+			if (c == '\'') {
+				if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+					// '' dans une chaîne
+					i += 2;
+				} else {
+					return i + 1;
+				}
+			} else {
+				i++;
+			}
+		}
+		return length;
+	}
+
+	private static int skipNumber(String sql, int start) {
+		final int length = sql.length();
+		int i = start;
+		if (i + 1 < length && sql.charAt(i) == '0'
+				&& (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+			i += 2;
+			while (i < length && Character.digit(sql.charAt(i), 16) >= 0) {
+				i++;
+			}
+			return i;
+		}
+		while (i < length) {
+			final char c = sql.charAt(i);
+			if (isDigit(c) || c == '.') {
+				i++;
+			} else if ((c == 'e' || c == 'E') && i + 1 < length && (isDigit(sql.charAt(i + 1))
+					|| (sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+') && i + 2 < length
+							&& isDigit(sql.charAt(i + 2)))) {
+				i += 2;
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	private static int skipQuotedIdentifier(String sql, int start, char quote) {
+		final int index = sql.indexOf(quote, start);
+		if (index < 0) {
+			return sql.length();
+		}
+		return index + 1;
+	}
+
+	private static int skipIdentifier(String sql, int start) {
+		final int length = sql.length();
+		int i = start + 1;
+		while (i < length && (isIdentifierPart(sql.charAt(i)) || isDigit(sql.charAt(i)))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipLineComment(String sql, int start) {
+		final int index = sql.indexOf('\n', start);
+		if (index < 0) {
+			return sql.length();
+		}
+		return index + 1;
+	}
+
+	private static int skipBlockComment(String sql, int start) {
+		final int index = sql.indexOf("*/", start);
+		if (index < 0) {
+			return sql.length();
+		}
+		return index + 2;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetter(c) || c == '_' || c == '$' || c == '@' || c == '#' || c == ':';
+	}
+}
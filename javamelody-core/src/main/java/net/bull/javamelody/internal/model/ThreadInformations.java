@@ -25,6 +25,8 @@ import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
 
+import net.bull.javamelody.Parameter;
+
 /**
  * Informations sur un thread java, sans code html de présentation.
  * L'état d'une instance est initialisé à son instanciation et non mutable;
@@ -40,6 +42,9 @@ public class ThreadInformations implements Serializable {
 	private static final boolean CPU_TIME_ENABLED = THREAD_BEAN.isThreadCpuTimeSupported()
 			&& THREAD_BEAN.isThreadCpuTimeEnabled();
 	private static final Method THREAD_ALLOCATED_BYTES_METHOD = getThreadAllocatedBytesMethod();
+	// Thread.isVirtual() n'existe qu'à partir de java 21
+	private static final Method THREAD_IS_VIRTUAL_METHOD = getThreadIsVirtualMethod();
+	private static boolean virtualThreadsEnabled = isVirtualThreadsEnabledParameter();
 	private final String name;
 	private final long id;
 	private final int priority;
@@ -72,6 +77,11 @@ public class ThreadInformations implements Serializable {
 	}
 
 	public static long getCurrentThreadCpuTime() {
+		if (isCurrentThreadVirtual()) {
+			// le temps cpu d'un thread virtuel n'est pas mesurable :
+			// ce serait celui des threads porteurs sur lesquels il s'est exécuté
+			return -1;
+		}
 		return getThreadCpuTime(Thread.currentThread().getId());
 	}
 
@@ -84,6 +94,10 @@ public class ThreadInformations implements Serializable {
 	}
 
 	public static long getCurrentThreadAllocatedBytes() {
+		if (isCurrentThreadVirtual()) {
+			// idem pour la mémoire allouée, non supportée pour un thread virtuel
+			return -1;
+		}
 		return getThreadAllocatedBytes(Thread.currentThread().getId());
 	}
 
@@ -123,6 +137,55 @@ public class ThreadInformations implements Serializable {
 		}
 	}
 
+	/**
+	 * Initialise le mode threads virtuels selon le paramètre virtual-threads-enabled,
+	 * ce mode n'étant actif qu'à partir de java 21.
+	 */
+	public static void initVirtualThreadsEnabled() {
+		virtualThreadsEnabled = isVirtualThreadsEnabledParameter();
+	}
+
+	public static boolean isVirtualThreadsEnabled() {
+		return virtualThreadsEnabled;
+	}
+
+	public static boolean isVirtualThreadsSupported() {
+		return THREAD_IS_VIRTUAL_METHOD != null;
+	}
+
+	/**
+	 * @param thread Thread
+	 * @return true si le thread est un thread virtuel (java 21+)
+	 */
+	public static boolean isVirtualThread(Thread thread) {
+		if (THREAD_IS_VIRTUAL_METHOD != null) {
+			try {
+				return (Boolean) THREAD_IS_VIRTUAL_METHOD.invoke(thread);
+			} catch (final IllegalAccessException | InvocationTargetException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+		return false;
+	}
+
+	private static boolean isCurrentThreadVirtual() {
+		// hors mode threads virtuels, aucun surcoût dans les sondes
+		return virtualThreadsEnabled && isVirtualThread(Thread.currentThread());
+	}
+
+	private static boolean isVirtualThreadsEnabledParameter() {
+		return isVirtualThreadsSupported()
+				&& Parameter.VIRTUAL_THREADS_ENABLED.getValueAsBoolean();
+	}
+
+	private static Method getThreadIsVirtualMethod() {
+		try {
+			return Thread.class.getMethod("isVirtual");
+		} catch (final NoSuchMethodException e) {
+			return null;
+		}
+	}
+
 	public String getName() {
 		return name;
 	}
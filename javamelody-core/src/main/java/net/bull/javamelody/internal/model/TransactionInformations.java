@@ -0,0 +1,146 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Informations sur les transactions jdbc, sans code html de présentation.
+ * L'état d'une instance est initialisé à son instanciation et non mutable;
+ * il est donc de fait thread-safe.
+ * Les instances sont sérialisables pour pouvoir être transmises au serveur de collecte.
+ * @author Emeric Vernat
+ */
+public final class TransactionInformations implements Serializable {
+	private static final long serialVersionUID = -3946113812405226150L;
+
+	private final long commitCount;
+	private final long rollbackCount;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final CounterRequestHistogram histogram;
+	private final int openTransactionCount;
+	private final List<OpenTransactionInformations> longestOpenTransactions;
+
+	// CHECKSTYLE:OFF
+	TransactionInformations(long commitCount, long rollbackCount, long totalNanos, long maxNanos,
+			CounterRequestHistogram histogram, int openTransactionCount,
+			List<OpenTransactionInformations> longestOpenTransactions) {
+		// CHECKSTYLE:ON
+		super();
+		assert histogram != null;
+		assert longestOpenTransactions != null;
+		this.commitCount = commitCount;
+		this.rollbackCount = rollbackCount;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.histogram = histogram;
+		this.openTransactionCount = openTransactionCount;
+		this.longestOpenTransactions = longestOpenTransactions;
+	}
+
+	/**
+	 * @return Nombre de transactions terminées par commit ou par rollback
+	 */
+	public long getCount() {
+		return commitCount + rollbackCount;
+	}
+
+	/**
+	 * @return Nombre de transactions terminées par commit
+	 */
+	public long getCommitCount() {
+		return commitCount;
+	}
+
+	/**
+	 * @return Nombre de transactions terminées par rollback
+	 */
+	public long getRollbackCount() {
+		return rollbackCount;
+	}
+
+	/**
+	 * @return Pourcentage de transactions terminées par rollback, ou -1 si pas de transaction
+	 */
+	public double getRollbackPercentage() {
+		final long count = getCount();
+		if (count > 0) {
+			return 100d * rollbackCount / count;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Cumul des durées des transactions en nanosecondes
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return Durée maximum d'une transaction en nanosecondes
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return Durée moyenne des transactions en nanosecondes, ou -1 si pas de transaction
+	 */
+	public long getMeanNanos() {
+		final long count = getCount();
+		if (count > 0) {
+			return totalNanos / count;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param percentile Pourcentage entre 0 et 100 (par exemple 99 pour p99)
+	 * @return Durée en nanosecondes en dessous de laquelle se trouve ce pourcentage
+	 * des transactions, ou -1 si pas de transaction
+	 */
+	public long getNanosAtPercentile(double percentile) {
+		return histogram.getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * @return Nombre de transactions en cours
+	 */
+	public int getOpenTransactionCount() {
+		return openTransactionCount;
+	}
+
+	/**
+	 * @return Transactions en cours les plus longues, de la plus longue à la plus courte
+	 */
+	public List<OpenTransactionInformations> getLongestOpenTransactions() {
+		return Collections.unmodifiableList(longestOpenTransactions);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[count=" + getCount() + ", rollbackCount="
+				+ getRollbackCount() + ", meanNanos=" + getMeanNanos() + ", maxNanos="
+				+ getMaxNanos() + ", openTransactionCount=" + getOpenTransactionCount() + ']';
+	}
+}
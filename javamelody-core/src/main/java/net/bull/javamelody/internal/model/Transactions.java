@@ -0,0 +1,180 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transactions jdbc, c'est-à-dire les périodes entre setAutoCommit(false) ou la première
+ * création de statement après un commit, et commit ou rollback sur une connexion :
+ * durées, nombres de commits et de rollbacks, et transactions en cours.
+ * <p>
+ * Les durées en nanosecondes sont comptées sans verrou par {@link DurationsRecorder},
+ * puis sont transmises au rapport et au serveur de collecte
+ * dans {@link TransactionInformations}.
+ * @author Emeric Vernat
+ */
+public final class Transactions {
+	/**
+	 * Nom de la courbe des durées moyennes des transactions.
+	 */
+	public static final String GRAPH_NAME = "transactionTime";
+
+	// nombre maximum de transactions en cours conservées pour éviter une saturation mémoire
+	static final int MAX_OPEN_TRANSACTIONS = 500;
+
+	// nombre maximum de transactions en cours les plus longues transmises au rapport
+	private static final int MAX_LONGEST_OPEN_TRANSACTIONS = 20;
+
+	private static final DurationsRecorder DURATIONS = new DurationsRecorder();
+
+	private static final LongAdder COMMIT_COUNT = new LongAdder();
+
+	private static final LongAdder ROLLBACK_COUNT = new LongAdder();
+
+	// transactions en cours dans l'ordre de leur début, la plus ancienne en tête,
+	// synchronisé sur lui-même pour que la vérification de la taille et l'ajout soient atomiques
+	private static final Set<OpenTransaction> OPEN_TRANSACTIONS = new LinkedHashSet<>();
+
+	/**
+	 * Transaction en cours sur une connexion.
+	 */
+	public static final class OpenTransaction {
+		private final long startTime = System.currentTimeMillis();
+		private final long startNanos = System.nanoTime();
+		private final long threadId;
+		private final String threadName;
+		private final String requestName;
+
+		OpenTransaction(String requestName) {
+			super();
+			final Thread currentThread = Thread.currentThread();
+			this.threadId = currentThread.getId();
+			this.threadName = currentThread.getName();
+			this.requestName = requestName;
+		}
+
+		OpenTransactionInformations buildInformations(long now) {
+			return new OpenTransactionInformations(startTime, Math.max(now - startTime, 0),
+					threadId, threadName, requestName);
+		}
+	}
+
+	private Transactions() {
+		super();
+	}
+
+	/**
+	 * Début d'une transaction sur une connexion.
+	 * @param requestName Nom de la requête (http par exemple) à l'origine de la transaction,
+	 * ou null si inconnue
+	 * @return OpenTransaction à passer à {@link #transactionEnded} ou {@link #transactionAbandoned}
+	 */
+	public static OpenTransaction transactionStarted(String requestName) {
+		final OpenTransaction transaction = new OpenTransaction(requestName);
+		synchronized (OPEN_TRANSACTIONS) {
+			if (OPEN_TRANSACTIONS.size() >= MAX_OPEN_TRANSACTIONS) {
+				// les transactions de connexions jamais fermées (fuites) ne sont jamais terminées :
+				// on oublie la plus ancienne, en tête, pour que les nouvelles restent suivies
+				final Iterator<OpenTransaction> iterator = OPEN_TRANSACTIONS.iterator();
+				iterator.next();
+				iterator.remove();
+			}
+			OPEN_TRANSACTIONS.add(transaction);
+		}
+		return transaction;
+	}
+
+	private static void removeOpenTransaction(OpenTransaction transaction) {
+		synchronized (OPEN_TRANSACTIONS) {
+			OPEN_TRANSACTIONS.remove(transaction);
+		}
+	}
+
+	/**
+	 * Fin d'une transaction par commit ou par rollback.
+	 * @param transaction OpenTransaction
+	 * @param rollback true si rollback, false si commit
+	 */
+	public static void transactionEnded(OpenTransaction transaction, boolean rollback) {
+		removeOpenTransaction(transaction);
+		DURATIONS.add(System.nanoTime() - transaction.startNanos);
+		if (rollback) {
+			ROLLBACK_COUNT.increment();
+		} else {
+			COMMIT_COUNT.increment();
+		}
+	}
+
+	/**
+	 * Fin d'une transaction sans commit ni rollback explicite, par exemple à la fermeture
+	 * de la connexion : elle n'est pas comptée car le pool ou le driver décide de sa fin.
+	 * @param transaction OpenTransaction
+	 */
+	public static void transactionAbandoned(OpenTransaction transaction) {
+		removeOpenTransaction(transaction);
+	}
+
+	/**
+	 * Réinitialise les mesures.
+	 */
+	public static void clear() {
+		DURATIONS.clear();
+		COMMIT_COUNT.reset();
+		ROLLBACK_COUNT.reset();
+		synchronized (OPEN_TRANSACTIONS) {
+			OPEN_TRANSACTIONS.clear();
+		}
+	}
+
+	static TransactionInformations buildTransactionInformations() {
+		final CounterRequestHistogram histogram = DURATIONS.buildHistogram();
+		final List<OpenTransaction> openTransactionsCopy;
+		synchronized (OPEN_TRANSACTIONS) {
+			openTransactionsCopy = new ArrayList<>(OPEN_TRANSACTIONS);
+		}
+		final int openTransactionCount = openTransactionsCopy.size();
+		if (histogram.getTotalCount() == 0 && openTransactionCount == 0) {
+			return null;
+		}
+		final long now = System.currentTimeMillis();
+		final List<OpenTransactionInformations> openTransactions = new ArrayList<>(
+				openTransactionCount);
+		for (final OpenTransaction transaction : openTransactionsCopy) {
+			openTransactions.add(transaction.buildInformations(now));
+		}
+		// les plus longues en premier
+		openTransactions.sort((transaction1, transaction2) -> Long
+				.compare(transaction2.getDurationMillis(), transaction1.getDurationMillis()));
+		final List<OpenTransactionInformations> longestOpenTransactions;
+		if (openTransactions.size() > MAX_LONGEST_OPEN_TRANSACTIONS) {
+			longestOpenTransactions = new ArrayList<>(
+					openTransactions.subList(0, MAX_LONGEST_OPEN_TRANSACTIONS));
+		} else {
+			longestOpenTransactions = openTransactions;
+		}
+		return new TransactionInformations(COMMIT_COUNT.sum(), ROLLBACK_COUNT.sum(),
+				DURATIONS.getTotalNanos(), DURATIONS.getMaxNanos(), histogram,
+				openTransactionCount, longestOpenTransactions);
+	}
+}
@@ -25,6 +25,7 @@ import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import javax.management.JMException;
 import javax.management.ObjectName;
@@ -213,6 +214,35 @@ public final class VirtualMachine {
 		}
 	}
 
+	/**
+	 * @return flux contenant le dump json de tous les threads y compris les threads virtuels,
+	 * comme retourné par jcmd Thread.dump_to_file -format=json (java 21+)
+	 * @throws Exception e
+	 */
+	public static InputStream virtualThreadsDump() throws Exception { // NOPMD
+		// Thread.getAllStackTraces() ne retourne pas les threads virtuels,
+		// seule la commande de diagnostic Thread.dump_to_file les inclut
+		// et elle ne sait écrire que dans un fichier
+		final File file = File.createTempFile("javamelody-threads", ".json");
+		try {
+			final ObjectName objectName = new ObjectName(
+					"com.sun.management:type=DiagnosticCommand");
+			MBeansAccessor.invoke(objectName, "threadDumpToFile",
+					new Object[] {
+							new String[] { "-overwrite", "-format=json", file.getPath() } },
+					new Class[] { String[].class });
+			return new ByteArrayInputStream(Files.readAllBytes(file.toPath()));
+		} catch (final JMException e) {
+			// commande "Thread.dump_to_file" inexistante avant java 21
+			throw new IllegalStateException(I18N.getString("dump_threads_virtuels_non_supporte"),
+					e);
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
 	private static Object invoke(Method method, Object object, Object... args) throws Exception { // NOPMD
 		try {
 			return method.invoke(object, args);
@@ -21,6 +21,8 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
@@ -107,6 +109,8 @@ public class HtmlController {
 			} else if (HttpPart.THREADS_DUMP.isPart(httpRequest)) {
 				httpResponse.setContentType("text/plain; charset=UTF-8");
 				htmlReport.writeThreadsDump();
+			} else if (HttpPart.VIRTUAL_THREADS_DUMP.isPart(httpRequest)) {
+				doVirtualThreadsDump(httpResponse, writer);
 			} else {
 				REQUEST_TO_METHOD_MAPPER.invoke(httpRequest, this);
 			}
@@ -241,6 +245,28 @@ public class HtmlController {
 				HttpPart.HEAP_HISTO.getName());
 	}
 
+	private void doVirtualThreadsDump(HttpServletResponse httpResponse, BufferedWriter writer)
+			throws IOException {
+		if (isFromCollectorServer()) {
+			// le dump des threads virtuels n'est fait que dans la jvm de l'application
+			htmlReport.writeMessageIfNotNull(I18N.getString("dump_threads_virtuels_non_supporte"),
+					null);
+			return;
+		}
+		final InputStream input;
+		try {
+			input = VirtualMachine.virtualThreadsDump();
+		} catch (final Exception e) {
+			LOG.warn("virtual threads dump failed", e);
+			htmlReport.writeMessageIfNotNull(String.valueOf(e.getMessage()), null);
+			return;
+		}
+		httpResponse.setContentType("application/json; charset=UTF-8");
+		try (InputStreamReader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+			reader.transferTo(writer);
+		}
+	}
+
 	@RequestPart(HttpPart.PROCESSES)
 	void doProcesses() throws IOException {
 		// par sécurité
@@ -33,11 +33,14 @@ import net.bull.javamelody.internal.model.CacheInformations;
 import net.bull.javamelody.internal.model.Collector;
 import net.bull.javamelody.internal.model.Counter;
 import net.bull.javamelody.internal.model.CounterRequest;
+import net.bull.javamelody.internal.model.DataSourceInformations;
+import net.bull.javamelody.internal.model.DurationsInformations;
 import net.bull.javamelody.internal.model.JCacheInformations;
 import net.bull.javamelody.internal.model.JRobin;
 import net.bull.javamelody.internal.model.JavaInformations;
 import net.bull.javamelody.internal.model.MemoryInformations;
 import net.bull.javamelody.internal.model.TomcatInformations;
+import net.bull.javamelody.internal.model.TransactionInformations;
 
 /**
  * Produces a report of the data in {@link JavaInformations} in the Prometheus text format
@@ -139,6 +142,34 @@ import net.bull.javamelody.internal.model.TomcatInformations;
  *  javamelody_log_errors_count
  *  javamelody_log_duration_millis
  *  </pre>
+ *  (from the javamelody overhead, if the parameter self-monitoring is true,
+ *  with phase = http, sql, collect_java_informations, collect_counters or collect_publishers)
+ *  <pre>
+ *  javamelody_overhead_count{phase="__phase__"}
+ *  javamelody_overhead_duration_nanos{phase="__phase__"}
+ *  javamelody_overhead_max_nanos{phase="__phase__"}
+ *  javamelody_overhead_p50_nanos{phase="__phase__"}
+ *  javamelody_overhead_p95_nanos{phase="__phase__"}
+ *  javamelody_overhead_p99_nanos{phase="__phase__"}
+ *  </pre>
+ *  (for each DataSource, if there are several DataSources)
+ *  <pre>
+ *  javamelody_datasource_connections_used_count{datasource_name="__name__"}
+ *  javamelody_datasource_connections_active_count{datasource_name="__name__"}
+ *  javamelody_datasource_transactions_count{datasource_name="__name__"}
+ *  javamelody_datasource_sql_hits_count{datasource_name="__name__"}
+ *  javamelody_datasource_sql_errors_count{datasource_name="__name__"}
+ *  javamelody_datasource_sql_duration_millis{datasource_name="__name__"}
+ *  </pre>
+ *  (from the waits to get jdbc connections, for each DataSource)
+ *  <pre>
+ *  javamelody_connections_wait_count{datasource_name="__name__"}
+ *  javamelody_connections_wait_duration_nanos{datasource_name="__name__"}
+ *  javamelody_connections_wait_max_nanos{datasource_name="__name__"}
+ *  javamelody_connections_wait_p50_nanos{datasource_name="__name__"}
+ *  javamelody_connections_wait_p95_nanos{datasource_name="__name__"}
+ *  javamelody_connections_wait_p99_nanos{datasource_name="__name__"}
+ *  </pre>
  *  Additionally, the `lastValue` metrics can also be exported by adding the http parameter includeLastValue=true.
  *  Note: the `lastValue` metrics are already aggregated over time, where Prometheus prefers the raw counters and gauges.
  *  Also, obtaining the `lastValue` metrics appears to have a 5-10ms overhead.
@@ -234,6 +265,26 @@ class PrometheusController {
 
 		reportOnCollector();
 
+		// jdbc by DataSource
+		if (javaInformations.getDataSourceInformationsList().size() > 1) {
+			reportOnDataSourceInformations();
+		}
+
+		// waits for jdbc connections
+		if (!javaInformations.getConnectionWaitInformationsList().isEmpty()) {
+			reportOnConnectionWaitInformations();
+		}
+
+		// jdbc transactions
+		if (javaInformations.getTransactionInformations() != null) {
+			reportOnTransactionInformations();
+		}
+
+		// javamelody overhead if self-monitoring
+		if (!javaInformations.getMonitoringOverheadInformationsList().isEmpty()) {
+			reportOnMonitoringOverheadInformations();
+		}
+
 		if (includeLastValue) {
 			reportOnLastValues();
 		}
@@ -376,6 +427,132 @@ class PrometheusController {
 		}
 	}
 
+	private void reportOnDataSourceInformations() {
+		final Map<String, DataSourceInformations> dataSourceInfos = new LinkedHashMap<>();
+		for (final DataSourceInformations dataSourceInfo : javaInformations
+				.getDataSourceInformationsList()) {
+			final String fields = "{datasource_name=\"" + sanitizeName(dataSourceInfo.getName())
+					+ "\"}";
+			dataSourceInfos.put(fields, dataSourceInfo);
+		}
+		printHeader(MetricType.GAUGE, "datasource_connections_used_count",
+				"used connections count");
+		for (final Map.Entry<String, DataSourceInformations> entry : dataSourceInfos.entrySet()) {
+			printLongWithFields("datasource_connections_used_count", entry.getKey(),
+					entry.getValue().getUsedConnectionCount());
+		}
+		printHeader(MetricType.GAUGE, "datasource_connections_active_count",
+				"active connections count");
+		for (final Map.Entry<String, DataSourceInformations> entry : dataSourceInfos.entrySet()) {
+			printLongWithFields("datasource_connections_active_count", entry.getKey(),
+					entry.getValue().getActiveConnectionCount());
+		}
+		printHeader(MetricType.COUNTER, "datasource_transactions_count", "transactions count");
+		for (final Map.Entry<String, DataSourceInformations> entry : dataSourceInfos.entrySet()) {
+			printLongWithFields("datasource_transactions_count", entry.getKey(),
+					entry.getValue().getTransactionCount());
+		}
+		printHeader(MetricType.COUNTER, "datasource_sql_hits_count", "sql hits count");
+		for (final Map.Entry<String, DataSourceInformations> entry : dataSourceInfos.entrySet()) {
+			printLongWithFields("datasource_sql_hits_count", entry.getKey(),
+					entry.getValue().getSqlHits());
+		}
+		printHeader(MetricType.COUNTER, "datasource_sql_errors_count", "sql errors count");
+		for (final Map.Entry<String, DataSourceInformations> entry : dataSourceInfos.entrySet()) {
+			printLongWithFields("datasource_sql_errors_count", entry.getKey(),
+					entry.getValue().getSqlSystemErrors());
+		}
+		printHeader(MetricType.COUNTER, "datasource_sql_duration_millis",
+				"sql duration sum in millis");
+		for (final Map.Entry<String, DataSourceInformations> entry : dataSourceInfos.entrySet()) {
+			printLongWithFields("datasource_sql_duration_millis", entry.getKey(),
+					entry.getValue().getSqlDurationsSum());
+		}
+	}
+
+	private void reportOnConnectionWaitInformations() {
+		final Map<String, DurationsInformations> waitInfos = new LinkedHashMap<>();
+		for (final DurationsInformations waitInfo : javaInformations
+				.getConnectionWaitInformationsList()) {
+			final String fields = "{datasource_name=\"" + sanitizeName(waitInfo.getName()) + "\"}";
+			waitInfos.put(fields, waitInfo);
+		}
+		reportOnDurationsInformations(waitInfos, "connections_wait",
+				"jdbc connections obtained count", "wait time to get a jdbc connection");
+	}
+
+	private void reportOnTransactionInformations() {
+		final TransactionInformations transactionInformations = javaInformations
+				.getTransactionInformations();
+		printLong(MetricType.COUNTER, "transactions_commit_count",
+				"jdbc transactions ended by commit count",
+				transactionInformations.getCommitCount());
+		printLong(MetricType.COUNTER, "transactions_rollback_count",
+				"jdbc transactions ended by rollback count",
+				transactionInformations.getRollbackCount());
+		printLong(MetricType.COUNTER, "transactions_duration_nanos",
+				"total duration of jdbc transactions in nanoseconds",
+				transactionInformations.getTotalNanos());
+		printLong(MetricType.GAUGE, "transactions_max_nanos",
+				"max duration of a jdbc transaction in nanoseconds",
+				transactionInformations.getMaxNanos());
+		for (final int percentile : new int[] { 50, 95, 99 }) {
+			printLong(MetricType.GAUGE, "transactions_p" + percentile + "_nanos",
+					percentile + "th percentile of duration of jdbc transactions in nanoseconds",
+					transactionInformations.getNanosAtPercentile(percentile));
+		}
+		printLong(MetricType.GAUGE, "transactions_open_count", "open jdbc transactions count",
+				transactionInformations.getOpenTransactionCount());
+	}
+
+	private void reportOnMonitoringOverheadInformations() {
+		final Map<String, DurationsInformations> overheadInfos = new LinkedHashMap<>();
+		for (final DurationsInformations overheadInfo : javaInformations
+				.getMonitoringOverheadInformationsList()) {
+			final String fields = "{phase=\"" + camelToSnake(overheadInfo.getName()) + "\"}";
+			overheadInfos.put(fields, overheadInfo);
+		}
+		reportOnDurationsInformations(overheadInfos, "overhead",
+				"javamelody overhead measures count", "javamelody overhead");
+	}
+
+	/**
+	 * Reports on count, total, max and percentiles of durations, for each set of fields.
+	 * @param durationsInfos DurationsInformations by fields
+	 * @param metricPrefix prefix of the metric names
+	 * @param countDescription description of the count metric
+	 * @param durationDescription description of what is measured, used by the other metrics
+	 */
+	private void reportOnDurationsInformations(Map<String, DurationsInformations> durationsInfos,
+			String metricPrefix, String countDescription, String durationDescription) {
+		final String countName = metricPrefix + "_count";
+		printHeader(MetricType.COUNTER, countName, countDescription);
+		for (final Map.Entry<String, DurationsInformations> entry : durationsInfos.entrySet()) {
+			printLongWithFields(countName, entry.getKey(), entry.getValue().getCount());
+		}
+		final String durationName = metricPrefix + "_duration_nanos";
+		printHeader(MetricType.COUNTER, durationName,
+				"total " + durationDescription + " in nanoseconds");
+		for (final Map.Entry<String, DurationsInformations> entry : durationsInfos.entrySet()) {
+			printLongWithFields(durationName, entry.getKey(), entry.getValue().getTotalNanos());
+		}
+		final String maxName = metricPrefix + "_max_nanos";
+		printHeader(MetricType.GAUGE, maxName, "max " + durationDescription + " in nanoseconds");
+		for (final Map.Entry<String, DurationsInformations> entry : durationsInfos.entrySet()) {
+			printLongWithFields(maxName, entry.getKey(), entry.getValue().getMaxNanos());
+		}
+		for (final int percentile : new int[] { 50, 95, 99 }) {
+			final String name = metricPrefix + "_p" + percentile + "_nanos";
+			printHeader(MetricType.GAUGE, name, percentile + "th percentile of "
+					+ durationDescription + " in nanoseconds");
+			for (final Map.Entry<String, DurationsInformations> entry : durationsInfos
+					.entrySet()) {
+				printLongWithFields(name, entry.getKey(),
+						entry.getValue().getNanosAtPercentile(percentile));
+			}
+		}
+	}
+
 	/**
 	 * Reports on hits, errors, and duration sum for all counters in the collector.
 	 * <p>
@@ -435,7 +612,10 @@ class PrometheusController {
 
 		jrobins = collector.getDisplayedOtherJRobins();
 		for (final JRobin jrobin : jrobins) {
-			printDouble(MetricType.GAUGE, "last_value_" + camelToSnake(jrobin.getName()),
+			// replace the separator in graph names by DataSource, such as "usedConnections-jdbc_test"
+			printDouble(MetricType.GAUGE,
+					"last_value_" + camelToSnake(jrobin.getName()).replace(
+							DataSourceInformations.GRAPH_NAME_SEPARATOR, '_'),
 					"javamelody value per minute", jrobin.getLastValue());
 		}
 	}
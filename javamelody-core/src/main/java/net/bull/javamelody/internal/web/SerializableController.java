@@ -274,12 +274,11 @@ public class SerializableController {
 			@RequestAttribute(RANGE_KEY) Range range) throws IOException {
 		for (final Counter counter : collector.getCounters()) {
 			if (counter.isRequestIdFromThisCounter(requestId)) {
-				final Counter rangeCounter = collector.getRangeCounter(range, counter.getName())
-						.clone();
-				for (final CounterRequest request : rangeCounter.getRequests()) {
-					if (requestId.equals(request.getId())) {
-						return request;
-					}
+				// getCounterRequestById retourne un clone de la requête, trouvée par l'index des ids
+				final CounterRequest request = collector.getRangeCounter(range, counter.getName())
+						.getCounterRequestById(requestId);
+				if (request != null) {
+					return request;
 				}
 			}
 		}
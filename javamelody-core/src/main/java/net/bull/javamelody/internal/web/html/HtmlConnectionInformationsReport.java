@@ -85,8 +85,17 @@ class HtmlConnectionInformationsReport extends HtmlAbstractReport {
 		}
 		table.endTable();
 		final int nbConnections = connectionsInformations.size();
-		writeln("<div align='right'>" + getFormattedString("nb_connexions_ouvertes", nbConnections)
-				+ "</div>");
+		int nbSuspectedLeaks = 0;
+		for (final ConnectionInformations connection : connectionsInformations) {
+			if (connection.isSuspectedLeak()) {
+				nbSuspectedLeaks++;
+			}
+		}
+		write("<div align='right'>" + getFormattedString("nb_connexions_ouvertes", nbConnections));
+		if (nbSuspectedLeaks > 0) {
+			write(", " + getFormattedString("nb_fuites_suspectees", nbSuspectedLeaks));
+		}
+		writeln("</div>");
 	}
 
 	private void writeBackAndRefreshLinks() throws IOException {
@@ -102,6 +111,14 @@ class HtmlConnectionInformationsReport extends HtmlAbstractReport {
 		write("<td align='right'>");
 		writeTextWithStackTrace(dateTimeFormat.format(connection.getOpeningDate()),
 				connection.getOpeningStackTrace());
+		if (connection.isSuspectedLeak()) {
+			// stack trace actuelle du thread détenant la connexion, capturée quand la connexion
+			// a dépassé le seuil de fuite (la stack trace d'ouverture est sur la date ci-dessus)
+			write("<br/><b>");
+			writeTextWithStackTrace(getString("Fuite_suspectee_pile_thread"),
+					connection.getHoldingThreadStackTrace());
+			write("</b>");
+		}
 		write("</td><td>");
 		final Thread thread = threadsById.get(connection.getThreadId());
 		if (thread == null) {
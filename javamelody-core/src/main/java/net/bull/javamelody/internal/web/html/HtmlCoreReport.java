@@ -458,6 +458,10 @@ class HtmlCoreReport extends HtmlAbstractReport {
 				break;
 			}
 		}
+		if (collectorServer == null && ThreadInformations.isVirtualThreadsEnabled()) {
+			writeln(separator);
+			writeln("<a href='?part=virtualThreadsDump'><img src='?resource=text.png' alt='#Dump_threads_virtuels_en_json#'/>&nbsp;#Dump_threads_virtuels_en_json#</a>");
+		}
 
 		writeln("</div> <br/>");
 		writeTitle("threads.png", getString("Threads"));
@@ -518,6 +522,10 @@ class HtmlCoreReport extends HtmlAbstractReport {
 				if (javaInformations.isStackTraceEnabled()) {
 					writeln("<a href='?part=threadsDump'><img src='?resource=text.png' alt='#Dump_threads_en_texte#'/>&nbsp;#Dump_threads_en_texte#</a>");
 				}
+				if (collectorServer == null && ThreadInformations.isVirtualThreadsEnabled()) {
+					writeln(SEPARATOR);
+					writeln("<a href='?part=virtualThreadsDump'><img src='?resource=text.png' alt='#Dump_threads_virtuels_en_json#'/>&nbsp;#Dump_threads_virtuels_en_json#</a>");
+				}
 				writeln(SEPARATOR);
 				writeln("<a href='?part=threads'><img src='?resource=threads.png' alt='#Threads#' width='16' height='16'/>&nbsp;#Voir_dans_une_nouvelle_page#</a>");
 				writeln("</div>");
@@ -20,16 +20,21 @@ package net.bull.javamelody.internal.web.html;
 import java.io.IOException;
 import java.io.Writer;
 import java.text.DecimalFormat;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import net.bull.javamelody.internal.common.I18N;
 import net.bull.javamelody.internal.model.Counter;
 import net.bull.javamelody.internal.model.CounterRequest;
 import net.bull.javamelody.internal.model.CounterRequestAggregation;
+import net.bull.javamelody.internal.model.CounterRequestNPlusOne;
 import net.bull.javamelody.internal.model.Period;
 import net.bull.javamelody.internal.model.Range;
+import net.bull.javamelody.internal.model.RequestTransformCache;
 
 /**
  * Partie du rapport html pour un compteur.
@@ -39,6 +44,7 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 	private static final Pattern SQL_KEYWORDS_PATTERN = Pattern.compile(
 			"\\b(select|from|where|order by|group by|update|delete|insert into|values)\\b",
 			Pattern.CASE_INSENSITIVE);
+	private static final int MAX_N_PLUS_ONES_DISPLAYED = 50;
 	private final Counter counter;
 	private final Range range;
 	private final CounterRequestAggregation counterRequestAggregation;
@@ -81,7 +87,9 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 		}
 
 		// 2. débit et liens
-		writeSizeAndLinks(requests, globalRequest);
+		final List<Map.Entry<CounterRequest, CounterRequestNPlusOne>> nPlusOnes = getNPlusOnes(
+				requests);
+		writeSizeAndLinks(requests, globalRequest, !nPlusOnes.isEmpty());
 
 		// 3. détails par requêtes (non visible par défaut)
 		writeln("<div id='details" + counterName + "' class='displayNone'>");
@@ -89,6 +97,13 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 				isRequestGraphDisplayed(counter), true, false);
 		writeln("</div>");
 
+		// 3 bis. N+1 suspectés (non visible par défaut)
+		if (!nPlusOnes.isEmpty()) {
+			writeln("<div id='nPlusOnes" + counterName + "' class='displayNone'>");
+			writeNPlusOnes(nPlusOnes);
+			writeln("</div>");
+		}
+
 		// 4. logs (non visible par défaut)
 		if (isErrorCounter()) {
 			writeln("<div id='logs" + counterName + "' class='displayNone'><div>");
@@ -97,8 +112,8 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 		}
 	}
 
-	private void writeSizeAndLinks(List<CounterRequest> requests, CounterRequest globalRequest)
-			throws IOException {
+	private void writeSizeAndLinks(List<CounterRequest> requests, CounterRequest globalRequest,
+			boolean nPlusOnesDisplayed) throws IOException {
 		final long end;
 		if (range.getEndDate() != null) {
 			// l'utilisateur a choisi une période personnalisée de date à date,
@@ -124,6 +139,8 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 		writeln(getFormattedString(nbKey, integerFormat.format(hitsParMinute),
 				integerFormat.format(requests.size())));
 		final String separator = "&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;";
+		writeRequestTransformCacheStatistics(separator);
+		writeOtherRequestsStatistics(separator);
 		if (counter.isBusinessFacadeCounter()) {
 			writeln(separator);
 			writeln("<a href='?part=counterSummaryPerClass&amp;counter=" + counter.getName()
@@ -136,6 +153,10 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 		}
 		writeln(separator);
 		writeShowHideLink("details" + counter.getName(), "#Details#");
+		if (nPlusOnesDisplayed) {
+			writeln(separator);
+			writeShowHideLink("nPlusOnes" + counter.getName(), "#n_plus_one#");
+		}
 		if (isErrorCounter()) {
 			writeln(separator);
 			writeShowHideLink("logs" + counter.getName(), "#Dernieres_erreurs#");
@@ -153,6 +174,93 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 		writeln("</div>");
 	}
 
+	private void writeRequestTransformCacheStatistics(String separator) throws IOException {
+		// statistiques du cache des noms transformés par *-transform-pattern,
+		// disponibles seulement pour le counter courant et non pour les périodes jour, semaine...
+		final RequestTransformCache cache = counter.getRequestTransformCache();
+		if (cache == null) {
+			return;
+		}
+		final long hits = cache.getHits();
+		final long misses = cache.getMisses();
+		final long bypasses = cache.getBypasses();
+		if (hits + misses + bypasses == 0) {
+			return;
+		}
+		writeln(separator);
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<span title='").append(htmlEncodeButNotSpace(cache.getPattern().pattern()))
+				.append("'>");
+		final long calls = hits + misses + bypasses;
+		sb.append(getFormattedString("cache_transform_pattern",
+				integerFormat.format(100 * hits / calls), integerFormat.format(hits),
+				integerFormat.format(misses), integerFormat.format(bypasses)));
+		sb.append("</span>");
+		writeln(sb.toString());
+	}
+
+	private void writeOtherRequestsStatistics(String separator) throws IOException {
+		// requêtes évincées au-delà du nombre maximum de requêtes (sql non bindé par ex.)
+		final long otherRequestsCount = counter.getOtherRequestsCount();
+		if (otherRequestsCount == 0) {
+			return;
+		}
+		writeln(separator);
+		writeln(getFormattedString("other_requests", integerFormat.format(otherRequestsCount),
+				integerFormat.format(counter.getOtherRequestsHits()),
+				integerFormat.format(counter.getOtherRequestsMaxHits())));
+	}
+
+	private static List<Map.Entry<CounterRequest, CounterRequestNPlusOne>> getNPlusOnes(
+			List<CounterRequest> requests) {
+		// N+1 suspectés de toutes les requêtes, classés par nombres de répétitions décroissants
+		final List<Map.Entry<CounterRequest, CounterRequestNPlusOne>> result = new ArrayList<>();
+		for (final CounterRequest request : requests) {
+			for (final CounterRequestNPlusOne nPlusOne : request.getNPlusOnes()) {
+				result.add(new SimpleImmutableEntry<>(request, nPlusOne));
+			}
+		}
+		result.sort((entry1, entry2) -> Long.compare(entry2.getValue().getRepetitionsSum(),
+				entry1.getValue().getRepetitionsSum()));
+		if (result.size() > MAX_N_PLUS_ONES_DISPLAYED) {
+			return result.subList(0, MAX_N_PLUS_ONES_DISPLAYED);
+		}
+		return result;
+	}
+
+	private void writeNPlusOnes(List<Map.Entry<CounterRequest, CounterRequestNPlusOne>> nPlusOnes)
+			throws IOException {
+		final HtmlTable table = new HtmlTable();
+		table.beginTable(getString("n_plus_one"));
+		write("<th>#Requete#</th><th>#Requete_repetee#</th>");
+		write("<th class='sorttable_numeric'>#n_plus_one_occurrences#</th>");
+		write("<th class='sorttable_numeric'>#Repetitions_moyennes#</th>");
+		write("<th class='sorttable_numeric'>#Repetitions_max#</th>");
+		write("<th>#Exemple_de_requete#</th>");
+		for (final Map.Entry<CounterRequest, CounterRequestNPlusOne> entry : nPlusOnes) {
+			final CounterRequest request = entry.getKey();
+			final CounterRequestNPlusOne nPlusOne = entry.getValue();
+			table.nextRow();
+			write("<td class='wrappedText'>");
+			writeRequestName(request.getId(), request.getName(), false, true, false);
+			write("</td><td class='wrappedText'>");
+			writeRequestName(nPlusOne.getChildRequestId(), nPlusOne.getChildRequestName(), false,
+					true, false);
+			write("</td><td align='right'>");
+			write(integerFormat.format(nPlusOne.getOccurrences()));
+			write("</td><td align='right'>");
+			write(integerFormat.format(nPlusOne.getRepetitionsMean()));
+			write("</td><td align='right'>");
+			write(integerFormat.format(nPlusOne.getMaxRepetitions()));
+			write("</td><td class='wrappedText'>");
+			if (nPlusOne.getSample() != null) {
+				writeDirectly(htmlEncodeButNotSpace(nPlusOne.getSample()));
+			}
+			write("</td>");
+		}
+		table.endTable();
+	}
+
 	private void writeNoRequests() throws IOException {
 		if (isJobCounter()) {
 			writeln("#Aucun_job#");
@@ -217,6 +325,14 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 			write("<th class='sorttable_numeric'>#Temps_moyen#</th>");
 			write("<th class='sorttable_numeric'>#Temps_max#</th>");
 			write("<th class='sorttable_numeric'>#Ecart_type#</th>");
+			if (counterRequestAggregation.isPercentilesDisplayed()) {
+				write("<th class='sorttable_numeric'>"
+						+ getFormattedString("Temps_percentile", 50) + "</th>");
+				write("<th class='sorttable_numeric'>"
+						+ getFormattedString("Temps_percentile", 95) + "</th>");
+				write("<th class='sorttable_numeric'>"
+						+ getFormattedString("Temps_percentile", 99) + "</th>");
+			}
 		} else {
 			write("<th class='sorttable_numeric'>#Hits#</th>");
 		}
@@ -239,6 +355,10 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 			write("</th><th class='sorttable_numeric'>"
 					+ getFormattedString("temps_fils_moyen", childCounterName) + "</th>");
 		}
+		if (counterRequestAggregation.isFetchDisplayed()) {
+			write("<th class='sorttable_numeric'>#Lignes_moyennes#</th>");
+			write("<th class='sorttable_numeric'>#Temps_lecture_moyen#</th>");
+		}
 	}
 
 	private void writeRequest(CounterRequest request, boolean includeGraph,
@@ -264,6 +384,11 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 			write(integerFormat.format(request.getMaximum()));
 			write(nextColumn);
 			write(integerFormat.format(request.getStandardDeviation()));
+			if (counterRequestAggregation.isPercentilesDisplayed()) {
+				writePercentile(request, 50, nextColumn);
+				writePercentile(request, 95, nextColumn);
+				writePercentile(request, 99, nextColumn);
+			}
 		} else {
 			write(nextColumn);
 			write(integerFormat.format(request.getHits()));
@@ -298,6 +423,12 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 			write(nextColumn);
 			write(integerFormat.format(request.getChildDurationsMean()));
 		}
+		if (counterRequestAggregation.isFetchDisplayed()) {
+			write(nextColumn);
+			write(integerFormat.format(request.getRowsMean()));
+			write(nextColumn);
+			write(integerFormat.format(request.getFetchDurationsMean()));
+		}
 		write("</td>");
 	}
 
@@ -349,6 +480,15 @@ public class HtmlCounterReport extends HtmlAbstractReport {
 		return color;
 	}
 
+	private void writePercentile(CounterRequest request, int percentile, String nextColumn)
+			throws IOException {
+		write(nextColumn);
+		final int value = request.getPercentile(percentile);
+		if (value >= 0) {
+			write(integerFormat.format(value));
+		}
+	}
+
 	private void writePercentage(long dividende, long diviseur) throws IOException {
 		if (diviseur == 0) {
 			write("0");
@@ -19,9 +19,11 @@ package net.bull.javamelody.internal.web.html;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -34,6 +36,7 @@ import net.bull.javamelody.internal.model.CollectorServer;
 import net.bull.javamelody.internal.model.Counter;
 import net.bull.javamelody.internal.model.CounterRequest;
 import net.bull.javamelody.internal.model.CounterRequestRumData;
+import net.bull.javamelody.internal.model.CounterRequestSlowExecution;
 import net.bull.javamelody.internal.model.DatabaseInformations;
 import net.bull.javamelody.internal.model.Range;
 
@@ -109,13 +112,21 @@ class HtmlCounterRequestGraphReport extends HtmlAbstractReport {
 	void writeRequestAndGraphDetail(Collector collector, CollectorServer collectorServer,
 			String graphName) throws IOException {
 		counters = collector.getRangeCounters(range);
-		requestsById = mapAllRequestsById();
-		final CounterRequest request = requestsById.get(graphName);
+		final CounterRequest request = getCounterRequestById(graphName);
 		if (request != null) {
+			// les requêtes filles du drill-down sont résolues en une passe par l'index des ids
+			requestsById = mapRequestsByIds(
+					request.getChildRequestsExecutionsByRequestId().keySet());
 			if (request.getRumData() != null && request.getRumData().getHits() > 0) {
 				writeRequestRumData(request);
 			}
 			writeRequest(request);
+			if (request.getSampleName() != null) {
+				writeSampleRequest(request);
+			}
+			if (!request.getSlowestExecutions().isEmpty()) {
+				writeSlowestExecutions(request);
+			}
 
 			if (JdbcWrapper.SINGLETON.getSqlCounter().isRequestIdFromThisCounter(graphName)
 					&& !request.getName().toLowerCase(Locale.ENGLISH).startsWith("alter ")) {
@@ -183,15 +194,58 @@ class HtmlCounterRequestGraphReport extends HtmlAbstractReport {
 				&& collector.getJRobin(request.getId()) != null;
 	}
 
+	private void writeSampleRequest(CounterRequest request) throws IOException {
+		// exemple de requête brute si le nom de la requête est une empreinte sql
+		writeln("<b>#Exemple_de_requete#</b>");
+		writeln("<div class='wrappedText'>");
+		writeDirectly(htmlEncodeRequestName(request.getId(), request.getSampleName()));
+		writeln("</div><hr/>");
+	}
+
+	private void writeSlowestExecutions(CounterRequest request) throws IOException {
+		// exécutions les plus lentes, avec la requête parente et les valeurs des paramètres
+		final DateFormat dateTimeFormat = I18N.createDateAndTimeFormat();
+		final HtmlTable table = new HtmlTable();
+		table.beginTable(getString("Executions_les_plus_lentes"));
+		write("<th>#Date_execution#</th><th class='sorttable_numeric'>#Duree_ecoulee#</th>");
+		write("<th>#Requete_parente#</th><th>#Valeurs_parametres#</th>");
+		for (final CounterRequestSlowExecution execution : request.getSlowestExecutions()) {
+			table.nextRow();
+			writeTextWithStyle("<td align='right'>",
+					dateTimeFormat.format(execution.getStartDate()));
+			writeTextWithStyle("<td align='right'>",
+					integerFormat.format(execution.getDuration()));
+			writeTextWithStyle("<td class='wrappedText'>", execution.getParentRequestName());
+			writeTextWithStyle("<td class='wrappedText'>", execution.getParameters());
+		}
+		table.endTable();
+		writeln("<hr/>");
+	}
+
+	private void writeTextWithStyle(String td, String text) throws IOException {
+		write(td);
+		if (text != null) {
+			writeDirectly(htmlEncodeButNotSpace(text));
+		}
+		write("</td>");
+	}
+
 	private void writeSqlRequestExplainPlan(Collector collector, CollectorServer collectorServer,
 			CounterRequest sqlRequest) throws IOException {
+		// le plan d'exécution d'une empreinte sql est demandé pour son exemple de requête brute
+		final String sql;
+		if (sqlRequest.getSampleName() != null) {
+			sql = sqlRequest.getSampleName();
+		} else {
+			sql = sqlRequest.getName();
+		}
 		try {
 			final String explainPlan;
 			if (collectorServer == null) {
-				explainPlan = DatabaseInformations.explainPlanFor(sqlRequest.getName());
+				explainPlan = DatabaseInformations.explainPlanFor(sql);
 			} else {
 				explainPlan = collectorServer.collectSqlRequestExplainPlan(
-						collector.getApplication(), sqlRequest.getName());
+						collector.getApplication(), sql);
 			}
 			// rq : si explainPlan était un tableau (ex: mysql),
 			// on pourrait utiliser HtmlDatabaseInformationsReport.TableReport
@@ -449,11 +503,21 @@ class HtmlCounterRequestGraphReport extends HtmlAbstractReport {
 		}
 	}
 
-	private Map<String, CounterRequest> mapAllRequestsById() {
-		final Map<String, CounterRequest> result = new HashMap<>();
+	private CounterRequest getCounterRequestById(String requestId) {
 		for (final Counter counter : counters) {
-			for (final CounterRequest request : counter.getRequests()) {
-				result.put(request.getId(), request);
+			final CounterRequest request = counter.getCounterRequestById(requestId);
+			if (request != null) {
+				return request;
+			}
+		}
+		return null;
+	}
+
+	private Map<String, CounterRequest> mapRequestsByIds(Collection<String> requestIds) {
+		final Map<String, CounterRequest> result = new HashMap<>();
+		if (!requestIds.isEmpty()) {
+			for (final Counter counter : counters) {
+				result.putAll(counter.getCounterRequestsByIds(requestIds));
 			}
 		}
 		return result;
@@ -24,12 +24,19 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.LongFunction;
 
 import net.bull.javamelody.internal.common.I18N;
 import net.bull.javamelody.internal.common.Parameters;
+import net.bull.javamelody.internal.model.ConnectionWaits;
+import net.bull.javamelody.internal.model.DataSourceInformations;
+import net.bull.javamelody.internal.model.DurationsInformations;
 import net.bull.javamelody.internal.model.JavaInformations;
 import net.bull.javamelody.internal.model.MemoryInformations;
+import net.bull.javamelody.internal.model.MonitoringOverhead;
 import net.bull.javamelody.internal.model.TomcatInformations;
+import net.bull.javamelody.internal.model.TransactionInformations;
+import net.bull.javamelody.internal.model.Transactions;
 
 /**
  * Partie du rapport html pour les informations systèmes sur le serveur.
@@ -126,6 +133,9 @@ public class HtmlJavaInformationsReport extends HtmlAbstractReport {
 				writeln(toBarWithAlert(javaInformations.getUsedConnectionPercentage(), null));
 			}
 			writeln(lineEnd);
+			writeDataSourceInformations(javaInformations.getDataSourceInformationsList());
+			writeConnectionWaitInformations(javaInformations.getConnectionWaitInformationsList());
+			writeTransactionInformations(javaInformations.getTransactionInformations());
 		}
 		if (javaInformations.getSystemLoadAverage() >= 0) {
 			write("<tr><td>#Charge_systeme#</td><td>");
@@ -194,6 +204,9 @@ public class HtmlJavaInformationsReport extends HtmlAbstractReport {
 
 		writeTomcatInformations(javaInformations.getTomcatInformationsList());
 
+		writeMonitoringOverheadInformations(
+				javaInformations.getMonitoringOverheadInformationsList());
+
 		writeMemoryInformations(javaInformations.getMemoryInformations());
 
 		// on considère que l'espace libre sur le disque dur est celui sur la partition du répertoire temporaire
@@ -323,6 +336,111 @@ public class HtmlJavaInformationsReport extends HtmlAbstractReport {
 		}
 	}
 
+	private void writeMonitoringOverheadInformations(
+			List<DurationsInformations> overheadInformationsList) throws IOException {
+		if (overheadInformationsList.isEmpty()) {
+			return;
+		}
+		writeln("<tr><td valign='top'>#monitoring_overhead#: </td><td>");
+		for (final DurationsInformations overheadInformations : overheadInformationsList) {
+			// durées en microsecondes
+			final String graphName = MonitoringOverhead
+					.getGraphName(overheadInformations.getName());
+			writeln('#' + graphName + "# = ");
+			writeGraph(graphName, formatMicros(overheadInformations.getMeanNanos()));
+			writeDurationsDetails(overheadInformations, "overhead_count", this::formatMicros);
+		}
+		writeln("</td></tr>");
+	}
+
+	private void writeDataSourceInformations(
+			List<DataSourceInformations> dataSourceInformationsList) throws IOException {
+		// détails par DataSource seulement s'il y en a plusieurs,
+		// sinon ce sont les mêmes valeurs que ci-dessus
+		if (dataSourceInformationsList.size() < 2) {
+			return;
+		}
+		writeln("<tr><td valign='top'>#DataSources_jdbc#: </td><td>");
+		for (final DataSourceInformations dataSourceInformations : dataSourceInformationsList) {
+			final String name = dataSourceInformations.getName();
+			write(htmlEncodeButNotSpace(name) + " : #activeConnections# = ");
+			writeGraph(DataSourceInformations.getGraphName("activeConnections", name),
+					integerFormat.format(dataSourceInformations.getActiveConnectionCount()));
+			write(", #usedConnections# = ");
+			writeGraph(DataSourceInformations.getGraphName("usedConnections", name),
+					integerFormat.format(dataSourceInformations.getUsedConnectionCount()));
+			write(", #Hits# sql = " + integerFormat.format(dataSourceInformations.getSqlHits()));
+			if (dataSourceInformations.getSqlHits() > 0) {
+				write(", #Temps_moyen# = ");
+				writeGraph(DataSourceInformations.getGraphName("sqlMeanTimes", name),
+						integerFormat.format(dataSourceInformations.getSqlMean()));
+			}
+			writeln("<br/>");
+		}
+		writeln("</td></tr>");
+	}
+
+	private void writeConnectionWaitInformations(
+			List<DurationsInformations> connectionWaitInformationsList) throws IOException {
+		if (connectionWaitInformationsList.isEmpty()) {
+			return;
+		}
+		write("<tr><td valign='top'>#connectionWaitTime#: </td><td>");
+		writeGraph(ConnectionWaits.GRAPH_NAME, "");
+		writeln("<br/>");
+		for (final DurationsInformations connectionWaitInformations : connectionWaitInformationsList) {
+			// durées en millisecondes
+			writeln(htmlEncodeButNotSpace(connectionWaitInformations.getName()) + " = "
+					+ formatMillis(connectionWaitInformations.getMeanNanos()));
+			writeDurationsDetails(connectionWaitInformations, "connection_wait_count",
+					this::formatMillis);
+		}
+		writeln("</td></tr>");
+	}
+
+	private void writeDurationsDetails(DurationsInformations durationsInformations,
+			String countLabel, LongFunction<String> durationFormat) throws IOException {
+		writeln(" (p50 = " + durationFormat.apply(durationsInformations.getNanosAtPercentile(50))
+				+ ", p95 = " + durationFormat.apply(durationsInformations.getNanosAtPercentile(95))
+				+ ", p99 = " + durationFormat.apply(durationsInformations.getNanosAtPercentile(99))
+				+ ", #Maximum# = " + durationFormat.apply(durationsInformations.getMaxNanos())
+				+ ", #" + countLabel + "# = "
+				+ integerFormat.format(durationsInformations.getCount()) + ")<br/>");
+	}
+
+	private void writeTransactionInformations(TransactionInformations transactionInformations)
+			throws IOException {
+		if (transactionInformations == null) {
+			return;
+		}
+		write("<tr><td valign='top'>#transactionTime#: </td><td>");
+		writeGraph(Transactions.GRAPH_NAME, "");
+		writeln("<br/>");
+		if (transactionInformations.getCount() > 0) {
+			// durées en millisecondes
+			writeln(formatMillis(transactionInformations.getMeanNanos()) + " (p50 = "
+					+ formatMillis(transactionInformations.getNanosAtPercentile(50)) + ", p95 = "
+					+ formatMillis(transactionInformations.getNanosAtPercentile(95)) + ", p99 = "
+					+ formatMillis(transactionInformations.getNanosAtPercentile(99))
+					+ ", #Maximum# = " + formatMillis(transactionInformations.getMaxNanos())
+					+ ", #transaction_count# = "
+					+ integerFormat.format(transactionInformations.getCount()) + ", #rollbacks# = "
+					+ integerFormat.format(transactionInformations.getRollbackCount()) + " / "
+					+ decimalFormat.format(transactionInformations.getRollbackPercentage())
+					+ " %)<br/>");
+		}
+		new HtmlTransactionInformationsReport(transactionInformations, getWriter()).toHtml();
+		writeln("</td></tr>");
+	}
+
+	private String formatMillis(long nanos) {
+		return decimalFormat.format(nanos / 1000000d);
+	}
+
+	private String formatMicros(long nanos) {
+		return decimalFormat.format(nanos / 1000d);
+	}
+
 	private void writeMemoryInformations(MemoryInformations memoryInformations) throws IOException {
 		final String columnEnd = "</td></tr>";
 		final String memoryDetails = memoryInformations.getMemoryDetails();
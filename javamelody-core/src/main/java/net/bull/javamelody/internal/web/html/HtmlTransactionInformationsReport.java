@@ -0,0 +1,79 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.web.html;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+
+import net.bull.javamelody.internal.common.I18N;
+import net.bull.javamelody.internal.model.OpenTransactionInformations;
+import net.bull.javamelody.internal.model.TransactionInformations;
+
+/**
+ * Partie du rapport html pour les transactions jdbc en cours les plus longues.
+ * @author Emeric Vernat
+ */
+class HtmlTransactionInformationsReport extends HtmlAbstractReport {
+	private final TransactionInformations transactionInformations;
+	private final DateFormat dateTimeFormat = I18N.createDateAndTimeFormat();
+	private final DecimalFormat integerFormat = I18N.createIntegerFormat();
+
+	HtmlTransactionInformationsReport(TransactionInformations transactionInformations,
+			Writer writer) {
+		super(writer);
+		assert transactionInformations != null;
+		this.transactionInformations = transactionInformations;
+	}
+
+	@Override
+	void toHtml() throws IOException {
+		if (transactionInformations.getLongestOpenTransactions().isEmpty()) {
+			return;
+		}
+		final HtmlTable table = new HtmlTable();
+		table.beginTable(getString("Transactions_en_cours"));
+		write("<th class='sorttable_date'>#Debut_transaction#</th>");
+		write("<th class='sorttable_numeric'>#Duree_ecoulee#</th>");
+		write("<th>#Thread#</th><th>#Requete#</th>");
+		for (final OpenTransactionInformations transaction : transactionInformations
+				.getLongestOpenTransactions()) {
+			table.nextRow();
+			writeTransaction(transaction);
+		}
+		table.endTable();
+		writeln("<div align='right'>" + getFormattedString("nb_transactions_en_cours",
+				transactionInformations.getOpenTransactionCount()) + "</div>");
+	}
+
+	private void writeTransaction(OpenTransactionInformations transaction) throws IOException {
+		write("<td align='right'>");
+		write(dateTimeFormat.format(transaction.getStartDate()));
+		write("</td><td align='right'>");
+		write(integerFormat.format(transaction.getDurationMillis()));
+		write("</td><td>");
+		// writeDirectly pour ne pas gérer de traductions si le texte contient '#'
+		writeDirectly(htmlEncode(transaction.getThreadName()));
+		write("</td><td class='wrappedText'>");
+		if (transaction.getRequestName() != null) {
+			writeDirectly(htmlEncodeButNotSpace(transaction.getRequestName()));
+		}
+		write("</td>");
+	}
+}
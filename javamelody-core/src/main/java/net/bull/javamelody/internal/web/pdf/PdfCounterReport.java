@@ -180,6 +180,11 @@ class PdfCounterReport extends PdfAbstractTableReport {
 			headers.add(getString("Temps_moyen"));
 			headers.add(getString("Temps_max"));
 			headers.add(getString("Ecart_type"));
+			if (counterRequestAggregation.isPercentilesDisplayed()) {
+				headers.add(getFormattedString("Temps_percentile", 50));
+				headers.add(getFormattedString("Temps_percentile", 95));
+				headers.add(getFormattedString("Temps_percentile", 99));
+			}
 		} else {
 			headers.add(getString("Hits"));
 		}
@@ -200,6 +205,10 @@ class PdfCounterReport extends PdfAbstractTableReport {
 			headers.add(getFormattedString("hits_fils_moyens", childCounterName));
 			headers.add(getFormattedString("temps_fils_moyen", childCounterName));
 		}
+		if (counterRequestAggregation.isFetchDisplayed()) {
+			headers.add(getString("Lignes_moyennes"));
+			headers.add(getString("Temps_lecture_moyen"));
+		}
 		return headers;
 	}
 
@@ -235,6 +244,15 @@ class PdfCounterReport extends PdfAbstractTableReport {
 		addToDocument(footer);
 	}
 
+	private void addPercentileCell(CounterRequest request, int percentile) {
+		final int value = request.getPercentile(percentile);
+		if (value >= 0) {
+			addCell(integerFormat.format(value));
+		} else {
+			addCell("");
+		}
+	}
+
 	private void writeRequest(CounterRequest request) throws BadElementException, IOException {
 		getDefaultCell().setHorizontalAlignment(Element.ALIGN_LEFT);
 		addCell(getShortRequestName(request));
@@ -250,6 +268,11 @@ class PdfCounterReport extends PdfAbstractTableReport {
 			addCell(new Phrase(integerFormat.format(mean), getSlaFont(mean)));
 			addCell(integerFormat.format(request.getMaximum()));
 			addCell(integerFormat.format(request.getStandardDeviation()));
+			if (counterRequestAggregation.isPercentilesDisplayed()) {
+				addPercentileCell(request, 50);
+				addPercentileCell(request, 95);
+				addPercentileCell(request, 99);
+			}
 		} else {
 			addCell(integerFormat.format(request.getHits()));
 		}
@@ -272,6 +295,10 @@ class PdfCounterReport extends PdfAbstractTableReport {
 			addCell(integerFormat.format(request.getChildHitsMean()));
 			addCell(integerFormat.format(request.getChildDurationsMean()));
 		}
+		if (counterRequestAggregation.isFetchDisplayed()) {
+			addCell(integerFormat.format(request.getRowsMean()));
+			addCell(integerFormat.format(request.getFetchDurationsMean()));
+		}
 	}
 
 	private String getShortRequestName(CounterRequest request) {
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -83,16 +85,32 @@ public class PdfRequestAndGraphDetailReport extends PdfAbstractTableReport {
 		this.range = range;
 		this.graphName = graphName;
 		this.counters = collector.getRangeCounters(range);
-		this.requestsById = mapAllRequestsById();
-		this.request = requestsById.get(graphName);
+		this.request = getCounterRequestById(graphName);
+		if (request == null) {
+			this.requestsById = Collections.emptyMap();
+		} else {
+			// les requêtes filles du drill-down sont résolues en une passe par l'index des ids
+			this.requestsById = mapRequestsByIds(
+					request.getChildRequestsExecutionsByRequestId().keySet());
+		}
 		this.pdfDocumentFactory = pdfDocumentFactory;
 	}
 
-	private Map<String, CounterRequest> mapAllRequestsById() {
-		final Map<String, CounterRequest> result = new HashMap<>();
+	private CounterRequest getCounterRequestById(String requestId) {
 		for (final Counter counter : counters) {
-			for (final CounterRequest aRequest : counter.getRequests()) {
-				result.put(aRequest.getId(), aRequest);
+			final CounterRequest aRequest = counter.getCounterRequestById(requestId);
+			if (aRequest != null) {
+				return aRequest;
+			}
+		}
+		return null;
+	}
+
+	private Map<String, CounterRequest> mapRequestsByIds(Collection<String> requestIds) {
+		final Map<String, CounterRequest> result = new HashMap<>();
+		if (!requestIds.isEmpty()) {
+			for (final Counter counter : counters) {
+				result.putAll(counter.getCounterRequestsByIds(requestIds));
 			}
 		}
 		return result;
@@ -24,16 +24,23 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +55,16 @@ import org.junit.Test;
 
 import jakarta.servlet.ServletContext;
 import net.bull.javamelody.internal.model.ConnectionInformations;
+import net.bull.javamelody.internal.model.ConnectionWaits;
+import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.CounterRequest;
+import net.bull.javamelody.internal.model.CounterRequestSlowExecution;
+import net.bull.javamelody.internal.model.DataSourceInformations;
+import net.bull.javamelody.internal.model.DataSourceStatistics;
+import net.bull.javamelody.internal.model.DurationsInformations;
+import net.bull.javamelody.internal.model.JavaInformations;
+import net.bull.javamelody.internal.model.TransactionInformations;
+import net.bull.javamelody.internal.model.Transactions;
 
 /**
  * Test unitaire de la classe JdbcWrapper.
@@ -135,6 +152,201 @@ public class TestJdbcWrapper {
 		assertNotNull("createDataSourceProxy3b", tomcat2Proxy);
 	}
 
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testConnectionWaits() throws SQLException {
+		ConnectionWaits.clear();
+		final DataSource dataSource = createNiceMock(DataSource.class);
+		final Connection connection = createNiceMock(Connection.class);
+		expect(dataSource.getConnection()).andReturn(connection).anyTimes();
+		expect(dataSource.getConnection("user", "password"))
+				.andThrow(new SQLException("pool exhausted")).anyTimes();
+		replay(dataSource);
+		replay(connection);
+		final DataSource dataSourceProxy = jdbcWrapper.createDataSourceProxy("jdbc/waits",
+				dataSource);
+		try {
+			dataSourceProxy.getConnection().close();
+			dataSourceProxy.getConnection().close();
+			try {
+				dataSourceProxy.getConnection("user", "password");
+			} catch (final SQLException e) {
+				// attente comptée même en cas d'exception (timeout du pool par exemple)
+				assertEquals("exception", "pool exhausted", e.getMessage());
+			}
+			dataSourceProxy.getLoginTimeout();
+			final List<DurationsInformations> list = new JavaInformations(null, false)
+					.getConnectionWaitInformationsList();
+			assertEquals("size", 1, list.size());
+			assertEquals("name", "jdbc/waits", list.get(0).getName());
+			assertEquals("count", 3, list.get(0).getCount());
+		} finally {
+			ConnectionWaits.clear();
+		}
+		verify(dataSource);
+	}
+
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testDataSourceStatistics() throws SQLException {
+		final JdbcWrapper.JdbcWrappersMode mode = jdbcWrapper.getJdbcWrappersMode();
+		DataSourceStatistics.clear();
+		try {
+			for (final JdbcWrapper.JdbcWrappersMode jdbcWrappersMode : List
+					.of(JdbcWrapper.JdbcWrappersMode.CLASSES, JdbcWrapper.JdbcWrappersMode.PROXIES)) {
+				jdbcWrapper.setJdbcWrappersMode(jdbcWrappersMode);
+				final org.h2.jdbcx.JdbcDataSource primaryDataSource = new org.h2.jdbcx.JdbcDataSource();
+				primaryDataSource.setURL(H2_DATABASE_URL);
+				final org.h2.jdbcx.JdbcDataSource replicaDataSource = new org.h2.jdbcx.JdbcDataSource();
+				replicaDataSource.setURL(H2_DATABASE_URL);
+				final DataSource primary = jdbcWrapper.createDataSourceProxy("jdbc/primary",
+						primaryDataSource);
+				final DataSource replica = jdbcWrapper.createDataSourceProxy("jdbc/replica",
+						replicaDataSource);
+				try (Connection connection = primary.getConnection()) {
+					try (Statement statement = connection.createStatement()) {
+						statement.execute("select 1");
+					}
+					try (PreparedStatement statement = connection.prepareStatement("select 2")) {
+						statement.executeQuery().close();
+					}
+					try (Connection replicaConnection = replica.getConnection()) {
+						final List<DataSourceInformations> list = new JavaInformations(null, false)
+								.getDataSourceInformationsList();
+						assertEquals("size", 2, list.size());
+						assertEquals("used primary", 1, list.get(0).getUsedConnectionCount());
+						assertEquals("used replica", 1, list.get(1).getUsedConnectionCount());
+						assertNotNull("replicaConnection", replicaConnection);
+					}
+				}
+				final List<DataSourceInformations> list = new JavaInformations(null, false)
+						.getDataSourceInformationsList();
+				final DataSourceInformations primaryInformations = list.get(0);
+				final DataSourceInformations replicaInformations = list.get(1);
+				assertEquals("name", "jdbc/primary", primaryInformations.getName());
+				assertEquals("used", 0, primaryInformations.getUsedConnectionCount());
+				assertEquals("active", 0, primaryInformations.getActiveConnectionCount());
+				assertEquals("transactions", 1, primaryInformations.getTransactionCount());
+				assertEquals("sqlHits", 2, primaryInformations.getSqlHits());
+				assertEquals("replica transactions", 1, replicaInformations.getTransactionCount());
+				assertEquals("replica sqlHits", 0, replicaInformations.getSqlHits());
+				DataSourceStatistics.clear();
+			}
+		} finally {
+			jdbcWrapper.setJdbcWrappersMode(mode);
+			DataSourceStatistics.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testTransactions() throws SQLException {
+		final JdbcWrapper.JdbcWrappersMode mode = jdbcWrapper.getJdbcWrappersMode();
+		final Counter sqlCounter = jdbcWrapper.getSqlCounter();
+		Transactions.clear();
+		try {
+			for (final JdbcWrapper.JdbcWrappersMode jdbcWrappersMode : List
+					.of(JdbcWrapper.JdbcWrappersMode.CLASSES, JdbcWrapper.JdbcWrappersMode.PROXIES)) {
+				jdbcWrapper.setJdbcWrappersMode(jdbcWrappersMode);
+				sqlCounter.bindContext("/transactions GET", "/transactions GET", null, -1, -1);
+				try (Connection connection = jdbcWrapper
+						.createConnectionProxy(DriverManager.getConnection(H2_DATABASE_URL))) {
+					connection.setAutoCommit(false);
+					try (Statement statement = connection.createStatement()) {
+						statement.execute("select 1");
+					}
+					final TransactionInformations open = new JavaInformations(null, false)
+							.getTransactionInformations();
+					assertEquals("open", 1, open.getOpenTransactionCount());
+					assertEquals("requestName", "/transactions GET",
+							open.getLongestOpenTransactions().get(0).getRequestName());
+					connection.commit();
+					// la transaction suivante commence avec le statement suivant
+					try (PreparedStatement statement = connection.prepareStatement("select 2")) {
+						statement.executeQuery().close();
+					}
+					connection.rollback();
+					connection.setAutoCommit(true);
+					// transaction en cours à la fermeture, non comptée
+					connection.setAutoCommit(false);
+				} finally {
+					sqlCounter.unbindContext();
+				}
+				final TransactionInformations informations = new JavaInformations(null, false)
+						.getTransactionInformations();
+				assertEquals("commitCount", 1, informations.getCommitCount());
+				assertEquals("rollbackCount", 1, informations.getRollbackCount());
+				assertEquals("openTransactionCount", 0, informations.getOpenTransactionCount());
+				Transactions.clear();
+			}
+		} finally {
+			jdbcWrapper.setJdbcWrappersMode(mode);
+			Transactions.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testSlowestExecutions() throws SQLException {
+		final JdbcWrapper.JdbcWrappersMode mode = jdbcWrapper.getJdbcWrappersMode();
+		final Counter sqlCounter = jdbcWrapper.getSqlCounter();
+		final boolean displayed = sqlCounter.isDisplayed();
+		sqlCounter.setDisplayed(true);
+		try {
+			for (final JdbcWrapper.JdbcWrappersMode jdbcWrappersMode : List
+					.of(JdbcWrapper.JdbcWrappersMode.CLASSES, JdbcWrapper.JdbcWrappersMode.PROXIES)) {
+				jdbcWrapper.setJdbcWrappersMode(jdbcWrappersMode);
+				sqlCounter.clear();
+				final String sql = "select ?, ? from dual where 1 = ?";
+				jdbcWrapper.setSlowestExecutionsCount(0);
+				try (Connection connection = jdbcWrapper
+						.createConnectionProxy(DriverManager.getConnection(H2_DATABASE_URL))) {
+					try (PreparedStatement statement = connection.prepareStatement(sql)) {
+						statement.setString(1, "disabled");
+						statement.setNull(2, Types.INTEGER);
+						statement.setInt(3, 1);
+						statement.executeQuery().close();
+						assertTrue("disabled", sqlCounter.getRequests().get(0)
+								.getSlowestExecutions().isEmpty());
+
+						jdbcWrapper.setSlowestExecutionsCount(5);
+						statement.setString(1, "text");
+						statement.setNull(2, Types.INTEGER);
+						statement.setInt(3, 1);
+						statement.executeQuery().close();
+						final List<CounterRequestSlowExecution> executions = sqlCounter
+								.getRequests().get(0).getSlowestExecutions();
+						assertEquals("executions", 1, executions.size());
+						assertEquals("parameters", "'text', null, 1",
+								executions.get(0).getParameters());
+
+						jdbcWrapper.setBindValuesMasked(true);
+						statement.clearParameters();
+						statement.setLong(1, 2);
+						statement.setInt(2, 3);
+						statement.setInt(3, 1);
+						statement.executeQuery().close();
+						assertTrue("masked",
+								sqlCounter.getRequests().get(0).getSlowestExecutions().stream()
+										.anyMatch(execution -> "<Long>, <Integer>, <Integer>"
+												.equals(execution.getParameters())));
+					}
+				} finally {
+					jdbcWrapper.setSlowestExecutionsCount(0);
+					jdbcWrapper.setBindValuesMasked(false);
+				}
+			}
+		} finally {
+			jdbcWrapper.setJdbcWrappersMode(mode);
+			sqlCounter.setDisplayed(displayed);
+			sqlCounter.clear();
+		}
+	}
+
 	private static void cleanUp() throws NoSuchFieldException, IllegalAccessException {
 		final Field tomcatField = JdbcWrapperHelper.class
 				.getDeclaredField("TOMCAT_BASIC_DATASOURCES_PROPERTIES");
@@ -312,6 +524,164 @@ public class TestJdbcWrapper {
 		}
 	}
 
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testWrapperClasses() throws SQLException {
+		DriverManager.registerDriver(driver);
+		final JdbcWrapper.JdbcWrappersMode mode = jdbcWrapper.getJdbcWrappersMode();
+		jdbcWrapper.setJdbcWrappersMode(JdbcWrapper.JdbcWrappersMode.CLASSES);
+		final int usedConnectionCount = JdbcWrapper.getUsedConnectionCount();
+		// nécessite la dépendance vers la base de données H2
+		final Connection h2Connection = DriverManager.getConnection(H2_DATABASE_URL);
+		try {
+			final Connection connection = jdbcWrapper.createConnectionProxy(h2Connection);
+			assertTrue("JdbcConnectionWrapper", connection instanceof JdbcConnectionWrapper);
+			assertTrue("isProxyAlready", JdbcWrapper.isProxyAlready(connection));
+			assertSame("wrapper of wrapper", connection,
+					jdbcWrapper.createConnectionProxy(connection));
+			assertEquals("getUsedConnectionCount1", usedConnectionCount + 1,
+					JdbcWrapper.getUsedConnectionCount());
+			assertEquals(EQUALS, connection, connection);
+			assertEquals("hashCode", h2Connection.hashCode(), connection.hashCode());
+			assertTrue("isWrapperFor", connection.isWrapperFor(h2Connection.getClass()));
+			assertSame("unwrap", h2Connection, connection.unwrap(h2Connection.getClass()));
+
+			try (Statement statement = connection.createStatement()) {
+				assertTrue("JdbcStatementWrapper", statement instanceof JdbcStatementWrapper);
+				assertSame("getConnection", connection, statement.getConnection());
+				statement.executeQuery("select 11").close();
+				statement.execute("CREATE TABLE IF NOT EXISTS test (name VARCHAR(50) NOT NULL)");
+				statement.addBatch("insert into test (name) values ('test wrapper')");
+				statement.executeBatch();
+				try {
+					statement.execute("invalid sql wrapper");
+				} catch (final SQLException e) {
+					assertNotNull("ok", e);
+				}
+			}
+			try (PreparedStatement statement = connection.prepareStatement("select 12")) {
+				assertTrue("JdbcPreparedStatementWrapper",
+						statement instanceof JdbcPreparedStatementWrapper);
+				statement.executeQuery().close();
+			}
+			try (CallableStatement statement = connection.prepareCall("select 13")) {
+				assertTrue("JdbcCallableStatementWrapper",
+						statement instanceof JdbcCallableStatementWrapper);
+				statement.execute();
+			}
+			final List<String> requestNames = new ArrayList<>();
+			for (final CounterRequest request : jdbcWrapper.getSqlCounter().getRequests()) {
+				requestNames.add(request.getName());
+			}
+			assertTrue("executeQuery", requestNames.contains("select 11"));
+			assertTrue("executeBatch",
+					requestNames.contains("/* BATCH */ insert into test (name) values ('test wrapper')"));
+			assertTrue("invalid sql", requestNames.contains("invalid sql wrapper"));
+			assertTrue("prepareStatement", requestNames.contains("select 12"));
+			assertTrue("prepareCall", requestNames.contains("select 13"));
+
+			connection.close();
+			connection.close();
+			assertEquals("getUsedConnectionCount2", usedConnectionCount,
+					JdbcWrapper.getUsedConnectionCount());
+		} finally {
+			h2Connection.close();
+			jdbcWrapper.setJdbcWrappersMode(mode);
+		}
+	}
+
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testResultSetMonitoring() throws SQLException {
+		DriverManager.registerDriver(driver);
+		final JdbcWrapper.JdbcWrappersMode mode = jdbcWrapper.getJdbcWrappersMode();
+		jdbcWrapper.setResultSetMonitoringEnabled(true);
+		try {
+			// classes de wrapper puis proxy
+			jdbcWrapper.setJdbcWrappersMode(JdbcWrapper.JdbcWrappersMode.CLASSES);
+			checkResultSetMonitoring("select x from system_range(1, 5) where 'classes' = ?",
+					JdbcResultSetWrapper.class);
+			jdbcWrapper.setJdbcWrappersMode(JdbcWrapper.JdbcWrappersMode.PROXIES);
+			checkResultSetMonitoring("select x from system_range(1, 5) where 'proxies' = ?",
+					null);
+		} finally {
+			jdbcWrapper.setResultSetMonitoringEnabled(false);
+			jdbcWrapper.setJdbcWrappersMode(mode);
+		}
+	}
+
+	private void checkResultSetMonitoring(String sql, Class<?> resultSetClass)
+			throws SQLException {
+		// nécessite la dépendance vers la base de données H2
+		try (Connection connection = jdbcWrapper
+				.createConnectionProxy(DriverManager.getConnection(H2_DATABASE_URL))) {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setString(1, sql.contains("'classes'") ? "classes" : "proxies");
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (resultSetClass != null) {
+						assertSame("ResultSet wrapper", resultSetClass, resultSet.getClass());
+					} else {
+						assertTrue("ResultSet proxy", Proxy.isProxyClass(resultSet.getClass()));
+					}
+					assertSame("getStatement", statement, resultSet.getStatement());
+					int rows = 0;
+					while (resultSet.next()) {
+						rows++;
+					}
+					assertEquals("rows", 5, rows);
+				}
+				// execute puis getResultSet, ResultSet lu en partie puis fermé
+				statement.execute();
+				try (ResultSet resultSet = statement.getResultSet()) {
+					assertSame("getStatement", statement, resultSet.getStatement());
+					assertTrue("next", resultSet.next());
+				}
+			}
+		}
+		final CounterRequest request = jdbcWrapper.getSqlCounter().getCounterRequestByName(sql,
+				false);
+		assertTrue("hasFetchHits", request.hasFetchHits());
+		assertEquals("rowsMean", 3, request.getRowsMean());
+		assertTrue("fetchDurationsMean", request.getFetchDurationsMean() >= 0);
+	}
+
+	/** Test.
+	 * @throws SQLException e */
+	@Test
+	public void testJdbcWrappersMode() throws SQLException {
+		assertEquals("default", JdbcWrapper.JdbcWrappersMode.AUTO,
+				JdbcWrapper.JdbcWrappersMode.getValue(null));
+		assertEquals("classes", JdbcWrapper.JdbcWrappersMode.CLASSES,
+				JdbcWrapper.JdbcWrappersMode.getValue("classes"));
+		assertEquals("proxies", JdbcWrapper.JdbcWrappersMode.PROXIES,
+				JdbcWrapper.JdbcWrappersMode.getValue(" Proxies "));
+
+		assertTrue("hasOnlyJdbcInterfaces",
+				JdbcWrapperHelper.hasOnlyJdbcInterfaces(JdbcConnectionWrapper.class));
+		DriverManager.registerDriver(driver);
+		final JdbcWrapper.JdbcWrappersMode mode = jdbcWrapper.getJdbcWrappersMode();
+		// nécessite la dépendance vers la base de données H2
+		final Connection h2Connection = DriverManager.getConnection(H2_DATABASE_URL);
+		try {
+			// les connexions H2 implémentent aussi org.h2.engine.CastDataProvider par exemple
+			assertFalse("hasOnlyJdbcInterfaces",
+					JdbcWrapperHelper.hasOnlyJdbcInterfaces(h2Connection.getClass()));
+			jdbcWrapper.setJdbcWrappersMode(JdbcWrapper.JdbcWrappersMode.AUTO);
+			Connection connection = jdbcWrapper.createConnectionProxy(h2Connection);
+			assertTrue("proxy", Proxy.isProxyClass(connection.getClass()));
+			connection.close();
+			jdbcWrapper.setJdbcWrappersMode(JdbcWrapper.JdbcWrappersMode.PROXIES);
+			connection = jdbcWrapper.createConnectionProxy(h2Connection);
+			assertTrue("proxy", Proxy.isProxyClass(connection.getClass()));
+			connection.close();
+		} finally {
+			h2Connection.close();
+			jdbcWrapper.setJdbcWrappersMode(mode);
+		}
+	}
+
 	/** Test. */
 	@Test
 	public void testGetSqlCounter() {
@@ -349,6 +719,46 @@ public class TestJdbcWrapper {
 		list.sort(JdbcWrapper.CONNECTION_INFORMATIONS_COMPARATOR);
 	}
 
+	/** Test.
+	 * @throws InterruptedException e */
+	@Test
+	public void testConnectionLeakDetection() throws InterruptedException {
+		final ConnectionInformations connectionInformations = new ConnectionInformations(false);
+		assertTrue("openingStackTrace", connectionInformations.getOpeningStackTrace().isEmpty());
+		// une deuxième connexion ouverte par un thread qui n'existe plus
+		final ConnectionInformations[] connectionInformations2 = new ConnectionInformations[1];
+		final Thread thread = new Thread(
+				() -> connectionInformations2[0] = new ConnectionInformations(false));
+		thread.start();
+		thread.join();
+		final Integer key = -1;
+		final Integer key2 = -2;
+		JdbcWrapper.USED_CONNECTION_INFORMATIONS.put(key, connectionInformations);
+		JdbcWrapper.USED_CONNECTION_INFORMATIONS.put(key2, connectionInformations2[0]);
+		try {
+			jdbcWrapper.setConnectionLeakThresholdMillis(0);
+			assertEquals("disabled", 0, jdbcWrapper.detectConnectionLeaks());
+			jdbcWrapper.setConnectionLeakThresholdMillis(60000);
+			assertEquals("below threshold", 0, jdbcWrapper.detectConnectionLeaks());
+			jdbcWrapper.setConnectionLeakThresholdMillis(1);
+			Thread.sleep(10);
+			assertEquals("suspected leaks", 2, jdbcWrapper.detectConnectionLeaks());
+			assertEquals("already suspected", 0, jdbcWrapper.detectConnectionLeaks());
+			assertTrue("isSuspectedLeak", connectionInformations.isSuspectedLeak());
+			assertFalse("suspectedLeakStackTrace",
+					connectionInformations.getHoldingThreadStackTrace().isEmpty());
+			assertTrue("isSuspectedLeak2", connectionInformations2[0].isSuspectedLeak());
+			assertTrue("suspectedLeakStackTrace2",
+					connectionInformations2[0].getHoldingThreadStackTrace().isEmpty());
+			assertTrue("getConnectionInformationsList",
+					JdbcWrapper.getConnectionInformationsList().contains(connectionInformations));
+		} finally {
+			jdbcWrapper.setConnectionLeakThresholdMillis(0);
+			JdbcWrapper.USED_CONNECTION_INFORMATIONS.remove(key);
+			JdbcWrapper.USED_CONNECTION_INFORMATIONS.remove(key2);
+		}
+	}
+
 	/** Test. */
 	@Test
 	public void testInitServletContext() {
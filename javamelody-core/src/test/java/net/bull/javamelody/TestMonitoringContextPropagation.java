@@ -0,0 +1,167 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.bull.javamelody.internal.model.Counter;
+import net.bull.javamelody.internal.model.CounterRequest;
+import net.bull.javamelody.internal.model.CounterRequestContext;
+
+/**
+ * Test unitaire de la classe MonitoringContextPropagation.
+ * @author Emeric Vernat
+ */
+public class TestMonitoringContextPropagation {
+	private static final String SQL_REQUEST = "select * from propagation";
+	private final Counter sqlCounter = JdbcWrapper.SINGLETON.getSqlCounter();
+	private Counter httpCounter;
+
+	/** Initialisation. */
+	@Before
+	public void setUp() {
+		Utils.initialize();
+		httpCounter = new Counter(Counter.HTTP_COUNTER_NAME, null, sqlCounter);
+	}
+
+	private void executeSql() {
+		sqlCounter.bindContext(SQL_REQUEST, SQL_REQUEST, null, -1, -1);
+		sqlCounter.addRequest(SQL_REQUEST, 2, -1, -1, false, -1);
+	}
+
+	/** Test. */
+	@Test
+	public void testWithoutContext() {
+		final Runnable runnable = this::executeSql;
+		final Callable<String> callable = () -> "";
+		final Supplier<String> supplier = () -> "";
+		assertSame("runnable", runnable, MonitoringContextPropagation.wrapRunnable(runnable));
+		assertSame("callable", callable, MonitoringContextPropagation.wrapCallable(callable));
+		assertSame("supplier", supplier, MonitoringContextPropagation.wrapSupplier(supplier));
+		final ExecutorService executorService = MonitoringContextPropagation
+				.wrapExecutorService(Executors.newSingleThreadExecutor());
+		assertSame("executorService", executorService,
+				MonitoringContextPropagation.wrapExecutorService(executorService));
+		assertSame("executor", executorService,
+				MonitoringContextPropagation.wrapExecutor(executorService));
+		executorService.shutdown();
+	}
+
+	/** Test.
+	 * @throws ExecutionException e
+	 * @throws InterruptedException e */
+	@Test
+	public void testPropagation() throws InterruptedException, ExecutionException {
+		final ExecutorService executorService = MonitoringContextPropagation
+				.wrapExecutorService(Executors.newFixedThreadPool(4));
+		try {
+			httpCounter.bindContext("/propagation GET", "/propagation GET", null, -1, -1);
+			final CounterRequestContext context = httpCounter.getBoundContext();
+			// une requête sql sur le thread de la requête http
+			executeSql();
+			// 10 requêtes sql en parallèle dans un executor
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				futures.add(executorService.submit(this::executeSql));
+			}
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+			// invokeAll et callable
+			final List<Callable<String>> callables = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				callables.add(() -> {
+					executeSql();
+					return "";
+				});
+			}
+			for (final Future<String> future : executorService.invokeAll(callables)) {
+				future.get();
+			}
+			// CompletableFuture, avec une tâche soumise par une tâche
+			CompletableFuture.supplyAsync(MonitoringContextPropagation.wrapSupplier(() -> {
+				executeSql();
+				return "";
+			}), executorService).thenRunAsync(MonitoringContextPropagation.wrapRunnable(this::executeSql),
+					executorService).get();
+			// executor sur le même thread : le contexte de la requête http est restauré
+			final Executor sameThreadExecutor = MonitoringContextPropagation
+					.wrapExecutor(Runnable::run);
+			sameThreadExecutor.execute(this::executeSql);
+			assertSame("context restored", context, httpCounter.getBoundContext());
+
+			httpCounter.addRequest("/propagation GET", 100, -1, -1, false, 1000);
+			assertNull("context unbound", httpCounter.getBoundContext());
+			final CounterRequest request = httpCounter
+					.getCounterRequestByName("/propagation GET", false);
+			// 1 + 10 + 3 + 2 + 1
+			assertEquals("childHitsMean", 17, request.getChildHitsMean());
+			assertEquals("childDurationsMean", 17 * 2, request.getChildDurationsMean());
+			final String sqlRequestId = sqlCounter.getCounterRequestByName(SQL_REQUEST, false)
+					.getId();
+			assertEquals("drill-down", Long.valueOf(17),
+					request.getChildRequestsExecutionsByRequestId().get(sqlRequestId));
+		} finally {
+			httpCounter.unbindContext();
+			executorService.shutdown();
+		}
+	}
+
+	/** Test.
+	 * @throws InterruptedException e */
+	@Test
+	public void testForkedChildContextNotRecycled() throws InterruptedException {
+		final Counter springCounter = new Counter("spring", null, sqlCounter);
+		// tâches exécutées plus tard, après la fin de la méthode qui les a soumises
+		final List<Runnable> tasks = new ArrayList<>();
+		final Executor executor = MonitoringContextPropagation.wrapExecutor(tasks::add);
+		try {
+			httpCounter.bindContext("/fork GET", "/fork GET", null, -1, -1);
+			springCounter.bindContext("method A", "method A", null, -1, -1);
+			executor.execute(this::executeSql);
+			springCounter.addRequest("method A", 10, -1, -1, false, -1);
+			springCounter.bindContext("method B", "method B", null, -1, -1);
+			final Thread thread = new Thread(tasks.get(0));
+			thread.start();
+			thread.join();
+			springCounter.addRequest("method B", 10, -1, -1, false, -1);
+			// la requête sql de la tâche de la méthode A n'est pas comptée dans la méthode B
+			assertEquals("childHits", 0, springCounter
+					.getCounterRequestByName("method B", false).getChildHitsMean());
+			httpCounter.addRequest("/fork GET", 100, -1, -1, false, 1000);
+		} finally {
+			httpCounter.unbindContext();
+		}
+	}
+}
@@ -17,11 +17,16 @@
  */
 package net.bull.javamelody; // NOPMD
 
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -37,6 +42,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -49,6 +55,7 @@ import java.util.Set;
 import javax.cache.Caching;
 import javax.cache.configuration.MutableConfiguration;
 
+import org.easymock.Capture;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -57,6 +64,8 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ReadListener;
@@ -74,12 +83,16 @@ import net.bull.javamelody.internal.common.HttpPart;
 import net.bull.javamelody.internal.common.LOG;
 import net.bull.javamelody.internal.common.Parameters;
 import net.bull.javamelody.internal.model.Action;
+import net.bull.javamelody.internal.model.ConnectionWaits;
 import net.bull.javamelody.internal.model.Counter;
 import net.bull.javamelody.internal.model.CounterRequest;
+import net.bull.javamelody.internal.model.DataSourceStatistics;
 import net.bull.javamelody.internal.model.JavaInformations;
+import net.bull.javamelody.internal.model.MonitoringOverhead;
 import net.bull.javamelody.internal.model.Period;
 import net.bull.javamelody.internal.model.Range;
 import net.bull.javamelody.internal.model.TestDatabaseInformations;
+import net.bull.javamelody.internal.model.Transactions;
 import net.bull.javamelody.internal.model.TransportFormat;
 import net.bull.javamelody.internal.web.CounterServletResponseWrapper;
 import net.bull.javamelody.internal.web.FilterServletOutputStream;
@@ -247,6 +260,46 @@ public class TestMonitoringFilter {// NOPMD
 		} finally {
 			setProperty(Parameter.URL_EXCLUDE_PATTERN, "");
 		}
+		setProperty(Parameter.URL_EXCLUDE_PATHS, "/static/*,*.css");
+		try {
+			setUp();
+			final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+			expect(request.getRequestURI()).andReturn(CONTEXT_PATH + "/static/a.png").anyTimes();
+			expect(request.getContextPath()).andReturn(CONTEXT_PATH).anyTimes();
+			replay(request);
+			final FilterChain chain = createNiceMock(FilterChain.class);
+			chain.doFilter(anyObject(), anyObject());
+			replay(chain);
+			monitoringFilter.doFilter(request, createNiceMock(HttpServletResponse.class), chain);
+			// requête exclue : transmise à la chaîne de filtres sans être monitorée
+			verify(chain);
+			final Counter httpCounter = monitoringFilter.getFilterContext().getCollector()
+					.getCounterByName(Counter.HTTP_COUNTER_NAME);
+			for (final CounterRequest counterRequest : httpCounter.getRequests()) {
+				assertFalse("excluded", counterRequest.getName().startsWith("/static/a.png"));
+			}
+		} finally {
+			setProperty(Parameter.URL_EXCLUDE_PATHS, null);
+		}
+
+		// agrégation par gabarits des chemins
+		setProperty(Parameter.HTTP_AGGREGATION, "template");
+		try {
+			setUp();
+			final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+			expect(request.getRequestURI()).andReturn(CONTEXT_PATH + "/orders/123").anyTimes();
+			expect(request.getContextPath()).andReturn(CONTEXT_PATH).anyTimes();
+			expect(request.getMethod()).andReturn("GET").anyTimes();
+			replay(request);
+			monitoringFilter.doFilter(request, createNiceMock(HttpServletResponse.class),
+					createNiceMock(FilterChain.class));
+			final Counter httpCounter = monitoringFilter.getFilterContext().getCollector()
+					.getCounterByName(Counter.HTTP_COUNTER_NAME);
+			assertEquals("template", "/orders/$ GET",
+					httpCounter.getCounterRequestByName("/orders/124 GET", false).getName());
+		} finally {
+			setProperty(Parameter.HTTP_AGGREGATION, null);
+		}
 
 		// standard
 		setUp();
@@ -302,6 +355,74 @@ public class TestMonitoringFilter {// NOPMD
 		}
 	}
 
+	/** Test.
+	 * @throws ServletException e
+	 * @throws IOException e */
+	@Test
+	public void testDoFilterAsync() throws ServletException, IOException {
+		final Counter httpCounter = monitoringFilter.getFilterContext().getCollector()
+				.getCounterByName(Counter.HTTP_COUNTER_NAME);
+		final Counter errorCounter = monitoringFilter.getFilterContext().getCollector()
+				.getCounterByName(Counter.ERROR_COUNTER_NAME);
+		final String asyncUri = CONTEXT_PATH + TEST_REQUEST + "/async";
+		final String requestName = TEST_REQUEST + "/async GET";
+		final long hits = httpCounter.getCounterRequestByName(requestName, true).getHits();
+		final long timeouts = errorCounter.getCounterRequestByName("AsyncTimeout", true)
+				.getHits();
+
+		// la requête passe en asynchrone : elle n'est pas encore comptée
+		final Capture<AsyncListener> asyncListener = Capture.newInstance();
+		final AsyncContext asyncContext = createNiceMock(AsyncContext.class);
+		asyncContext.addListener(capture(asyncListener));
+		final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+		expect(request.isAsyncStarted()).andReturn(true).anyTimes();
+		expect(request.getAsyncContext()).andReturn(asyncContext).anyTimes();
+		expect(request.getRequestURI()).andReturn(asyncUri).anyTimes();
+		expect(request.getContextPath()).andReturn(CONTEXT_PATH).anyTimes();
+		expect(request.getMethod()).andReturn("GET").anyTimes();
+		replay(request);
+		replay(asyncContext);
+		monitoringFilter.doFilter(request, createNiceMock(HttpServletResponse.class),
+				createNiceMock(FilterChain.class));
+		verify(asyncContext);
+		assertTrue("asyncListener", asyncListener.hasCaptured());
+		assertEquals("hits before completion", hits,
+				httpCounter.getCounterRequestByName(requestName, true).getHits());
+
+		// dispatch asynchrone sur un autre thread : la requête sql est attribuée à la requête http
+		final HttpServletRequest asyncRequest = createNiceMock(HttpServletRequest.class);
+		expect(asyncRequest.getAttribute("javamelody.asyncListener"))
+				.andReturn(asyncListener.getValue()).anyTimes();
+		final Counter sqlCounter = JdbcWrapper.SINGLETON.getSqlCounter();
+		final List<ServletResponse> dispatchedResponses = new ArrayList<>();
+		final FilterChain asyncChain = (req, resp) -> {
+			dispatchedResponses.add(resp);
+			sqlCounter.bindContext("select 1", "select 1", null, -1, -1);
+			sqlCounter.addRequest("select 1", 5, -1, -1, false, -1);
+		};
+		expect(asyncRequest.getRequestURI()).andReturn(asyncUri).anyTimes();
+		expect(asyncRequest.getContextPath()).andReturn(CONTEXT_PATH).anyTimes();
+		replay(asyncRequest);
+		monitoringFilter.doFilter(asyncRequest, createNiceMock(HttpServletResponse.class),
+				asyncChain);
+		assertNull("context unbound", httpCounter.getBoundContext());
+		// startAsync() sans paramètre : la réponse d'origine dispatchée est à nouveau wrappée
+		assertTrue("wrapped response",
+				dispatchedResponses.get(0) instanceof CounterServletResponseWrapper);
+
+		// timeout puis fin de la requête
+		asyncListener.getValue().onTimeout(null);
+		asyncListener.getValue().onComplete(null);
+		// un deuxième onComplete n'est pas compté
+		asyncListener.getValue().onComplete(null);
+		final CounterRequest counterRequest = httpCounter.getCounterRequestByName(requestName,
+				true);
+		assertEquals("hits after completion", hits + 1, counterRequest.getHits());
+		assertTrue("sql child hits", counterRequest.hasChildHits());
+		assertEquals("timeouts", timeouts + 1,
+				errorCounter.getCounterRequestByName("AsyncTimeout", true).getHits());
+	}
+
 	/** Test.
 	 * @throws ServletException e
 	 * @throws IOException e */
@@ -680,6 +801,8 @@ public class TestMonitoringFilter {// NOPMD
 		monitoring(parameters);
 		parameters.put(HttpParameter.PART, HttpPart.THREADS_DUMP.getName());
 		monitoring(parameters);
+		parameters.put(HttpParameter.PART, HttpPart.VIRTUAL_THREADS_DUMP.getName());
+		monitoring(parameters);
 		final File hsErrPidFile = new File("./hs_err_pid12345.log");
 		try {
 			hsErrPidFile.createNewFile();
@@ -776,6 +899,7 @@ public class TestMonitoringFilter {// NOPMD
 			parameters.put(HttpParameter.PART, HttpPart.SPRING_BEANS.getName());
 			monitoring(parameters);
 			setProperty(Parameter.SAMPLING_SECONDS, "60");
+			setProperty(Parameter.CONNECTIONS_LEAK_THRESHOLD_SECONDS, "60");
 			setUp();
 			parameters.put(HttpParameter.PART, HttpPart.HOTSPOTS.getName());
 			monitoring(parameters);
@@ -1125,6 +1249,24 @@ public class TestMonitoringFilter {// NOPMD
 		monitoring0(parameters, true);
 		parameters.put("includeLastValue", "true");
 		monitoring0(parameters, true);
+		MonitoringOverhead.setEnabled(true);
+		try {
+			MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.HTTP, 10000);
+			ConnectionWaits.addWait("jdbc/test", 2000000);
+			Transactions.transactionEnded(Transactions.transactionStarted("test"), true);
+			Transactions.transactionStarted("test open");
+			DataSourceStatistics.getInstance("jdbc/primary").connectionCreated();
+			DataSourceStatistics.getInstance("jdbc/replica").connectionCreated();
+			monitoring0(parameters, true);
+			DataSourceStatistics.getInstance("jdbc/primary").connectionClosed();
+			DataSourceStatistics.getInstance("jdbc/replica").connectionClosed();
+		} finally {
+			MonitoringOverhead.setEnabled(false);
+			MonitoringOverhead.clear();
+			ConnectionWaits.clear();
+			Transactions.clear();
+			DataSourceStatistics.clear();
+		}
 	}
 
 	private void monitoring(Map<HttpParameter, String> parameters)
@@ -114,9 +114,17 @@ public class TestMonitoringFilterInit {
 				.andReturn("/static/*").anyTimes();
 		init();
 		setUp();
+		expect(config.getInitParameter(Parameter.URL_EXCLUDE_PATHS.getCode()))
+				.andReturn("/static/*,*.css").anyTimes();
+		init();
+		setUp();
 		expect(config.getInitParameter(Parameter.ALLOWED_ADDR_PATTERN.getCode()))
 				.andReturn("127\\.0\\.0\\.1").anyTimes();
 		init();
+		setUp();
+		expect(config.getInitParameter(Parameter.PAYLOAD_SNIFFING_BYTES.getCode()))
+				.andReturn("1024").anyTimes();
+		init();
 
 		// pour ce MonitoringFilter, instanceEnabled sera false
 		final MonitoringFilter monitoringFilter2 = new MonitoringFilter();
@@ -128,6 +136,15 @@ public class TestMonitoringFilterInit {
 		monitoringFilter2.destroy();
 	}
 
+	/** Test.
+	 * @throws ServletException e */
+	@Test(expected = IllegalStateException.class)
+	public void testInitWithInvalidPayloadSniffingBytes() throws ServletException {
+		expect(config.getInitParameter(Parameter.PAYLOAD_SNIFFING_BYTES.getCode()))
+				.andReturn("8k").anyTimes();
+		init();
+	}
+
 	private void init() throws ServletException {
 		replay(config);
 		replay(context);
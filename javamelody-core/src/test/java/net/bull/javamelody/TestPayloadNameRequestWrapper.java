@@ -29,13 +29,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
-
 import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.EasyMockSupport;
@@ -366,37 +364,140 @@ public class TestPayloadNameRequestWrapper extends EasyMockSupport {
 	}
 
 	/**
-	 * Test scan for child tag.
-	 * @throws XMLStreamException on error
+	 * Test parsing of SOAP request with the method after the sniffed prefix.
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testSoapMethodAfterPrefix() throws IOException {
+		contentType = CONTENT_TYPE_TEXT_XML;
+		headers.put("SOAPAction", "Some-URI");
+		final StringBuilder header = new StringBuilder();
+		while (header.length() < 20000) {
+			header.append("<t:Transaction xmlns:t=\"some-URI\">5</t:Transaction>\n");
+		}
+		body = "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">\n"
+				+ "<SOAP-ENV:Header>" + header + "</SOAP-ENV:Header>\n"
+				+ "<SOAP-ENV:Body><m:GetLastTradePrice xmlns:m=\"Some-URI\"/></SOAP-ENV:Body>\n"
+				+ "</SOAP-ENV:Envelope>";
+
+		final PayloadNameRequestWrapper wrapper = new PayloadNameRequestWrapper(request);
+		wrapper.initialize();
+
+		assertNull("Method name found after prefix", wrapper.getPayloadRequestName());
+		assertEquals("SOAP request type unrecognized", "SOAP", wrapper.getPayloadRequestType());
+
+		assertEquals("Content was changed", body, slurp(wrapper.getInputStream()));
+	}
+
+	/**
+	 * Test parsing of GWT-RPC request larger than the sniffed prefix.
+	 * @throws IOException on error
 	 */
 	@Test
-	public void testScanForChildTag() throws XMLStreamException {
-		assertTrue("Could not find child tag",
-				scanForChildTag("child", "<parent><child/></parent>"));
+	public void testGwtRpcLargerThanPrefix() throws IOException {
+		contentType = "text/x-gwt-rpc";
+		final StringBuilder parameters = new StringBuilder();
+		while (parameters.length() < 20000) {
+			parameters.append("1|2|3|4|");
+		}
+		body = "7|0|4|http://site/path/com.example.GwtModuleName/|148050F6A52E484A068EAD552E9A6F2A|com.example.GwtRpcApi|gwtRpcMethodName|"
+				+ parameters;
+
+		final PayloadNameRequestWrapper wrapper = new PayloadNameRequestWrapper(request);
+		wrapper.initialize();
 
-		assertFalse("Found wrong tag", scanForChildTag("notChild", "<parent><child/></parent>"));
+		assertEquals("Could not parse GWT-RPC request", ".gwtRpcMethodName",
+				wrapper.getPayloadRequestName());
 
-		//don't find descendant tags
-		assertFalse("Found descendant tag",
-				scanForChildTag("descendant", "<parent><child><descendant/></child></parent>"));
+		assertEquals("Content was changed", body, slurp(wrapper.getInputStream()));
 	}
 
-	private boolean scanForChildTag(String tagName, String xml) throws XMLStreamException {
-		final XMLInputFactory factory = XMLInputFactory.newInstance();
-		final XMLStreamReader reader = factory
-				.createXMLStreamReader(new ByteArrayInputStream(xml.getBytes()));
+	/**
+	 * Test parsing of GWT-RPC request with a custom number of sniffed bytes.
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testGwtRpcSniffingBytes() throws IOException {
+		contentType = "text/x-gwt-rpc";
+		body = "7|0|4|http://site/path/com.example.GwtModuleName/|148050F6A52E484A068EAD552E9A6F2A|com.example.GwtRpcApi|gwtRpcMethodName|1|2|3|4|0|";
+
+		final PayloadNameRequestWrapper wrapper = new PayloadNameRequestWrapper(request, 16);
+		wrapper.initialize();
 
-		//advance to first tag (reader starts at "begin document")
-		reader.next();
+		assertNull("Method name found after prefix", wrapper.getPayloadRequestName());
+		assertEquals("GWT-RPC request type unrecognized", "GWT-RPC",
+				wrapper.getPayloadRequestType());
+		assertEquals("Content was changed", body, slurp(wrapper.getInputStream()));
 
-		final boolean found = PayloadNameRequestWrapper.scanForChildTag(reader, tagName);
+		// 0 pour désactiver
+		final PayloadNameRequestWrapper disabledWrapper = new PayloadNameRequestWrapper(request,
+				0);
+		disabledWrapper.initialize();
+		assertNull("disabled", disabledWrapper.getPayloadRequestName());
+		assertNull("disabled", disabledWrapper.getPayloadRequestType());
+	}
 
-		if (found) {
-			assertEquals("Found wrong tag", tagName, reader.getLocalName());
+	/** Test. */
+	@Test
+	public void testIsAsciiCompatible() {
+		for (final String charsetName : new String[] { "UTF-8", "ISO-8859-1", "US-ASCII",
+				"windows-1252", "ISO-8859-15" }) {
+			assertTrue(charsetName,
+					PayloadNameRequestWrapper.isAsciiCompatible(Charset.forName(charsetName)));
 		}
+		// encodages multi-octets dont le 2e octet d'un caractère peut valoir '|', et EBCDIC
+		for (final String charsetName : new String[] { "Shift_JIS", "GBK", "Big5", "UTF-16",
+				"IBM037" }) {
+			assertFalse(charsetName,
+					PayloadNameRequestWrapper.isAsciiCompatible(Charset.forName(charsetName)));
+		}
+	}
+
+	/** Test. */
+	@Test
+	public void testSniffGwtRpcMethodName() {
+		final String gwtRpc = "7|0|4|http://site/|148050F6|com.example.GwtRpcApi|gwtRpcMethodName";
+		assertEquals("sniffGwtRpcMethodName", ".gwtRpcMethodName", sniffGwtRpcMethodName(gwtRpc,
+				gwtRpc.length(), true));
+		// nom de méthode peut-être tronqué
+		assertNull("sniffGwtRpcMethodName", sniffGwtRpcMethodName(gwtRpc, gwtRpc.length(), false));
+		assertNull("sniffGwtRpcMethodName",
+				sniffGwtRpcMethodName(gwtRpc, gwtRpc.indexOf("gwtRpc"), true));
+		assertEquals("sniffGwtRpcMethodName", ".gwtRpcMethodName",
+				sniffGwtRpcMethodName(gwtRpc + "|1|2|", gwtRpc.length() + 1, false));
+	}
+
+	/** Test. */
+	@Test
+	public void testSniffSoapMethodName() {
+		assertEquals("sniffSoapMethodName", ".method",
+				sniffSoapMethodName("<Envelope><Body><method/></Body></Envelope>"));
+		assertEquals("sniffSoapMethodName", ".method", sniffSoapMethodName(
+				"<?xml version='1.0' ?><!-- comment <Body> --><s:Envelope a='>'><s:Body\n><m:method>"));
+		assertEquals("sniffSoapMethodName", ".method", sniffSoapMethodName(
+				"<Envelope><Header><Body><notMethod/></Body></Header><Body><method/></Body></Envelope>"));
+		// le nom doit être un enfant de Body, lui-même enfant de Envelope
+		assertNull("sniffSoapMethodName",
+				sniffSoapMethodName("<Envelope><Header><Body><notMethod/></Body></Header>"));
+		assertNull("sniffSoapMethodName", sniffSoapMethodName("<notEnvelope><Body><method/>"));
+		assertNull("sniffSoapMethodName", sniffSoapMethodName("<Envelope><Body/><method/>"));
+		assertNull("sniffSoapMethodName",
+				sniffSoapMethodName("<Envelope><Body></Body><method/></Envelope>"));
+		assertNull("sniffSoapMethodName",
+				sniffSoapMethodName("<!DOCTYPE Envelope><Envelope><Body><method/>"));
+		// préfixe tronqué
+		assertNull("sniffSoapMethodName", sniffSoapMethodName("<Envelope><Body><meth"));
+	}
 
-		reader.close();
+	private static String sniffGwtRpcMethodName(String payload, int length, boolean complete) {
+		return PayloadNameRequestWrapper.sniffGwtRpcMethodName(
+				payload.getBytes(StandardCharsets.UTF_8), length, complete,
+				StandardCharsets.UTF_8);
+	}
 
-		return found;
+	private static String sniffSoapMethodName(String payload) {
+		final byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		return PayloadNameRequestWrapper.sniffSoapMethodName(bytes, bytes.length,
+				StandardCharsets.UTF_8);
 	}
 }
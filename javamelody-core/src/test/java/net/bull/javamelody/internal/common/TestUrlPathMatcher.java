@@ -0,0 +1,67 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.common;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe UrlPathMatcher.
+ * @author Emeric Vernat
+ */
+public class TestUrlPathMatcher {
+	/** Test. */
+	@Test
+	public void testMatches() {
+		final UrlPathMatcher matcher = new UrlPathMatcher(
+				"/static/*, *.css,*.js, /health, ,/webjars/*");
+		assertTrue("prefix", matcher.matches("/static/images/logo.png"));
+		assertTrue("prefix", matcher.matches("/static/"));
+		assertFalse("prefix", matcher.matches("/static"));
+		assertTrue("prefix", matcher.matches("/webjars/jquery.min.map"));
+		assertTrue("suffix", matcher.matches("/css/main.css"));
+		assertTrue("suffix", matcher.matches("/app.js"));
+		assertFalse("suffix", matcher.matches("/app.json"));
+		assertTrue("exact", matcher.matches("/health"));
+		assertFalse("exact", matcher.matches("/health/db"));
+		assertFalse("exact", matcher.matches("/healt"));
+		assertFalse("other", matcher.matches("/orders/123"));
+		assertFalse("empty", matcher.matches(""));
+	}
+
+	/** Test. */
+	@Test
+	public void testMatchesWithStart() {
+		final UrlPathMatcher matcher = new UrlPathMatcher("/static/*,*.css");
+		assertTrue("prefix", matcher.matches("/context/static/a.png", "/context".length()));
+		assertFalse("prefix", matcher.matches("/static/context/a.png", "/static".length()));
+		assertTrue("suffix", matcher.matches("/context/a.css", "/context".length()));
+		assertFalse("suffix", matcher.matches("/a.css", "/a.css".length()));
+	}
+
+	/** Test. */
+	@Test
+	public void testAll() {
+		final UrlPathMatcher matcher = new UrlPathMatcher("*");
+		assertTrue("all", matcher.matches("/orders/123"));
+		assertTrue("all", matcher.matches(""));
+		assertFalse("none", new UrlPathMatcher("").matches("/orders/123"));
+	}
+}
@@ -18,6 +18,7 @@
 package net.bull.javamelody.internal.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -29,6 +30,7 @@ import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -269,6 +271,167 @@ public class TestCollector {
 		}
 	}
 
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testCollectMonitoringOverhead() throws IOException {
+		MonitoringOverhead.setEnabled(true);
+		try {
+			final Collector collector = new Collector(TEST, List.of(new Counter("http", null)));
+			MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.HTTP, 10000);
+			// first time to initialize the counts
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.HTTP, 20000);
+			// second time to add the mean overhead of the period
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			final List<String> graphNames = new ArrayList<>();
+			for (final JRobin jrobin : collector.getOtherJRobins()) {
+				graphNames.add(jrobin.getName());
+			}
+			assertTrue("httpOverhead", graphNames.contains("httpOverhead"));
+			assertTrue("collectCountersOverhead", graphNames.contains("collectCountersOverhead"));
+		} finally {
+			MonitoringOverhead.setEnabled(false);
+			MonitoringOverhead.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testCollectTransactions() throws IOException {
+		Transactions.clear();
+		try {
+			final Collector collector = new Collector(TEST, List.of(new Counter("sql", null)));
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			assertFalse("no transaction", containsJRobin(collector.getCounterJRobins(),
+					Transactions.GRAPH_NAME));
+			Transactions.transactionEnded(Transactions.transactionStarted(null), false);
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			Transactions.transactionEnded(Transactions.transactionStarted(null), true);
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			assertTrue("transactionTime", containsJRobin(collector.getCounterJRobins(),
+					Transactions.GRAPH_NAME));
+		} finally {
+			Transactions.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testCollectConnectionWaits() throws IOException {
+		ConnectionWaits.clear();
+		try {
+			final Collector collector = new Collector(TEST, List.of(new Counter("sql", null)));
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			assertFalse("no wait", containsJRobin(collector.getCounterJRobins(),
+					ConnectionWaits.GRAPH_NAME));
+			ConnectionWaits.addWait("jdbc/test", 2000000);
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			ConnectionWaits.addWait("jdbc/test", 4000000);
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			assertTrue("connectionWaitTime", containsJRobin(collector.getCounterJRobins(),
+					ConnectionWaits.GRAPH_NAME));
+		} finally {
+			ConnectionWaits.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testCollectDataSources() throws IOException {
+		DataSourceStatistics.clear();
+		final DataSourceStatistics primary = DataSourceStatistics.getInstance("jdbc/primary");
+		DataSourceStatistics replica = null;
+		try {
+			final Collector collector = new Collector(TEST, List.of(new Counter("sql", null)));
+			primary.connectionCreated();
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			// une seule DataSource : pas de courbes par DataSource
+			assertTrue("one DataSource", collector.getOtherJRobins().stream()
+					.noneMatch(jrobin -> jrobin.getName().startsWith("usedConnections-")));
+			replica = DataSourceStatistics.getInstance("jdbc/replica");
+			replica.connectionCreated();
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			primary.sqlExecutionStarted();
+			primary.sqlExecutionFinished(100, false);
+			collector.collectWithoutErrors(
+					Collections.singletonList(new JavaInformations(null, false)));
+			final List<String> graphNames = new ArrayList<>();
+			for (final JRobin jrobin : collector.getOtherJRobins()) {
+				graphNames.add(jrobin.getName());
+			}
+			for (final String graphName : List.of("usedConnections", "activeConnections",
+					"transactionsRate", "sqlMeanTimes")) {
+				assertTrue(graphName, graphNames.contains(
+						DataSourceInformations.getGraphName(graphName, "jdbc/primary")));
+				assertTrue(graphName, graphNames.contains(
+						DataSourceInformations.getGraphName(graphName, "jdbc/replica")));
+			}
+			final JRobin jrobin = collector
+					.getJRobin(DataSourceInformations.getGraphName("usedConnections", "jdbc/primary"));
+			assertTrue("label", jrobin.getLabel().contains("jdbc_primary"));
+		} finally {
+			// connexions simulées fermées pour que clear() oublie ces DataSources
+			primary.connectionClosed();
+			if (replica != null) {
+				replica.connectionClosed();
+			}
+			DataSourceStatistics.clear();
+		}
+	}
+
+	private static boolean containsJRobin(Collection<JRobin> jrobins, String name) {
+		for (final JRobin jrobin : jrobins) {
+			if (name.equals(jrobin.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testOtherRequestsOfDay() throws IOException {
+		final Counter counter = new Counter("services", null);
+		counter.setMaxRequestsCount(2);
+		final Collector collector = new Collector(TEST, Collections.singletonList(counter));
+		for (int i = 0; i < 5; i++) {
+			counter.addRequest("test 1", 0, 0, 0, false, 1000);
+		}
+		for (int i = 0; i < 10; i++) {
+			counter.addRequest("test 2", 0, 0, 0, false, 1000);
+		}
+		collector.collectWithoutErrors(Collections.emptyList());
+		// deuxième collecte : "test 1" et "test 2" sont regroupés dans "autres"
+		// et seuls leurs hits depuis la collecte précédente sont comptés dans le jour
+		counter.addRequest("test 1", 0, 0, 0, false, 1000);
+		counter.addRequest("test 2", 0, 0, 0, false, 1000);
+		for (int i = 0; i < 20; i++) {
+			counter.addRequest("test 3", 0, 0, 0, false, 1000);
+			counter.addRequest("test 4", 0, 0, 0, false, 1000);
+		}
+		collector.collectWithoutErrors(Collections.emptyList());
+		assertEquals("otherRequestsHits", 17, counter.getOtherRequestsHits());
+		final Counter dayCounter = collector.getRangeCounters(Period.JOUR.getRange()).get(0);
+		assertEquals("day otherRequestsCount", 2, dayCounter.getOtherRequestsCount());
+		assertEquals("day otherRequestsHits", 2, dayCounter.getOtherRequestsHits());
+		assertEquals("day otherRequestsMaxHits", 1, dayCounter.getOtherRequestsMaxHits());
+	}
+
 	/** Test. */
 	@Test
 	public void testRemoveRequest() {
@@ -286,6 +449,12 @@ public class TestCollector {
 		if (counter.getRequestsCount() > 1) {
 			fail("removeRequest");
 		}
+		// la requête la plus fréquente est conservée, les autres sont regroupées dans "autres"
+		assertEquals("heavy hitter", 50,
+				counter.getCounterRequestByName("test 3", false).getHits());
+		assertEquals("otherRequestsCount", 2, counter.getOtherRequestsCount());
+		assertEquals("otherRequestsHits", 2, counter.getOtherRequestsHits());
+		assertEquals("otherRequestsMaxHits", 1, counter.getOtherRequestsMaxHits());
 		counter.addRequest("test 1", 0, 0, 0, false, 1000);
 		counter.addRequest("test 2", 0, 0, 0, false, 1000);
 		collector.collectWithoutErrors(Collections.emptyList());
@@ -427,6 +596,40 @@ public class TestCollector {
 		assertTrue("getCurrentThreadCpuTime", ThreadInformations.getCurrentThreadCpuTime() > 0);
 	}
 
+	/** Test.
+	 * @throws Exception e */
+	@Test
+	public void testThreadInformationsWithVirtualThreads() throws Exception { // NOPMD
+		setProperty(Parameter.VIRTUAL_THREADS_ENABLED, "true");
+		try {
+			ThreadInformations.initVirtualThreadsEnabled();
+			assertEquals("isVirtualThreadsEnabled", ThreadInformations.isVirtualThreadsSupported(),
+					ThreadInformations.isVirtualThreadsEnabled());
+			assertFalse("isVirtualThread",
+					ThreadInformations.isVirtualThread(Thread.currentThread()));
+			// les sondes restent actives pour un thread de plateforme
+			assertTrue("getCurrentThreadCpuTime", ThreadInformations.getCurrentThreadCpuTime() > 0);
+			if (ThreadInformations.isVirtualThreadsSupported()) {
+				// Thread.startVirtualThread par réflexion, car il n'existe qu'à partir de java 21
+				final long[] probes = new long[2];
+				final Runnable runnable = () -> {
+					probes[0] = ThreadInformations.getCurrentThreadCpuTime();
+					probes[1] = ThreadInformations.getCurrentThreadAllocatedBytes();
+				};
+				final Thread thread = (Thread) Thread.class
+						.getMethod("startVirtualThread", Runnable.class).invoke(null, runnable);
+				thread.join();
+				assertTrue("isVirtualThread", ThreadInformations.isVirtualThread(thread));
+				assertEquals("getCurrentThreadCpuTime", -1, probes[0]);
+				assertEquals("getCurrentThreadAllocatedBytes", -1, probes[1]);
+			}
+		} finally {
+			setProperty(Parameter.VIRTUAL_THREADS_ENABLED, null);
+			ThreadInformations.initVirtualThreadsEnabled();
+		}
+		assertFalse("isVirtualThreadsEnabled", ThreadInformations.isVirtualThreadsEnabled());
+	}
+
 	/** Test. */
 	@Test
 	public void testCollectorSamplingProfiler() {
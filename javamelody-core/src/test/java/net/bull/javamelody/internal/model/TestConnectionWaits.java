@@ -0,0 +1,77 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.bull.javamelody.Utils;
+
+/**
+ * Test unitaire des classes ConnectionWaits et DurationsInformations.
+ * @author Emeric Vernat
+ */
+public class TestConnectionWaits {
+	/** Initialisation. */
+	@Before
+	public void setUp() {
+		Utils.initialize();
+		ConnectionWaits.clear();
+	}
+
+	/** Finalisation. */
+	@After
+	public void tearDown() {
+		ConnectionWaits.clear();
+	}
+
+	/** Test. */
+	@Test
+	public void testAddWait() {
+		assertTrue("empty", ConnectionWaits.buildConnectionWaitInformationsList().isEmpty());
+		for (int i = 1; i <= 100; i++) {
+			ConnectionWaits.addWait("jdbc/test", i * 1000000L);
+		}
+		ConnectionWaits.addWait("jdbc/other", 1000);
+		final List<DurationsInformations> list = ConnectionWaits
+				.buildConnectionWaitInformationsList();
+		// trié par nom de DataSource
+		assertEquals("size", 2, list.size());
+		assertEquals("other", "jdbc/other", list.get(0).getName());
+		final DurationsInformations test = list.get(1);
+		assertEquals("name", "jdbc/test", test.getName());
+		assertEquals("count", 100, test.getCount());
+		assertEquals("totalNanos", 5050000000L, test.getTotalNanos());
+		assertEquals("meanNanos", 50500000, test.getMeanNanos());
+		assertEquals("maxNanos", 100000000, test.getMaxNanos());
+		final long p95 = test.getNanosAtPercentile(95);
+		assertTrue("p95 " + p95, p95 >= 95000000 && p95 <= 95000000 + 95000000 / 8);
+		assertTrue("toString", test.toString().contains("jdbc/test"));
+		assertEquals("javaInformations", 2,
+				new JavaInformations(null, false).getConnectionWaitInformationsList().size());
+
+		ConnectionWaits.clear();
+		assertTrue("clear", ConnectionWaits.buildConnectionWaitInformationsList().isEmpty());
+	}
+}
@@ -25,15 +25,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.junit.After;
@@ -103,6 +110,235 @@ public class TestCounter {
 		httpCounter.addRequest("http request", 10, 2, 2, false, 100);
 	}
 
+	/** Test.
+	 * @throws InterruptedException e */
+	@Test
+	public void testRebindContext() throws InterruptedException {
+		final Counter sqlCounter = new Counter("sql", null);
+		final Counter httpCounter = new Counter("http", null, sqlCounter);
+		httpCounter.bindContext("http request", "http request", null, -1, -1);
+		final CounterRequestContext context = httpCounter.getBoundContext();
+		assertNotNull("context", context);
+		httpCounter.unbindContext();
+		assertNull("unbound", httpCounter.getBoundContext());
+		// suite de la requête sur un autre thread (requête http asynchrone)
+		final boolean[] currentContextsEmpty = new boolean[1];
+		final Thread thread = new Thread(() -> {
+			httpCounter.rebindContext(context);
+			sqlCounter.bindContext("sql request", "sql request", null, -1, -1);
+			sqlCounter.addRequest("sql request", 5, -1, -1, false, -1);
+			// sur un autre thread, la requête n'est pas dans les requêtes courantes
+			currentContextsEmpty[0] = httpCounter.getOrderedRootCurrentContexts().isEmpty();
+			httpCounter.rebindContext(null);
+		});
+		thread.start();
+		thread.join();
+		assertTrue("current contexts on other thread", currentContextsEmpty[0]);
+		httpCounter.rebindContext(context);
+		assertEquals("current contexts", 1, httpCounter.getOrderedRootCurrentContexts().size());
+		httpCounter.addRequest("http request", 10, 2, 2, false, 100);
+		assertNull("unbound after addRequest", httpCounter.getBoundContext());
+		assertTrue("child hits",
+				httpCounter.getCounterRequestByName("http request", false).hasChildHits());
+	}
+
+	/** Test. */
+	@Test
+	public void testNPlusOne() {
+		final Counter sqlCounter = new Counter("sql", null);
+		final Counter httpCounter = new Counter("http", null, sqlCounter);
+		httpCounter.setNPlusOneThreshold(2);
+		assertEquals("nPlusOneThreshold", 2, httpCounter.clone().getNPlusOneThreshold());
+		for (int i = 1; i <= 4; i++) {
+			httpCounter.bindContext("/orders GET", "/orders?page=" + i + " GET", null, -1, -1);
+			for (int j = 0; j < i; j++) {
+				sqlCounter.bindContext("select * from item where order_id = ?",
+						"select * from item where order_id = ?", null, -1, -1);
+				sqlCounter.addRequest("select * from item where order_id = ?", 0, -1, -1, false,
+						-1);
+			}
+			sqlCounter.bindContext("select * from orders", "select * from orders", null, -1, -1);
+			sqlCounter.addRequest("select * from orders", 0, -1, -1, false, -1);
+			httpCounter.addRequest("/orders GET", 10, -1, -1, false, 100);
+		}
+		final CounterRequest httpRequest = httpCounter.getRequests().get(0);
+		final List<CounterRequestNPlusOne> nPlusOnes = httpRequest.getNPlusOnes();
+		assertEquals("nPlusOnes", 1, nPlusOnes.size());
+		final CounterRequestNPlusOne nPlusOne = nPlusOnes.get(0);
+		assertEquals("childRequestName", "select * from item where order_id = ?",
+				nPlusOne.getChildRequestName());
+		assertEquals("childRequestId",
+				sqlCounter.getCounterRequestByName("select * from item where order_id = ?", false)
+						.getId(),
+				nPlusOne.getChildRequestId());
+		// 3 et 4 exécutions au-delà de 2
+		assertEquals("occurrences", 2, nPlusOne.getOccurrences());
+		assertEquals("repetitionsSum", 7, nPlusOne.getRepetitionsSum());
+		assertEquals("repetitionsMean", 3, nPlusOne.getRepetitionsMean());
+		assertEquals("maxRepetitions", 4, nPlusOne.getMaxRepetitions());
+		assertEquals("sample", "/orders?page=4 GET", nPlusOne.getSample());
+		assertNotNull("toString", nPlusOne.toString());
+
+		// addHits et removeHits entre périodes
+		final CounterRequest clone = httpRequest.clone();
+		clone.addHits(httpRequest);
+		assertEquals("occurrences", 4, clone.getNPlusOnes().get(0).getOccurrences());
+		clone.removeHits(httpRequest);
+		assertEquals("occurrences", 2, clone.getNPlusOnes().get(0).getOccurrences());
+		clone.removeHits(httpRequest);
+		assertTrue("removed", clone.getNPlusOnes().isEmpty());
+
+		// détection désactivée
+		httpCounter.clear();
+		httpCounter.setNPlusOneThreshold(0);
+		httpCounter.bindContext("/orders GET", "/orders GET", null, -1, -1);
+		for (int j = 0; j < 5; j++) {
+			sqlCounter.bindContext("select 1", "select 1", null, -1, -1);
+			sqlCounter.addRequest("select 1", 0, -1, -1, false, -1);
+		}
+		httpCounter.addRequest("/orders GET", 10, -1, -1, false, 100);
+		assertTrue("disabled", httpCounter.getRequests().get(0).getNPlusOnes().isEmpty());
+	}
+
+	/** Test. */
+	@Test
+	public void testRecycledChildContext() {
+		final Counter sqlCounter = new Counter("sql", null);
+		final Counter httpCounter = new Counter("http", null, sqlCounter);
+		httpCounter.bindContext("http request", "http request", null, -1, -1);
+		final CounterRequestContext liveRootContext = new CounterRequestContext(httpCounter, null,
+				"root", "root", null, null, -1, -1, null);
+		final CounterRequestContext child = liveRootContext.getOrCreateChildContext(sqlCounter,
+				"sql 1", "sql 1", -1, -1);
+		assertSame("parentContext", liveRootContext, child.getParentContext());
+		liveRootContext.closeChildContext();
+		final CounterRequestContext child2 = liveRootContext.getOrCreateChildContext(sqlCounter,
+				"sql 2", "sql 2", -1, -1);
+		assertSame("recycled child context", child, child2);
+		assertEquals("requestName", "sql 2", child2.getRequestName());
+		assertEquals("childContexts", Collections.singletonList(child2),
+				liveRootContext.getChildContexts());
+		liveRootContext.closeChildContext();
+		assertNotSame("other counter", child, liveRootContext
+				.getOrCreateChildContext(new Counter("ejb", null), "ejb", "ejb", -1, -1));
+
+		// requêtes filles comptées par id dans l'ordre d'exécution
+		final String sqlRequest1 = "select 1";
+		final String sqlRequest2 = "select 2";
+		for (final String sqlRequest : Arrays.asList(sqlRequest1, sqlRequest2, sqlRequest1)) {
+			sqlCounter.bindContext(sqlRequest, sqlRequest, null, -1, -1);
+			sqlCounter.addRequest(sqlRequest, 1, -1, -1, false, -1);
+		}
+		final CounterRequestContext rootContextClone = httpCounter
+				.getOrderedRootCurrentContexts().get(0);
+		assertEquals("childHits", 3, rootContextClone.getChildHits());
+		httpCounter.addRequest("http request", 10, 2, 2, false, 100);
+		final Map<String, Long> childRequests = httpCounter.getOrderedRequests().get(0)
+				.getChildRequestsExecutionsByRequestId();
+		assertEquals("childRequests",
+				Arrays.asList(sqlCounter.getCounterRequestByName(sqlRequest1, false).getId(),
+						sqlCounter.getCounterRequestByName(sqlRequest2, false).getId()),
+				new ArrayList<>(childRequests.keySet()));
+		assertEquals("childRequests", Arrays.asList(2L, 1L),
+				new ArrayList<>(childRequests.values()));
+	}
+
+	/** Test.
+	 * @throws InterruptedException e */
+	@Test
+	public void testRecycledChildContextOnOtherThread() throws InterruptedException {
+		final Counter sqlCounter = new Counter("sql", null);
+		final Counter httpCounter = new Counter("http", null, sqlCounter);
+		httpCounter.bindContext("http request", "http request", null, -1, -1);
+		final CounterRequestContext context = httpCounter.getBoundContext();
+		sqlCounter.bindContext("sql request", "sql request", null, -1, -1);
+		final CounterRequestContext child = sqlCounter.getBoundContext();
+		sqlCounter.addRequest("sql request", 5, -1, -1, false, -1);
+		httpCounter.unbindContext();
+		// suite de la requête sur un autre thread : le contexte fils réutilisé est sur ce thread
+		final CounterRequestContext[] recycledChild = new CounterRequestContext[1];
+		final Thread thread = new Thread(() -> {
+			httpCounter.rebindContext(context);
+			sqlCounter.bindContext("sql request 2", "sql request 2", null, -1, -1);
+			recycledChild[0] = sqlCounter.getBoundContext();
+			sqlCounter.addRequest("sql request 2", 5, -1, -1, false, -1);
+			httpCounter.rebindContext(null);
+		}, "other thread");
+		thread.start();
+		thread.join();
+		assertSame("recycled child context", child, recycledChild[0]);
+		assertSame("thread", thread, recycledChild[0].getThread());
+		assertEquals("threadId", thread.getId(), recycledChild[0].getThreadId());
+		assertEquals("threadName", "other thread", recycledChild[0].getThreadName());
+	}
+
+	/** Test. */
+	@Test
+	public void testAddFetchHit() {
+		final Counter sqlCounter = new Counter("sql", null);
+		final Counter httpCounter = new Counter("http", null, sqlCounter);
+		httpCounter.bindContext("http request", "http request", null, -1, -1);
+		final String sqlRequest = "select * from customer";
+		sqlCounter.bindContext(sqlRequest, sqlRequest, null, -1, -1);
+		sqlCounter.addRequest(sqlRequest, 2, -1, -1, false, -1);
+		// lecture du ResultSet après l'exécution de la requête sql
+		sqlCounter.addFetchHit(sqlRequest, 200, 800000000L);
+		final CounterRequest request = sqlCounter.getCounterRequestByName(sqlRequest, false);
+		assertTrue("hasFetchHits", request.hasFetchHits());
+		assertEquals("rowsMean", 200, request.getRowsMean());
+		assertEquals("fetchDurationsMean", 800, request.getFetchDurationsMean());
+		assertEquals("requestsCount", 1, sqlCounter.getRequestsCount());
+		assertEquals("childDurationsSum", 802,
+				httpCounter.getOrderedRootCurrentContexts().get(0).getChildDurationsSum());
+		// les lectures de moins d'une ms sont cumulées en ns
+		sqlCounter.addFetchHit(sqlRequest, 200, 600000L);
+		sqlCounter.addFetchHit(sqlRequest, 200, 600000L);
+		assertEquals("childDurationsSum", 803,
+				httpCounter.getOrderedRootCurrentContexts().get(0).getChildDurationsSum());
+		// une exécution sans ResultSet ne change pas les moyennes des lectures
+		sqlCounter.bindContext(sqlRequest, sqlRequest, null, -1, -1);
+		sqlCounter.addRequest(sqlRequest, 2, -1, -1, false, -1);
+		final CounterRequest request2 = sqlCounter.getCounterRequestByName(sqlRequest, false);
+		assertEquals("rowsMean", 200, request2.getRowsMean());
+		assertEquals("fetchDurationsMean", (800000000L + 1200000L) / 3 / 1000000L,
+				request2.getFetchDurationsMean());
+		httpCounter.addRequest("http request", 1000, 2, 2, false, 100);
+		assertEquals("childDurationsMean", 805,
+				httpCounter.getOrderedRequests().get(0).getChildDurationsMean());
+		// requête inconnue ignorée, sans contexte
+		sqlCounter.addFetchHit("unknown", 1, 1);
+		assertEquals("requestsCount", 1, sqlCounter.getRequestsCount());
+
+		final CounterRequest global = new CounterRequest("global", sqlCounter.getName());
+		global.addHits(request2);
+		global.addHits(request2);
+		assertEquals("rowsMean", 200, global.getRowsMean());
+		global.removeHits(request2);
+		global.removeHits(request2);
+		assertFalse("hasFetchHits", global.hasFetchHits());
+		assertEquals("rowsMean", -1, global.getRowsMean());
+		assertEquals("fetchDurationsMean", -1, global.getFetchDurationsMean());
+	}
+
+	/** Test. */
+	@Test
+	public void testAddFetchHitBuffered() {
+		final Counter sqlCounter = new Counter("sql", null);
+		sqlCounter.setBuffered(true);
+		final String sqlRequest = "select * from customer";
+		sqlCounter.addRequest(sqlRequest, 2, -1, -1, false, -1);
+		// la requête est encore dans le tampon de ce thread
+		sqlCounter.addFetchHit(sqlRequest, 100, 2000000L);
+		final CounterRequest request = sqlCounter.getCounterRequestByName(sqlRequest, false);
+		assertEquals("rowsMean", 100, request.getRowsMean());
+		assertEquals("fetchDurationsMean", 2, request.getFetchDurationsMean());
+		// la requête a été reportée dans le counter
+		sqlCounter.addFetchHit(sqlRequest, 300, 4000000L);
+		final CounterRequest request2 = sqlCounter.getCounterRequestByName(sqlRequest, false);
+		assertEquals("rowsMean", 200, request2.getRowsMean());
+		assertEquals("fetchDurationsMean", 3, request2.getFetchDurationsMean());
+	}
+
 	/** Test. */
 	@Test
 	public void testAddRequestForSystemError() {
@@ -287,6 +523,41 @@ public class TestCounter {
 		assertEquals("request name", requestName, counterRequest.getName());
 	}
 
+	/** Test. */
+	@Test
+	public void testGetCounterRequestById() throws IOException, ClassNotFoundException {
+		counter.clear();
+		counter.addRequest("request a", 100, 50, 50, false, 1000);
+		counter.addRequest("request b", 100, 50, 50, false, 1000);
+		final String idA = new CounterRequest("request a", counter.getName()).getId();
+		final String idB = new CounterRequest("request b", counter.getName()).getId();
+		assertEquals("request by id", "request a", counter.getCounterRequestById(idA).getName());
+		assertEquals("request of other counter", null,
+				counter.getCounterRequestById(new CounterRequest("request a", "other").getId()));
+		final Map<String, CounterRequest> requestsByIds = counter
+				.getCounterRequestsByIds(List.of(idB, idA, "unknown"));
+		assertEquals("requests by ids", List.of(idB, idA),
+				new ArrayList<>(requestsByIds.keySet()));
+		assertEquals("clone", "request b",
+				counter.clone().getCounterRequestById(idB).getName());
+		final Counter deserializedCounter = (Counter) new ObjectInputStream(
+				new ByteArrayInputStream(serialize(counter))).readObject();
+		assertEquals("deserialized", "request b",
+				deserializedCounter.getCounterRequestById(idB).getName());
+		counter.removeRequest("request a");
+		assertEquals("removed request", null, counter.getCounterRequestById(idA));
+		counter.clear();
+		assertEquals("cleared", null, counter.getCounterRequestById(idB));
+	}
+
+	private static byte[] serialize(Counter myCounter) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(output)) {
+			out.writeObject(myCounter);
+		}
+		return output.toByteArray();
+	}
+
 	/** Test. */
 	@Test
 	public void testGetOrderedRequests() {
@@ -394,6 +665,170 @@ public class TestCounter {
 		assertSame("request transform pattern", value, counter.getRequestTransformPattern());
 	}
 
+	/** Test. */
+	@Test
+	public void testSqlFingerprint() {
+		final Counter sqlCounter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		assertFalse("sqlFingerprint", sqlCounter.isSqlFingerprint());
+		sqlCounter.setSqlFingerprint(true);
+		assertTrue("sqlFingerprint", sqlCounter.isSqlFingerprint());
+		assertTrue("sqlFingerprint clone", sqlCounter.clone().isSqlFingerprint());
+		sqlCounter.addRequest("select * from t where id in (1, 2)", 10, -1, -1, false, -1);
+		sqlCounter.addRequest("select * from t where id in (3)", 10, -1, -1, false, -1);
+		sqlCounter.addRequest("select 1", 10, -1, -1, false, -1);
+		final List<CounterRequest> requests = sqlCounter.getOrderedByHitsRequests();
+		assertEquals("requests count", 2, requests.size());
+		final CounterRequest request = requests.get(0);
+		assertEquals("fingerprint", "select * from t where id in (?)", request.getName());
+		assertEquals("hits", 2, request.getHits());
+		assertEquals("sample", "select * from t where id in (1, 2)", request.getSampleName());
+		assertEquals("sample", "select 1", requests.get(1).getSampleName());
+		counter.clear();
+		counter.addRequest("select 1", 10, -1, -1, false, -1);
+		assertNull("no sample", counter.getRequests().get(0).getSampleName());
+	}
+
+	/** Test. */
+	@Test
+	public void testHttpPathTemplater() {
+		final Counter httpCounter = new Counter(Counter.HTTP_COUNTER_NAME, null);
+		assertNull("httpPathTemplater", httpCounter.getHttpPathTemplater());
+		final HttpPathTemplater httpPathTemplater = new HttpPathTemplater();
+		httpCounter.setHttpPathTemplater(httpPathTemplater);
+		assertSame("httpPathTemplater clone", httpPathTemplater,
+				httpCounter.clone().getHttpPathTemplater());
+		httpCounter.addRequest("/orders/123 GET", 10, 1, 1, false, 100);
+		httpCounter.addRequest("/orders/124 GET", 10, 1, 1, false, 100);
+		httpCounter.addRequest("/orders GET", 10, 1, 1, false, 100);
+		final List<CounterRequest> requests = httpCounter.getOrderedByHitsRequests();
+		assertEquals("requests count", 2, requests.size());
+		final CounterRequest request = requests.get(0);
+		assertEquals("template", "/orders/$ GET", request.getName());
+		assertEquals("hits", 2, request.getHits());
+		assertEquals("sample", "/orders/123 GET", request.getSampleName());
+		assertNull("no sample", requests.get(1).getSampleName());
+	}
+
+	/** Test. */
+	@Test
+	public void testStriped() throws InterruptedException {
+		final Counter stripedCounter = new Counter("http", null);
+		assertFalse("striped", stripedCounter.isStriped());
+		stripedCounter.setStriped(true);
+		assertTrue("striped", stripedCounter.isStriped());
+		assertTrue("striped clone", stripedCounter.clone().isStriped());
+		final int threadCount = 4;
+		final int hitsPerThread = 1000;
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			final Thread thread = new Thread(() -> {
+				for (int j = 0; j < hitsPerThread; j++) {
+					stripedCounter.addRequest("striped request", j % 10, 1, 1, j == 0, 100);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		final CounterRequest request = stripedCounter.getRequests().get(0);
+		assertEquals("hits", threadCount * hitsPerThread, request.getHits());
+		assertEquals("durationsSum", threadCount * hitsPerThread / 10 * 45,
+				request.getDurationsSum());
+		assertEquals("maximum", 9, request.getMaximum());
+		assertEquals("mean", 4, request.getMean());
+		assertEquals("cpuTimeSum", threadCount * hitsPerThread, request.getCpuTimeSum());
+		assertEquals("responseSizeMean", 100, request.getResponseSizeMean());
+		assertEquals("systemErrors", threadCount, request.getSystemErrors());
+		assertEquals("p50", 4, request.getPercentile(50));
+		assertEquals("p100", 9, request.getPercentile(100));
+		// les hits déjà reportés ne sont pas comptés 2 fois
+		stripedCounter.addRequest("striped request", 9, 1, 1, false, 100);
+		assertEquals("hits", threadCount * hitsPerThread + 1,
+				stripedCounter.getCounterRequestByName("striped request", false).getHits());
+	}
+
+	/** Test. */
+	@Test
+	public void testBuffered() throws InterruptedException {
+		final Counter bufferedCounter = new Counter("http", null);
+		assertFalse("buffered", bufferedCounter.isBuffered());
+		bufferedCounter.setBuffered(true);
+		assertTrue("buffered", bufferedCounter.isBuffered());
+		assertTrue("buffered clone", bufferedCounter.clone().isBuffered());
+		final int threadCount = 4;
+		// plus que la taille d'un tampon pour avoir des reports synchrones
+		final int hitsPerThread = 3 * CounterRequestBuffer.MAX_PENDING_HITS;
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			final Thread thread = new Thread(() -> {
+				for (int j = 0; j < hitsPerThread; j++) {
+					bufferedCounter.addRequest("buffered request", j % 10, 1, 1, j == 0, 100);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals("requestsCount", 1, bufferedCounter.getRequestsCount());
+		final CounterRequest request = bufferedCounter.getRequests().get(0);
+		assertEquals("hits", threadCount * hitsPerThread, request.getHits());
+		assertEquals("maximum", 9, request.getMaximum());
+		assertEquals("systemErrors", threadCount, request.getSystemErrors());
+		assertEquals("p100", 9, request.getPercentile(100));
+
+		// requêtes filles dans le tampon de ce thread
+		final Counter sqlCounter = new Counter("sql", null);
+		sqlCounter.setBuffered(true);
+		final Counter httpCounter = new Counter("http", null, sqlCounter);
+		httpCounter.setBuffered(true);
+		httpCounter.bindContext("http request", "http request", null, -1, -1);
+		sqlCounter.bindContext("sql request", "sql request", null, -1, -1);
+		sqlCounter.addRequest("sql request", 2, -1, -1, false, -1);
+		httpCounter.addRequest("http request", 10, 2, 2, false, 100);
+		final CounterRequest httpRequest = httpCounter.getRequests().get(0);
+		assertEquals("childHitsMean", 1, httpRequest.getChildHitsMean());
+		assertEquals("childRequests",
+				Collections.singleton(
+						sqlCounter.getCounterRequestByName("sql request", false).getId()),
+				httpRequest.getChildRequestsExecutionsByRequestId().keySet());
+
+		// les hits en attente sont oubliés par clear
+		httpCounter.addRequest("http request", 10, 2, 2, false, 100);
+		httpCounter.clear();
+		assertEquals("clear", 0, httpCounter.getRequestsCount());
+		httpCounter.setBuffered(false);
+		assertFalse("buffered", httpCounter.isBuffered());
+	}
+
+	/** Test. */
+	@Test
+	public void testPercentiles() {
+		counter.clear();
+		for (int i = 1; i <= 100; i++) {
+			counter.addRequest("percentiles", i, 0, 0, false, 1000);
+		}
+		final CounterRequest request = counter.getCounterRequestByName("percentiles", false);
+		// à la précision de l'histogramme près
+		assertTrue("p50", request.getPercentile(50) >= 50 && request.getPercentile(50) <= 51);
+		assertTrue("p99", request.getPercentile(99) >= 99 && request.getPercentile(99) <= 100);
+		assertEquals("p100", 100, request.getPercentile(100));
+		// les percentiles restent exacts après addHits et removeHits
+		final Counter dayCounter = new Counter(counter.getName(), null);
+		dayCounter.addRequestsAndErrors(counter);
+		dayCounter.addRequestsAndErrors(counter);
+		final CounterRequest dayRequest = dayCounter.getRequests().get(0);
+		dayRequest.removeHits(request);
+		assertTrue("p50", dayRequest.getPercentile(50) >= 50 && dayRequest.getPercentile(50) <= 51);
+		// après removeHits, le maximum n'est plus connu : p100 est la fin de la tranche de 100
+		assertTrue("p100", dayRequest.getPercentile(100) >= 100
+				&& dayRequest.getPercentile(100) <= 100 * 17 / 16);
+		assertEquals("no histogram", -1, new CounterRequest("a", "b").getPercentile(50));
+	}
+
 	/** Test. */
 	@Test
 	public void testStartDate() {
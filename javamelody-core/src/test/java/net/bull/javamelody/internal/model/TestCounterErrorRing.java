@@ -0,0 +1,145 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe CounterErrorRing.
+ * @author Emeric Vernat
+ */
+public class TestCounterErrorRing {
+	/** Test. */
+	@Test
+	public void testAdd() {
+		final CounterErrorRing ring = new CounterErrorRing(3);
+		assertTrue("getErrors", ring.getErrors().isEmpty());
+		final List<CounterError> errors = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			final CounterError error = new CounterError("error " + i, null);
+			errors.add(error);
+			ring.add(error);
+		}
+		// seules les plus récentes sont gardées, dans l'ordre des ajouts
+		assertEquals("size", 3, ring.size());
+		assertEquals("getErrors", errors.subList(2, 5), ring.getErrors());
+		ring.clear();
+		assertEquals("clear", 0, ring.size());
+		assertTrue("clear", ring.getErrors().isEmpty());
+		ring.add(errors.get(0));
+		assertEquals("size", 1, ring.size());
+		assertSame("getErrors", errors.get(0), ring.getErrors().get(0));
+	}
+
+	/** Test. */
+	@Test
+	public void testAddAll() {
+		final CounterErrorRing ring = new CounterErrorRing(4);
+		final long time = System.currentTimeMillis();
+		final CounterError first = new CounterError("first", null, time);
+		final CounterError second = new CounterError("second", null, time + 1);
+		final CounterError third = new CounterError("third", null, time + 2);
+		final CounterError fourth = new CounterError("fourth", null, time + 3);
+		final CounterError fifth = new CounterError("fifth", null, time + 4);
+		ring.add(second);
+		ring.add(fourth);
+		final List<CounterError> errors = new ArrayList<>();
+		errors.add(first);
+		errors.add(third);
+		errors.add(fifth);
+		ring.addAll(errors);
+		// fusion ordonnée par date, en gardant les plus récentes
+		final List<CounterError> expected = new ArrayList<>();
+		expected.add(second);
+		expected.add(third);
+		expected.add(fourth);
+		expected.add(fifth);
+		assertEquals("addAll", expected, ring.getErrors());
+	}
+
+	/** Test. */
+	@Test
+	public void testConcurrentAdd() throws InterruptedException, ExecutionException {
+		final int capacity = Counter.MAX_ERRORS_COUNT;
+		final CounterErrorRing ring = new CounterErrorRing(capacity);
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				// chaque tâche retourne la taille maximum observée, vérifiée par le thread du test
+				futures.add(executorService.submit(() -> {
+					int maxSize = 0;
+					for (int i = 0; i < 1000; i++) {
+						ring.add(new CounterError("error", null));
+						maxSize = Math.max(maxSize, ring.size());
+					}
+					return maxSize;
+				}));
+			}
+			for (final Future<Integer> future : futures) {
+				assertTrue("size", future.get() <= capacity);
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		assertEquals("size", capacity, ring.size());
+		assertEquals("getErrors", capacity, ring.getErrors().size());
+	}
+
+	/** Test.
+	 * @throws ExecutionException e
+	 * @throws InterruptedException e */
+	@Test
+	public void testConcurrentAddAll() throws InterruptedException, ExecutionException {
+		// capacité suffisante pour ne perdre aucune erreur si la fusion est exclusive avec les ajouts
+		final CounterErrorRing ring = new CounterErrorRing(10000);
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executorService.submit(() -> {
+					for (int i = 0; i < 1000; i++) {
+						ring.add(new CounterError("error", null));
+					}
+				}));
+			}
+			for (int i = 0; i < 100; i++) {
+				final List<CounterError> oldErrors = new ArrayList<>();
+				oldErrors.add(new CounterError("old error", null, i));
+				ring.addAll(oldErrors);
+			}
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		assertEquals("size", 4 * 1000 + 100, ring.size());
+	}
+}
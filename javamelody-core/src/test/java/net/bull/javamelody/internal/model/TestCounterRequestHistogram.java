@@ -0,0 +1,173 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import net.bull.javamelody.Parameter;
+import net.bull.javamelody.Utils;
+
+/**
+ * Test for CounterRequestHistogram.
+ * @author Emeric Vernat
+ */
+public class TestCounterRequestHistogram {
+	/**
+	 * Test.
+	 */
+	@Test
+	public void testBuckets() {
+		for (int digits = 1; digits <= 3; digits++) {
+			final int bits = CounterRequestHistogram.getSubBucketBits(digits);
+			long previousHighest = -1;
+			final int maxIndex = CounterRequestHistogram.getIndex(1L << 40, bits);
+			for (int index = 0; index <= maxIndex; index++) {
+				final long lowest = CounterRequestHistogram.getLowestValue(index, bits);
+				final long highest = CounterRequestHistogram.getHighestValue(index, bits);
+				// tranches contiguës
+				assertEquals("lowest", previousHighest + 1, lowest);
+				assertEquals("index", index, CounterRequestHistogram.getIndex(lowest, bits));
+				assertEquals("index", index, CounterRequestHistogram.getIndex(highest, bits));
+				// erreur relative bornée selon les chiffres significatifs
+				assertTrue("precision", highest - lowest <= Math.max(0, lowest / (1 << bits - 1)));
+				previousHighest = highest;
+			}
+		}
+		assertEquals("subBucketBits", 5, CounterRequestHistogram.getSubBucketBits(1));
+	}
+
+	/**
+	 * Test.
+	 */
+	@Test
+	public void testPercentiles() {
+		final CounterRequestHistogram histogram = new CounterRequestHistogram(1);
+		assertNotNull("toString", histogram.toString());
+		assertEquals("empty", -1, histogram.getValueAtPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.addValue(i);
+		}
+		assertEquals("totalCount", 1000, histogram.getTotalCount());
+		assertPercentile(500, histogram.getValueAtPercentile(50));
+		assertPercentile(950, histogram.getValueAtPercentile(95));
+		assertPercentile(990, histogram.getValueAtPercentile(99));
+		assertPercentile(1000, histogram.getValueAtPercentile(100));
+		histogram.addValue(-1);
+		assertEquals("negative", 0, histogram.getValueAtPercentile(0));
+	}
+
+	private static void assertPercentile(long expected, long actual) {
+		// 1 chiffre significatif : 1/16 d'erreur relative au plus
+		assertTrue(expected + " " + actual, actual >= expected && actual <= expected * 17 / 16);
+	}
+
+	/**
+	 * Test.
+	 */
+	@Test
+	public void testAddAndRemoveHits() {
+		final CounterRequestHistogram histogram = new CounterRequestHistogram(1);
+		final CounterRequestHistogram other = new CounterRequestHistogram(1);
+		histogram.addHits(other);
+		assertEquals("totalCount", 0, histogram.getTotalCount());
+		for (int i = 0; i < 100; i++) {
+			histogram.addValue(10);
+			other.addValue(10000);
+		}
+		final CounterRequestHistogram clone = histogram.clone();
+		histogram.addHits(other);
+		assertEquals("totalCount", 200, histogram.getTotalCount());
+		assertPercentile(10000, histogram.getValueAtPercentile(99));
+		histogram.removeHits(other);
+		// exact pour une même précision
+		assertEquals("totalCount", 100, histogram.getTotalCount());
+		assertEquals("p99", clone.getValueAtPercentile(99), histogram.getValueAtPercentile(99));
+		assertEquals("clone", 100, clone.getTotalCount());
+
+		// précisions différentes
+		final CounterRequestHistogram precise = new CounterRequestHistogram(3);
+		precise.addHits(other);
+		assertEquals("totalCount", 100, precise.getTotalCount());
+		// approché au milieu des tranches de l'autre histogramme
+		assertTrue("p50", Math.abs(precise.getValueAtPercentile(50) - 10000) <= 10000 / 16);
+		precise.removeHits(other);
+		assertEquals("totalCount", 0, precise.getTotalCount());
+	}
+
+	/**
+	 * Test.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testSignificantDigits() {
+		assertEquals("default", CounterRequestHistogram.DEFAULT_SIGNIFICANT_DIGITS,
+				CounterRequestHistogram.getParameterSignificantDigits());
+		new CounterRequestHistogram(4);
+	}
+
+	/**
+	 * Test.
+	 */
+	@Test
+	public void testParameterSignificantDigits() {
+		Utils.initialize();
+		try {
+			Utils.setProperty(Parameter.HISTOGRAM_SIGNIFICANT_DIGITS, "2");
+			CounterRequestHistogram.initParameterSignificantDigits();
+			assertEquals("parameter", 2, CounterRequestHistogram.getParameterSignificantDigits());
+			for (final String invalid : new String[] { "a", "0", "4" }) {
+				Utils.setProperty(Parameter.HISTOGRAM_SIGNIFICANT_DIGITS, invalid);
+				try {
+					CounterRequestHistogram.initParameterSignificantDigits();
+					fail(invalid);
+				} catch (final IllegalStateException e) {
+					assertNotNull("message", e.getMessage());
+				}
+			}
+		} finally {
+			Utils.initialize();
+			CounterRequestHistogram.initParameterSignificantDigits();
+		}
+		assertEquals("default", CounterRequestHistogram.DEFAULT_SIGNIFICANT_DIGITS,
+				CounterRequestHistogram.getParameterSignificantDigits());
+	}
+
+	/**
+	 * Test.
+	 */
+	@Test
+	public void testStripes() {
+		final CounterRequestHistogram histogram = new CounterRequestHistogram(3);
+		final CounterRequestStripes stripes = new CounterRequestStripes(
+				histogram.getSubBucketBits());
+		stripes.addHit(10, 0, 0, false, -1);
+		// les tranches sont agrandies jusqu'à la plus grande durée
+		stripes.addHit(100000, 0, 0, false, -1);
+		stripes.addHit(10, 0, 0, false, -1);
+		stripes.sumThenResetHistogram(histogram);
+		assertEquals("totalCount", 3, histogram.getTotalCount());
+		assertEquals("p50", 10, histogram.getValueAtPercentile(50));
+		assertTrue("p100", Math.abs(histogram.getValueAtPercentile(100) - 100000) <= 100);
+		stripes.sumThenResetHistogram(histogram);
+		assertEquals("totalCount", 3, histogram.getTotalCount());
+	}
+}
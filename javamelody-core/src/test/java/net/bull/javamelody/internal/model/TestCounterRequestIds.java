@@ -0,0 +1,74 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe CounterRequestIds.
+ * @author Emeric Vernat
+ */
+public class TestCounterRequestIds {
+	/** Test. */
+	@Test
+	public void testGetId() {
+		final CounterRequestIds requestIds = new CounterRequestIds("sql");
+		final String id = requestIds.getId("select 1", true);
+		// l'id est inchangé par rapport aux fichiers déjà stockés
+		assertEquals("id", "sql3232003928f9fe86a9cb634f450d5a53a4025819", id);
+		assertEquals("id", CounterRequestIds.buildId("select 1", "sql"), id);
+		assertSame("cached id", id, requestIds.getId("select 1", true));
+		assertSame("id of CounterRequest", id,
+				new CounterRequest("select 1", requestIds, true).getId());
+		assertEquals("id of CounterRequest", id, new CounterRequest("select 1", "sql").getId());
+		assertNotEquals("id of other counter", id,
+				new CounterRequestIds("http").getId("select 1", true));
+		assertNotEquals("id of other request", id, requestIds.getId("select 2", true));
+		assertEquals("digest length", CounterRequestIds.DIGEST_HEX_LENGTH,
+				new CounterRequest("", "").getId().length());
+	}
+
+	/** Test. */
+	@Test
+	public void testNotCachedIfAbsent() {
+		final CounterRequestIds requestIds = new CounterRequestIds("sql");
+		final String id = requestIds.getId("select 1", false);
+		assertEquals("id", CounterRequestIds.buildId("select 1", "sql"), id);
+		assertEquals("cached ids count", 0, requestIds.getCachedIdsCount());
+		requestIds.getId("select 1", true);
+		assertEquals("cached ids count", 1, requestIds.getCachedIdsCount());
+	}
+
+	/** Test. */
+	@Test
+	public void testCacheIsBounded() {
+		final CounterRequestIds requestIds = new CounterRequestIds("testCacheIsBounded");
+		for (int i = 0; i < CounterRequestIds.MAX_CACHED_IDS + 10; i++) {
+			requestIds.getId("request " + i, true);
+		}
+		final int cachedIdsCount = requestIds.getCachedIdsCount();
+		assertTrue("cached ids count", cachedIdsCount <= CounterRequestIds.MAX_CACHED_IDS);
+		// une partie du cache est évincée, et non tout le cache
+		assertTrue("cached ids count", cachedIdsCount > CounterRequestIds.MAX_CACHED_IDS / 2);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.bull.javamelody.Utils;
+
+/**
+ * Test unitaire des classes CounterRequestSlowestExecutions et CounterRequestSlowExecution.
+ * @author Emeric Vernat
+ */
+public class TestCounterRequestSlowestExecutions {
+	private static final String REQUEST_NAME = "select * from test where id = ?";
+
+	/** Initialisation. */
+	@Before
+	public void setUp() {
+		Utils.initialize();
+	}
+
+	/** Test. */
+	@Test
+	public void testAddSlowExecution() {
+		final Counter counter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		for (int i = 1; i <= 10; i++) {
+			counter.addRequestWithSlowExecution(REQUEST_NAME, System.currentTimeMillis(), i * 10,
+					false, 3, new Object[] { null, i }, false);
+		}
+		final List<CounterRequestSlowExecution> executions = counter.getRequests().get(0)
+				.getSlowestExecutions();
+		assertEquals("size", 3, executions.size());
+		assertEquals("slowest", 100, executions.get(0).getDuration());
+		assertEquals("fastest kept", 80, executions.get(2).getDuration());
+		assertEquals("parameters", "10", executions.get(0).getParameters());
+		assertNull("parentRequestName", executions.get(0).getParentRequestName());
+		assertNotNull("startDate", executions.get(0).getStartDate());
+		assertNotNull("toString", executions.get(0).toString());
+
+		// une exécution plus rapide que les plus lentes conservées n'est pas ajoutée
+		counter.addRequestWithSlowExecution(REQUEST_NAME, System.currentTimeMillis(), 5, false, 3,
+				null, false);
+		assertEquals("size", 3, counter.getRequests().get(0).getSlowestExecutions().size());
+		assertEquals("hits", 11, counter.getRequests().get(0).getHits());
+	}
+
+	/** Test. */
+	@Test
+	public void testAddSlowExecutionBuffered() {
+		final Counter counter = new Counter(Counter.SQL_COUNTER_NAME, null);
+		counter.setBuffered(true);
+		for (int i = 1; i <= 10; i++) {
+			counter.addRequestWithSlowExecution(REQUEST_NAME, System.currentTimeMillis(), i * 10,
+					false, 3, new Object[] { i }, false);
+		}
+		// les exécutions sont dans la requête en attente du tampon de ce thread
+		// et sont reportées avec les hits
+		final CounterRequest request = counter.getRequests().get(0);
+		assertEquals("hits", 10, request.getHits());
+		final List<CounterRequestSlowExecution> executions = request.getSlowestExecutions();
+		assertEquals("size", 3, executions.size());
+		assertEquals("slowest", 100, executions.get(0).getDuration());
+
+		// après le report du tampon par getRequests, l'exécution est fusionnée au report suivant
+		counter.addRequestWithSlowExecution(REQUEST_NAME, System.currentTimeMillis(), 200, false,
+				3, null, false);
+		final List<CounterRequestSlowExecution> executions2 = counter.getRequests().get(0)
+				.getSlowestExecutions();
+		assertEquals("size", 3, executions2.size());
+		assertEquals("slowest", 200, executions2.get(0).getDuration());
+	}
+
+	/** Test. */
+	@Test
+	public void testAddAndRemoveHits() {
+		final CounterRequest request = new CounterRequest(REQUEST_NAME, Counter.SQL_COUNTER_NAME);
+		request.addSlowExecution(new CounterRequestSlowExecution(1, 100, null, null), 2);
+		request.addSlowExecution(new CounterRequestSlowExecution(2, 50, null, null), 2);
+		final CounterRequest clone = request.clone();
+		assertEquals("clone", request.getSlowestExecutions(), clone.getSlowestExecutions());
+
+		final CounterRequest other = new CounterRequest(REQUEST_NAME, Counter.SQL_COUNTER_NAME);
+		other.addSlowExecution(new CounterRequestSlowExecution(3, 200, null, null), 2);
+		clone.addHits(other);
+		final List<CounterRequestSlowExecution> executions = clone.getSlowestExecutions();
+		assertEquals("size", 2, executions.size());
+		assertEquals("slowest", 200, executions.get(0).getDuration());
+		assertEquals("second", 100, executions.get(1).getDuration());
+		// une exécution déjà présente n'est pas ajoutée une deuxième fois
+		clone.addHits(request);
+		assertEquals("size", 2, clone.getSlowestExecutions().size());
+
+		// delta entre deux périodes
+		clone.removeHits(request);
+		assertEquals("size", 1, clone.getSlowestExecutions().size());
+		assertEquals("slowest", 200, clone.getSlowestExecutions().get(0).getDuration());
+	}
+
+	/** Test. */
+	@Test
+	public void testFormatParameters() {
+		assertNull("null", CounterRequestSlowExecution.formatParameters(null, false));
+		assertNull("empty", CounterRequestSlowExecution.formatParameters(new Object[1], false));
+		final Object[] values = { null, "text", 12, null, new byte[3],
+				new ByteArrayInputStream(new byte[0]) };
+		assertEquals("values", "'text', 12, null, <byte[3]>, <ByteArrayInputStream>",
+				CounterRequestSlowExecution.formatParameters(values, false));
+		assertEquals("masked", "<String>, <Integer>, null, <byte[3]>, <ByteArrayInputStream>",
+				CounterRequestSlowExecution.formatParameters(values, true));
+
+		final StringBuilder longValue = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			longValue.append('a');
+		}
+		final String truncated = CounterRequestSlowExecution
+				.formatParameters(new Object[] { null, longValue }, false);
+		assertTrue("truncated value", truncated.length() < longValue.length());
+		final Object[] manyValues = new Object[50];
+		for (int i = 1; i < manyValues.length; i++) {
+			manyValues[i] = longValue;
+		}
+		final String truncatedParameters = CounterRequestSlowExecution
+				.formatParameters(manyValues, false);
+		assertTrue("truncated parameters", truncatedParameters.length() <= 1003);
+	}
+}
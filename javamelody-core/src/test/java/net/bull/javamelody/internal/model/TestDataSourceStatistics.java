@@ -0,0 +1,116 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.bull.javamelody.Utils;
+
+/**
+ * Test unitaire des classes DataSourceStatistics et DataSourceInformations.
+ * @author Emeric Vernat
+ */
+public class TestDataSourceStatistics {
+	/** Initialisation. */
+	@Before
+	public void setUp() {
+		Utils.initialize();
+		DataSourceStatistics.clear();
+	}
+
+	/** Finalisation. */
+	@After
+	public void tearDown() {
+		DataSourceStatistics.clear();
+	}
+
+	/** Test. */
+	@Test
+	public void testDataSourceStatistics() {
+		final DataSourceStatistics statistics = DataSourceStatistics.getInstance("jdbc/test");
+		assertSame("getInstance", statistics, DataSourceStatistics.getInstance("jdbc/test"));
+		DataSourceStatistics.getInstance("jdbc/other");
+		statistics.connectionCreated();
+		statistics.connectionCreated();
+		statistics.connectionClosed();
+		statistics.sqlExecutionStarted();
+		statistics.sqlExecutionStarted();
+		statistics.sqlExecutionFinished(100, false);
+		statistics.sqlExecutionStarted();
+		statistics.sqlExecutionFinished(300, true);
+		// requête non comptée (explain)
+		statistics.sqlExecutionStarted();
+		statistics.sqlExecutionFinished(-1, false);
+		assertNotNull("toString", statistics.toString());
+
+		final List<DataSourceInformations> list = DataSourceStatistics
+				.buildDataSourceInformationsList();
+		// trié par nom de DataSource
+		assertEquals("size", 2, list.size());
+		assertEquals("other", "jdbc/other", list.get(0).getName());
+		assertEquals("other sqlMean", -1, list.get(0).getSqlMean());
+		final DataSourceInformations informations = list.get(1);
+		assertEquals("name", "jdbc/test", informations.getName());
+		assertEquals("usedConnectionCount", 1, informations.getUsedConnectionCount());
+		assertEquals("activeConnectionCount", 1, informations.getActiveConnectionCount());
+		assertEquals("transactionCount", 2, informations.getTransactionCount());
+		assertEquals("sqlHits", 2, informations.getSqlHits());
+		assertEquals("sqlDurationsSum", 400, informations.getSqlDurationsSum());
+		assertEquals("sqlSystemErrors", 1, informations.getSqlSystemErrors());
+		assertEquals("sqlMean", 200, informations.getSqlMean());
+		assertTrue("toString", informations.toString().contains("jdbc/test"));
+
+		final DataSourceInformations sum = informations.add(informations);
+		assertEquals("sum transactionCount", 4, sum.getTransactionCount());
+		assertEquals("sum sqlMean", 200, sum.getSqlMean());
+
+		assertEquals("javaInformations", 2,
+				new JavaInformations(null, false).getDataSourceInformationsList().size());
+		// la connexion encore ouverte conserve son instance, qui reste affichée
+		DataSourceStatistics.clear();
+		final List<DataSourceInformations> cleared = DataSourceStatistics
+				.buildDataSourceInformationsList();
+		assertEquals("clear size", 1, cleared.size());
+		assertEquals("clear usedConnectionCount", 1, cleared.get(0).getUsedConnectionCount());
+		assertEquals("clear sqlHits", 0, cleared.get(0).getSqlHits());
+		assertSame("clear getInstance", statistics, DataSourceStatistics.getInstance("jdbc/test"));
+		statistics.sqlExecutionFinished(50, false);
+		statistics.connectionClosed();
+		assertEquals("sqlHits after clear", 1,
+				DataSourceStatistics.buildDataSourceInformationsList().get(0).getSqlHits());
+		DataSourceStatistics.clear();
+		assertTrue("clear", DataSourceStatistics.buildDataSourceInformationsList().isEmpty());
+	}
+
+	/** Test. */
+	@Test
+	public void testGraphName() {
+		final String graphName = DataSourceInformations.getGraphName("usedConnections",
+				"java:comp/env/jdbc/test");
+		assertEquals("graphName", "usedConnections-java_comp_env_jdbc_test", graphName);
+	}
+}
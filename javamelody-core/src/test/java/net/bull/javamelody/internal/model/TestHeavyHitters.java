@@ -0,0 +1,91 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe HeavyHitters.
+ * @author Emeric Vernat
+ */
+public class TestHeavyHitters {
+	private static List<CounterRequest> createRequests(long... hits) {
+		final List<CounterRequest> requests = new ArrayList<>();
+		for (int i = 0; i < hits.length; i++) {
+			final CounterRequest request = new CounterRequest("request " + i, "sql");
+			for (int j = 0; j < hits[i]; j++) {
+				request.addHit(1, -1, -1, false, null, -1);
+			}
+			requests.add(request);
+		}
+		return requests;
+	}
+
+	private static long getMaxHits(List<CounterRequest> requests) {
+		long max = 0;
+		for (final CounterRequest request : requests) {
+			max = Math.max(max, request.getHits());
+		}
+		return max;
+	}
+
+	/** Test. */
+	@Test
+	public void testGetLightestRequests() {
+		final List<CounterRequest> requests = createRequests(5, 1, 20, 3, 1, 8, 2);
+		final List<CounterRequest> lightest = HeavyHitters.getLightestRequests(requests, 3,
+				Long.MAX_VALUE);
+		assertEquals("size", 3, lightest.size());
+		assertEquals("max hits", 2, getMaxHits(lightest));
+		assertEquals("none", 0,
+				HeavyHitters.getLightestRequests(requests, 0, Long.MAX_VALUE).size());
+		assertEquals("all", requests.size(),
+				HeavyHitters.getLightestRequests(requests, 100, Long.MAX_VALUE).size());
+		// seulement celles ayant moins de 4 hits
+		assertEquals("hitsLimit", 4, HeavyHitters.getLightestRequests(requests, 6, 4).size());
+	}
+
+	/** Test. */
+	@Test
+	public void testGetLightestRequestsWithEqualHits() {
+		// beaucoup de requêtes avec le même nombre de hits (sql non bindé par exemple)
+		final Random random = new Random(1);
+		final long[] hits = new long[20000];
+		for (int i = 0; i < hits.length; i++) {
+			hits[i] = random.nextInt(10) == 0 ? random.nextInt(100) : 1;
+		}
+		final List<CounterRequest> requests = createRequests(hits);
+		final int count = hits.length - Counter.MAX_REQUESTS_COUNT;
+		final List<CounterRequest> lightest = HeavyHitters.getLightestRequests(requests, count,
+				Long.MAX_VALUE);
+		assertEquals("size", count, lightest.size());
+		final long maxLightHits = getMaxHits(lightest);
+		final List<CounterRequest> kept = new ArrayList<>(requests);
+		kept.removeAll(lightest);
+		for (final CounterRequest request : kept) {
+			assertTrue("heavy hitter", request.getHits() >= maxLightHits);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe HttpPathTemplater.
+ * @author Emeric Vernat
+ */
+public class TestHttpPathTemplater {
+	private final HttpPathTemplater templater = new HttpPathTemplater();
+
+	private void assertTemplate(String expected, String requestName) {
+		assertEquals(requestName, expected, templater.template(requestName));
+	}
+
+	/** Test. */
+	@Test
+	public void testIdentifiers() {
+		assertTemplate("/orders/$ GET", "/orders/123 GET");
+		assertTemplate("/orders/$/items/$ ajax POST", "/orders/124/items/7 ajax POST");
+		assertTemplate("/users/$/profile GET",
+				"/users/550e8400-e29b-41d4-a716-446655440000/profile GET");
+		assertTemplate("/objects/$ DELETE", "/objects/507f1f77bcf86cd799439011 DELETE");
+		assertTemplate("/tokens/$ GET", "/tokens/dGhpcyBpcyBhIHRva2VuMTIz_-== GET");
+		assertTemplate("/orders/$/", "/orders/123/");
+		assertTemplate("/$ GET", "/2019 GET");
+	}
+
+	/** Test. */
+	@Test
+	public void testLiterals() {
+		final String requestName = "/api/v2/orders GET";
+		assertSame(requestName, requestName, templater.template(requestName));
+		// hexadécimal sans chiffre ou trop court, base64 trop court
+		assertTemplate("/decade/cafe/deadbeef GET", "/decade/cafe/deadbeef GET");
+		assertTemplate("/abc123 GET", "/abc123 GET");
+		assertTemplate("/getUserProfileById GET", "/getUserProfileById GET");
+		assertTemplate("Error404", "Error404");
+		assertTemplate("/ GET", "/ GET");
+		assertTemplate("//orders/$ GET", "//orders/1 GET");
+		assertTemplate("/index.html.getData GWT-RPC", "/index.html.getData GWT-RPC");
+		assertTemplate("", "");
+	}
+
+	/** Test. */
+	@Test
+	public void testIsIdentifier() {
+		assertTrue("digits", isIdentifier("0123456789"));
+		assertTrue("uuid", isIdentifier("550E8400-E29B-41D4-A716-446655440000"));
+		assertFalse("uuid", isIdentifier("550E8400-E29B-41D4-A716-44665544000G"));
+		assertTrue("hex", isIdentifier("abcdef01"));
+		assertFalse("hex", isIdentifier("abcdef0"));
+		assertTrue("base64", isIdentifier("QUJDREVGR0hJSktMTU5PUDEy"));
+		assertFalse("base64", isIdentifier("ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+		assertFalse("other", isIdentifier("my-page.html"));
+	}
+
+	private static boolean isIdentifier(String segment) {
+		return HttpPathTemplater.isIdentifier(segment, 0, segment.length());
+	}
+
+	/** Test. */
+	@Test
+	public void testLearnedSegments() {
+		// en-deçà de la limite, les segments différents restent des littéraux appris
+		for (int i = 0; i < HttpPathTemplater.MAX_SEGMENTS_PER_NODE; i++) {
+			assertTemplate("/users/user" + (char) ('a' + i % 26) + i + "/profile GET",
+					"/users/user" + (char) ('a' + i % 26) + i + "/profile GET");
+		}
+		// au-delà, la position est variable pour tous les segments, y compris ceux déjà appris
+		assertTemplate("/users/$/profile GET", "/users/alice/profile GET");
+		assertTemplate("/users/$/profile GET", "/users/usera0/profile GET");
+		assertTemplate("/users GET", "/users GET");
+		final int nodeCount = templater.getNodeCount();
+		assertTemplate("/users/$/profile GET", "/users/bob/profile GET");
+		assertEquals("nodeCount", nodeCount, templater.getNodeCount());
+	}
+
+	/** Test. */
+	@Test
+	public void testRootSegments() {
+		// pas de limite de segments différents à la racine, seulement celle de l'arbre
+		for (int i = 0; i < HttpPathTemplater.MAX_SEGMENTS_PER_NODE * 2; i++) {
+			final String requestName = "/resource" + (char) ('a' + i % 26) + i + " GET";
+			assertTemplate(requestName, requestName);
+		}
+		assertTemplate("/orders/$ GET", "/orders/123 GET");
+	}
+
+	/** Test. */
+	@Test
+	public void testMaxNodes() {
+		for (int i = 0; templater.getNodeCount() < HttpPathTemplater.MAX_NODES; i++) {
+			templater.template("/a" + i / HttpPathTemplater.MAX_SEGMENTS_PER_NODE + "/b"
+					+ i % HttpPathTemplater.MAX_SEGMENTS_PER_NODE + " GET");
+		}
+		assertEquals("nodeCount", HttpPathTemplater.MAX_NODES, templater.getNodeCount());
+		// arbre plein : les segments inconnus ne sont plus appris
+		assertTemplate("/$/$ GET", "/unknown/path GET");
+		assertEquals("nodeCount", HttpPathTemplater.MAX_NODES, templater.getNodeCount());
+		// après réinitialisation, les segments sont de nouveau appris
+		templater.clear();
+		assertEquals("nodeCount", 1, templater.getNodeCount());
+		assertTemplate("/unknown/path GET", "/unknown/path GET");
+	}
+}
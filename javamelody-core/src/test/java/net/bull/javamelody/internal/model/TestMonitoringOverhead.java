@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.bull.javamelody.Utils;
+import net.bull.javamelody.internal.model.MonitoringOverhead.Phase;
+
+/**
+ * Test unitaire des classes MonitoringOverhead et DurationsInformations.
+ * @author Emeric Vernat
+ */
+public class TestMonitoringOverhead {
+	/** Initialisation. */
+	@Before
+	public void setUp() {
+		Utils.initialize();
+		MonitoringOverhead.clear();
+	}
+
+	/** Finalisation. */
+	@After
+	public void tearDown() {
+		MonitoringOverhead.setEnabled(false);
+		MonitoringOverhead.clear();
+	}
+
+	/** Test. */
+	@Test
+	public void testDisabled() {
+		MonitoringOverhead.addOverhead(Phase.HTTP, 1000);
+		assertTrue("disabled",
+				MonitoringOverhead.buildMonitoringOverheadInformationsList().isEmpty());
+		assertTrue("javaInformations",
+				new JavaInformations(null, false).getMonitoringOverheadInformationsList().isEmpty());
+	}
+
+	/** Test. */
+	@Test
+	public void testAddOverhead() {
+		MonitoringOverhead.setEnabled(true);
+		assertTrue("isEnabled", MonitoringOverhead.isEnabled());
+		for (int i = 1; i <= 100; i++) {
+			MonitoringOverhead.addOverhead(Phase.HTTP, i * 1000L);
+		}
+		MonitoringOverhead.addOverhead(Phase.SQL, -1);
+		final List<DurationsInformations> list = MonitoringOverhead
+				.buildMonitoringOverheadInformationsList();
+		// pas d'informations pour les phases sans mesure
+		assertEquals("size", 2, list.size());
+		final DurationsInformations http = list.get(0);
+		assertEquals("name", "http", http.getName());
+		assertEquals("graphName", "httpOverhead", MonitoringOverhead.getGraphName(http.getName()));
+		assertEquals("count", 100, http.getCount());
+		assertEquals("totalNanos", 5050000, http.getTotalNanos());
+		assertEquals("meanNanos", 50500, http.getMeanNanos());
+		assertEquals("maxNanos", 100000, http.getMaxNanos());
+		// précision de l'histogramme : 1/16 environ
+		assertPercentile(http, 50, 50000);
+		assertPercentile(http, 95, 95000);
+		assertPercentile(http, 99, 99000);
+		final DurationsInformations sql = list.get(1);
+		assertEquals("sql", "sql", sql.getName());
+		// durée négative comptée comme 0
+		assertEquals("sql maxNanos", 0, sql.getMaxNanos());
+		assertEquals("javaInformations", 2,
+				new JavaInformations(null, false).getMonitoringOverheadInformationsList().size());
+		assertTrue("toString", http.toString().contains("http"));
+
+		MonitoringOverhead.clear();
+		assertTrue("clear",
+				MonitoringOverhead.buildMonitoringOverheadInformationsList().isEmpty());
+	}
+
+	private static void assertPercentile(DurationsInformations informations,
+			int percentile, long expectedNanos) {
+		final long nanos = informations.getNanosAtPercentile(percentile);
+		assertTrue("p" + percentile + " " + nanos,
+				nanos >= expectedNanos && nanos <= expectedNanos + expectedNanos / 8);
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe RequestTransformCache.
+ * @author Emeric Vernat
+ */
+public class TestRequestTransformCache {
+	/** Test. */
+	@Test
+	public void testTransform() {
+		final RequestTransformCache cache = new RequestTransformCache(Pattern.compile("\\d+"));
+		assertEquals("transform", "/item/$", cache.transform("/item/12"));
+		assertEquals("transform", "/item/$", cache.transform("/item/12"));
+		assertEquals("transform", "/item/$", cache.transform("/item/34"));
+		assertEquals("hits", 1, cache.getHits());
+		assertEquals("misses", 2, cache.getMisses());
+		assertEquals("size", 2, cache.getSize());
+		assertFalse("bypassed", cache.isBypassed());
+		assertTrue("toString", cache.toString().contains("hits=1"));
+	}
+
+	/** Test. */
+	@Test
+	public void testEviction() {
+		final RequestTransformCache cache = new RequestTransformCache(Pattern.compile("\\d+"));
+		// noms qui se répètent un peu, mais plus nombreux que la taille du cache
+		for (int i = 0; i < RequestTransformCache.MAX_SIZE * 2; i++) {
+			cache.transform("/item/" + i % (RequestTransformCache.MAX_SIZE + 100));
+		}
+		assertTrue("size", cache.getSize() <= RequestTransformCache.MAX_SIZE);
+	}
+
+	/** Test. */
+	@Test
+	public void testBypass() {
+		final RequestTransformCache cache = new RequestTransformCache(Pattern.compile("\\d+"));
+		// noms qui ne se répètent jamais : le cache doit se contourner une fois plein
+		int i = 0;
+		while (!cache.isBypassed() && i < RequestTransformCache.MAX_SIZE * 4) {
+			assertEquals("transform", "select $", cache.transform("select " + i));
+			i++;
+		}
+		assertTrue("bypassed", cache.isBypassed());
+		assertEquals("size", 0, cache.getSize());
+		assertEquals("transform", "select $", cache.transform("select 1"));
+		assertEquals("bypasses", 1, cache.getBypasses());
+		for (int j = 0; j < RequestTransformCache.BYPASS_SIZE; j++) {
+			cache.transform("select 1");
+		}
+		// après le contournement, le cache est réessayé
+		assertFalse("bypassed", cache.isBypassed());
+		cache.transform("select 1");
+		assertEquals("size", 1, cache.getSize());
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Test unitaire de la classe SqlFingerprinter.
+ * @author Emeric Vernat
+ */
+public class TestSqlFingerprinter {
+	private static void assertFingerprint(String expected, String sql) {
+		assertEquals(sql, expected, SqlFingerprinter.fingerprint(sql));
+	}
+
+	/** Test. */
+	@Test
+	public void testLiterals() {
+		assertFingerprint("select * from t where a = ? and b = ?",
+				"select * from t where a = 'x' and b = 12");
+		assertFingerprint("select * from t where a = ?", "select * from t where a = 'it''s'");
+		// backslash n'est pas un échappement en sql standard
+		assertFingerprint("select * from t where a = ? and b = ?",
+				"select * from t where a = 'C:\\' and b = 1");
+		assertFingerprint("select * from t where a = ? or a = -?",
+				"select * from t where a = 1.5e-3 or a = -0x1F");
+		assertFingerprint("select a1,t2.b from t2", "select a1, t2.b from t2");
+		assertFingerprint("select \"col 1\" from [my table] where `x` = ?",
+				"select \"col 1\" from [my table] where `x` = 3");
+	}
+
+	/** Test. */
+	@Test
+	public void testInList() {
+		assertFingerprint("select * from t where id in (?)",
+				"select * from t where id in (1, 2, 3)");
+		assertFingerprint("select * from t where id IN(?)", "select * from t where id IN(?,?)");
+		assertFingerprint("select * from t where id in (?) and b in (?)",
+				"select * from t where id in ('a') and b in (-1, +2)");
+		assertFingerprint("select * from t where id in (select id from u where c = ?)",
+				"select * from t where id in (select id from u where c = 5)");
+		assertFingerprint("select * from t where id in (upper(?),?)",
+				"select * from t where id in (upper('a'), 'b')");
+		assertFingerprint("select * from t where id in ()", "select * from t where id in ()");
+	}
+
+	/** Test. */
+	@Test
+	public void testValues() {
+		assertFingerprint("insert into t (a,b) values (?)",
+				"insert into t (a, b) values (1, 'x')");
+		assertFingerprint("insert into t (a,b) values (?)",
+				"insert into t (a, b) values (1, 'x'), (2, 'y'),(3, 'z')");
+		assertFingerprint("insert into t (a,b) values (default,?)",
+				"insert into t (a, b) values (default, 1)");
+		assertFingerprint("insert into t values (?) on conflict do nothing",
+				"insert into t values (1), (2) on conflict do nothing");
+	}
+
+	/** Test. */
+	@Test
+	public void testWhitespaceAndComments() {
+		assertFingerprint("select a from t where b = ?",
+				"  select   a\n\tfrom t -- comment\n where /* c */ b = 1  ");
+		assertFingerprint("select count(*) from t", "select count( * ) from t");
+		final String sql = "select a from t where b = ?";
+		assertSame("unchanged", sql, SqlFingerprinter.fingerprint(sql));
+		assertFingerprint("", "");
+		assertFingerprint("select ?", "select 'unterminated");
+		assertFingerprint("select", "select /* unterminated");
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody.internal.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.bull.javamelody.Utils;
+import net.bull.javamelody.internal.model.Transactions.OpenTransaction;
+
+/**
+ * Test unitaire des classes Transactions et TransactionInformations.
+ * @author Emeric Vernat
+ */
+public class TestTransactions {
+	/** Initialisation. */
+	@Before
+	public void setUp() {
+		Utils.initialize();
+		Transactions.clear();
+	}
+
+	/** Finalisation. */
+	@After
+	public void tearDown() {
+		Transactions.clear();
+	}
+
+	/** Test. */
+	@Test
+	public void testTransactions() {
+		assertNull("empty", Transactions.buildTransactionInformations());
+		Transactions.transactionEnded(Transactions.transactionStarted("/test1"), false);
+		Transactions.transactionEnded(Transactions.transactionStarted("/test2"), false);
+		Transactions.transactionEnded(Transactions.transactionStarted("/test3"), true);
+		Transactions.transactionAbandoned(Transactions.transactionStarted("/test4"));
+		final OpenTransaction openTransaction = Transactions.transactionStarted("/test5");
+		final TransactionInformations informations = Transactions
+				.buildTransactionInformations();
+		assertNotNull("informations", informations);
+		assertEquals("count", 3, informations.getCount());
+		assertEquals("commitCount", 2, informations.getCommitCount());
+		assertEquals("rollbackCount", 1, informations.getRollbackCount());
+		assertEquals("rollbackPercentage", 100d / 3, informations.getRollbackPercentage(),
+				0.01);
+		assertTrue("meanNanos", informations.getMeanNanos() >= 0);
+		assertTrue("maxNanos", informations.getMaxNanos() >= informations.getMeanNanos());
+		assertTrue("p99", informations.getNanosAtPercentile(99) >= 0);
+		assertEquals("openTransactionCount", 1, informations.getOpenTransactionCount());
+		final OpenTransactionInformations open = informations.getLongestOpenTransactions()
+				.get(0);
+		assertEquals("requestName", "/test5", open.getRequestName());
+		assertEquals("threadId", Thread.currentThread().getId(), open.getThreadId());
+		assertEquals("threadName", Thread.currentThread().getName(), open.getThreadName());
+		assertTrue("durationMillis", open.getDurationMillis() >= 0);
+		assertNotNull("startDate", open.getStartDate());
+		assertNotNull("toString", open.toString());
+		assertNotNull("toString", informations.toString());
+		assertNotNull("javaInformations",
+				new JavaInformations(null, false).getTransactionInformations());
+
+		Transactions.transactionEnded(openTransaction, false);
+		assertEquals("openTransactionCount", 0,
+				Transactions.buildTransactionInformations().getOpenTransactionCount());
+		Transactions.clear();
+		assertNull("clear", Transactions.buildTransactionInformations());
+	}
+
+	/** Test. */
+	@Test
+	public void testMaxOpenTransactions() {
+		// transactions de connexions jamais fermées
+		final OpenTransaction oldestTransaction = Transactions.transactionStarted("/oldest");
+		for (int i = 1; i < Transactions.MAX_OPEN_TRANSACTIONS; i++) {
+			Transactions.transactionStarted("/leaked");
+		}
+		// au-delà du maximum, la plus ancienne est oubliée et la nouvelle est suivie
+		final OpenTransaction openTransaction = Transactions.transactionStarted("/test");
+		assertEquals("openTransactionCount", Transactions.MAX_OPEN_TRANSACTIONS,
+				Transactions.buildTransactionInformations().getOpenTransactionCount());
+		Transactions.transactionAbandoned(oldestTransaction);
+		assertEquals("openTransactionCount", Transactions.MAX_OPEN_TRANSACTIONS,
+				Transactions.buildTransactionInformations().getOpenTransactionCount());
+		Transactions.transactionEnded(openTransaction, false);
+		assertEquals("openTransactionCount", Transactions.MAX_OPEN_TRANSACTIONS - 1,
+				Transactions.buildTransactionInformations().getOpenTransactionCount());
+	}
+}
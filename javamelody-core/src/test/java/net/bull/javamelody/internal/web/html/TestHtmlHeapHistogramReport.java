@@ -184,6 +184,11 @@ public class TestHtmlHeapHistogramReport {
 		} catch (final Exception e) {
 			assertNotNull(EXCEPTION, e);
 		}
+		try {
+			VirtualMachine.virtualThreadsDump().close();
+		} catch (final Exception e) {
+			assertNotNull(EXCEPTION, e);
+		}
 		try {
 			VirtualMachine.detach();
 		} catch (final Exception e) {
@@ -34,11 +34,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import net.bull.javamelody.Utils;
+import net.bull.javamelody.internal.model.ConnectionWaits;
+import net.bull.javamelody.internal.model.DataSourceStatistics;
 import net.bull.javamelody.internal.model.JavaInformations;
 import net.bull.javamelody.internal.model.MBeans;
+import net.bull.javamelody.internal.model.MonitoringOverhead;
 import net.bull.javamelody.internal.model.TestTomcatInformations.GlobalRequestProcessor;
 import net.bull.javamelody.internal.model.TestTomcatInformations.ThreadPool;
 import net.bull.javamelody.internal.model.TomcatInformations;
+import net.bull.javamelody.internal.model.Transactions;
 
 /**
  * Test unitaire de la classe HtmlJavaInformationsReport.
@@ -134,6 +138,84 @@ public class TestHtmlJavaInformationsReport {
 		}
 	}
 
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testMonitoringOverhead() throws IOException {
+		MonitoringOverhead.setEnabled(true);
+		try {
+			MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.HTTP, 10000);
+			MonitoringOverhead.addOverhead(MonitoringOverhead.Phase.SQL, 5000);
+			final HtmlJavaInformationsReport htmlReport = new HtmlJavaInformationsReport(
+					List.of(new JavaInformations(null, true)), writer);
+			htmlReport.toHtml();
+			final String html = writer.toString();
+			assertTrue("httpOverhead", html.contains("httpOverhead"));
+			assertTrue("sqlOverhead", html.contains("sqlOverhead"));
+		} finally {
+			MonitoringOverhead.setEnabled(false);
+			MonitoringOverhead.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testConnectionWaits() throws IOException {
+		ConnectionWaits.addWait("jdbc/test", 2000000);
+		try {
+			final HtmlJavaInformationsReport htmlReport = new HtmlJavaInformationsReport(
+					List.of(new JavaInformations(null, true)), writer);
+			htmlReport.toHtml();
+			final String html = writer.toString();
+			assertTrue("connectionWaitTime", html.contains(ConnectionWaits.GRAPH_NAME));
+			assertTrue("jdbc/test", html.contains("jdbc/test"));
+		} finally {
+			ConnectionWaits.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testTransactions() throws IOException {
+		Transactions.transactionEnded(Transactions.transactionStarted("/committed"), false);
+		Transactions.transactionEnded(Transactions.transactionStarted("/rolledback"), true);
+		Transactions.transactionStarted("/open GET");
+		try {
+			final HtmlJavaInformationsReport htmlReport = new HtmlJavaInformationsReport(
+					List.of(new JavaInformations(null, true)), writer);
+			htmlReport.toHtml();
+			final String html = writer.toString();
+			assertTrue("transactionTime", html.contains(Transactions.GRAPH_NAME));
+			assertTrue("open transaction", html.contains("/open GET"));
+		} finally {
+			Transactions.clear();
+		}
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testDataSources() throws IOException {
+		final DataSourceStatistics primary = DataSourceStatistics.getInstance("jdbc/primary");
+		final DataSourceStatistics replica = DataSourceStatistics.getInstance("jdbc/replica");
+		primary.connectionCreated();
+		replica.connectionCreated();
+		try {
+			final HtmlJavaInformationsReport htmlReport = new HtmlJavaInformationsReport(
+					List.of(new JavaInformations(null, true)), writer);
+			htmlReport.toHtml();
+			final String html = writer.toString();
+			assertTrue("jdbc/primary", html.contains("jdbc/primary"));
+			assertTrue("graph", html.contains("usedConnections-jdbc_replica"));
+		} finally {
+			primary.connectionClosed();
+			replica.connectionClosed();
+			DataSourceStatistics.clear();
+		}
+	}
+
 	/** Test. */
 	@Test
 	public void testToBar() {
@@ -36,10 +36,12 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.Timer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import javax.cache.Caching;
 import javax.cache.configuration.MutableConfiguration;
@@ -67,10 +69,12 @@ import net.bull.javamelody.internal.common.I18N;
 import net.bull.javamelody.internal.common.Parameters;
 import net.bull.javamelody.internal.model.Collector;
 import net.bull.javamelody.internal.model.CollectorServer;
+import net.bull.javamelody.internal.model.ConnectionInformations;
 import net.bull.javamelody.internal.model.Counter;
 import net.bull.javamelody.internal.model.CounterRequest;
 import net.bull.javamelody.internal.model.CounterRequestContext;
 import net.bull.javamelody.internal.model.DatabaseInformations;
+import net.bull.javamelody.internal.model.JRobin;
 import net.bull.javamelody.internal.model.JavaInformations;
 import net.bull.javamelody.internal.model.MBeans;
 import net.bull.javamelody.internal.model.Period;
@@ -232,6 +236,120 @@ public class TestHtmlReport {
 		htmlReport2.toHtml(null, null);
 	}
 
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testCounterWithTransformPattern() throws IOException {
+		counter.setRequestTransformPattern(Pattern.compile("\\d+"));
+		for (int i = 0; i < 10; i++) {
+			counter.addRequest("/item/" + i % 2, 10, 5, 5, false, 1000);
+		}
+		final HtmlReport htmlReport = new HtmlReport(collector, null, javaInformationsList,
+				Period.TOUT, writer);
+		htmlReport.toHtml(null, null);
+		assertTrue("transform-pattern cache", writer.toString().contains("transform-pattern"));
+		assertNotEmptyAndClear(writer);
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testCounterWithOtherRequests() throws IOException {
+		final Counter otherCounter = new Counter(counter.getName(), null);
+		final Collector otherCollector = new Collector("test", List.of(otherCounter));
+		// sans les données éventuellement relues du stockage par le collector
+		otherCounter.clear();
+		otherCounter.setMaxRequestsCount(1);
+		for (int i = 0; i < 20; i++) {
+			otherCounter.addRequest("heavy request", 10, 5, 5, false, 1000);
+		}
+		otherCounter.addRequest("light request", 10, 5, 5, false, 1000);
+		JRobin.initBackendFactory(new Timer(getClass().getSimpleName(), true));
+		try {
+			// la collecte regroupe dans "autres" les requêtes au-delà du maximum
+			otherCollector.collectWithoutErrors(Collections.emptyList());
+		} finally {
+			JRobin.stop();
+		}
+		final HtmlReport htmlReport = new HtmlReport(otherCollector, null, javaInformationsList,
+				Period.TOUT, writer);
+		htmlReport.toHtml(null, null);
+		assertTrue("other requests", writer.toString()
+				.contains(I18N.getFormattedString("other_requests", "1", "1", "1")));
+		assertNotEmptyAndClear(writer);
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testSqlFingerprintSample() throws IOException {
+		sqlCounter.setDisplayed(true);
+		sqlCounter.setSqlFingerprint(true);
+		sqlCounter.addRequest("select 12345 from dual", 5, -1, -1, false, -1);
+		final String requestId = new CounterRequest("select ? from dual", sqlCounter.getName())
+				.getId();
+		final HtmlReport htmlReport = new HtmlReport(collector, null, javaInformationsList,
+				Period.TOUT, writer);
+		htmlReport.writeRequestAndGraphDetail(requestId);
+		assertTrue("sample", writer.toString().contains("12345"));
+		assertNotEmptyAndClear(writer);
+		sqlCounter.setSqlFingerprint(false);
+		sqlCounter.setDisplayed(false);
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testNPlusOnes() throws IOException {
+		counter.setNPlusOneThreshold(1);
+		counter.bindContext("/orders", "/orders?page=2", null, -1, -1);
+		for (int i = 0; i < 3; i++) {
+			sqlCounter.bindContext("select * from item", "select * from item", null, -1, -1);
+			sqlCounter.addRequest("select * from item", 0, -1, -1, false, -1);
+		}
+		counter.addRequest("/orders", 10, -1, -1, false, 100);
+		final HtmlReport htmlReport = new HtmlReport(collector, null, javaInformationsList,
+				Period.TOUT, writer);
+		htmlReport.toHtml(null, null);
+		assertTrue("n+1", writer.toString().contains(I18N.getString("n_plus_one")));
+		assertTrue("sample", writer.toString().contains("/orders?page=2"));
+		assertNotEmptyAndClear(writer);
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testSqlSlowestExecutions() throws IOException {
+		sqlCounter.setDisplayed(true);
+		final String sql = "select ? from slowest";
+		sqlCounter.addRequestWithSlowExecution(sql, System.currentTimeMillis(), 500, false, 5,
+				new Object[] { null, "bindvalue" }, false);
+		final String requestId = new CounterRequest(sql, sqlCounter.getName()).getId();
+		final HtmlReport htmlReport = new HtmlReport(collector, null, javaInformationsList,
+				Period.TOUT, writer);
+		htmlReport.writeRequestAndGraphDetail(requestId);
+		assertTrue("slowest executions", writer.toString()
+				.contains(I18N.getString("Executions_les_plus_lentes")));
+		assertTrue("bind value", writer.toString().contains("bindvalue"));
+		assertNotEmptyAndClear(writer);
+		sqlCounter.setDisplayed(false);
+	}
+
+	/** Test.
+	 * @throws IOException e */
+	@Test
+	public void testSqlFetch() throws IOException {
+		sqlCounter.setDisplayed(true);
+		sqlCounter.addRequest("select * from customer", 5, -1, -1, false, -1);
+		sqlCounter.addFetchHit("select * from customer", 1234, 50000000);
+		final HtmlReport htmlReport = new HtmlReport(collector, null, javaInformationsList,
+				Period.TOUT, writer);
+		htmlReport.toHtml(null, null);
+		assertTrue("rows", writer.toString().contains(I18N.getString("Lignes_moyennes")));
+		assertNotEmptyAndClear(writer);
+		sqlCounter.setDisplayed(false);
+	}
+
 	/** Test.
 	 * @throws IOException e */
 	@Test
@@ -397,6 +515,13 @@ public class TestHtmlReport {
 		try {
 			htmlReport.writeConnections(JdbcWrapper.getConnectionInformationsList(), false);
 			assertNotEmptyAndClear(writer);
+			// une fuite suspectée
+			final ConnectionInformations leak = new ConnectionInformations(false);
+			leak.suspectLeak(Thread.currentThread().getStackTrace());
+			htmlReport.writeConnections(List.of(leak), false);
+			assertTrue("Fuite_suspectee_pile_thread", writer.toString().contains(
+					I18N.htmlEncode(I18N.getString("Fuite_suspectee_pile_thread"), true)));
+			assertNotEmptyAndClear(writer);
 			htmlReport.writeConnections(JdbcWrapper.getConnectionInformationsList(), true);
 			assertNotEmptyAndClear(writer);
 		} finally {
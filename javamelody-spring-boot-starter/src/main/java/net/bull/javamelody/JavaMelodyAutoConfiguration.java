@@ -48,6 +48,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Role;
 import org.springframework.core.annotation.MergedAnnotation;
 import org.springframework.core.annotation.MergedAnnotations;
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.annotation.Schedules;
@@ -356,6 +357,18 @@ public class JavaMelodyAutoConfiguration {
 		return advisor;
 	}
 
+	/**
+	 * Propagation of the current request context to the tasks of Spring's TaskExecutor,
+	 * if no other {@link TaskDecorator} is defined.
+	 * @return MonitoringTaskDecorator
+	 */
+	@Bean
+	@ConditionalOnMissingBean(TaskDecorator.class)
+	@ConditionalOnProperty(prefix = JavaMelodyConfigurationProperties.PREFIX, name = "spring-monitoring-enabled", matchIfMissing = true)
+	public MonitoringTaskDecorator monitoringTaskDecorator() {
+		return new MonitoringTaskDecorator();
+	}
+
 	/**
 	 * Monitoring of {@link RestTemplate} beans.
 	 * @return SpringRestTemplateBeanPostProcessor
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2008-2019 by Emeric Vernat
+ *
+ *     This file is part of Java Melody.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bull.javamelody;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * TaskDecorator propagating the context of the current request (http, spring...) to the tasks
+ * of Spring's TaskExecutor, for example for @Async methods, so that their sql requests and
+ * service calls are counted as child requests of the parent request.
+ * @author Emeric Vernat
+ */
+public class MonitoringTaskDecorator implements TaskDecorator {
+	@Override
+	public Runnable decorate(Runnable runnable) {
+		return MonitoringContextPropagation.wrapRunnable(runnable);
+	}
+}
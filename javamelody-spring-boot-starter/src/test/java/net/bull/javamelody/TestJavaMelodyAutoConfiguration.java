@@ -118,5 +118,15 @@ public class TestJavaMelodyAutoConfiguration {
 		final SpringRestTemplateBeanPostProcessor restTemplatePostProcessor = context
 				.getBean(SpringRestTemplateBeanPostProcessor.class);
 		assertThat(restTemplatePostProcessor).isNotNull();
+
+		// It should create a task decorator to propagate the request context to tasks.
+		final MonitoringTaskDecorator taskDecorator = context
+				.getBean(MonitoringTaskDecorator.class);
+		assertThat(taskDecorator).isNotNull();
+		final Runnable runnable = () -> {
+			// nothing
+		};
+		// no current request
+		assertThat(taskDecorator.decorate(runnable)).isSameAs(runnable);
 	}
 }
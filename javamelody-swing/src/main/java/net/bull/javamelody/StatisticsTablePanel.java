@@ -187,6 +187,10 @@ class StatisticsTablePanel extends MelodyPanel {
 			table.addColumn("childDurationsMean",
 					getFormattedString("temps_fils_moyen", counter.getChildCounterName()));
 		}
+		if (counterRequestAggregation.isFetchDisplayed()) {
+			table.addColumn("rowsMean", getString("Lignes_moyennes"));
+			table.addColumn("fetchDurationsMean", getString("Temps_lecture_moyen"));
+		}
 	}
 
 	void setList(List<CounterRequest> requests) {
@@ -73,8 +73,8 @@ public class CounterRequestContextData {
 		}
 		final Map<String, CounterRequest> requestsById = mapAllRequestsById();
 		for (final CounterRequestContext context : allContexts) {
-			final String requestId = new CounterRequest(context.getRequestName(),
-					context.getParentCounter().getName()).getId();
+			final String requestId = CounterRequestIds.buildId(context.getRequestName(),
+					context.getParentCounter().getName());
 			final CounterRequest request = requestsById.get(requestId);
 			allRequests.add(request);
 		}